@@ -12,4 +12,221 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final QueueEngine queueEngine = new QueueEngine();
+
+    private final Search search = new Search();
+
+    public QueueEngine getQueueEngine() {
+        return queueEngine;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public static class QueueEngine {
+
+        private long renumberingDelayMs = 1000;
+
+        private long writeBehindDelayMs = 1000;
+
+        private int writeBehindMaxChanges = 1000;
+
+        private String journalDirectory = "target/journal";
+
+        private int journalSegmentSize = 64 * 1024 * 1024;
+
+        private String snapshotDirectory = "target/snapshot";
+
+        private long snapshotDelayMs = 60000;
+
+        private long deskTimeoutMs = 30 * 60 * 1000;
+
+        private long participantTtlMs = 4 * 60 * 60 * 1000;
+
+        private long callGraceMs = 5 * 60 * 1000;
+
+        private long expiryTickMs = 1000;
+
+        private long hourlyCountsDelayMs = 5 * 60 * 1000;
+
+        public long getRenumberingDelayMs() {
+            return renumberingDelayMs;
+        }
+
+        public void setRenumberingDelayMs(long renumberingDelayMs) {
+            this.renumberingDelayMs = renumberingDelayMs;
+        }
+
+        public long getWriteBehindDelayMs() {
+            return writeBehindDelayMs;
+        }
+
+        public void setWriteBehindDelayMs(long writeBehindDelayMs) {
+            this.writeBehindDelayMs = writeBehindDelayMs;
+        }
+
+        public int getWriteBehindMaxChanges() {
+            return writeBehindMaxChanges;
+        }
+
+        public void setWriteBehindMaxChanges(int writeBehindMaxChanges) {
+            this.writeBehindMaxChanges = writeBehindMaxChanges;
+        }
+
+        public String getJournalDirectory() {
+            return journalDirectory;
+        }
+
+        public void setJournalDirectory(String journalDirectory) {
+            this.journalDirectory = journalDirectory;
+        }
+
+        public int getJournalSegmentSize() {
+            return journalSegmentSize;
+        }
+
+        public void setJournalSegmentSize(int journalSegmentSize) {
+            this.journalSegmentSize = journalSegmentSize;
+        }
+
+        public String getSnapshotDirectory() {
+            return snapshotDirectory;
+        }
+
+        public void setSnapshotDirectory(String snapshotDirectory) {
+            this.snapshotDirectory = snapshotDirectory;
+        }
+
+        public long getSnapshotDelayMs() {
+            return snapshotDelayMs;
+        }
+
+        public void setSnapshotDelayMs(long snapshotDelayMs) {
+            this.snapshotDelayMs = snapshotDelayMs;
+        }
+
+        public long getDeskTimeoutMs() {
+            return deskTimeoutMs;
+        }
+
+        public void setDeskTimeoutMs(long deskTimeoutMs) {
+            this.deskTimeoutMs = deskTimeoutMs;
+        }
+
+        public long getParticipantTtlMs() {
+            return participantTtlMs;
+        }
+
+        public void setParticipantTtlMs(long participantTtlMs) {
+            this.participantTtlMs = participantTtlMs;
+        }
+
+        public long getCallGraceMs() {
+            return callGraceMs;
+        }
+
+        public void setCallGraceMs(long callGraceMs) {
+            this.callGraceMs = callGraceMs;
+        }
+
+        public long getExpiryTickMs() {
+            return expiryTickMs;
+        }
+
+        public void setExpiryTickMs(long expiryTickMs) {
+            this.expiryTickMs = expiryTickMs;
+        }
+
+        public long getHourlyCountsDelayMs() {
+            return hourlyCountsDelayMs;
+        }
+
+        public void setHourlyCountsDelayMs(long hourlyCountsDelayMs) {
+            this.hourlyCountsDelayMs = hourlyCountsDelayMs;
+        }
+    }
+
+    public static class Search {
+
+        private long indexerDelayMs = 1000;
+
+        private int indexerBatchSize = 500;
+
+        private int indexerMaxAttempts = 10;
+
+        private int reindexFetchSize = 1000;
+
+        private int reindexBulkSize = 1000;
+
+        private int reindexParallelism = 4;
+
+        private long timeoutMs = 500;
+
+        private int terminateAfter = 10000;
+
+        public long getIndexerDelayMs() {
+            return indexerDelayMs;
+        }
+
+        public void setIndexerDelayMs(long indexerDelayMs) {
+            this.indexerDelayMs = indexerDelayMs;
+        }
+
+        public int getIndexerBatchSize() {
+            return indexerBatchSize;
+        }
+
+        public void setIndexerBatchSize(int indexerBatchSize) {
+            this.indexerBatchSize = indexerBatchSize;
+        }
+
+        public int getIndexerMaxAttempts() {
+            return indexerMaxAttempts;
+        }
+
+        public void setIndexerMaxAttempts(int indexerMaxAttempts) {
+            this.indexerMaxAttempts = indexerMaxAttempts;
+        }
+
+        public int getReindexFetchSize() {
+            return reindexFetchSize;
+        }
+
+        public void setReindexFetchSize(int reindexFetchSize) {
+            this.reindexFetchSize = reindexFetchSize;
+        }
+
+        public int getReindexBulkSize() {
+            return reindexBulkSize;
+        }
+
+        public void setReindexBulkSize(int reindexBulkSize) {
+            this.reindexBulkSize = reindexBulkSize;
+        }
+
+        public int getReindexParallelism() {
+            return reindexParallelism;
+        }
+
+        public void setReindexParallelism(int reindexParallelism) {
+            this.reindexParallelism = reindexParallelism;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        public int getTerminateAfter() {
+            return terminateAfter;
+        }
+
+        public void setTerminateAfter(int terminateAfter) {
+            this.terminateAfter = terminateAfter;
+        }
+    }
 }
@@ -1,14 +1,22 @@
 package com.end.queues.config;
 
+import com.end.queues.service.LiveQueueRouter;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueLeaderboard;
+import com.end.queues.service.SiteWaitIndex;
+
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
 
 import com.hazelcast.config.Config;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Hazelcast;
+import com.hazelcast.config.InMemoryFormat;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.ExecutorConfig;
 import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.spring.context.SpringManagedContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +31,7 @@ import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.*;
 import org.springframework.core.env.Environment;
 
@@ -69,7 +78,7 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties) {
+    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties, ApplicationContext applicationContext) {
         log.debug("Configuring Hazelcast");
         HazelcastInstance hazelCastInstance = Hazelcast.getHazelcastInstanceByName("q1");
         if (hazelCastInstance != null) {
@@ -78,6 +87,10 @@ public class CacheConfiguration {
         }
         Config config = new Config();
         config.setInstanceName("q1");
+        // Inject Spring beans into the @SpringAware tasks received from other members
+        SpringManagedContext managedContext = new SpringManagedContext();
+        managedContext.setApplicationContext(applicationContext);
+        config.setManagedContext(managedContext);
         config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
         if (this.registration == null) {
             log.warn("No discovery service is set up, Hazelcast cannot create a cluster.");
@@ -110,6 +123,11 @@ public class CacheConfiguration {
         }
         config.getMapConfigs().put("default", initializeDefaultMapConfig());
         config.getMapConfigs().put("com.end.queues.domain.*", initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(LiveQueueService.LIVE_QUEUES, initializeLiveQueueMapConfig());
+        config.getMapConfigs().put(LiveQueueService.PARTICIPANT_QUEUES, initializeParticipantQueueMapConfig());
+        config.getMapConfigs().put(SiteWaitIndex.SITE_WAITS, initializeQueueIndexMapConfig());
+        config.getMapConfigs().put(QueueLeaderboard.QUEUE_RANKINGS, initializeQueueIndexMapConfig());
+        config.getExecutorConfigs().put(LiveQueueRouter.EXECUTOR, initializeLiveQueueRouterExecutorConfig());
         return Hazelcast.newHazelcastInstance(config);
     }
 
@@ -143,6 +161,62 @@ public class CacheConfiguration {
         return mapConfig;
     }
 
+    private MapConfig initializeLiveQueueMapConfig() {
+        MapConfig mapConfig = new MapConfig();
+
+    /*
+        Live queues are changed in place by entry processors on the partition owner,
+        so they are kept as objects rather than serialized on every change.
+        They are never evicted, and are rebuilt from the database if a member is lost
+        along with its backup.
+     */
+        mapConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+        mapConfig.setBackupCount(1);
+
+        return mapConfig;
+    }
+
+    private MapConfig initializeParticipantQueueMapConfig() {
+        MapConfig mapConfig = new MapConfig();
+
+    /*
+        The dynamicQueue of each waiting participant, read by every position poll.
+        It is never evicted, like the live queues, and a participant lost along with
+        a member and its backup is looked up in the database again.
+     */
+        mapConfig.setBackupCount(1);
+
+        return mapConfig;
+    }
+
+    private MapConfig initializeQueueIndexMapConfig() {
+        MapConfig mapConfig = new MapConfig();
+
+    /*
+        The indexes of the queues, by site or by organization, are changed in
+        place by an entry processor on every join and serve, like the live
+        queues. They are rebuilt from the database if a member is lost along
+        with its backup.
+     */
+        mapConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+        mapConfig.setBackupCount(1);
+
+        return mapConfig;
+    }
+
+        private ExecutorConfig initializeLiveQueueRouterExecutorConfig() {
+        ExecutorConfig executorConfig = new ExecutorConfig(LiveQueueRouter.EXECUTOR);
+
+    /*
+        Runs the queue operations forwarded by the other members. The tasks
+        write to the database, so the pool is sized like a web server pool
+        rather than the CPU count.
+     */
+        executorConfig.setPoolSize(32);
+
+        return executorConfig;
+    }
+
     private MapConfig initializeDomainMapConfig(JHipsterProperties jHipsterProperties) {
         MapConfig mapConfig = new MapConfig();
         mapConfig.setTimeToLiveSeconds(jHipsterProperties.getCache().getHazelcast().getTimeToLiveSeconds());
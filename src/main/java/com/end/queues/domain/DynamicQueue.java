@@ -1,11 +1,14 @@
 package com.end.queues.domain;
 
+import com.end.queues.domain.enumeration.ServingPolicy;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
+import javax.validation.constraints.*;
 import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
@@ -27,12 +30,30 @@ public class DynamicQueue implements Serializable {
     @SequenceGenerator(name = "sequenceGenerator")
     private Long id;
 
-    @Column(name = "num_participants")
+    /**
+     * Maintained by the queue engine, never updated from the entity.
+     */
+    @Column(name = "num_participants", updatable = false)
     private Long numParticipants;
 
+    /**
+     * Participants served per hour, estimated by the queue engine from the serves it observes. A value
+     * set from the entity only seeds the estimate of a queue never served yet.
+     */
     @Column(name = "rate")
     private Integer rate;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "serving_policy")
+    private ServingPolicy servingPolicy;
+
+    /**
+     * Comma-separated weight of each priority lane, from lane 0. Also sets the number of lanes.
+     */
+    @Pattern(regexp = "^[1-9][0-9]{0,3}(,[1-9][0-9]{0,3}){0,15}$")
+    @Column(name = "lane_weights")
+    private String laneWeights;
+
     @OneToMany(mappedBy = "dynamicQueue")
     @JsonIgnore
     @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
@@ -72,6 +93,32 @@ public class DynamicQueue implements Serializable {
         this.rate = rate;
     }
 
+    public ServingPolicy getServingPolicy() {
+        return servingPolicy;
+    }
+
+    public DynamicQueue servingPolicy(ServingPolicy servingPolicy) {
+        this.servingPolicy = servingPolicy;
+        return this;
+    }
+
+    public void setServingPolicy(ServingPolicy servingPolicy) {
+        this.servingPolicy = servingPolicy;
+    }
+
+    public String getLaneWeights() {
+        return laneWeights;
+    }
+
+    public DynamicQueue laneWeights(String laneWeights) {
+        this.laneWeights = laneWeights;
+        return this;
+    }
+
+    public void setLaneWeights(String laneWeights) {
+        this.laneWeights = laneWeights;
+    }
+
     public Set<Participant> getParticipants() {
         return participants;
     }
@@ -123,6 +170,8 @@ public class DynamicQueue implements Serializable {
             "id=" + getId() +
             ", numParticipants='" + getNumParticipants() + "'" +
             ", rate='" + getRate() + "'" +
+            ", servingPolicy='" + getServingPolicy() + "'" +
+            ", laneWeights='" + getLaneWeights() + "'" +
             "}";
     }
 }
@@ -5,7 +5,9 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
+import javax.validation.constraints.*;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 
 /**
@@ -27,6 +29,21 @@ public class Participant implements Serializable {
     @Column(name = "position")
     private Long position;
 
+    /**
+     * The priority lane of the participant, 0 being the default lane and higher lanes served first.
+     */
+    @Min(value = 0)
+    @Max(value = 15)
+    @Column(name = "priority")
+    private Integer priority;
+
+    /**
+     * When the participant was called to a desk, or null while it is waiting. A called participant has
+     * left its dynamicQueue, and is deleted when it checks in or when its grace period expires.
+     */
+    @Column(name = "called_at")
+    private Instant calledAt;
+
     @ManyToOne
     private DynamicQueue dynamicQueue;
 
@@ -55,6 +72,32 @@ public class Participant implements Serializable {
         this.position = position;
     }
 
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public Participant priority(Integer priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    public Instant getCalledAt() {
+        return calledAt;
+    }
+
+    public Participant calledAt(Instant calledAt) {
+        this.calledAt = calledAt;
+        return this;
+    }
+
+    public void setCalledAt(Instant calledAt) {
+        this.calledAt = calledAt;
+    }
+
     public DynamicQueue getDynamicQueue() {
         return dynamicQueue;
     }
@@ -106,6 +149,8 @@ public class Participant implements Serializable {
         return "Participant{" +
             "id=" + getId() +
             ", position='" + getPosition() + "'" +
+            ", priority='" + getPriority() + "'" +
+            ", calledAt='" + getCalledAt() + "'" +
             "}";
     }
 }
@@ -0,0 +1,256 @@
+package com.end.queues.domain;
+
+import com.end.queues.domain.enumeration.ServingPolicy;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The status of a Queue, as shown on its card: the Queue with the counters of its dynamicQueue, its
+ * locations, and the names of its manager and organization.
+ *
+ * <p>
+ * Only stored in Elasticsearch, under the id of its Queue. It is built by the {@code QueueStatusProjection}
+ * whenever one of the entities it embeds changes.
+ * </p>
+ */
+@Document(indexName = "queuestatus")
+public class QueueStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    private String desc;
+
+    private Integer maxCapacity;
+
+    private String site;
+
+    private Long dynamicQueueId;
+
+    private Long numParticipants;
+
+    private Integer rate;
+
+    private ServingPolicy servingPolicy;
+
+    private Long managerId;
+
+    private String managerName;
+
+    private Long organizationId;
+
+    private String organizationName;
+
+    private List<Address> locations = new ArrayList<>();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public void setDesc(String desc) {
+        this.desc = desc;
+    }
+
+    public Integer getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    public void setMaxCapacity(Integer maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public Long getNumParticipants() {
+        return numParticipants;
+    }
+
+    public void setNumParticipants(Long numParticipants) {
+        this.numParticipants = numParticipants;
+    }
+
+    public Integer getRate() {
+        return rate;
+    }
+
+    public void setRate(Integer rate) {
+        this.rate = rate;
+    }
+
+    public ServingPolicy getServingPolicy() {
+        return servingPolicy;
+    }
+
+    public void setServingPolicy(ServingPolicy servingPolicy) {
+        this.servingPolicy = servingPolicy;
+    }
+
+    public Long getManagerId() {
+        return managerId;
+    }
+
+    public void setManagerId(Long managerId) {
+        this.managerId = managerId;
+    }
+
+    public String getManagerName() {
+        return managerName;
+    }
+
+    public void setManagerName(String managerName) {
+        this.managerName = managerName;
+    }
+
+    public Long getOrganizationId() {
+        return organizationId;
+    }
+
+    public void setOrganizationId(Long organizationId) {
+        this.organizationId = organizationId;
+    }
+
+    public String getOrganizationName() {
+        return organizationName;
+    }
+
+    public void setOrganizationName(String organizationName) {
+        this.organizationName = organizationName;
+    }
+
+    public List<Address> getLocations() {
+        return locations;
+    }
+
+    public void setLocations(List<Address> locations) {
+        this.locations = locations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        QueueStatus queueStatus = (QueueStatus) o;
+        if (queueStatus.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), queueStatus.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "QueueStatus{" +
+            "id=" + getId() +
+            ", name='" + getName() + "'" +
+            ", site='" + getSite() + "'" +
+            ", numParticipants='" + getNumParticipants() + "'" +
+            ", organizationName='" + getOrganizationName() + "'" +
+            "}";
+    }
+
+    /**
+     * A location of the Queue.
+     */
+    public static class Address implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long id;
+
+        private String streetAddress;
+
+        private String postalCode;
+
+        private String city;
+
+        private String stateProvince;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getStreetAddress() {
+            return streetAddress;
+        }
+
+        public void setStreetAddress(String streetAddress) {
+            this.streetAddress = streetAddress;
+        }
+
+        public String getPostalCode() {
+            return postalCode;
+        }
+
+        public void setPostalCode(String postalCode) {
+            this.postalCode = postalCode;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+
+        public String getStateProvince() {
+            return stateProvince;
+        }
+
+        public void setStateProvince(String stateProvince) {
+            this.stateProvince = stateProvince;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.end.queues.domain.enumeration;
+
+/**
+ * The ServingPolicy enumeration.
+ */
+public enum ServingPolicy {
+    STRICT_PRIORITY,  WEIGHTED_ROUND_ROBIN
+}
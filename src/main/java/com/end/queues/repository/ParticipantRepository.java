@@ -1,10 +1,13 @@
 package com.end.queues.repository;
 
 import com.end.queues.domain.Participant;
+import com.end.queues.domain.Person;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 
 /**
  * Spring Data JPA repository for the Participant entity.
@@ -13,4 +16,14 @@ import org.springframework.data.jpa.repository.*;
 @Repository
 public interface ParticipantRepository extends JpaRepository<Participant,Long> {
 
+    List<Participant> findByDynamicQueueIdOrderByPositionAsc(Long dynamicQueueId);
+
+    List<Participant> findByDynamicQueueIdAndCalledAtIsNullOrderByPositionAsc(Long dynamicQueueId);
+
+    List<Participant> findByCalledAtIsNotNull();
+
+    @Modifying(clearAutomatically = true)
+    @Query("update Participant participant set participant.person = :person where participant.id = :id")
+    int updatePerson(@Param("id") Long id, @Param("person") Person person);
+
 }
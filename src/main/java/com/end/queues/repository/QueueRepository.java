@@ -5,6 +5,8 @@ import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Spring Data JPA repository for the Queue entity.
@@ -13,4 +15,14 @@ import org.springframework.data.jpa.repository.*;
 @Repository
 public interface QueueRepository extends JpaRepository<Queue,Long> {
 
+    List<Queue> findBySite(String site);
+
+    Queue findOneByDynamicInfoId(Long dynamicQueueId);
+
+    List<Queue> findByDynamicInfoIsNotNull();
+
+    List<Queue> findByOrganizationIdAndDynamicInfoIsNotNull(Long organizationId);
+
+    List<Queue> findByDynamicInfoIdIn(Collection<Long> dynamicQueueIds);
+
 }
@@ -0,0 +1,38 @@
+package com.end.queues.repository;
+
+import com.end.queues.domain.SearchOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the SearchOutboxEntry entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface SearchOutboxRepository extends JpaRepository<SearchOutboxEntry,Long> {
+
+    @Query("select entry from SearchOutboxEntry entry order by entry.id")
+    List<SearchOutboxEntry> findOldest(Pageable pageable);
+
+    @Query("select entry from SearchOutboxEntry entry where entry.entityType not in :entityTypes order by entry.id")
+    List<SearchOutboxEntry> findOldestExcept(@Param("entityTypes") Collection<String> entityTypes, Pageable pageable);
+
+    @Query("select min(entry.createdAt) from SearchOutboxEntry entry")
+    Instant findOldestCreatedAt();
+
+    @Modifying
+    @Query("delete from SearchOutboxEntry entry where entry.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update SearchOutboxEntry entry set entry.attempts = entry.attempts + 1 where entry.id in :ids")
+    int incrementAttempts(@Param("ids") Collection<Long> ids);
+
+}
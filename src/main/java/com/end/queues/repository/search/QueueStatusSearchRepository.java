@@ -0,0 +1,10 @@
+package com.end.queues.repository.search;
+
+import com.end.queues.domain.QueueStatus;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+/**
+ * Spring Data Elasticsearch repository for the QueueStatus document.
+ */
+public interface QueueStatusSearchRepository extends ElasticsearchRepository<QueueStatus, Long> {
+}
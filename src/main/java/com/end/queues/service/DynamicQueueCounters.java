@@ -0,0 +1,288 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LoadProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationListener;
+import com.hazelcast.core.PartitionService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind of the DynamicQueue counters changed by the queue engine.
+ *
+ * <p>
+ * Joins and serves add to a pending delta per DynamicQueue, and rate changes keep the last value,
+ * without touching the database or Elasticsearch. {@link #flush()} takes the pending changes out of the
+ * map, then writes them to the dynamic_queue table in JDBC batches and queues the changed DynamicQueues
+ * for reindexing in the {@link SearchOutbox}, all in one transaction. If it fails, the changes taken
+ * are put back whole, so none is written twice. It runs every {@code application.queue-engine.write-behind-delay-ms}, as soon as
+ * {@code application.queue-engine.write-behind-max-changes} changes are pending, and on shutdown.
+ * </p>
+ * <p>
+ * Those two properties are the durability bound: a member lost without shutting down loses at most
+ * that much of its counter changes. The participant rows are always written synchronously, and the
+ * number of participants is recounted from them when a live queue is loaded again. When the backup of
+ * a lost member is promoted instead, the new owner recounts the number of participants of each of its
+ * live queues from the live queue itself, and the recount replaces whatever delta was pending.
+ * </p>
+ */
+@Service
+public class DynamicQueueCounters implements MigrationListener {
+
+    private final Logger log = LoggerFactory.getLogger(DynamicQueueCounters.class);
+
+    private final ConcurrentMap<Long, PendingChanges> pendingChanges = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingChangeCount = new AtomicInteger();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final int maxPendingChanges;
+
+    private final SearchOutbox searchOutbox;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Executor taskExecutor;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final PartitionService partitionService;
+
+    private String migrationListenerId;
+
+    public DynamicQueueCounters(ApplicationProperties applicationProperties, HazelcastInstance hazelcastInstance, SearchOutbox searchOutbox,
+            JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+            @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.maxPendingChanges = applicationProperties.getQueueEngine().getWriteBehindMaxChanges();
+        this.searchOutbox = searchOutbox;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskExecutor = taskExecutor;
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.partitionService = hazelcastInstance.getPartitionService();
+    }
+
+    @PostConstruct
+    public void start() {
+        migrationListenerId = partitionService.addMigrationListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        partitionService.removeMigrationListener(migrationListenerId);
+        flush();
+    }
+
+    /**
+     * Record a change of the number of participants of a dynamicQueue.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param delta the number of participants added, negative if removed
+     */
+    public void addParticipants(Long dynamicQueueId, int delta) {
+        pendingChanges.compute(dynamicQueueId, (id, changes) -> orNew(changes).addParticipants(delta));
+        changed();
+    }
+
+    /**
+     * Record a new rate of a dynamicQueue.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param rate the new rate, may be null
+     */
+    public void setRate(Long dynamicQueueId, Integer rate) {
+        pendingChanges.compute(dynamicQueueId, (id, changes) -> orNew(changes).setRate(rate));
+        changed();
+    }
+
+    /**
+     * Record the number of participants of a dynamicQueue counted from its live queue. It replaces the
+     * change pending, and the changes recorded since are added to it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants the number of participants of its live queue
+     */
+    public void recount(Long dynamicQueueId, int numParticipants) {
+        pendingChanges.compute(dynamicQueueId, (id, changes) -> orNew(changes).recount(numParticipants));
+        changed();
+    }
+
+    @Override
+    public void migrationStarted(MigrationEvent migrationEvent) {
+        // Nothing to do before the partition arrives
+    }
+
+    /**
+     * Recount the live queues of a partition whose backup was promoted on this member, as the changes
+     * pending on the lost owner will never be written. A partition migrated from a live member is left
+     * alone, as its previous owner still writes the changes it made.
+     */
+    @Override
+    public void migrationCompleted(MigrationEvent migrationEvent) {
+        if (migrationEvent.getOldOwner() != null || migrationEvent.getNewOwner() == null || !migrationEvent.getNewOwner().localMember()) {
+            return;
+        }
+        int partitionId = migrationEvent.getPartitionId();
+        Set<Long> dynamicQueueIds = liveQueues.localKeySet().stream()
+            .filter(dynamicQueueId -> partitionService.getPartition(dynamicQueueId).getPartitionId() == partitionId)
+            .collect(Collectors.toSet());
+        if (dynamicQueueIds.isEmpty()) {
+            return;
+        }
+        log.debug("Recounting the participants of {} live queues promoted on partition {}", dynamicQueueIds.size(), partitionId);
+        for (Map.Entry<Long, Object> entry : liveQueues.executeOnKeys(dynamicQueueIds, new LoadProcessor()).entrySet()) {
+            if (entry.getValue() != null) {
+                recount(entry.getKey(), ((int[]) entry.getValue())[0]);
+            }
+        }
+    }
+
+    @Override
+    public void migrationFailed(MigrationEvent migrationEvent) {
+        // The partition stays with its previous owner
+    }
+
+    /**
+     * Write all the pending changes to the database, then reindex the changed dynamicQueues. The changes
+     * of a failed write are pending again, merged with the changes made since.
+     */
+    @Scheduled(fixedDelayString = "${application.queue-engine.write-behind-delay-ms}")
+    public synchronized void flush() {
+        flushRequested.set(false);
+        pendingChangeCount.set(0);
+        List<Long> dynamicQueueIds = new ArrayList<>();
+        List<Object[]> numParticipantsBatch = new ArrayList<>();
+        List<Object[]> recountBatch = new ArrayList<>();
+        List<Object[]> rateBatch = new ArrayList<>();
+        for (Long dynamicQueueId : pendingChanges.keySet()) {
+            // Taken out of the map atomically, so concurrent changes start a new entry for the next flush
+            pendingChanges.computeIfPresent(dynamicQueueId, (id, changes) -> {
+                if (changes.recounted) {
+                    recountBatch.add(new Object[] { changes.numParticipants, id });
+                } else if (changes.numParticipants != 0) {
+                    numParticipantsBatch.add(new Object[] { changes.numParticipants, id });
+                }
+                if (changes.rateChanged) {
+                    rateBatch.add(new Object[] { changes.rate, id });
+                }
+                if (changes.recounted || changes.numParticipants != 0 || changes.rateChanged) {
+                    dynamicQueueIds.add(id);
+                }
+                return null;
+            });
+        }
+        if (dynamicQueueIds.isEmpty()) {
+            return;
+        }
+        log.debug("Writing the counters of {} DynamicQueues", dynamicQueueIds.size());
+        try {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.batchUpdate("update dynamic_queue set num_participants = coalesce(num_participants, 0) + ? where id = ?",
+                    numParticipantsBatch);
+                jdbcTemplate.batchUpdate("update dynamic_queue set num_participants = ? where id = ?", recountBatch);
+                jdbcTemplate.batchUpdate("update dynamic_queue set rate = ? where id = ?", rateBatch);
+                searchOutbox.index(DynamicQueue.class, dynamicQueueIds);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not write the counters of {} DynamicQueues, they will be retried: {}", dynamicQueueIds.size(), e.getMessage());
+            for (Object[] change : numParticipantsBatch) {
+                long delta = (Long) change[0];
+                pendingChanges.compute((Long) change[1], (id, changes) -> orNew(changes).addParticipants(delta));
+            }
+            for (Object[] change : recountBatch) {
+                long numParticipants = (Long) change[0];
+                // A recount since the failed write is newer, the deltas recorded since are added to this one
+                pendingChanges.compute((Long) change[1], (id, changes) -> changes != null && changes.recounted
+                    ? changes : orNew(changes).recount(numParticipants + (changes == null ? 0 : changes.numParticipants)));
+            }
+            for (Object[] change : rateBatch) {
+                Integer rate = (Integer) change[0];
+                // A rate set since the failed write is newer
+                pendingChanges.compute((Long) change[1], (id, changes) -> changes != null && changes.rateChanged
+                    ? changes : orNew(changes).setRate(rate));
+            }
+            pendingChangeCount.addAndGet(dynamicQueueIds.size());
+            throw e;
+        }
+        dynamicQueueIds.forEach(dynamicQueueId -> entityManagerFactory.getCache().evict(DynamicQueue.class, dynamicQueueId));
+    }
+
+    private static PendingChanges orNew(PendingChanges changes) {
+        return changes == null ? new PendingChanges() : changes;
+    }
+
+    private void changed() {
+        if (pendingChangeCount.incrementAndGet() >= maxPendingChanges && flushRequested.compareAndSet(false, true)) {
+            taskExecutor.execute(this::flush);
+        }
+    }
+
+    /**
+     * The changes of a dynamicQueue not written yet, only read and written within the map's compute
+     * methods.
+     */
+    private static class PendingChanges {
+
+        private long numParticipants;
+
+        /**
+         * Whether numParticipants is the number of participants rather than a delta.
+         */
+        private boolean recounted;
+
+        private boolean rateChanged;
+
+        private Integer rate;
+
+        private PendingChanges addParticipants(long delta) {
+            numParticipants += delta;
+            return this;
+        }
+
+        private PendingChanges recount(long numParticipants) {
+            this.numParticipants = numParticipants;
+            this.recounted = true;
+            return this;
+        }
+
+        private PendingChanges setRate(Integer rate) {
+            this.rate = rate;
+            this.rateChanged = true;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.Location;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Person;
+import com.end.queues.domain.Queue;
+import com.end.queues.service.dto.BoundedPage;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.SimpleQueryStringFlag;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Service searching Queues, Participants and People by typed filters, within a bounded cost.
+ *
+ * <p>
+ * Unlike the query strings of the _search endpoints, the filters cannot express leading wildcards,
+ * regular expressions or fuzzy queries. Name prefixes are matched as phrase prefixes expanded to at most
+ * {@link #MAX_PREFIX_EXPANSIONS} terms, and free text is read as a simple query string whose wildcard,
+ * fuzzy and proximity operators are disabled, so any `*` or `~` is searched literally.
+ * </p>
+ * <p>
+ * Every search is also bounded: each shard returns what it found within
+ * {@code application.search.timeout-ms} and stops collecting after {@code terminate-after} matching
+ * documents. The page returned then tells if it is partial. Results can only be sorted by id, as
+ * sorting on text fields would load them all in memory.
+ * </p>
+ */
+@Service
+public class FilteredSearchService {
+
+    /**
+     * The largest number of terms a name prefix expands to.
+     */
+    public static final int MAX_PREFIX_EXPANSIONS = 50;
+
+    /**
+     * The largest number of Queues matched by a city, through their locations.
+     */
+    public static final int MAX_CITY_QUEUES = 1000;
+
+    private static final String ID = "id";
+
+    private static final SimpleQueryStringFlag[] TEXT_FLAGS = {
+        SimpleQueryStringFlag.AND, SimpleQueryStringFlag.OR, SimpleQueryStringFlag.NOT, SimpleQueryStringFlag.PHRASE,
+        SimpleQueryStringFlag.PRECEDENCE, SimpleQueryStringFlag.ESCAPE, SimpleQueryStringFlag.WHITESPACE
+    };
+
+    private final Logger log = LoggerFactory.getLogger(FilteredSearchService.class);
+
+    private final TimeValue timeout;
+
+    private final int terminateAfter;
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+
+    private final EntityMapper entityMapper;
+
+    public FilteredSearchService(ApplicationProperties applicationProperties, ElasticsearchTemplate elasticsearchTemplate,
+            EntityMapper entityMapper) {
+        this.timeout = TimeValue.timeValueMillis(applicationProperties.getSearch().getTimeoutMs());
+        this.terminateAfter = applicationProperties.getSearch().getTerminateAfter();
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.entityMapper = entityMapper;
+    }
+
+    /**
+     * Search the Queues matching all the filters given.
+     *
+     * @param site the site of the Queues, or null
+     * @param organizationId the id of their organization, or null
+     * @param city the city of one of their locations, or null
+     * @param name a prefix of their name, or null
+     * @param text free text to match, or null
+     * @param pageable the pagination information
+     * @return the page of Queues
+     */
+    public BoundedPage<Queue> searchQueues(String site, Long organizationId, String city, String name, String text, Pageable pageable) {
+        log.debug("Request to search Queues of site {}, organization {}, city {}, name {}, text {}", site, organizationId, city, name, text);
+        BoolQueryBuilder query = boolQuery();
+        if (site != null) {
+            query.filter(matchPhraseQuery("site", site));
+        }
+        if (organizationId != null) {
+            query.filter(termQuery("organization.id", organizationId));
+        }
+        if (name != null) {
+            query.filter(prefix("name", name));
+        }
+        if (text != null) {
+            query.must(text(text));
+        }
+        if (city == null) {
+            return search(Queue.class, query, pageable);
+        }
+        // The locations of a city give the ids of their Queues, which do not hold their locations
+        BoundedPage<Location> locations = search(Location.class, matchQuery("city", city).operator(MatchQueryBuilder.Operator.AND),
+            new PageRequest(0, MAX_CITY_QUEUES));
+        Set<Long> queueIds = new LinkedHashSet<>();
+        locations.forEach(location -> {
+            if (location.getQueue() != null) {
+                queueIds.add(location.getQueue().getId());
+            }
+        });
+        if (queueIds.isEmpty()) {
+            return new BoundedPage<>(Collections.emptyList(), pageable, 0, locations.isTimedOut(), locations.isTerminatedEarly(),
+                locations.getFailedShards());
+        }
+        query.filter(termsQuery(ID, queueIds));
+        BoundedPage<Queue> queues = search(Queue.class, query, pageable);
+        return new BoundedPage<>(queues.getContent(), pageable, queues.getTotalElements(),
+            queues.isTimedOut() || locations.isTimedOut(), queues.isTerminatedEarly() || locations.isTerminatedEarly(),
+            queues.getFailedShards() + locations.getFailedShards());
+    }
+
+    /**
+     * Search the Participants matching all the filters given.
+     *
+     * @param dynamicQueueId the id of their dynamicQueue, or null
+     * @param priority their priority, or null
+     * @param called true for the participants called, false for those waiting, or null for both
+     * @param name a prefix of the first or last name of their person, or null
+     * @param pageable the pagination information
+     * @return the page of Participants
+     */
+    public BoundedPage<Participant> searchParticipants(Long dynamicQueueId, Integer priority, Boolean called, String name, Pageable pageable) {
+        log.debug("Request to search Participants of DynamicQueue {}, priority {}, called {}, name {}", dynamicQueueId, priority, called, name);
+        BoolQueryBuilder query = boolQuery();
+        if (dynamicQueueId != null) {
+            query.filter(termQuery("dynamicQueue.id", dynamicQueueId));
+        }
+        if (priority != null) {
+            query.filter(termQuery("priority", priority));
+        }
+        if (called != null) {
+            query.filter(called ? existsQuery("calledAt") : boolQuery().mustNot(existsQuery("calledAt")));
+        }
+        if (name != null) {
+            query.filter(boolQuery()
+                .should(prefix("person.firstName", name))
+                .should(prefix("person.lastName", name))
+                .minimumNumberShouldMatch(1));
+        }
+        return search(Participant.class, query, pageable);
+    }
+
+    /**
+     * Search the People matching all the filters given.
+     *
+     * @param name a prefix of their first or last name, or null
+     * @param email their email, or null
+     * @param text free text to match, or null
+     * @param pageable the pagination information
+     * @return the page of People
+     */
+    public BoundedPage<Person> searchPeople(String name, String email, String text, Pageable pageable) {
+        log.debug("Request to search People with name {}, email {}, text {}", name, email, text);
+        BoolQueryBuilder query = boolQuery();
+        if (name != null) {
+            query.filter(boolQuery()
+                .should(prefix("firstName", name))
+                .should(prefix("lastName", name))
+                .minimumNumberShouldMatch(1));
+        }
+        if (email != null) {
+            query.filter(matchPhraseQuery("email", email));
+        }
+        if (text != null) {
+            query.must(text(text));
+        }
+        return search(Person.class, query, pageable);
+    }
+
+    private static QueryBuilder prefix(String field, String prefix) {
+        return matchPhrasePrefixQuery(field, prefix).maxExpansions(MAX_PREFIX_EXPANSIONS);
+    }
+
+    private static QueryBuilder text(String text) {
+        return simpleQueryStringQuery(text).flags(TEXT_FLAGS);
+    }
+
+    private <T> BoundedPage<T> search(Class<T> entityClass, QueryBuilder query, Pageable pageable) {
+        ElasticsearchPersistentEntity<?> document = elasticsearchTemplate.getPersistentEntityFor(entityClass);
+        SearchRequestBuilder request = elasticsearchTemplate.getClient().prepareSearch(document.getIndexName())
+            .setTypes(document.getIndexType())
+            .setQuery(query)
+            .setFrom(pageable.getOffset())
+            .setSize(pageable.getPageSize())
+            .setTimeout(timeout)
+            .setTerminateAfter(terminateAfter);
+        Sort.Order idOrder = pageable.getSort() == null ? null : pageable.getSort().getOrderFor(ID);
+        if (idOrder != null) {
+            request.addSort(ID, idOrder.isAscending() ? SortOrder.ASC : SortOrder.DESC);
+        }
+        SearchResponse response = request.get();
+        List<T> content = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            content.add(toEntity(hit, entityClass));
+        }
+        boolean terminatedEarly = Boolean.TRUE.equals(response.isTerminatedEarly());
+        if (response.isTimedOut() || terminatedEarly || response.getFailedShards() > 0) {
+            log.debug("Partial search of {}: timed out {}, terminated early {}, {} failed shards", document.getIndexName(),
+                response.isTimedOut(), terminatedEarly, response.getFailedShards());
+        }
+        return new BoundedPage<>(content, pageable, response.getHits().getTotalHits(), response.isTimedOut(), terminatedEarly,
+            response.getFailedShards());
+    }
+
+    private <T> T toEntity(SearchHit hit, Class<T> entityClass) {
+        try {
+            return entityMapper.mapToObject(hit.getSourceAsString(), entityClass);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
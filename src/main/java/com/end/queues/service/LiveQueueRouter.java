@@ -0,0 +1,669 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.service.dto.QueuePositionDTO;
+import com.end.queues.service.dto.QueueTimeSeriesDTO;
+import com.end.queues.service.dto.WaitEstimateDTO;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.Partition;
+import com.hazelcast.spring.context.SpringAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Route the operations on a DynamicQueue to the cluster member owning it.
+ *
+ * <p>
+ * A DynamicQueue is owned by the owner of the Hazelcast partition of its id, the member holding its
+ * {@link com.end.queues.service.engine.LiveQueue}. Operations received by the owner call the
+ * {@link LiveQueueService} directly, so their entry processors run locally. Operations received by
+ * any other member are forwarded to the owner through the {@link #EXECUTOR} executor, and the caller
+ * waits for the result. Forwarded tasks carry ids only and reload the entities on the owner.
+ * </p>
+ */
+@Service
+public class LiveQueueRouter {
+
+    public static final String EXECUTOR = "liveQueueRouter";
+
+    private final Logger log = LoggerFactory.getLogger(LiveQueueRouter.class);
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final LiveQueueService liveQueueService;
+
+    public LiveQueueRouter(HazelcastInstance hazelcastInstance, LiveQueueService liveQueueService) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.liveQueueService = liveQueueService;
+    }
+
+    /**
+     * Add a participant to a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueue the dynamicQueue to join
+     * @param participant the new participant
+     * @param beforeParticipantId the id of the participant to insert in front of, or null to join the tail
+     * @return the persisted participant, or an empty Optional if the participant to insert in front of is
+     * not waiting in the dynamicQueue
+     * @see LiveQueueService#join(DynamicQueue, Participant, Long)
+     */
+    public Optional<Participant> join(DynamicQueue dynamicQueue, Participant participant, Long beforeParticipantId) {
+        if (isOwner(dynamicQueue.getId())) {
+            return liveQueueService.join(dynamicQueue, participant, beforeParticipantId);
+        }
+        return Optional.ofNullable(forward(dynamicQueue.getId(), new JoinTask(dynamicQueue.getId(), participant, beforeParticipantId)));
+    }
+
+    /**
+     * Move a waiting participant, on the member owning its dynamicQueue.
+     *
+     * @param participantId the id of the participant to move
+     * @param beforeParticipantId the id of the participant to move in front of, or null to move to the tail
+     * @return the moved participant, or an empty Optional if either participant is not waiting in the
+     * same dynamicQueue
+     * @see LiveQueueService#move(Long, Long)
+     */
+    public Optional<Participant> move(Long participantId, Long beforeParticipantId) {
+        Long dynamicQueueId = findDynamicQueueId(participantId);
+        if (dynamicQueueId == null || isOwner(dynamicQueueId)) {
+            return liveQueueService.move(participantId, beforeParticipantId);
+        }
+        return Optional.ofNullable(forward(dynamicQueueId, new MoveTask(participantId, beforeParticipantId)));
+    }
+
+    /**
+     * Transfer a waiting participant to another dynamicQueue. It is taken out of its dynamicQueue on the
+     * owner of that queue, then placed in the other one on its owner, which moves its row. If the other
+     * queue does not take it, because it is full or fails, the participant is put back at the position it
+     * held. So it is always waiting in exactly one dynamicQueue once the transfer returns, and each queue
+     * counts it once.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of the dynamicQueue to transfer it to
+     * @param rank the rank to place it at, or null to place it at the tail of its lane
+     * @return the transferred participant, or an empty Optional if it is not waiting in another
+     * dynamicQueue, or if the dynamicQueue does not exist
+     * @throws QueueFullException if the dynamicQueue is at its maximum capacity
+     */
+    public Optional<Participant> transfer(Long participantId, Long dynamicQueueId, Integer rank) {
+        Long sourceDynamicQueueId = findDynamicQueueId(participantId);
+        if (sourceDynamicQueueId == null || sourceDynamicQueueId.equals(dynamicQueueId)) {
+            return Optional.empty();
+        }
+        Long position = transferOut(participantId, sourceDynamicQueueId).orElse(null);
+        if (position == null) {
+            return Optional.empty();
+        }
+        Participant result;
+        try {
+            result = isOwner(dynamicQueueId)
+                ? liveQueueService.transferIn(participantId, dynamicQueueId, rank).orElse(null)
+                : forward(dynamicQueueId, new TransferInTask(participantId, dynamicQueueId, rank));
+        } catch (RuntimeException e) {
+            transferBack(participantId, sourceDynamicQueueId, position);
+            throw e;
+        }
+        if (result == null) {
+            transferBack(participantId, sourceDynamicQueueId, position);
+        }
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * Take a waiting participant out of its dynamicQueue, on the member owning it.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of its dynamicQueue
+     * @return the position the participant held, or an empty Optional if it is not waiting in the
+     * dynamicQueue
+     * @see LiveQueueService#transferOut(Long, Long)
+     */
+    public Optional<Long> transferOut(Long participantId, Long dynamicQueueId) {
+        if (isOwner(dynamicQueueId)) {
+            return liveQueueService.transferOut(participantId, dynamicQueueId);
+        }
+        return Optional.ofNullable(forward(dynamicQueueId, new TransferOutTask(participantId, dynamicQueueId)));
+    }
+
+    /**
+     * Put a participant back in the dynamicQueue it was taken out of, on the member owning it.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of the dynamicQueue it was taken out of
+     * @param position the position it held
+     * @see LiveQueueService#transferBack(Long, Long, long)
+     */
+    public void transferBack(Long participantId, Long dynamicQueueId, long position) {
+        if (isOwner(dynamicQueueId)) {
+            liveQueueService.transferBack(participantId, dynamicQueueId, position);
+        } else {
+            forward(dynamicQueueId, new TransferBackTask(participantId, dynamicQueueId, position));
+        }
+    }
+
+    /**
+     * Take the participants at the tail of a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param count the number of participants to take
+     * @return the ids of the participants taken, from the last one, followed by the positions they held
+     * @see LiveQueueService#takeTail(Long, int)
+     */
+    public long[][] takeTail(Long dynamicQueueId, int count) {
+        if (isOwner(dynamicQueueId)) {
+            return liveQueueService.takeTail(dynamicQueueId, count);
+        }
+        return forward(dynamicQueueId, new TakeTailTask(dynamicQueueId, count));
+    }
+
+    /**
+     * Place participants at the tail of their lanes in a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param participantIds the ids of the participants, in serving order
+     * @param lanes their lanes
+     * @return their positions
+     * @see LiveQueueService#append(Long, long[], int[])
+     */
+    public long[] append(Long dynamicQueueId, long[] participantIds, int[] lanes) {
+        if (isOwner(dynamicQueueId)) {
+            return liveQueueService.append(dynamicQueueId, participantIds, lanes);
+        }
+        return forward(dynamicQueueId, new AppendTask(dynamicQueueId, participantIds, lanes));
+    }
+
+    /**
+     * Serve the head of a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueue the dynamicQueue to serve
+     * @return the served participant, or an empty Optional if nobody is waiting
+     * @see LiveQueueService#serveNext(DynamicQueue)
+     */
+    public Optional<Participant> serveNext(DynamicQueue dynamicQueue) {
+        if (isOwner(dynamicQueue.getId())) {
+            return liveQueueService.serveNext(dynamicQueue);
+        }
+        return Optional.ofNullable(forward(dynamicQueue.getId(), new ServeNextTask(dynamicQueue.getId())));
+    }
+
+    /**
+     * Call the head of a dynamicQueue to a desk, on the member owning it.
+     *
+     * @param dynamicQueue the dynamicQueue to serve
+     * @return the called participant, or an empty Optional if nobody is waiting
+     * @see LiveQueueService#call(DynamicQueue)
+     */
+    public Optional<Participant> call(DynamicQueue dynamicQueue) {
+        if (isOwner(dynamicQueue.getId())) {
+            return liveQueueService.call(dynamicQueue);
+        }
+        return Optional.ofNullable(forward(dynamicQueue.getId(), new CallTask(dynamicQueue.getId())));
+    }
+
+    /**
+     * Check in a called participant. A called participant is no longer in a live queue, so this runs on
+     * any member.
+     *
+     * @param participantId the id of the participant
+     * @return the participant, or an empty Optional if it is not called
+     * @see LiveQueueService#checkIn(Long)
+     */
+    public Optional<Participant> checkIn(Long participantId) {
+        return liveQueueService.checkIn(participantId);
+    }
+
+    /**
+     * Remove a participant from its dynamicQueue and delete it, on the member owning the dynamicQueue.
+     *
+     * @param participantId the id of the participant leaving
+     * @see LiveQueueService#leave(Long)
+     */
+    public void leave(Long participantId) {
+        Long dynamicQueueId = findDynamicQueueId(participantId);
+        if (dynamicQueueId == null || isOwner(dynamicQueueId)) {
+            liveQueueService.leave(participantId);
+        } else {
+            forward(dynamicQueueId, new LeaveTask(participantId));
+        }
+    }
+
+    /**
+     * Update a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueue the dynamicQueue to update
+     * @return the persisted dynamicQueue, or an empty Optional if it does not exist
+     * @see LiveQueueService#update(DynamicQueue)
+     */
+    public Optional<DynamicQueue> update(DynamicQueue dynamicQueue) {
+        if (isOwner(dynamicQueue.getId())) {
+            return liveQueueService.update(dynamicQueue);
+        }
+        return Optional.ofNullable(forward(dynamicQueue.getId(), new UpdateTask(dynamicQueue)));
+    }
+
+    /**
+     * Delete a dynamicQueue, on the member owning it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @see LiveQueueService#delete(Long)
+     */
+    public void delete(Long dynamicQueueId) {
+        if (isOwner(dynamicQueueId)) {
+            liveQueueService.delete(dynamicQueueId);
+        } else {
+            forward(dynamicQueueId, new DeleteTask(dynamicQueueId));
+        }
+    }
+
+    /**
+     * Get the live position of a participant, from the member owning its dynamicQueue.
+     *
+     * @param participantId the id of the participant
+     * @return the position, or an empty Optional if the participant is not waiting in any dynamicQueue
+     * @see LiveQueueService#getPosition(Long)
+     */
+    public Optional<QueuePositionDTO> getPosition(Long participantId) {
+        Long dynamicQueueId = findDynamicQueueId(participantId);
+        if (dynamicQueueId == null || isOwner(dynamicQueueId)) {
+            return liveQueueService.getPosition(participantId);
+        }
+        return Optional.ofNullable(forward(dynamicQueueId, new PositionTask(participantId)));
+    }
+
+    /**
+     * Estimate the wait at a position of a dynamicQueue, from the member owning it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param position the position, 1 being the next to be served
+     * @return the estimate, or an empty Optional if the dynamicQueue does not exist
+     * @see LiveQueueService#getEstimate(Long, int)
+     */
+    public Optional<WaitEstimateDTO> getEstimate(Long dynamicQueueId, int position) {
+        if (isOwner(dynamicQueueId)) {
+            return liveQueueService.getEstimate(dynamicQueueId, position);
+        }
+        return Optional.ofNullable(forward(dynamicQueueId, new EstimateTask(dynamicQueueId, position)));
+    }
+
+    /**
+     * Get the arrivals and serves per minute of a dynamicQueue, from the member owning it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param minutes the number of minutes up to now
+     * @return the counts, or an empty Optional if the dynamicQueue does not exist
+     * @see LiveQueueService#getTimeSeries(Long, int)
+     */
+    public Optional<QueueTimeSeriesDTO> getTimeSeries(Long dynamicQueueId, int minutes) {
+        if (isOwner(dynamicQueueId)) {
+            return liveQueueService.getTimeSeries(dynamicQueueId, minutes);
+        }
+        return Optional.ofNullable(forward(dynamicQueueId, new TimeSeriesTask(dynamicQueueId, minutes)));
+    }
+
+    /**
+     * Whether this member owns a dynamicQueue. While the partition table is not ready, every member
+     * acts as the owner.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @return true if the operations on the dynamicQueue run on this member
+     */
+    public boolean isOwner(Long dynamicQueueId) {
+        Partition partition = hazelcastInstance.getPartitionService().getPartition(dynamicQueueId);
+        Member owner = partition.getOwner();
+        return owner == null || owner.localMember();
+    }
+
+    private Long findDynamicQueueId(Long participantId) {
+        return liveQueueService.findDynamicQueueId(participantId);
+    }
+
+    private <T> T forward(Long dynamicQueueId, Callable<T> task) {
+        log.debug("Forwarding {} on DynamicQueue {} to its owner", task.getClass().getSimpleName(), dynamicQueueId);
+        try {
+            return hazelcastInstance.getExecutorService(EXECUTOR).submitToKeyOwner(task, dynamicQueueId).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the owner of DynamicQueue " + dynamicQueueId, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Operation failed on the owner of DynamicQueue " + dynamicQueueId, e.getCause());
+        }
+    }
+
+    /**
+     * Base class of the tasks forwarded to the owner of a DynamicQueue. The services are injected by the
+     * Spring managed context of the Hazelcast instance.
+     */
+    private abstract static class LiveQueueTask<T> implements Callable<T>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Autowired
+        protected transient LiveQueueService liveQueueService;
+
+        @Autowired
+        protected transient DynamicQueueRepository dynamicQueueRepository;
+    }
+
+    @SpringAware
+    private static class JoinTask extends LiveQueueTask<Participant> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        private final Participant participant;
+
+        private final Long beforeParticipantId;
+
+        JoinTask(Long dynamicQueueId, Participant participant, Long beforeParticipantId) {
+            this.dynamicQueueId = dynamicQueueId;
+            this.participant = participant;
+            this.beforeParticipantId = beforeParticipantId;
+        }
+
+        @Override
+        public Participant call() {
+            DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(dynamicQueueId);
+            if (dynamicQueue == null) {
+                return null;
+            }
+            return liveQueueService.join(dynamicQueue, participant, beforeParticipantId).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class MoveTask extends LiveQueueTask<Participant> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        private final Long beforeParticipantId;
+
+        MoveTask(Long participantId, Long beforeParticipantId) {
+            this.participantId = participantId;
+            this.beforeParticipantId = beforeParticipantId;
+        }
+
+        @Override
+        public Participant call() {
+            return liveQueueService.move(participantId, beforeParticipantId).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class ServeNextTask extends LiveQueueTask<Participant> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        ServeNextTask(Long dynamicQueueId) {
+            this.dynamicQueueId = dynamicQueueId;
+        }
+
+        @Override
+        public Participant call() {
+            DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(dynamicQueueId);
+            if (dynamicQueue == null) {
+                return null;
+            }
+            return liveQueueService.serveNext(dynamicQueue).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class CallTask extends LiveQueueTask<Participant> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        CallTask(Long dynamicQueueId) {
+            this.dynamicQueueId = dynamicQueueId;
+        }
+
+        @Override
+        public Participant call() {
+            DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(dynamicQueueId);
+            if (dynamicQueue == null) {
+                return null;
+            }
+            return liveQueueService.call(dynamicQueue).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class TransferOutTask extends LiveQueueTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        private final Long dynamicQueueId;
+
+        TransferOutTask(Long participantId, Long dynamicQueueId) {
+            this.participantId = participantId;
+            this.dynamicQueueId = dynamicQueueId;
+        }
+
+        @Override
+        public Long call() {
+            return liveQueueService.transferOut(participantId, dynamicQueueId).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class TransferInTask extends LiveQueueTask<Participant> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        private final Long dynamicQueueId;
+
+        private final Integer rank;
+
+        TransferInTask(Long participantId, Long dynamicQueueId, Integer rank) {
+            this.participantId = participantId;
+            this.dynamicQueueId = dynamicQueueId;
+            this.rank = rank;
+        }
+
+        @Override
+        public Participant call() {
+            return liveQueueService.transferIn(participantId, dynamicQueueId, rank).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class TransferBackTask extends LiveQueueTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        private final Long dynamicQueueId;
+
+        private final long position;
+
+        TransferBackTask(Long participantId, Long dynamicQueueId, long position) {
+            this.participantId = participantId;
+            this.dynamicQueueId = dynamicQueueId;
+            this.position = position;
+        }
+
+        @Override
+        public Void call() {
+            liveQueueService.transferBack(participantId, dynamicQueueId, position);
+            return null;
+        }
+    }
+
+    @SpringAware
+    private static class TakeTailTask extends LiveQueueTask<long[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        private final int count;
+
+        TakeTailTask(Long dynamicQueueId, int count) {
+            this.dynamicQueueId = dynamicQueueId;
+            this.count = count;
+        }
+
+        @Override
+        public long[][] call() {
+            return liveQueueService.takeTail(dynamicQueueId, count);
+        }
+    }
+
+    @SpringAware
+    private static class AppendTask extends LiveQueueTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        private final long[] participantIds;
+
+        private final int[] lanes;
+
+        AppendTask(Long dynamicQueueId, long[] participantIds, int[] lanes) {
+            this.dynamicQueueId = dynamicQueueId;
+            this.participantIds = participantIds;
+            this.lanes = lanes;
+        }
+
+        @Override
+        public long[] call() {
+            return liveQueueService.append(dynamicQueueId, participantIds, lanes);
+        }
+    }
+
+    @SpringAware
+    private static class LeaveTask extends LiveQueueTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        LeaveTask(Long participantId) {
+            this.participantId = participantId;
+        }
+
+        @Override
+        public Void call() {
+            liveQueueService.leave(participantId);
+            return null;
+        }
+    }
+
+    @SpringAware
+    private static class DeleteTask extends LiveQueueTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        DeleteTask(Long dynamicQueueId) {
+            this.dynamicQueueId = dynamicQueueId;
+        }
+
+        @Override
+        public Void call() {
+            liveQueueService.delete(dynamicQueueId);
+            return null;
+        }
+    }
+
+    @SpringAware
+    private static class UpdateTask extends LiveQueueTask<DynamicQueue> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DynamicQueue dynamicQueue;
+
+        UpdateTask(DynamicQueue dynamicQueue) {
+            this.dynamicQueue = dynamicQueue;
+        }
+
+        @Override
+        public DynamicQueue call() {
+            return liveQueueService.update(dynamicQueue).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class PositionTask extends LiveQueueTask<QueuePositionDTO> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long participantId;
+
+        PositionTask(Long participantId) {
+            this.participantId = participantId;
+        }
+
+        @Override
+        public QueuePositionDTO call() {
+            return liveQueueService.getPosition(participantId).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class EstimateTask extends LiveQueueTask<WaitEstimateDTO> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        private final int position;
+
+        EstimateTask(Long dynamicQueueId, int position) {
+            this.dynamicQueueId = dynamicQueueId;
+            this.position = position;
+        }
+
+        @Override
+        public WaitEstimateDTO call() {
+            return liveQueueService.getEstimate(dynamicQueueId, position).orElse(null);
+        }
+    }
+
+    @SpringAware
+    private static class TimeSeriesTask extends LiveQueueTask<QueueTimeSeriesDTO> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long dynamicQueueId;
+
+        private final int minutes;
+
+        TimeSeriesTask(Long dynamicQueueId, int minutes) {
+            this.dynamicQueueId = dynamicQueueId;
+            this.minutes = minutes;
+        }
+
+        @Override
+        public QueueTimeSeriesDTO call() {
+            return liveQueueService.getTimeSeries(dynamicQueueId, minutes).orElse(null);
+        }
+    }
+}
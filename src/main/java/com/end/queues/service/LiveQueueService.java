@@ -0,0 +1,818 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.ParticipantRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.QueuePositionDTO;
+import com.end.queues.service.dto.QueueTimeSeriesDTO;
+import com.end.queues.service.dto.WaitEstimateDTO;
+import com.end.queues.service.engine.AdmitProcessor;
+import com.end.queues.service.engine.Admission;
+import com.end.queues.service.engine.AppendProcessor;
+import com.end.queues.service.engine.CapacityProcessor;
+import com.end.queues.service.engine.EstimateProcessor;
+import com.end.queues.service.engine.InsertProcessor;
+import com.end.queues.service.engine.JoinProcessor;
+import com.end.queues.service.engine.LeaveProcessor;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LiveQueueUpdate;
+import com.end.queues.service.engine.LoadProcessor;
+import com.end.queues.service.engine.MinuteCountsProcessor;
+import com.end.queues.service.engine.MoveProcessor;
+import com.end.queues.service.engine.PositionsProcessor;
+import com.end.queues.service.engine.RankProcessor;
+import com.end.queues.service.engine.RateProcessor;
+import com.end.queues.service.engine.ReleaseProcessor;
+import com.end.queues.service.engine.ServingPolicyProcessor;
+import com.end.queues.service.engine.ServeProcessor;
+import com.end.queues.service.engine.TakeTailProcessor;
+import com.end.queues.service.engine.TransferInProcessor;
+import com.end.queues.service.engine.TransferOutProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.map.EntryProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Service for joining and serving DynamicQueues.
+ *
+ * <p>
+ * The serving order of each DynamicQueue is a {@link LiveQueue} held in the Hazelcast map
+ * {@link #LIVE_QUEUES}, loaded from the database the first time the queue is used. Joining, moving,
+ * leaving, serving and changing the rate are entry processors run on the partition owner of the queue,
+ * so concurrent changes from any member never overwrite each other. Live positions are answered from
+ * the map only.
+ * </p>
+ * <p>
+ * The dynamicQueue each waiting participant is placed in is kept in the Hazelcast map
+ * {@link #PARTICIPANT_QUEUES}, written before the participant is placed and removed once it leaves its
+ * live queue, so a position poll or a routed operation finds the queue of a participant without reading
+ * its row. A participant missing from the map, after a member was lost with its backup, is looked up in
+ * the database once and mapped again.
+ * </p>
+ * <p>
+ * Participants are ordered by a sparse position, so each change writes a single participant row. When
+ * a gap between two positions runs out, the live queue renumbers a few neighbours. Their rows are
+ * written in batches by {@link #flushRenumberedPositions()}. The number of participants and the rate
+ * of a DynamicQueue are owned by the engine, and written behind by {@link DynamicQueueCounters}.
+ * </p>
+ * <p>
+ * Participants join the priority lane of their priority, and the lane is part of their position, so a
+ * priority join still writes a single row. The serving policy of the DynamicQueue decides which lane is
+ * served next.
+ * </p>
+ * <p>
+ * The rate of a DynamicQueue is estimated by the live queue from the timestamps of its serves, and
+ * written behind whenever a serve changes it. Wait estimates are answered from the live queue in O(1).
+ * </p>
+ * <p>
+ * The maximum capacity of the Queue served by a DynamicQueue is held by its live queue. A join is
+ * admitted or rejected by a single entry processor before anything is written, so a full queue rejects
+ * a surge of joins without touching the database.
+ * </p>
+ * <p>
+ * A participant is transferred to another dynamicQueue in three steps, each on the owner of its queue:
+ * it is taken out of its live queue, placed in the other one, and its row is moved with a single write.
+ * If the other queue does not take it, it is put back where it was. See
+ * {@link LiveQueueRouter#transfer(Long, Long, Integer)}.
+ * </p>
+ * <p>
+ * Every participant placed has a deadline in the {@link ParticipantDeadlines}, so a participant who walks
+ * away expires. A participant can also be called instead of served: it leaves the live queue, but its
+ * row is kept, marked as called, until it checks in at the desk or its grace period expires.
+ * </p>
+ * <p>
+ * Every change of the number of participants or of the rate of a live queue is sent to the
+ * {@link SiteWaitIndex}, which recommends the Queue with the lowest expected wait of each site, and to the
+ * {@link QueueLeaderboard}, which ranks the busiest Queues.
+ * </p>
+ * <p>
+ * The outcome of every join, move, leave, serve and call is made durable in the {@link QueueJournalService}
+ * before the database is written, so a crash between the two is repaired on the next start. A participant
+ * taken out of its queue by a transfer is journaled as transferred, so a crash before the other queue
+ * places it puts it back rather than deleting it.
+ * </p>
+ */
+@Service
+public class LiveQueueService {
+
+    public static final String LIVE_QUEUES = "liveQueues";
+
+    /**
+     * The map of the id of the dynamicQueue each waiting participant is placed in, by participant id.
+     */
+    public static final String PARTICIPANT_QUEUES = "participantQueues";
+
+    /**
+     * The topic announcing the ids of the dynamicQueues someone joined, for the {@link QueueDispatcher}.
+     */
+    public static final String PARTICIPANTS_WAITING = "participantsWaiting";
+
+    /**
+     * The retry hint of a join rejected by a full queue whose rate is unknown.
+     */
+    public static final long DEFAULT_RETRY_AFTER_SECONDS = 60;
+
+    private final Logger log = LoggerFactory.getLogger(LiveQueueService.class);
+
+    private final ConcurrentMap<Long, Long> renumberedParticipants = new ConcurrentHashMap<>();
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final IMap<Long, Long> participantQueues;
+
+    private final ITopic<Long> participantsWaiting;
+
+    private final DynamicQueueRepository dynamicQueueRepository;
+
+    private final DynamicQueueCounters dynamicQueueCounters;
+
+    private final QueueJournalService queueJournalService;
+
+    private final ParticipantRepository participantRepository;
+
+    private final ParticipantDeadlines participantDeadlines;
+
+    private final SiteWaitIndex siteWaitIndex;
+
+    private final QueueLeaderboard queueLeaderboard;
+
+    private final QueueRepository queueRepository;
+
+    private final SearchOutbox searchOutbox;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public LiveQueueService(HazelcastInstance hazelcastInstance, DynamicQueueRepository dynamicQueueRepository,
+            DynamicQueueCounters dynamicQueueCounters, QueueJournalService queueJournalService, ParticipantRepository participantRepository,
+            ParticipantDeadlines participantDeadlines, SiteWaitIndex siteWaitIndex, QueueLeaderboard queueLeaderboard,
+            QueueRepository queueRepository, SearchOutbox searchOutbox, JdbcTemplate jdbcTemplate,
+            EntityManagerFactory entityManagerFactory) {
+        this.liveQueues = hazelcastInstance.getMap(LIVE_QUEUES);
+        this.participantQueues = hazelcastInstance.getMap(PARTICIPANT_QUEUES);
+        this.participantsWaiting = hazelcastInstance.getTopic(PARTICIPANTS_WAITING);
+        this.dynamicQueueRepository = dynamicQueueRepository;
+        this.dynamicQueueCounters = dynamicQueueCounters;
+        this.queueJournalService = queueJournalService;
+        this.participantRepository = participantRepository;
+        this.participantDeadlines = participantDeadlines;
+        this.siteWaitIndex = siteWaitIndex;
+        this.queueLeaderboard = queueLeaderboard;
+        this.queueRepository = queueRepository;
+        this.searchOutbox = searchOutbox;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Add a participant to the tail of a dynamicQueue.
+     *
+     * @param dynamicQueue the dynamicQueue to join
+     * @param participant the new participant
+     * @return the persisted participant
+     * @throws QueueFullException if the queue is at its maximum capacity
+     */
+    public Participant join(DynamicQueue dynamicQueue, Participant participant) {
+        return join(dynamicQueue, participant, null).get();
+    }
+
+    /**
+     * Add a participant to a dynamicQueue, in front of another participant or at the tail.
+     * <p>
+     * The join is admitted first by an {@link AdmitProcessor}. The participant is then saved to get its
+     * id, placed by a {@link JoinProcessor}, and its position written back.
+     *
+     * @param dynamicQueue the dynamicQueue to join
+     * @param participant the new participant
+     * @param beforeParticipantId the id of the participant to insert in front of, or null to join the tail
+     * @return the persisted participant, or an empty Optional if the participant to insert in front of is
+     * not waiting in the dynamicQueue
+     * @throws QueueFullException if the queue is at its maximum capacity
+     */
+    public Optional<Participant> join(DynamicQueue dynamicQueue, Participant participant, Long beforeParticipantId) {
+        log.debug("Request to join DynamicQueue {} before {} : {}", dynamicQueue.getId(), beforeParticipantId, participant);
+        // Load the queue before saving the participant, so loading cannot place it too
+        loadIfAbsent(dynamicQueue.getId());
+        admit(dynamicQueue.getId());
+        participant.setDynamicQueue(dynamicQueue);
+        participant.setPosition(null);
+        participant.setCalledAt(null);
+        Participant result;
+        try {
+            result = participantRepository.save(participant);
+        } catch (RuntimeException e) {
+            liveQueues.executeOnKey(dynamicQueue.getId(), new ReleaseProcessor());
+            throw e;
+        }
+        int lane = participant.getPriority() == null ? 0 : participant.getPriority();
+        // Mapped before it is placed, so a serve right after the placement cannot leave it mapped
+        participantQueues.set(result.getId(), dynamicQueue.getId());
+        LiveQueueUpdate update = execute(dynamicQueue.getId(), new JoinProcessor(result.getId(), beforeParticipantId, lane, true));
+        if (update == null) {
+            participantQueues.delete(result.getId());
+            participantRepository.delete(result.getId());
+            return Optional.empty();
+        }
+        queueJournalService.record(dynamicQueue.getId(), update);
+        collectRenumbered(dynamicQueue.getId(), update);
+        writePlacement(result, update);
+        participantDeadlines.waiting(result.getId(), dynamicQueue.getId());
+        updateNumParticipants(dynamicQueue, 1, update);
+        participantsWaiting.publish(dynamicQueue.getId());
+        return Optional.of(result);
+    }
+
+    /**
+     * Move a waiting participant in front of another participant of the same dynamicQueue, or to its tail.
+     *
+     * @param participantId the id of the participant to move
+     * @param beforeParticipantId the id of the participant to move in front of, or null to move to the tail
+     * @return the moved participant, or an empty Optional if either participant is not waiting in the
+     * same dynamicQueue
+     */
+    public Optional<Participant> move(Long participantId, Long beforeParticipantId) {
+        log.debug("Request to move Participant {} before {}", participantId, beforeParticipantId);
+        Participant participant = participantRepository.findOne(participantId);
+        if (participant == null || participant.getDynamicQueue() == null) {
+            return Optional.empty();
+        }
+        Long dynamicQueueId = participant.getDynamicQueue().getId();
+        LiveQueueUpdate update = execute(dynamicQueueId, new MoveProcessor(participantId, beforeParticipantId));
+        if (update == null) {
+            return Optional.empty();
+        }
+        queueJournalService.record(dynamicQueueId, update);
+        collectRenumbered(dynamicQueueId, update);
+        writePlacement(participant, update);
+        return Optional.of(participant);
+    }
+
+    /**
+     * Take a waiting participant out of its dynamicQueue, to transfer it to another one. Its row is left
+     * as it is until the transfer completes.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of its dynamicQueue
+     * @return the position the participant held, or an empty Optional if it is not waiting in the
+     * dynamicQueue
+     */
+    public Optional<Long> transferOut(Long participantId, Long dynamicQueueId) {
+        log.debug("Request to transfer Participant {} out of DynamicQueue {}", participantId, dynamicQueueId);
+        loadIfAbsent(dynamicQueueId);
+        Long position = (Long) liveQueues.executeOnKey(dynamicQueueId, new TransferOutProcessor(participantId));
+        if (position == null) {
+            return Optional.empty();
+        }
+        queueJournalService.recordTransferred(dynamicQueueId, new long[] { participantId }, new long[] { position });
+        dynamicQueueCounters.addParticipants(dynamicQueueId, -1);
+        refreshLoad(dynamicQueueId);
+        participantDeadlines.cancel(participantId);
+        return Optional.of(position);
+    }
+
+    /**
+     * Place a participant taken out of another dynamicQueue, and move its row to this one with a single
+     * write. Its time to live starts again.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of the dynamicQueue to place it in
+     * @param rank the rank to place it at, or null to place it at the tail of its lane
+     * @return the transferred participant, or an empty Optional if the participant or the dynamicQueue
+     * does not exist
+     * @throws QueueFullException if the dynamicQueue is at its maximum capacity
+     */
+    public Optional<Participant> transferIn(Long participantId, Long dynamicQueueId, Integer rank) {
+        log.debug("Request to transfer Participant {} into DynamicQueue {} at rank {}", participantId, dynamicQueueId, rank);
+        Participant participant = participantRepository.findOne(participantId);
+        DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(dynamicQueueId);
+        if (participant == null || dynamicQueue == null) {
+            return Optional.empty();
+        }
+        int lane = participant.getPriority() == null ? 0 : participant.getPriority();
+        // If the other queue does not take it, transferBack maps it to the queue it was taken out of again
+        participantQueues.set(participantId, dynamicQueueId);
+        LiveQueueUpdate update = execute(dynamicQueueId, new TransferInProcessor(participantId, lane, rank));
+        if (update == null) {
+            throw new QueueFullException(dynamicQueueId, DEFAULT_RETRY_AFTER_SECONDS);
+        }
+        queueJournalService.record(dynamicQueueId, update);
+        collectRenumbered(dynamicQueueId, update);
+        participant.setDynamicQueue(dynamicQueue);
+        participant.setPosition(update.getPosition());
+        participant.setPriority(LiveQueue.laneOf(update.getPosition()));
+        // Placed, the participant may already be served by the time its row is moved, see writePlacement
+        int updated = jdbcTemplate.update("update participant set dynamic_queue_id = ?, position = ?, priority = ? where id = ?",
+            dynamicQueueId, participant.getPosition(), participant.getPriority(), participantId);
+        entityManagerFactory.getCache().evict(Participant.class, participantId);
+        if (updated > 0) {
+            searchOutbox.index(Participant.class, participant.getId());
+        }
+        participantDeadlines.waiting(participantId, dynamicQueueId);
+        updateNumParticipants(dynamicQueue, 1, update);
+        participantsWaiting.publish(dynamicQueueId);
+        return Optional.of(participant);
+    }
+
+    /**
+     * Put a participant back in the dynamicQueue it was taken out of, when its transfer failed.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of the dynamicQueue it was taken out of
+     * @param position the position it held
+     */
+    public void transferBack(Long participantId, Long dynamicQueueId, long position) {
+        log.debug("Request to put Participant {} back in DynamicQueue {}", participantId, dynamicQueueId);
+        participantQueues.set(participantId, dynamicQueueId);
+        LiveQueueUpdate update = execute(dynamicQueueId, new InsertProcessor(participantId, position));
+        if (update == null) {
+            return;
+        }
+        queueJournalService.record(dynamicQueueId, update);
+        dynamicQueueCounters.addParticipants(dynamicQueueId, 1);
+        loadChanged(dynamicQueueId, update);
+        participantDeadlines.waiting(participantId, dynamicQueueId);
+        participantsWaiting.publish(dynamicQueueId);
+    }
+
+    /**
+     * Take the participants at the tail of a dynamicQueue, to move them to other dynamicQueues. Their rows
+     * are left as they are until the move completes.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param count the number of participants to take
+     * @return the ids of the participants taken, from the last one, followed by the positions they held
+     */
+    public long[][] takeTail(Long dynamicQueueId, int count) {
+        log.debug("Request to take {} participants from the tail of DynamicQueue {}", count, dynamicQueueId);
+        loadIfAbsent(dynamicQueueId);
+        long[][] taken = (long[][]) liveQueues.executeOnKey(dynamicQueueId, new TakeTailProcessor(count));
+        if (taken == null) {
+            return new long[][] { new long[0], new long[0] };
+        }
+        long[] participantIds = taken[0];
+        if (participantIds.length > 0) {
+            queueJournalService.recordTransferred(dynamicQueueId, participantIds, taken[1]);
+            dynamicQueueCounters.addParticipants(dynamicQueueId, -participantIds.length);
+            refreshLoad(dynamicQueueId);
+            for (long participantId : participantIds) {
+                participantDeadlines.cancel(participantId);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Place participants taken from other dynamicQueues at the tail of their lanes in a dynamicQueue. Their
+     * rows are moved by the caller, and their time to live starts again.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param participantIds the ids of the participants, in serving order
+     * @param lanes their lanes
+     * @return their positions
+     */
+    public long[] append(Long dynamicQueueId, long[] participantIds, int[] lanes) {
+        log.debug("Request to append {} participants to DynamicQueue {}", participantIds.length, dynamicQueueId);
+        loadIfAbsent(dynamicQueueId);
+        participantQueues.putAll(mappedTo(dynamicQueueId, participantIds));
+        long[] positions = (long[]) liveQueues.executeOnKey(dynamicQueueId, new AppendProcessor(participantIds, lanes));
+        queueJournalService.recordPlaced(dynamicQueueId, participantIds, positions);
+        dynamicQueueCounters.addParticipants(dynamicQueueId, participantIds.length);
+        refreshLoad(dynamicQueueId);
+        participantDeadlines.waiting(dynamicQueueId, participantIds);
+        participantsWaiting.publish(dynamicQueueId);
+        return positions;
+    }
+
+    /**
+     * Remove the participant at the head of a dynamicQueue.
+     *
+     * @param dynamicQueue the dynamicQueue to serve
+     * @return the served participant, or an empty Optional if nobody is waiting
+     */
+    public Optional<Participant> serveNext(DynamicQueue dynamicQueue) {
+        log.debug("Request to serve the next participant of DynamicQueue {}", dynamicQueue.getId());
+        LiveQueueUpdate update = execute(dynamicQueue.getId(), new ServeProcessor());
+        if (update == null) {
+            return Optional.empty();
+        }
+        queueJournalService.record(dynamicQueue.getId(), update);
+        updateNumParticipants(dynamicQueue, -1, update);
+        if (update.isRateChanged()) {
+            dynamicQueueCounters.setRate(dynamicQueue.getId(), update.getRate());
+        }
+        participantQueues.delete(update.getParticipantId());
+        participantDeadlines.cancel(update.getParticipantId());
+        Participant participant = participantRepository.findOne(update.getParticipantId());
+        participantRepository.delete(update.getParticipantId());
+        searchOutbox.delete(Participant.class, update.getParticipantId());
+        return Optional.ofNullable(participant);
+    }
+
+    /**
+     * Call the participant at the head of a dynamicQueue to a desk. It leaves the live queue as if served,
+     * but is kept, marked as called, until it checks in or its grace period expires.
+     *
+     * @param dynamicQueue the dynamicQueue to serve
+     * @return the called participant, or an empty Optional if nobody is waiting
+     */
+    public Optional<Participant> call(DynamicQueue dynamicQueue) {
+        log.debug("Request to call the next participant of DynamicQueue {}", dynamicQueue.getId());
+        LiveQueueUpdate update = execute(dynamicQueue.getId(), new ServeProcessor());
+        if (update == null) {
+            return Optional.empty();
+        }
+        queueJournalService.record(dynamicQueue.getId(), update);
+        updateNumParticipants(dynamicQueue, -1, update);
+        if (update.isRateChanged()) {
+            dynamicQueueCounters.setRate(dynamicQueue.getId(), update.getRate());
+        }
+        participantQueues.delete(update.getParticipantId());
+        int updated = jdbcTemplate.update("update participant set called_at = ? where id = ?",
+            Timestamp.from(Instant.now()), update.getParticipantId());
+        entityManagerFactory.getCache().evict(Participant.class, update.getParticipantId());
+        if (updated == 0) {
+            participantDeadlines.cancel(update.getParticipantId());
+            return Optional.empty();
+        }
+        participantDeadlines.called(update.getParticipantId(), dynamicQueue.getId());
+        Participant participant = participantRepository.findOne(update.getParticipantId());
+        searchOutbox.index(Participant.class, participant.getId());
+        return Optional.of(participant);
+    }
+
+    /**
+     * Check in a called participant at its desk, and delete it.
+     *
+     * @param participantId the id of the participant
+     * @return the participant, or an empty Optional if it is not called
+     */
+    public Optional<Participant> checkIn(Long participantId) {
+        log.debug("Request to check in Participant : {}", participantId);
+        Participant participant = participantRepository.findOne(participantId);
+        if (participant == null || participant.getCalledAt() == null) {
+            return Optional.empty();
+        }
+        participantDeadlines.cancel(participantId);
+        participantRepository.delete(participantId);
+        searchOutbox.delete(Participant.class, participantId);
+        return Optional.of(participant);
+    }
+
+    /**
+     * Remove a participant from its dynamicQueue, wherever it is waiting, and delete it.
+     *
+     * @param participantId the id of the participant leaving
+     */
+    public void leave(Long participantId) {
+        log.debug("Request to leave for Participant : {}", participantId);
+        Participant participant = participantRepository.findOne(participantId);
+        if (participant != null && participant.getDynamicQueue() != null) {
+            DynamicQueue dynamicQueue = participant.getDynamicQueue();
+            LiveQueueUpdate update = execute(dynamicQueue.getId(), new LeaveProcessor(participantId));
+            if (update != null) {
+                queueJournalService.record(dynamicQueue.getId(), update);
+                updateNumParticipants(dynamicQueue, -1, update);
+            }
+        }
+        participantQueues.delete(participantId);
+        participantDeadlines.cancel(participantId);
+        participantRepository.delete(participantId);
+        searchOutbox.delete(Participant.class, participantId);
+    }
+
+    /**
+     * Update a dynamicQueue. The rate seeds the estimate of the live queue if no serve was observed yet,
+     * and the resulting rate is written behind. The serving policy is changed in the live queue and
+     * written through, and the number of participants is taken from the live queue, whatever the given
+     * dynamicQueue holds.
+     *
+     * @param dynamicQueue the dynamicQueue to update
+     * @return the updated dynamicQueue, or an empty Optional if it does not exist
+     */
+    public Optional<DynamicQueue> update(DynamicQueue dynamicQueue) {
+        log.debug("Request to update DynamicQueue : {}", dynamicQueue);
+        if (execute(dynamicQueue.getId(), new ServingPolicyProcessor(dynamicQueue.getServingPolicy(),
+                LiveQueue.parseLaneWeights(dynamicQueue.getLaneWeights()))) == null) {
+            return Optional.empty();
+        }
+        jdbcTemplate.update("update dynamic_queue set serving_policy = ?, lane_weights = ? where id = ?",
+            dynamicQueue.getServingPolicy() == null ? null : dynamicQueue.getServingPolicy().name(),
+            dynamicQueue.getLaneWeights(), dynamicQueue.getId());
+        entityManagerFactory.getCache().evict(DynamicQueue.class, dynamicQueue.getId());
+        LiveQueueUpdate update = execute(dynamicQueue.getId(), new RateProcessor(dynamicQueue.getRate()));
+        dynamicQueueCounters.setRate(dynamicQueue.getId(), update.getRate());
+        loadChanged(dynamicQueue.getId(), update);
+        dynamicQueue.setRate(update.getRate());
+        dynamicQueue.setNumParticipants((long) update.getNumParticipants());
+        return Optional.of(dynamicQueue);
+    }
+
+    /**
+     * Delete a dynamicQueue, and drop its live queue. The deadlines of the participants it held are
+     * cancelled, and it is removed from the {@link SiteWaitIndex} and the {@link QueueLeaderboard}. The row
+     * is deleted first, so a dynamicQueue still referenced is left as it was.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     */
+    public void delete(Long dynamicQueueId) {
+        log.debug("Request to delete DynamicQueue : {}", dynamicQueueId);
+        dynamicQueueRepository.delete(dynamicQueueId);
+        dynamicQueueRepository.flush();
+        LiveQueue liveQueue = liveQueues.remove(dynamicQueueId);
+        if (liveQueue != null) {
+            long[] participantIds = liveQueue.participantIds();
+            for (long participantId : participantIds) {
+                participantDeadlines.cancel(participantId);
+            }
+            unmap(participantIds);
+        }
+        siteWaitIndex.dynamicQueueDeleted(dynamicQueueId);
+        queueLeaderboard.dynamicQueueDeleted(dynamicQueueId);
+        searchOutbox.delete(DynamicQueue.class, dynamicQueueId);
+    }
+
+    /**
+     * Get the live position of a participant in its dynamicQueue. The dynamicQueue is read from
+     * {@link #PARTICIPANT_QUEUES}, and the row of the participant is only read if it is not mapped, or not
+     * found in the live queue it is mapped to.
+     *
+     * @param participantId the id of the participant
+     * @return the position, or an empty Optional if the participant is not waiting in any dynamicQueue
+     */
+    public Optional<QueuePositionDTO> getPosition(Long participantId) {
+        Long mappedQueueId = participantQueues.get(participantId);
+        if (mappedQueueId != null) {
+            QueuePositionDTO position = (QueuePositionDTO) liveQueues.executeOnKey(mappedQueueId, new RankProcessor(participantId));
+            if (position != null) {
+                return Optional.of(position);
+            }
+        }
+        Long dynamicQueueId = findStoredDynamicQueueId(participantId);
+        if (dynamicQueueId == null) {
+            return Optional.empty();
+        }
+        loadIfAbsent(dynamicQueueId);
+        QueuePositionDTO position = (QueuePositionDTO) liveQueues.executeOnKey(dynamicQueueId, new RankProcessor(participantId));
+        if (position != null && !dynamicQueueId.equals(mappedQueueId)) {
+            participantQueues.set(participantId, dynamicQueueId);
+        }
+        return Optional.ofNullable(position);
+    }
+
+    /**
+     * Find the dynamicQueue a participant is placed in, from {@link #PARTICIPANT_QUEUES}, or from its row if
+     * it is not mapped.
+     *
+     * @param participantId the id of the participant
+     * @return the id of its dynamicQueue, or null if the participant does not exist or is in none
+     */
+    public Long findDynamicQueueId(Long participantId) {
+        Long dynamicQueueId = participantQueues.get(participantId);
+        return dynamicQueueId != null ? dynamicQueueId : findStoredDynamicQueueId(participantId);
+    }
+
+    /**
+     * Forget the dynamicQueues of participants removed from their live queues.
+     *
+     * @param participantIds the ids of the participants
+     */
+    public void unmap(long[] participantIds) {
+        for (long participantId : participantIds) {
+            participantQueues.delete(participantId);
+        }
+    }
+
+    /**
+     * Apply the maximum capacity of a queue to the live queue of a dynamicQueue, if it is loaded. A live
+     * queue loaded later reads the capacity from the database.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param maxCapacity the maximum number of participants, or null for no limit
+     */
+    public void updateCapacity(Long dynamicQueueId, Integer maxCapacity) {
+        log.debug("Request to set the capacity of DynamicQueue {} to {}", dynamicQueueId, maxCapacity);
+        liveQueues.executeOnKey(dynamicQueueId, new CapacityProcessor(maxCapacity));
+    }
+
+    /**
+     * Get the number of participants of dynamicQueues, and the room left under their maximum capacity.
+     *
+     * @param dynamicQueueIds the ids of the dynamicQueues
+     * @return the number of participants and the room left, by dynamicQueue id, as read by a {@link LoadProcessor}
+     */
+    public Map<Long, int[]> getLoads(Collection<Long> dynamicQueueIds) {
+        dynamicQueueIds.forEach(this::loadIfAbsent);
+        Map<Long, int[]> loads = new HashMap<>();
+        liveQueues.executeOnKeys(new HashSet<>(dynamicQueueIds), new LoadProcessor())
+            .forEach((dynamicQueueId, load) -> loads.put(dynamicQueueId, (int[]) load));
+        return loads;
+    }
+
+    /**
+     * Read the load of the live queue of a dynamicQueue, and send it to the indexes of the Queues, after a
+     * change that did not return it.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     */
+    public void refreshLoad(Long dynamicQueueId) {
+        long timestamp = System.currentTimeMillis();
+        int[] load = (int[]) liveQueues.executeOnKey(dynamicQueueId, new LoadProcessor());
+        if (load != null) {
+            sendLoad(dynamicQueueId, load[0], load[2] < 0 ? null : load[2], timestamp);
+        }
+    }
+
+    /**
+     * Estimate the wait at a position of a dynamicQueue, from the live queue only.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param position the position, 1 being the next to be served
+     * @return the estimate, or an empty Optional if the dynamicQueue does not exist
+     */
+    public Optional<WaitEstimateDTO> getEstimate(Long dynamicQueueId, int position) {
+        loadIfAbsent(dynamicQueueId);
+        return Optional.ofNullable((WaitEstimateDTO) liveQueues.executeOnKey(dynamicQueueId, new EstimateProcessor(position)));
+    }
+
+    /**
+     * Get the arrivals and serves per minute of a dynamicQueue, from the live queue only.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param minutes the number of minutes up to now
+     * @return the counts, or an empty Optional if the dynamicQueue does not exist
+     */
+    public Optional<QueueTimeSeriesDTO> getTimeSeries(Long dynamicQueueId, int minutes) {
+        loadIfAbsent(dynamicQueueId);
+        return Optional.ofNullable((QueueTimeSeriesDTO) liveQueues.executeOnKey(dynamicQueueId, new MinuteCountsProcessor(minutes)));
+    }
+
+    /**
+     * Write the positions renumbered in the live queues to the participant table in one JDBC batch, and
+     * queue the renumbered participants for reindexing.
+     * <p>
+     * The current position is read from the live queue, so a participant moved or removed since it was
+     * renumbered is never written back with a stale position.
+     */
+    @Scheduled(fixedDelayString = "${application.queue-engine.renumbering-delay-ms}")
+    public void flushRenumberedPositions() {
+        if (renumberedParticipants.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> participantIdsByQueue = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : renumberedParticipants.entrySet()) {
+            renumberedParticipants.remove(entry.getKey());
+            participantIdsByQueue.computeIfAbsent(entry.getValue(), dynamicQueueId -> new ArrayList<>()).add(entry.getKey());
+        }
+        List<Object[]> batch = new ArrayList<>();
+        List<Long> participantIds = new ArrayList<>();
+        participantIdsByQueue.forEach((dynamicQueueId, ids) -> {
+            long[] positions = (long[]) liveQueues.executeOnKey(dynamicQueueId,
+                new PositionsProcessor(ids.stream().mapToLong(Long::longValue).toArray()));
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] != LiveQueue.NONE) {
+                    batch.add(new Object[] { positions[i], ids.get(i) });
+                    participantIds.add(ids.get(i));
+                }
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.debug("Writing {} renumbered participant positions", batch.size());
+        jdbcTemplate.batchUpdate("update participant set position = ? where id = ?", batch);
+        participantIds.forEach(participantId -> entityManagerFactory.getCache().evict(Participant.class, participantId));
+        searchOutbox.index(Participant.class, participantIds);
+    }
+
+    private LiveQueueUpdate execute(Long dynamicQueueId, EntryProcessor<Long, LiveQueue> processor) {
+        loadIfAbsent(dynamicQueueId);
+        return (LiveQueueUpdate) liveQueues.executeOnKey(dynamicQueueId, processor);
+    }
+
+    private void admit(Long dynamicQueueId) {
+        Admission admission = (Admission) liveQueues.executeOnKey(dynamicQueueId, new AdmitProcessor());
+        if (admission != null && !admission.isAdmitted()) {
+            long retryAfterSeconds = admission.getRetryAfterMillis() < 0 ? DEFAULT_RETRY_AFTER_SECONDS
+                : Math.max(1, (admission.getRetryAfterMillis() + 999) / 1000);
+            throw new QueueFullException(dynamicQueueId, retryAfterSeconds);
+        }
+    }
+
+    /**
+     * Write the position and priority of a placed participant, and reindex it. A participant placed is
+     * visible to the desks at once, so it may already be served, and its row deleted, by the time its
+     * position is written: it is then left deleted.
+     */
+    private void writePlacement(Participant participant, LiveQueueUpdate update) {
+        participant.setPosition(update.getPosition());
+        participant.setPriority(LiveQueue.laneOf(update.getPosition()));
+        int updated = jdbcTemplate.update("update participant set position = ?, priority = ? where id = ?",
+            participant.getPosition(), participant.getPriority(), participant.getId());
+        entityManagerFactory.getCache().evict(Participant.class, participant.getId());
+        if (updated > 0) {
+            searchOutbox.index(Participant.class, participant.getId());
+        }
+    }
+
+    private Long findStoredDynamicQueueId(Long participantId) {
+        Participant participant = participantRepository.findOne(participantId);
+        if (participant == null || participant.getDynamicQueue() == null) {
+            return null;
+        }
+        return participant.getDynamicQueue().getId();
+    }
+
+    private static Map<Long, Long> mappedTo(Long dynamicQueueId, long[] participantIds) {
+        Map<Long, Long> mapped = new HashMap<>();
+        for (long participantId : participantIds) {
+            mapped.put(participantId, dynamicQueueId);
+        }
+        return mapped;
+    }
+
+    private void collectRenumbered(Long dynamicQueueId, LiveQueueUpdate update) {
+        for (long participantId : update.getRenumberedParticipantIds()) {
+            renumberedParticipants.put(participantId, dynamicQueueId);
+        }
+    }
+
+    /**
+     * Load the live queue of a dynamicQueue from the database, unless a member already did. The member
+     * whose copy wins also resets the stored number of participants, which the engine only increments
+     * and decrements from then on, and starts the time to live of the participants. Called participants
+     * are not waiting any more, and are left out. The participants are mapped to the dynamicQueue before
+     * the live queue is put, so one served at once is not left mapped. Nothing is loaded for a dynamicQueue that does not
+     * exist, so the processors run on it find no live queue.
+     */
+    private void loadIfAbsent(Long dynamicQueueId) {
+        if (liveQueues.containsKey(dynamicQueueId)) {
+            return;
+        }
+        DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(dynamicQueueId);
+        if (dynamicQueue == null) {
+            return;
+        }
+        log.debug("Loading LiveQueue for DynamicQueue {}", dynamicQueueId);
+        LiveQueue liveQueue = new LiveQueue(dynamicQueueId);
+        liveQueue.setRate(dynamicQueue.getRate());
+        liveQueue.setServingPolicy(dynamicQueue.getServingPolicy(), LiveQueue.parseLaneWeights(dynamicQueue.getLaneWeights()));
+        Queue queue = queueRepository.findOneByDynamicInfoId(dynamicQueueId);
+        if (queue != null) {
+            liveQueue.setMaxCapacity(queue.getMaxCapacity());
+        }
+        for (Participant participant : participantRepository.findByDynamicQueueIdAndCalledAtIsNullOrderByPositionAsc(dynamicQueueId)) {
+            // A participant saved without a position was never placed, it goes to the tail of its lane
+            int lane = participant.getPriority() == null ? 0 : participant.getPriority();
+            liveQueue.insert(participant.getId(), participant.getPosition() == null ? liveQueue.tailPosition(lane) : participant.getPosition());
+        }
+        participantQueues.putAll(mappedTo(dynamicQueueId, liveQueue.participantIds()));
+        if (liveQueues.putIfAbsent(dynamicQueueId, liveQueue) == null) {
+            participantDeadlines.waiting(dynamicQueueId, liveQueue.participantIds());
+            refreshLoad(dynamicQueueId);
+            jdbcTemplate.update("update dynamic_queue set num_participants = ? where id = ?", liveQueue.size(), dynamicQueueId);
+            entityManagerFactory.getCache().evict(DynamicQueue.class, dynamicQueueId);
+        }
+    }
+
+    private void loadChanged(Long dynamicQueueId, LiveQueueUpdate update) {
+        sendLoad(dynamicQueueId, update.getNumParticipants(), update.getRate(), System.currentTimeMillis());
+    }
+
+    /**
+     * Send the load of a dynamicQueue to the indexes of the Queues, without waiting.
+     */
+    private void sendLoad(Long dynamicQueueId, int numParticipants, Integer rate, long timestamp) {
+        siteWaitIndex.loadChanged(dynamicQueueId, numParticipants, rate, timestamp);
+        queueLeaderboard.loadChanged(dynamicQueueId, numParticipants, timestamp);
+    }
+
+    private void updateNumParticipants(DynamicQueue dynamicQueue, int delta, LiveQueueUpdate update) {
+        dynamicQueueCounters.addParticipants(dynamicQueue.getId(), delta);
+        loadChanged(dynamicQueue.getId(), update);
+        dynamicQueue.setNumParticipants((long) update.getNumParticipants());
+    }
+}
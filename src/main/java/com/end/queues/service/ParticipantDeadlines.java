@@ -0,0 +1,212 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.ParticipantRepository;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.ParticipantIdsProcessor;
+import com.end.queues.service.engine.TimingWheel;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationListener;
+import com.hazelcast.core.PartitionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The deadlines of the participants held by this member, in a {@link TimingWheel}.
+ *
+ * <p>
+ * A waiting participant expires {@code participant-ttl-ms} after it joined, and a called participant
+ * {@code call-grace-ms} after its call unless it checks in. Deadlines are only held in memory, by the
+ * owner of the dynamicQueue of the participant: when a live queue is loaded, restored from a snapshot or
+ * migrated to this member, each of its participants gets a full time to live from then on, so a restart
+ * or a migration only ever delays an expiry. Called participants found in the database on startup get a
+ * full grace period.
+ * </p>
+ * <p>
+ * The deadlines are expired by the {@link ParticipantExpiryService}.
+ * </p>
+ */
+@Service
+@DependsOn("queueJournalService")
+public class ParticipantDeadlines implements MigrationListener {
+
+    private static final int LEVELS = 3;
+
+    private final Logger log = LoggerFactory.getLogger(ParticipantDeadlines.class);
+
+    private final long participantTtlMs;
+
+    private final long callGraceMs;
+
+    private final TimingWheel<Deadline> wheel;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final PartitionService partitionService;
+
+    private final ParticipantRepository participantRepository;
+
+    private String migrationListenerId;
+
+    public ParticipantDeadlines(ApplicationProperties applicationProperties, HazelcastInstance hazelcastInstance,
+            ParticipantRepository participantRepository) {
+        this.participantTtlMs = applicationProperties.getQueueEngine().getParticipantTtlMs();
+        this.callGraceMs = applicationProperties.getQueueEngine().getCallGraceMs();
+        this.wheel = new TimingWheel<>(applicationProperties.getQueueEngine().getExpiryTickMs(), LEVELS, System.currentTimeMillis());
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.partitionService = hazelcastInstance.getPartitionService();
+        this.participantRepository = participantRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        migrationListenerId = partitionService.addMigrationListener(this);
+        arm(liveQueues.localKeySet());
+        for (Participant participant : participantRepository.findByCalledAtIsNotNull()) {
+            called(participant.getId(), participant.getDynamicQueue() == null ? LiveQueue.NONE : participant.getDynamicQueue().getId());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        partitionService.removeMigrationListener(migrationListenerId);
+    }
+
+    /**
+     * Start the time to live of a waiting participant.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of its dynamicQueue
+     */
+    public synchronized void waiting(long participantId, long dynamicQueueId) {
+        wheel.schedule(participantId, System.currentTimeMillis() + participantTtlMs, new Deadline(participantId, dynamicQueueId, false));
+    }
+
+    /**
+     * Start the time to live of all the participants waiting in a live queue.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param participantIds the ids of its participants
+     */
+    public synchronized void waiting(long dynamicQueueId, long[] participantIds) {
+        long deadline = System.currentTimeMillis() + participantTtlMs;
+        for (long participantId : participantIds) {
+            wheel.schedule(participantId, deadline, new Deadline(participantId, dynamicQueueId, false));
+        }
+    }
+
+    /**
+     * Start the grace period of a called participant, replacing its time to live.
+     *
+     * @param participantId the id of the participant
+     * @param dynamicQueueId the id of the dynamicQueue it was called from
+     */
+    public synchronized void called(long participantId, long dynamicQueueId) {
+        wheel.schedule(participantId, System.currentTimeMillis() + callGraceMs, new Deadline(participantId, dynamicQueueId, true));
+    }
+
+    /**
+     * Forget the deadline of a participant served, checked in or gone.
+     *
+     * @param participantId the id of the participant
+     */
+    public synchronized void cancel(long participantId) {
+        wheel.cancel(participantId);
+    }
+
+    /**
+     * Advance the wheel to the current time, and return the deadlines that passed.
+     *
+     * @return the expired deadlines
+     */
+    public synchronized List<Deadline> expire() {
+        return wheel.advance(System.currentTimeMillis());
+    }
+
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    @Override
+    public void migrationStarted(MigrationEvent migrationEvent) {
+        // Nothing to do before the partition arrives
+    }
+
+    /**
+     * Arm the participants of the live queues of a partition migrated to this member. The previous owner
+     * keeps its deadlines, and drops them as they expire on a dynamicQueue it no longer owns.
+     */
+    @Override
+    public void migrationCompleted(MigrationEvent migrationEvent) {
+        if (migrationEvent.getNewOwner() == null || !migrationEvent.getNewOwner().localMember()) {
+            return;
+        }
+        int partitionId = migrationEvent.getPartitionId();
+        arm(liveQueues.localKeySet().stream()
+            .filter(dynamicQueueId -> partitionService.getPartition(dynamicQueueId).getPartitionId() == partitionId)
+            .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public void migrationFailed(MigrationEvent migrationEvent) {
+        // The partition stays with its previous owner, which holds its deadlines
+    }
+
+    private void arm(Set<Long> dynamicQueueIds) {
+        if (dynamicQueueIds.isEmpty()) {
+            return;
+        }
+        log.debug("Arming the participant deadlines of {} live queues", dynamicQueueIds.size());
+        for (Map.Entry<Long, Object> entry : liveQueues.executeOnKeys(dynamicQueueIds, new ParticipantIdsProcessor()).entrySet()) {
+            if (entry.getValue() != null) {
+                waiting(entry.getKey(), (long[]) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The deadline of a participant.
+     */
+    public static final class Deadline {
+
+        private final long participantId;
+
+        private final long dynamicQueueId;
+
+        private final boolean called;
+
+        Deadline(long participantId, long dynamicQueueId, boolean called) {
+            this.participantId = participantId;
+            this.dynamicQueueId = dynamicQueueId;
+            this.called = called;
+        }
+
+        public long getParticipantId() {
+            return participantId;
+        }
+
+        public long getDynamicQueueId() {
+            return dynamicQueueId;
+        }
+
+        /**
+         * @return true if the participant was called and did not check in, false if it waited too long
+         */
+        public boolean isCalled() {
+            return called;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.Participant;
+import com.end.queues.service.engine.ExpireProcessor;
+import com.end.queues.service.engine.LiveQueue;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service deleting the participants whose deadline in the {@link ParticipantDeadlines} passed.
+ *
+ * <p>
+ * Each tick advances the timing wheel, so finding the expired participants never scans the participant
+ * table. The waiting participants expired are removed from their live queue by one
+ * {@link ExpireProcessor} per dynamicQueue, journaled and counted, and the called participants that
+ * did not check in are taken as they are. All of them are then deleted in one JDBC batch, and their
+ * removal from Elasticsearch is left to the {@link SearchOutbox}.
+ * </p>
+ */
+@Service
+public class ParticipantExpiryService {
+
+    private final Logger log = LoggerFactory.getLogger(ParticipantExpiryService.class);
+
+    private final ParticipantDeadlines participantDeadlines;
+
+    private final LiveQueueRouter liveQueueRouter;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final QueueJournalService queueJournalService;
+
+    private final DynamicQueueCounters dynamicQueueCounters;
+
+    private final LiveQueueService liveQueueService;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final SearchOutbox searchOutbox;
+
+    public ParticipantExpiryService(ParticipantDeadlines participantDeadlines, LiveQueueRouter liveQueueRouter,
+            HazelcastInstance hazelcastInstance, QueueJournalService queueJournalService, DynamicQueueCounters dynamicQueueCounters,
+            LiveQueueService liveQueueService, JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory, SearchOutbox searchOutbox) {
+        this.participantDeadlines = participantDeadlines;
+        this.liveQueueRouter = liveQueueRouter;
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.queueJournalService = queueJournalService;
+        this.dynamicQueueCounters = dynamicQueueCounters;
+        this.liveQueueService = liveQueueService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.searchOutbox = searchOutbox;
+    }
+
+    /**
+     * Delete the participants expired since the last tick.
+     *
+     * @return the number of participants deleted
+     */
+    @Scheduled(fixedDelayString = "${application.queue-engine.expiry-tick-ms}")
+    public int expire() {
+        List<ParticipantDeadlines.Deadline> deadlines = participantDeadlines.expire();
+        if (deadlines.isEmpty()) {
+            return 0;
+        }
+        Map<Long, List<Long>> waitingByQueue = new HashMap<>();
+        List<Object[]> calledBatch = new ArrayList<>();
+        for (ParticipantDeadlines.Deadline deadline : deadlines) {
+            if (deadline.isCalled()) {
+                calledBatch.add(new Object[] { deadline.getParticipantId() });
+            } else if (liveQueueRouter.isOwner(deadline.getDynamicQueueId())) {
+                waitingByQueue.computeIfAbsent(deadline.getDynamicQueueId(), dynamicQueueId -> new ArrayList<>())
+                    .add(deadline.getParticipantId());
+            }
+            // A queue migrated away was armed again by its new owner
+        }
+        List<Object[]> waitingBatch = new ArrayList<>();
+        waitingByQueue.forEach((dynamicQueueId, participantIds) -> {
+            long[] removed = (long[]) liveQueues.executeOnKey(dynamicQueueId,
+                new ExpireProcessor(participantIds.stream().mapToLong(Long::longValue).toArray()));
+            if (removed == null || removed.length == 0) {
+                return;
+            }
+            queueJournalService.recordRemoved(dynamicQueueId, removed);
+            liveQueueService.unmap(removed);
+            dynamicQueueCounters.addParticipants(dynamicQueueId, -removed.length);
+            liveQueueService.refreshLoad(dynamicQueueId);
+            for (long participantId : removed) {
+                waitingBatch.add(new Object[] { participantId });
+            }
+        });
+        List<Long> deleted = new ArrayList<>();
+        delete("delete from participant where id = ?", waitingBatch, deleted);
+        // A called participant who checked in meanwhile is already deleted
+        delete("delete from participant where id = ? and called_at is not null", calledBatch, deleted);
+        if (deleted.isEmpty()) {
+            return 0;
+        }
+        log.debug("Deleted {} expired participants", deleted.size());
+        deleted.forEach(participantId -> entityManagerFactory.getCache().evict(Participant.class, participantId));
+        searchOutbox.delete(Participant.class, deleted);
+        return deleted.size();
+    }
+
+    private void delete(String sql, List<Object[]> batch, List<Long> deleted) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] counts = jdbcTemplate.batchUpdate(sql, batch);
+        for (int i = 0; i < counts.length; i++) {
+            // Some drivers report a successful batch statement without its count
+            if (counts[i] != 0) {
+                deleted.add((Long) batch.get(i)[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.DeskDTO;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Dispatch the participants of a Queue to the desks serving it.
+ *
+ * <p>
+ * A desk connects to the member of its choice with a server-sent event stream, and is idle until it
+ * gets an assignment. Each assignment is served by the {@link LiveQueueRouter}, so the entry processor
+ * on the owner of the DynamicQueue hands every participant to exactly one desk, cluster-wide. A desk is
+ * busy with its assignment until it asks for more work, from any member.
+ * </p>
+ * <p>
+ * Idle desks wait in a lock-free deque per Queue. Joins are announced on the
+ * {@link LiveQueueService#PARTICIPANTS_WAITING} topic, and a Queue with idle desks is then drained by a
+ * single task at a time on the task executor: a signal received while draining makes the task go round
+ * again, so no join is missed and no desk is woken twice. Nothing polls.
+ * </p>
+ * <p>
+ * A participant is served before it is sent. If the connection of its desk is lost meanwhile, it is
+ * kept for the desk, by Queue and name, and sent again when the desk reconnects to this member.
+ * </p>
+ * <p>
+ * Each desk marks a meter named after its Queue and its name, reported with the other metrics of this
+ * member while the desk is connected.
+ * </p>
+ */
+@Service
+public class QueueDispatcher {
+
+    public static final String READY_DESKS = "readyDesks";
+
+    private final Logger log = LoggerFactory.getLogger(QueueDispatcher.class);
+
+    private final ConcurrentMap<Long, QueueDesks> desksByQueue = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Long, QueueDesks> desksByDynamicQueue = new ConcurrentHashMap<>();
+
+    private final QueueRepository queueRepository;
+
+    private final DynamicQueueRepository dynamicQueueRepository;
+
+    private final LiveQueueRouter liveQueueRouter;
+
+    private final MetricRegistry metricRegistry;
+
+    private final Executor taskExecutor;
+
+    private final ITopic<Long> participantsWaiting;
+
+    private final ITopic<ReadyDesk> readyDesks;
+
+    private String participantsWaitingRegistration;
+
+    private String readyDesksRegistration;
+
+    public QueueDispatcher(HazelcastInstance hazelcastInstance, QueueRepository queueRepository,
+            DynamicQueueRepository dynamicQueueRepository, LiveQueueRouter liveQueueRouter, MetricRegistry metricRegistry,
+            @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.queueRepository = queueRepository;
+        this.dynamicQueueRepository = dynamicQueueRepository;
+        this.liveQueueRouter = liveQueueRouter;
+        this.metricRegistry = metricRegistry;
+        this.taskExecutor = taskExecutor;
+        this.participantsWaiting = hazelcastInstance.getTopic(LiveQueueService.PARTICIPANTS_WAITING);
+        this.readyDesks = hazelcastInstance.getTopic(READY_DESKS);
+    }
+
+    @PostConstruct
+    public void start() {
+        participantsWaitingRegistration = participantsWaiting.addMessageListener(message -> {
+            QueueDesks queueDesks = desksByDynamicQueue.get(message.getMessageObject());
+            if (queueDesks != null && !queueDesks.idle.isEmpty()) {
+                signal(queueDesks);
+            }
+        });
+        readyDesksRegistration = readyDesks.addMessageListener(message -> {
+            ReadyDesk readyDesk = message.getMessageObject();
+            QueueDesks queueDesks = desksByQueue.get(readyDesk.queueId);
+            Desk desk = queueDesks == null ? null : queueDesks.desks.get(readyDesk.name);
+            if (desk != null) {
+                ready(queueDesks, desk);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        participantsWaiting.removeMessageListener(participantsWaitingRegistration);
+        readyDesks.removeMessageListener(readyDesksRegistration);
+        desksByQueue.values().forEach(queueDesks -> queueDesks.desks.values().forEach(desk -> desk.emitter.complete()));
+    }
+
+    /**
+     * Connect a desk to a queue. The desk is idle, unless an assignment could not be sent to its previous
+     * connection: that assignment is sent again, and the desk is busy with it.
+     *
+     * @param queueId the id of the queue served by the desk
+     * @param name the name of the desk, unique in the queue
+     * @param emitter the event stream of the assignments of the desk
+     * @return false if the queue does not exist or has no DynamicQueue
+     */
+    public boolean connect(Long queueId, String name, SseEmitter emitter) {
+        log.debug("Request to connect desk {} to Queue {}", name, queueId);
+        QueueDesks queueDesks = desksByQueue.get(queueId);
+        if (queueDesks == null) {
+            Queue queue = queueRepository.findOne(queueId);
+            if (queue == null || queue.getDynamicInfo() == null) {
+                return false;
+            }
+            queueDesks = desksByQueue.computeIfAbsent(queueId, id -> new QueueDesks(queue.getDynamicInfo().getId()));
+            desksByDynamicQueue.putIfAbsent(queueDesks.dynamicQueueId, queueDesks);
+        }
+        String meterName = MetricRegistry.name(QueueDispatcher.class, "queue", queueId.toString(), "desk", name);
+        Desk desk = new Desk(name, emitter, metricRegistry.meter(meterName));
+        QueueDesks connectedQueueDesks = queueDesks;
+        Runnable disconnect = () -> {
+            if (connectedQueueDesks.desks.remove(name, desk)) {
+                metricRegistry.remove(meterName);
+            }
+        };
+        emitter.onCompletion(disconnect);
+        emitter.onTimeout(disconnect);
+        Desk previous = queueDesks.desks.put(name, desk);
+        if (previous != null) {
+            previous.emitter.complete();
+        }
+        Participant undelivered = queueDesks.undelivered.remove(name);
+        if (undelivered != null) {
+            send(queueDesks, desk, undelivered);
+            return true;
+        }
+        ready(queueDesks, desk);
+        return true;
+    }
+
+    /**
+     * Make a desk idle again, once done with its assignment. The member holding the connection of the
+     * desk is told if it is not this one.
+     *
+     * @param queueId the id of the queue served by the desk
+     * @param name the name of the desk
+     */
+    public void ready(Long queueId, String name) {
+        log.debug("Request for work from desk {} of Queue {}", name, queueId);
+        QueueDesks queueDesks = desksByQueue.get(queueId);
+        Desk desk = queueDesks == null ? null : queueDesks.desks.get(name);
+        if (desk == null) {
+            readyDesks.publish(new ReadyDesk(queueId, name));
+        } else {
+            ready(queueDesks, desk);
+        }
+    }
+
+    /**
+     * Get the desks of a queue connected to this member, with their throughput.
+     *
+     * @param queueId the id of the queue
+     * @return the desks
+     */
+    public List<DeskDTO> getDesks(Long queueId) {
+        QueueDesks queueDesks = desksByQueue.get(queueId);
+        if (queueDesks == null) {
+            return Collections.emptyList();
+        }
+        return queueDesks.desks.values().stream()
+            .map(desk -> new DeskDTO(queueId, desk.name, desk.idle.get(), desk.meter.getCount(), desk.meter.getMeanRate(),
+                desk.meter.getOneMinuteRate()))
+            .collect(Collectors.toList());
+    }
+
+    private void ready(QueueDesks queueDesks, Desk desk) {
+        if (desk.idle.compareAndSet(false, true)) {
+            queueDesks.idle.offer(desk);
+            signal(queueDesks);
+        }
+    }
+
+    private void signal(QueueDesks queueDesks) {
+        queueDesks.signalled.set(true);
+        if (queueDesks.dispatching.compareAndSet(false, true)) {
+            taskExecutor.execute(() -> drain(queueDesks));
+        }
+    }
+
+    /**
+     * Dispatch until no signal is left. Only one drain runs per queue, and a signal raised after the last
+     * round starts the next one.
+     */
+    private void drain(QueueDesks queueDesks) {
+        do {
+            try {
+                while (queueDesks.signalled.getAndSet(false)) {
+                    dispatchIdleDesks(queueDesks);
+                }
+            } finally {
+                queueDesks.dispatching.set(false);
+            }
+        } while (queueDesks.signalled.get() && queueDesks.dispatching.compareAndSet(false, true));
+    }
+
+    private void dispatchIdleDesks(QueueDesks queueDesks) {
+        Desk desk;
+        while ((desk = queueDesks.idle.poll()) != null) {
+            if (queueDesks.desks.get(desk.name) != desk) {
+                // Disconnected while idle
+                continue;
+            }
+            Optional<Participant> participant;
+            try {
+                DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(queueDesks.dynamicQueueId);
+                participant = dynamicQueue == null ? Optional.empty() : liveQueueRouter.serveNext(dynamicQueue);
+            } catch (RuntimeException e) {
+                log.warn("Could not serve DynamicQueue {} for desk {}: {}", queueDesks.dynamicQueueId, desk.name, e.getMessage());
+                participant = Optional.empty();
+            }
+            if (!participant.isPresent()) {
+                // Nobody is waiting: the desk stays first in line for the next join
+                queueDesks.idle.offerFirst(desk);
+                return;
+            }
+            desk.idle.set(false);
+            desk.meter.mark();
+            send(queueDesks, desk, participant.get());
+        }
+    }
+
+    /**
+     * Send an assignment to a desk. If it cannot be sent, it is kept outside the desk, which is dropped
+     * when its connection completes, until a desk of the same name reconnects.
+     */
+    private void send(QueueDesks queueDesks, Desk desk, Participant participant) {
+        try {
+            desk.emitter.send(SseEmitter.event().name("assignment").id(participant.getId().toString())
+                .data(participant, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            log.warn("Could not send Participant {} to desk {}, keeping it until the desk reconnects", participant.getId(), desk.name);
+            desk.emitter.completeWithError(e);
+            keep(queueDesks, desk, participant);
+        } catch (IllegalStateException e) {
+            log.warn("Could not send Participant {} to desk {}, keeping it until the desk reconnects", participant.getId(), desk.name);
+            keep(queueDesks, desk, participant);
+        }
+    }
+
+    private void keep(QueueDesks queueDesks, Desk desk, Participant participant) {
+        queueDesks.undelivered.put(desk.name, participant);
+        // The desk may have reconnected while the assignment was being sent
+        Desk current = queueDesks.desks.get(desk.name);
+        if (current != null && current != desk && queueDesks.undelivered.remove(desk.name, participant)) {
+            send(queueDesks, current, participant);
+        }
+    }
+
+    /**
+     * The desks of a queue connected to this member.
+     */
+    private static class QueueDesks {
+
+        private final Long dynamicQueueId;
+
+        private final ConcurrentMap<String, Desk> desks = new ConcurrentHashMap<>();
+
+        private final ConcurrentMap<String, Participant> undelivered = new ConcurrentHashMap<>();
+
+        private final ConcurrentLinkedDeque<Desk> idle = new ConcurrentLinkedDeque<>();
+
+        private final AtomicBoolean signalled = new AtomicBoolean();
+
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+
+        QueueDesks(Long dynamicQueueId) {
+            this.dynamicQueueId = dynamicQueueId;
+        }
+    }
+
+    private static class Desk {
+
+        private final String name;
+
+        private final SseEmitter emitter;
+
+        private final Meter meter;
+
+        private final AtomicBoolean idle = new AtomicBoolean();
+
+        Desk(String name, SseEmitter emitter, Meter meter) {
+            this.name = name;
+            this.emitter = emitter;
+            this.meter = meter;
+        }
+    }
+
+    /**
+     * A desk asking for work on a member other than the one holding its connection.
+     */
+    private static class ReadyDesk implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long queueId;
+
+        private final String name;
+
+        ReadyDesk(Long queueId, String name) {
+            this.queueId = queueId;
+            this.name = name;
+        }
+    }
+}
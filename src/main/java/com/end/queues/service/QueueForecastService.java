@@ -0,0 +1,98 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.HourlyForecastDTO;
+import com.end.queues.service.dto.SiteForecastDTO;
+import com.end.queues.service.engine.HourOfWeekProfile;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.ProfileProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service forecasting the load of the Queues of a site, hour by hour.
+ *
+ * <p>
+ * Every live queue counts its arrivals and serves per hour of the week as they happen, in a
+ * {@link HourOfWeekProfile}. A forecast copies the profiles of the Queues of a site from the owners of
+ * their DynamicQueues in one call, and sums their averages for each hour asked, so it never reads the
+ * participant history. Only the DynamicQueues used since their live queue was loaded or restored have
+ * a profile.
+ * </p>
+ */
+@Service
+public class QueueForecastService {
+
+    /**
+     * The longest forecast, in hours.
+     */
+    public static final int MAX_HOURS = HourOfWeekProfile.HOURS_PER_WEEK;
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private final Logger log = LoggerFactory.getLogger(QueueForecastService.class);
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final QueueRepository queueRepository;
+
+    public QueueForecastService(HazelcastInstance hazelcastInstance, QueueRepository queueRepository) {
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.queueRepository = queueRepository;
+    }
+
+    /**
+     * Forecast the arrivals and serves of the Queues of a site.
+     *
+     * @param site the site
+     * @param from an instant of the first hour to forecast
+     * @param hours the number of hours to forecast, from 1 to {@link #MAX_HOURS}
+     * @return the forecast, or an empty Optional if no Queue is on the site
+     */
+    public Optional<SiteForecastDTO> forecastSite(String site, Instant from, int hours) {
+        log.debug("Request to forecast {} hours of site {} from {}", hours, site, from);
+        List<Queue> queues = queueRepository.findBySite(site);
+        if (queues.isEmpty()) {
+            return Optional.empty();
+        }
+        Set<Long> dynamicQueueIds = queues.stream()
+            .filter(queue -> queue.getDynamicInfo() != null)
+            .map(queue -> queue.getDynamicInfo().getId())
+            .collect(Collectors.toSet());
+        List<HourOfWeekProfile> profiles = new ArrayList<>();
+        if (!dynamicQueueIds.isEmpty()) {
+            for (Map.Entry<Long, Object> entry : liveQueues.executeOnKeys(dynamicQueueIds, new ProfileProcessor()).entrySet()) {
+                HourOfWeekProfile profile = (HourOfWeekProfile) entry.getValue();
+                if (profile != null && !profile.isEmpty()) {
+                    profiles.add(profile);
+                }
+            }
+        }
+        long currentHour = HourOfWeekProfile.hourOf(System.currentTimeMillis());
+        long firstHour = HourOfWeekProfile.hourOf(from.toEpochMilli());
+        List<HourlyForecastDTO> forecast = new ArrayList<>(hours);
+        for (long hour = firstHour; hour < firstHour + hours; hour++) {
+            double arrivals = 0;
+            double serves = 0;
+            for (HourOfWeekProfile profile : profiles) {
+                arrivals += profile.averageArrivals(hour, currentHour);
+                serves += profile.averageServes(hour, currentHour);
+            }
+            forecast.add(new HourlyForecastDTO(Instant.ofEpochMilli(hour * MILLIS_PER_HOUR), arrivals, serves));
+        }
+        return Optional.of(new SiteForecastDTO(site, queues.size(), profiles.size(), forecast));
+    }
+}
@@ -0,0 +1,32 @@
+package com.end.queues.service;
+
+/**
+ * Thrown when a join is rejected because the Queue served by the DynamicQueue is at its maximum capacity.
+ */
+public class QueueFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long dynamicQueueId;
+
+    private final long retryAfterSeconds;
+
+    public QueueFullException(Long dynamicQueueId, long retryAfterSeconds) {
+        super("DynamicQueue " + dynamicQueueId + " is full");
+        this.dynamicQueueId = dynamicQueueId;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    /**
+     * When to retry the join: the estimated time until a place is freed.
+     *
+     * @return the delay, in seconds
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,115 @@
+package com.end.queues.service;
+
+import com.end.queues.service.engine.HourlyCountsProcessor;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.RestoreHourlyCountsProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind of the arrivals, serves, longest length and time waited of the DynamicQueues per hour.
+ *
+ * <p>
+ * Every live queue counts its arrivals and serves per minute, and keeps the counts of each hour it closes
+ * until they are drained, see {@link com.end.queues.service.engine.MinuteSeries}. {@link #flush()} drains
+ * the live queues owned by this member in one call, and adds their hours to the queue_hourly_count table
+ * in JDBC batches, one row per DynamicQueue and hour with events. It runs every
+ * {@code application.queue-engine.hourly-counts-delay-ms}. An hour split between two members, when its
+ * live queue migrated, is added up in the same row.
+ * </p>
+ * <p>
+ * The same hours are then added to the daily rollups by the {@link QueueRollupService}, in the same
+ * transaction. If it fails, the hours drained are put back in their live queues, before the hours closed
+ * since, and written by the next flush.
+ * </p>
+ */
+@Service
+public class QueueHourlyCounts {
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private final Logger log = LoggerFactory.getLogger(QueueHourlyCounts.class);
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final QueueRollupService queueRollupService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public QueueHourlyCounts(HazelcastInstance hazelcastInstance, JdbcTemplate jdbcTemplate, QueueRollupService queueRollupService,
+            PlatformTransactionManager transactionManager) {
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.jdbcTemplate = jdbcTemplate;
+        this.queueRollupService = queueRollupService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Write the hours closed by the live queues owned by this member since the last flush.
+     *
+     * @return the number of hours written
+     */
+    @Scheduled(fixedDelayString = "${application.queue-engine.hourly-counts-delay-ms}")
+    public synchronized int flush() {
+        Set<Long> dynamicQueueIds = liveQueues.localKeySet();
+        if (dynamicQueueIds.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> batch = new ArrayList<>();
+        Map<Long, long[][]> hoursByDynamicQueue = new HashMap<>();
+        for (Map.Entry<Long, Object> entry : liveQueues.executeOnKeys(dynamicQueueIds, new HourlyCountsProcessor()).entrySet()) {
+            long[][] hours = (long[][]) entry.getValue();
+            if (hours == null || hours[0].length == 0) {
+                continue;
+            }
+            hoursByDynamicQueue.put(entry.getKey(), hours);
+            for (int i = 0; i < hours[0].length; i++) {
+                batch.add(new Object[] { (int) hours[1][i], (int) hours[2][i], (int) hours[3][i], hours[4][i], entry.getKey(),
+                    new Timestamp(hours[0][i] * MILLIS_PER_HOUR) });
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        log.debug("Writing {} hourly counts of {} DynamicQueues", batch.size(), dynamicQueueIds.size());
+        try {
+            transactionTemplate.execute(status -> {
+                int[] counts = jdbcTemplate.batchUpdate("update queue_hourly_count set arrivals = arrivals + ?, serves = serves + ?, " +
+                    "peak_length = greatest(peak_length, ?), wait_millis = wait_millis + ? where dynamic_queue_id = ? and hour_start = ?", batch);
+                List<Object[]> inserts = new ArrayList<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        inserts.add(batch.get(i));
+                    }
+                }
+                jdbcTemplate.batchUpdate("insert into queue_hourly_count (arrivals, serves, peak_length, wait_millis, dynamic_queue_id, hour_start) " +
+                    "values (?, ?, ?, ?, ?, ?)", inserts);
+                queueRollupService.add(hoursByDynamicQueue);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not write {} hourly counts, they will be retried: {}", batch.size(), e.getMessage());
+            hoursByDynamicQueue.forEach((dynamicQueueId, hours) ->
+                liveQueues.executeOnKey(dynamicQueueId, new RestoreHourlyCountsProcessor(hours)));
+            throw e;
+        }
+        return batch.size();
+    }
+}
@@ -0,0 +1,391 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LiveQueueSnapshot;
+import com.end.queues.service.engine.LiveQueueUpdate;
+import com.end.queues.service.engine.QueueJournal;
+import com.end.queues.service.engine.SnapshotProcessor;
+
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.cursors.LongLongCursor;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service journaling the queue operations to local disk, and replaying the journal on startup.
+ *
+ * <p>
+ * Every join, move, leave and serve appends its outcome to a {@link QueueJournal} and waits for the group
+ * commit before writing to the database, including the positions renumbered along the way. On startup,
+ * before the application takes any request, the journal left by the previous run is replayed into the
+ * participant and dynamic_queue tables: the last known position of each participant is written, the
+ * participants removed are deleted unless they were called, and the touched dynamicQueues are recounted.
+ * A participant taken out of its queue by a transfer is journaled as transferred rather than removed, so
+ * if the run stopped before the other queue placed it, it is put back where it was instead of deleted.
+ * </p>
+ * <p>
+ * The live queues owned by this member are also written to a {@link LiveQueueSnapshot} periodically, with
+ * the ticket of the last journal record they include. On startup the latest snapshot is read back, the
+ * journal records after its ticket are applied to it, and the queues are put in the live queue map, so
+ * they do not have to be loaded from the database one by one. This happens before the application
+ * context is ready, so before the service registers in Eureka. The journal segments are deleted once
+ * covered by a snapshot.
+ * </p>
+ */
+@Service
+@DependsOn("liquibase")
+public class QueueJournalService {
+
+    private final Logger log = LoggerFactory.getLogger(QueueJournalService.class);
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final Path snapshotDirectory;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final IMap<Long, Long> participantQueues;
+
+    private final DynamicQueueRepository dynamicQueueRepository;
+
+    private final SearchOutbox searchOutbox;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private QueueJournal journal;
+
+    /**
+     * Whether the journal left by the previous run could not be replayed, so no segment may be deleted.
+     */
+    private volatile boolean keepSegments;
+
+    public QueueJournalService(ApplicationProperties applicationProperties, HazelcastInstance hazelcastInstance,
+            DynamicQueueRepository dynamicQueueRepository, SearchOutbox searchOutbox, JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.directory = Paths.get(applicationProperties.getQueueEngine().getJournalDirectory());
+        this.segmentSize = applicationProperties.getQueueEngine().getJournalSegmentSize();
+        this.snapshotDirectory = Paths.get(applicationProperties.getQueueEngine().getSnapshotDirectory());
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.participantQueues = hazelcastInstance.getMap(LiveQueueService.PARTICIPANT_QUEUES);
+        this.dynamicQueueRepository = dynamicQueueRepository;
+        this.searchOutbox = searchOutbox;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        try {
+            restore(snapshotDirectory, directory);
+        } catch (DataAccessException e) {
+            log.error("Could not replay the queue journal in {}, it is kept for the next start", directory, e);
+            keepSegments = true;
+        }
+        journal = new QueueJournal(directory, segmentSize);
+        if (!keepSegments) {
+            // The restored queues include the whole journal, a snapshot of them replaces the old segments
+            snapshot();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Journal the outcome of a queue operation, and wait until it is durable.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue changed
+     * @param update the outcome of the operation
+     */
+    public void record(Long dynamicQueueId, LiveQueueUpdate update) {
+        try {
+            long ticket = 0;
+            long[] renumberedParticipantIds = update.getRenumberedParticipantIds();
+            for (int i = 0; i < renumberedParticipantIds.length; i++) {
+                ticket = journal.append(QueueJournal.PLACED, dynamicQueueId, renumberedParticipantIds[i],
+                    update.getRenumberedPositions()[i]);
+            }
+            if (update.getParticipantId() != LiveQueue.NONE) {
+                byte type = update.getPosition() == LiveQueue.NONE ? QueueJournal.REMOVED : QueueJournal.PLACED;
+                ticket = journal.append(type, dynamicQueueId, update.getParticipantId(), update.getPosition());
+            }
+            if (ticket != 0) {
+                journal.sync(ticket);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the queue journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Journal the placement of several participants in a dynamicQueue, and wait until it is durable.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue changed
+     * @param participantIds the ids of the participants placed
+     * @param positions their positions
+     */
+    public void recordPlaced(Long dynamicQueueId, long[] participantIds, long[] positions) {
+        try {
+            long ticket = 0;
+            for (int i = 0; i < participantIds.length; i++) {
+                ticket = journal.append(QueueJournal.PLACED, dynamicQueueId, participantIds[i], positions[i]);
+            }
+            if (ticket != 0) {
+                journal.sync(ticket);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the queue journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Journal several participants taken out of a dynamicQueue to be placed in others, and wait until it
+     * is durable. They are put back at the positions they held if no later record places them.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue changed
+     * @param participantIds the ids of the participants taken out
+     * @param positions the positions they held
+     */
+    public void recordTransferred(Long dynamicQueueId, long[] participantIds, long[] positions) {
+        try {
+            long ticket = 0;
+            for (int i = 0; i < participantIds.length; i++) {
+                ticket = journal.append(QueueJournal.TRANSFERRED, dynamicQueueId, participantIds[i], positions[i]);
+            }
+            if (ticket != 0) {
+                journal.sync(ticket);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the queue journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Journal the removal of several participants of a dynamicQueue, and wait until it is durable.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue changed
+     * @param participantIds the ids of the participants removed
+     */
+    public void recordRemoved(Long dynamicQueueId, long[] participantIds) {
+        try {
+            long ticket = 0;
+            for (long participantId : participantIds) {
+                ticket = journal.append(QueueJournal.REMOVED, dynamicQueueId, participantId, LiveQueue.NONE);
+            }
+            if (ticket != 0) {
+                journal.sync(ticket);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the queue journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Write the live queues owned by this member to a snapshot, then delete the journal segments it covers.
+     */
+    @Scheduled(fixedDelayString = "${application.queue-engine.snapshot-delay-ms}",
+        initialDelayString = "${application.queue-engine.snapshot-delay-ms}")
+    public void snapshot() {
+        // Taken before the queues are copied: a record appended meanwhile may be applied twice on restore,
+        // which is harmless as records hold outcomes
+        long ticket = journal.currentTicket();
+        Set<Long> localKeys = liveQueues.localKeySet();
+        List<byte[]> serializedQueues = new ArrayList<>();
+        if (!localKeys.isEmpty()) {
+            liveQueues.executeOnKeys(localKeys, new SnapshotProcessor()).values().forEach(serializedQueue -> {
+                if (serializedQueue != null) {
+                    serializedQueues.add((byte[]) serializedQueue);
+                }
+            });
+        }
+        try {
+            LiveQueueSnapshot.write(snapshotDirectory, ticket, serializedQueues);
+            if (!keepSegments) {
+                journal.deleteSegmentsBefore(ticket);
+            }
+            log.debug("Wrote a snapshot of {} live queues", serializedQueues.size());
+        } catch (IOException e) {
+            log.warn("Could not write a snapshot of the live queues in {}", snapshotDirectory, e);
+        }
+    }
+
+    /**
+     * Replay the segments of a journal into the database, and put the queues of the latest snapshot in
+     * the live queue map, with the journal records after the snapshot applied.
+     * <p>
+     * The queues of dynamicQueues deleted since the snapshot are dropped, and the rate and serving policy
+     * of the others are read from the database, as they are not journaled.
+     *
+     * @param snapshotsDirectory the directory of the snapshot files
+     * @param journalDirectory the directory of the segment files
+     * @return the number of queues restored
+     * @throws IOException if a segment cannot be read
+     */
+    public int restore(Path snapshotsDirectory, Path journalDirectory) throws IOException {
+        LiveQueueSnapshot snapshot = null;
+        try {
+            snapshot = LiveQueueSnapshot.readLatest(snapshotsDirectory);
+        } catch (IOException e) {
+            log.warn("Could not read the snapshot of the live queues in {}, they will be loaded from the database",
+                snapshotsDirectory, e);
+        }
+        Map<Long, LiveQueue> restored = new HashMap<>();
+        long snapshotTicket = -1;
+        if (snapshot != null) {
+            snapshot.getLiveQueues().forEach(liveQueue -> restored.put(liveQueue.getDynamicQueueId(), liveQueue));
+            snapshotTicket = snapshot.getJournalTicket();
+        }
+        long afterTicket = snapshotTicket;
+        // The queue each participant was last placed in by the records applied, as a transfer put back
+        // in its first queue is then placed in the other one
+        LongLongHashMap placedIn = new LongLongHashMap();
+        replay(journalDirectory, (ticket, type, dynamicQueueId, participantId, position) -> {
+            if (ticket <= afterTicket) {
+                return;
+            }
+            if (placedIn.containsKey(participantId) && restored.containsKey(placedIn.get(participantId))) {
+                restored.get(placedIn.get(participantId)).remove(participantId);
+            }
+            placedIn.remove(participantId);
+            LiveQueue liveQueue = restored.get(dynamicQueueId);
+            if (liveQueue == null) {
+                return;
+            }
+            liveQueue.remove(participantId);
+            if (type != QueueJournal.REMOVED) {
+                liveQueue.insert(participantId, position);
+                placedIn.put(participantId, dynamicQueueId);
+            }
+        });
+        if (restored.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        for (DynamicQueue dynamicQueue : dynamicQueueRepository.findAll(new ArrayList<>(restored.keySet()))) {
+            LiveQueue liveQueue = restored.get(dynamicQueue.getId());
+            liveQueue.setRate(dynamicQueue.getRate());
+            liveQueue.setServingPolicy(dynamicQueue.getServingPolicy(), LiveQueue.parseLaneWeights(dynamicQueue.getLaneWeights()));
+            Map<Long, Long> mapped = new HashMap<>();
+            for (long participantId : liveQueue.participantIds()) {
+                mapped.put(participantId, dynamicQueue.getId());
+            }
+            participantQueues.putAll(mapped);
+            if (liveQueues.putIfAbsent(dynamicQueue.getId(), liveQueue) == null) {
+                count++;
+            }
+        }
+        log.info("Restored {} live queues from the snapshot in {}", count, snapshotsDirectory);
+        return count;
+    }
+
+    /**
+     * Replay the segments of a journal into the database.
+     *
+     * @param journalDirectory the directory of the segment files
+     * @return the number of records replayed
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(Path journalDirectory) throws IOException {
+        return replay(journalDirectory, (ticket, type, dynamicQueueId, participantId, position) -> { });
+    }
+
+    private long replay(Path journalDirectory, QueueJournal.RecordHandler handler) throws IOException {
+        // The last outcome of each participant wins, the order between participants does not matter
+        LongLongHashMap positions = new LongLongHashMap();
+        LongLongHashMap dynamicQueueIds = new LongLongHashMap();
+        LongHashSet transferredIds = new LongHashSet();
+        Set<Long> touchedQueueIds = new LinkedHashSet<>();
+        long count = QueueJournal.replay(journalDirectory, (ticket, type, dynamicQueueId, participantId, position) -> {
+            positions.put(participantId, type == QueueJournal.REMOVED ? LiveQueue.NONE : position);
+            dynamicQueueIds.put(participantId, dynamicQueueId);
+            if (type == QueueJournal.TRANSFERRED) {
+                transferredIds.add(participantId);
+            } else {
+                transferredIds.remove(participantId);
+            }
+            touchedQueueIds.add(dynamicQueueId);
+            handler.record(ticket, type, dynamicQueueId, participantId, position);
+        });
+        if (count == 0) {
+            return 0;
+        }
+        log.info("Replaying {} queue journal records for {} participants", count, positions.size());
+        List<Object[]> placed = new ArrayList<>();
+        List<Object[]> putBack = new ArrayList<>();
+        List<Object[]> removed = new ArrayList<>();
+        List<Long> placedIds = new ArrayList<>();
+        List<Long> removedIds = new ArrayList<>();
+        for (LongLongCursor cursor : positions) {
+            long dynamicQueueId = dynamicQueueIds.get(cursor.key);
+            if (transferredIds.contains(cursor.key)) {
+                putBack.add(new Object[] { cursor.value, cursor.key, dynamicQueueId });
+                placedIds.add(cursor.key);
+            } else if (cursor.value == LiveQueue.NONE) {
+                removed.add(new Object[] { cursor.key, dynamicQueueId });
+                removedIds.add(cursor.key);
+            } else {
+                placed.add(new Object[] { cursor.value, dynamicQueueId, cursor.key });
+                placedIds.add(cursor.key);
+            }
+        }
+        List<Object[]> recount = new ArrayList<>();
+        touchedQueueIds.forEach(dynamicQueueId -> recount.add(new Object[] { dynamicQueueId }));
+
+        // A participant is placed in the dynamicQueue of its record, which moves it if it was transferred
+        jdbcTemplate.batchUpdate("update participant set position = ?, dynamic_queue_id = ? where id = ?", placed);
+        // A participant whose transfer did not complete is put back, unless the other queue moved its row
+        jdbcTemplate.batchUpdate("update participant set position = ? where id = ? and dynamic_queue_id = ? " +
+            "and called_at is null", putBack);
+        // A participant removed by a call stays until it checks in or its grace period expires, and a
+        // participant transferred out of a dynamicQueue is only removed from that one
+        int[] deleted = jdbcTemplate.batchUpdate("delete from participant where id = ? and dynamic_queue_id = ? " +
+            "and called_at is null", removed);
+        jdbcTemplate.batchUpdate("update dynamic_queue set num_participants = " +
+            "(select count(*) from participant where participant.dynamic_queue_id = dynamic_queue.id " +
+            "and participant.called_at is null) where id = ?", recount);
+
+        placedIds.forEach(participantId -> entityManagerFactory.getCache().evict(Participant.class, participantId));
+        removedIds.forEach(participantId -> entityManagerFactory.getCache().evict(Participant.class, participantId));
+        touchedQueueIds.forEach(dynamicQueueId -> entityManagerFactory.getCache().evict(DynamicQueue.class, dynamicQueueId));
+        searchOutbox.index(Participant.class, placedIds);
+        List<Long> deletedIds = new ArrayList<>();
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i] != 0) {
+                deletedIds.add(removedIds.get(i));
+            }
+        }
+        searchOutbox.delete(Participant.class, deletedIds);
+        searchOutbox.index(DynamicQueue.class, touchedQueueIds);
+        return count;
+    }
+}
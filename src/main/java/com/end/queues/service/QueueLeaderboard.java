@@ -0,0 +1,280 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.QueueLoadDTO;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LoadProcessor;
+import com.end.queues.service.engine.QueueRanking;
+import com.end.queues.service.engine.RankingLoadProcessor;
+import com.end.queues.service.engine.RankingQueueProcessor;
+import com.end.queues.service.engine.TopQueuesProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ReplicatedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The busiest Queues of each organization and of all organizations, kept up to date by the queue engine.
+ *
+ * <p>
+ * Each ranking is a {@link QueueRanking} held in the Hazelcast map {@link #QUEUE_RANKINGS}, keyed by
+ * organization id. The ranking of all the Queues is split in {@link #GLOBAL_SHARDS} shards by dynamicQueue
+ * id, each under its own key, so the joins and serves of every organization do not all go through the
+ * partition thread of a single key. Every change of a live queue sends its new number of participants to
+ * the ranking of its organization and to its global shard without waiting for the answer. The busiest
+ * Queues are read in O(k + log n), from the top k of every shard merged for all organizations, so a
+ * dashboard polling them costs the same whatever the number of Queues. The organization of each dynamicQueue is held
+ * in the replicated map {@link #QUEUE_ORGANIZATIONS}, read locally on every member.
+ * </p>
+ * <p>
+ * A ranking is built from the database the first time it is asked for. Queues created, changed or deleted
+ * afterwards are applied to it by the {@link com.end.queues.web.rest.QueueResource}, and deleted
+ * dynamicQueues by the {@link LiveQueueService}.
+ * </p>
+ */
+@Service
+public class QueueLeaderboard {
+
+    public static final String QUEUE_RANKINGS = "queueRankings";
+
+    public static final String QUEUE_ORGANIZATIONS = "queueOrganizations";
+
+    /**
+     * The number of shards of the ranking of the Queues of all organizations.
+     */
+    public static final int GLOBAL_SHARDS = 16;
+
+    /**
+     * The key of the first shard of the ranking of the Queues of all organizations, below any organization id.
+     */
+    private static final long FIRST_GLOBAL_SHARD = Long.MIN_VALUE;
+
+    /**
+     * The largest number of Queues read at once.
+     */
+    public static final int MAX_SIZE = 100;
+
+    /**
+     * The organization of a Queue without one, ranked in the global ranking only.
+     */
+    private static final long NO_ORGANIZATION = -1L;
+
+    /**
+     * The organization of a dynamicQueue serving no Queue, never ranked.
+     */
+    private static final long NO_QUEUE = -2L;
+
+    private final Logger log = LoggerFactory.getLogger(QueueLeaderboard.class);
+
+    private final IMap<Long, QueueRanking> queueRankings;
+
+    private final ReplicatedMap<Long, Long> queueOrganizations;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final QueueRepository queueRepository;
+
+    private final Set<Long> globalShards = new HashSet<>();
+
+    public QueueLeaderboard(HazelcastInstance hazelcastInstance, QueueRepository queueRepository) {
+        this.queueRankings = hazelcastInstance.getMap(QUEUE_RANKINGS);
+        this.queueOrganizations = hazelcastInstance.getReplicatedMap(QUEUE_ORGANIZATIONS);
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.queueRepository = queueRepository;
+        for (int shard = 0; shard < GLOBAL_SHARDS; shard++) {
+            globalShards.add(FIRST_GLOBAL_SHARD + shard);
+        }
+    }
+
+    /**
+     * Get the busiest Queues of an organization, or of all organizations.
+     *
+     * @param organizationId the id of the organization, or null for all organizations
+     * @param size the number of Queues, at most {@link #MAX_SIZE}
+     * @return at most size Queues, the busiest first
+     */
+    @SuppressWarnings("unchecked")
+    public List<QueueLoadDTO> getBusiestQueues(Long organizationId, int size) {
+        if (organizationId == null) {
+            return getBusiestQueuesOfAllOrganizations(size);
+        }
+        List<QueueLoadDTO> top = (List<QueueLoadDTO>) queueRankings.executeOnKey(organizationId, new TopQueuesProcessor(size));
+        if (top == null) {
+            build(organizationId);
+            top = (List<QueueLoadDTO>) queueRankings.executeOnKey(organizationId, new TopQueuesProcessor(size));
+        }
+        return top;
+    }
+
+    /**
+     * Send the number of participants of a dynamicQueue to the rankings of its Queue, without waiting.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param timestamp the time it was read from its live queue
+     */
+    public void loadChanged(Long dynamicQueueId, int numParticipants, long timestamp) {
+        long organizationId = organizationOf(dynamicQueueId);
+        if (organizationId == NO_QUEUE) {
+            return;
+        }
+        queueRankings.submitToKey(globalShardOf(dynamicQueueId), new RankingLoadProcessor(dynamicQueueId, numParticipants, timestamp));
+        if (organizationId != NO_ORGANIZATION) {
+            queueRankings.submitToKey(organizationId, new RankingLoadProcessor(dynamicQueueId, numParticipants, timestamp));
+        }
+    }
+
+    /**
+     * Apply a created or changed Queue to the rankings, and remove it from the ranking of the organization
+     * it moved from.
+     *
+     * @param queue the saved Queue
+     * @param previousOrganizationId the id of the organization of the Queue before the change, or null
+     * @param previousDynamicQueueId the id of the dynamicQueue of the Queue before the change, or null
+     */
+    public void queueSaved(Queue queue, Long previousOrganizationId, Long previousDynamicQueueId) {
+        Long organizationId = queue.getOrganization() == null ? null : queue.getOrganization().getId();
+        DynamicQueue dynamicQueue = queue.getDynamicInfo();
+        if (previousDynamicQueueId != null && (dynamicQueue == null || !previousDynamicQueueId.equals(dynamicQueue.getId()))) {
+            queueOrganizations.remove(previousDynamicQueueId);
+            queueRankings.executeOnKey(globalShardOf(previousDynamicQueueId), new RankingQueueProcessor(queue.getId(), null, LiveQueue.NONE, 0));
+        }
+        if (previousOrganizationId != null && !previousOrganizationId.equals(organizationId)) {
+            queueRankings.executeOnKey(previousOrganizationId, new RankingQueueProcessor(queue.getId(), null, LiveQueue.NONE, 0));
+        }
+        if (dynamicQueue == null) {
+            queueDeleted(queue);
+            return;
+        }
+        queueOrganizations.put(dynamicQueue.getId(), organizationId == null ? NO_ORGANIZATION : organizationId);
+        int[] load = (int[]) liveQueues.executeOnKey(dynamicQueue.getId(), new LoadProcessor());
+        RankingQueueProcessor processor = new RankingQueueProcessor(queue.getId(), queue.getName(), dynamicQueue.getId(),
+            load == null ? numParticipantsOf(dynamicQueue) : load[0]);
+        queueRankings.executeOnKey(globalShardOf(dynamicQueue.getId()), processor);
+        if (organizationId != null) {
+            queueRankings.executeOnKey(organizationId, processor);
+        }
+    }
+
+    /**
+     * Remove a deleted Queue from the rankings. It is removed from every global shard, as the dynamicQueue
+     * it was ranked by may already be unset.
+     *
+     * @param queue the deleted Queue
+     */
+    public void queueDeleted(Queue queue) {
+        if (queue.getDynamicInfo() != null) {
+            queueOrganizations.remove(queue.getDynamicInfo().getId());
+        }
+        RankingQueueProcessor processor = new RankingQueueProcessor(queue.getId(), null, LiveQueue.NONE, 0);
+        queueRankings.executeOnKeys(globalShards, processor);
+        if (queue.getOrganization() != null) {
+            queueRankings.executeOnKey(queue.getOrganization().getId(), processor);
+        }
+    }
+
+    /**
+     * Forget the organization of a deleted dynamicQueue, and remove its Queue from the rankings.
+     *
+     * @param dynamicQueueId the id of the deleted dynamicQueue
+     */
+    public void dynamicQueueDeleted(Long dynamicQueueId) {
+        Long organizationId = queueOrganizations.remove(dynamicQueueId);
+        if (organizationId == null || organizationId == NO_QUEUE) {
+            return;
+        }
+        RankingQueueProcessor processor = new RankingQueueProcessor(LiveQueue.NONE, null, dynamicQueueId, 0);
+        queueRankings.executeOnKey(globalShardOf(dynamicQueueId), processor);
+        if (organizationId != NO_ORGANIZATION) {
+            queueRankings.executeOnKey(organizationId, processor);
+        }
+    }
+
+    /**
+     * Merge the busiest Queues of every global shard. Each shard gives its own top, so the merged top is
+     * exact.
+     */
+    @SuppressWarnings("unchecked")
+    private List<QueueLoadDTO> getBusiestQueuesOfAllOrganizations(int size) {
+        Map<Long, Object> tops = queueRankings.executeOnKeys(globalShards, new TopQueuesProcessor(size));
+        if (tops.size() < GLOBAL_SHARDS || tops.containsValue(null)) {
+            buildAllOrganizations();
+            tops = queueRankings.executeOnKeys(globalShards, new TopQueuesProcessor(size));
+        }
+        return tops.values().stream()
+            .filter(Objects::nonNull)
+            .flatMap(top -> ((List<QueueLoadDTO>) top).stream())
+            .sorted(Comparator.comparingInt(QueueLoadDTO::getNumParticipants).reversed().thenComparing(QueueLoadDTO::getQueueId))
+            .limit(size)
+            .collect(Collectors.toList());
+    }
+
+    private static long globalShardOf(long dynamicQueueId) {
+        return FIRST_GLOBAL_SHARD + Math.floorMod(dynamicQueueId, GLOBAL_SHARDS);
+    }
+
+    private long organizationOf(Long dynamicQueueId) {
+        Long organizationId = queueOrganizations.get(dynamicQueueId);
+        if (organizationId == null) {
+            Queue queue = queueRepository.findOneByDynamicInfoId(dynamicQueueId);
+            organizationId = queue == null ? NO_QUEUE : queue.getOrganization() == null ? NO_ORGANIZATION : queue.getOrganization().getId();
+            queueOrganizations.put(dynamicQueueId, organizationId);
+        }
+        return organizationId;
+    }
+
+    /**
+     * Build a ranking from its Queues, with the loads of the live queues already loaded and the stored
+     * loads of the others. An organization without Queues is ranked empty, so it is not read again.
+     */
+    private void build(long organizationId) {
+        log.debug("Building the queue ranking of organization {}", organizationId);
+        queueRankings.putIfAbsent(organizationId, rank(queueRepository.findByOrganizationIdAndDynamicInfoIsNotNull(organizationId)));
+    }
+
+    /**
+     * Build the global shards not built yet from all the Queues. A shard without Queues is ranked empty.
+     */
+    private void buildAllOrganizations() {
+        log.debug("Building the queue ranking of all organizations");
+        Map<Long, List<Queue>> queuesByShard = queueRepository.findByDynamicInfoIsNotNull().stream()
+            .collect(Collectors.groupingBy(queue -> globalShardOf(queue.getDynamicInfo().getId())));
+        for (Long shard : globalShards) {
+            queueRankings.putIfAbsent(shard, rank(queuesByShard.getOrDefault(shard, Collections.emptyList())));
+        }
+    }
+
+    private QueueRanking rank(List<Queue> queues) {
+        Set<Long> dynamicQueueIds = queues.stream().map(queue -> queue.getDynamicInfo().getId()).collect(Collectors.toSet());
+        long timestamp = System.currentTimeMillis();
+        Map<Long, Object> loads = dynamicQueueIds.isEmpty() ? Collections.emptyMap()
+            : liveQueues.executeOnKeys(dynamicQueueIds, new LoadProcessor());
+        QueueRanking built = new QueueRanking();
+        for (Queue queue : queues) {
+            DynamicQueue dynamicQueue = queue.getDynamicInfo();
+            int[] load = (int[]) loads.get(dynamicQueue.getId());
+            built.putQueue(queue.getId(), queue.getName(), dynamicQueue.getId(),
+                load == null ? numParticipantsOf(dynamicQueue) : load[0], timestamp);
+            queueOrganizations.put(dynamicQueue.getId(), queue.getOrganization() == null ? NO_ORGANIZATION : queue.getOrganization().getId());
+        }
+        return built;
+    }
+
+    private static int numParticipantsOf(DynamicQueue dynamicQueue) {
+        return dynamicQueue.getNumParticipants() == null ? 0 : dynamicQueue.getNumParticipants().intValue();
+    }
+}
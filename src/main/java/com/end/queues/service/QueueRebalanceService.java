@@ -0,0 +1,248 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.QueueBalanceDTO;
+import com.end.queues.service.dto.SiteRebalanceDTO;
+import com.end.queues.service.engine.LiveQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Service redistributing the participants waiting in the Queues of a site, when a service point opens.
+ *
+ * <p>
+ * A rebalance reads the number of participants of every Queue of the site from the live queues, and
+ * plans how many participants each Queue gives to each other one, so that they end up within one of
+ * each other, or so that a chosen Queue pulls the tails of the others up to its share. The room left
+ * under the maximum capacity of each Queue is respected, as read at the start.
+ * </p>
+ * <p>
+ * The participants given are taken from the tail of each giving queue in one entry processor, and
+ * appended to the tail of their lane in each receiving queue in another, both on the owners of the
+ * queues, so a rebalance costs a few calls per Queue whatever the number of participants moved. The
+ * rows of all the participants moved are then written in one JDBC batch, in one transaction, and
+ * queued for reindexing in the {@link SearchOutbox}. Like any other queue operation, the moves are
+ * journaled before the rows are written. If a step fails, the participants taken are put back in the
+ * queues they were taken from, at the positions they held, before the error is rethrown.
+ * </p>
+ */
+@Service
+@Transactional
+public class QueueRebalanceService {
+
+    private final Logger log = LoggerFactory.getLogger(QueueRebalanceService.class);
+
+    private final QueueRepository queueRepository;
+
+    private final SearchOutbox searchOutbox;
+
+    private final LiveQueueService liveQueueService;
+
+    private final LiveQueueRouter liveQueueRouter;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public QueueRebalanceService(QueueRepository queueRepository, SearchOutbox searchOutbox,
+            LiveQueueService liveQueueService, LiveQueueRouter liveQueueRouter, JdbcTemplate jdbcTemplate,
+            EntityManagerFactory entityManagerFactory) {
+        this.queueRepository = queueRepository;
+        this.searchOutbox = searchOutbox;
+        this.liveQueueService = liveQueueService;
+        this.liveQueueRouter = liveQueueRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Rebalance the participants waiting in the Queues of a site.
+     *
+     * @param site the site
+     * @param targetQueueId the id of the only Queue to move participants to, or null to even out all the
+     * Queues of the site
+     * @return the outcome, or an empty Optional if no Queue of the site has a DynamicQueue
+     */
+    public Optional<SiteRebalanceDTO> rebalance(String site, Long targetQueueId) {
+        log.debug("Request to rebalance site {} into Queue {}", site, targetQueueId);
+        List<Queue> queues = queueRepository.findBySite(site).stream()
+            .filter(queue -> queue.getDynamicInfo() != null)
+            .collect(Collectors.toList());
+        if (queues.isEmpty()) {
+            return Optional.empty();
+        }
+        int count = queues.size();
+        Long[] dynamicQueueIds = new Long[count];
+        int target = -1;
+        for (int i = 0; i < count; i++) {
+            dynamicQueueIds[i] = queues.get(i).getDynamicInfo().getId();
+            if (queues.get(i).getId().equals(targetQueueId)) {
+                target = i;
+            }
+        }
+        Map<Long, int[]> loads = liveQueueService.getLoads(Arrays.asList(dynamicQueueIds));
+        int[] sizes = new int[count];
+        int[] rooms = new int[count];
+        for (int i = 0; i < count; i++) {
+            int[] load = loads.get(dynamicQueueIds[i]);
+            sizes[i] = load == null ? 0 : load[0];
+            rooms[i] = load == null ? 0 : load[1];
+        }
+        int[][] moves = plan(sizes, rooms, target);
+
+        // Take from the giving queues, keeping the serving order of each one
+        List<List<long[]>> received = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            received.add(new ArrayList<>());
+        }
+        int[] after = sizes.clone();
+        List<Object[]> batch = new ArrayList<>();
+        List<Long> movedIds = new ArrayList<>();
+        int appending = -1;
+        int appended = -1;
+        try {
+            for (int donor = 0; donor < count; donor++) {
+                int given = 0;
+                for (int receiver = 0; receiver < count; receiver++) {
+                    given += moves[donor][receiver];
+                }
+                if (given == 0) {
+                    continue;
+                }
+                long[][] taken = liveQueueRouter.takeTail(dynamicQueueIds[donor], given);
+                long[] participantIds = taken[0];
+                after[donor] -= participantIds.length;
+                int next = participantIds.length - 1;
+                for (int receiver = 0; receiver < count && next >= 0; receiver++) {
+                    for (int n = 0; n < moves[donor][receiver] && next >= 0; n++, next--) {
+                        received.get(receiver).add(new long[] { participantIds[next], taken[1][next], donor });
+                    }
+                }
+            }
+
+            // Append to the receiving queues, then move the rows in one batch
+            for (int receiver = 0; receiver < count; receiver++) {
+                List<long[]> participants = received.get(receiver);
+                if (participants.isEmpty()) {
+                    continue;
+                }
+                long[] participantIds = new long[participants.size()];
+                int[] lanes = new int[participants.size()];
+                for (int i = 0; i < participantIds.length; i++) {
+                    participantIds[i] = participants.get(i)[0];
+                    lanes[i] = LiveQueue.laneOf(participants.get(i)[1]);
+                }
+                appending = receiver;
+                long[] positions = liveQueueRouter.append(dynamicQueueIds[receiver], participantIds, lanes);
+                appended = receiver;
+                after[receiver] += participantIds.length;
+                for (int i = 0; i < participantIds.length; i++) {
+                    batch.add(new Object[] { dynamicQueueIds[receiver], positions[i], LiveQueue.laneOf(positions[i]), participantIds[i] });
+                    movedIds.add(participantIds[i]);
+                }
+            }
+            if (!batch.isEmpty()) {
+                log.debug("Moving {} participants of site {}", batch.size(), site);
+                jdbcTemplate.batchUpdate("update participant set dynamic_queue_id = ?, position = ?, priority = ? where id = ?", batch);
+                movedIds.forEach(participantId -> entityManagerFactory.getCache().evict(Participant.class, participantId));
+                searchOutbox.index(Participant.class, movedIds);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Rebalance of site {} failed, putting the participants back: {}", site, e.getMessage());
+            putBack(dynamicQueueIds, received, appending, appended);
+            throw e;
+        }
+
+        List<QueueBalanceDTO> balances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            balances.add(new QueueBalanceDTO(queues.get(i).getId(), dynamicQueueIds[i], sizes[i], after[i]));
+        }
+        return Optional.of(new SiteRebalanceDTO(site, movedIds.size(), balances));
+    }
+
+    /**
+     * Put the participants taken by a failed rebalance back in the queues they were taken from, at the
+     * positions they held, the way a failed transfer does. Those appended to a receiving queue are taken
+     * out of it first, and those it served meanwhile are left there. The append that failed may or may
+     * not have placed its participants, so they are taken out of its queue if they are found there.
+     *
+     * @param dynamicQueueIds the ids of the DynamicQueues of the site
+     * @param received the participants taken for each receiving queue, with their positions and giving queues
+     * @param appending the index of the last receiving queue an append was started on, or -1
+     * @param appended the index of the last receiving queue they were appended to, or -1
+     */
+    private void putBack(Long[] dynamicQueueIds, List<List<long[]>> received, int appending, int appended) {
+        for (int receiver = 0; receiver < received.size(); receiver++) {
+            for (long[] participant : received.get(receiver)) {
+                try {
+                    if (receiver <= appended) {
+                        if (!liveQueueRouter.transferOut(participant[0], dynamicQueueIds[receiver]).isPresent()) {
+                            continue;
+                        }
+                    } else if (receiver == appending) {
+                        liveQueueRouter.transferOut(participant[0], dynamicQueueIds[receiver]);
+                    }
+                    liveQueueRouter.transferBack(participant[0], dynamicQueueIds[(int) participant[2]], participant[1]);
+                } catch (RuntimeException e) {
+                    log.error("Could not put Participant {} back in DynamicQueue {}", participant[0],
+                        dynamicQueueIds[(int) participant[2]], e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plan the participants each queue gives to each other one. The largest giving queue repeatedly gives
+     * half of its lead to the smallest receiving queue with room left, so the plan ends when they are
+     * within one of each other, or when no receiving queue has room left.
+     *
+     * @param sizes the number of participants of each queue
+     * @param rooms the room left under the maximum capacity of each queue
+     * @param target the index of the only receiving queue, which gives nothing, or -1 if all the queues
+     * give and receive
+     * @return the number of participants to move, by giving queue and receiving queue
+     */
+    static int[][] plan(int[] sizes, int[] rooms, int target) {
+        int count = sizes.length;
+        int[] size = sizes.clone();
+        int[] room = rooms.clone();
+        int[][] moves = new int[count][count];
+        while (true) {
+            int donor = -1;
+            int receiver = -1;
+            for (int i = 0; i < count; i++) {
+                if (i != target && (donor < 0 || size[i] > size[donor])) {
+                    donor = i;
+                }
+                if ((target < 0 || i == target) && room[i] > 0 && (receiver < 0 || size[i] < size[receiver])) {
+                    receiver = i;
+                }
+            }
+            if (donor < 0 || receiver < 0 || donor == receiver) {
+                return moves;
+            }
+            int moved = Math.min((size[donor] - size[receiver]) / 2, room[receiver]);
+            if (moved <= 0) {
+                return moves;
+            }
+            moves[donor][receiver] += moved;
+            size[donor] -= moved;
+            size[receiver] += moved;
+            room[receiver] -= moved;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.OrganizationDailyStatsDTO;
+import com.end.queues.service.dto.SiteDailyStatsDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service maintaining the daily rollups of the queue activity, and reading them for the reports.
+ *
+ * <p>
+ * The rollups are the organization_daily_stats and site_daily_stats tables, one row per organization or
+ * site and UTC day. They are kept up to date incrementally: every batch of hours drained from the live
+ * queues by the {@link QueueHourlyCounts} is added to them as it is written, each DynamicQueue counting
+ * for the organization and the site of its Queue at that time. The reports only ever read the rollups,
+ * so they never touch the participant or queue tables.
+ * </p>
+ * <p>
+ * The mean wait of a day is the time waited by all participants, the length of the queues integrated
+ * over the day, divided by the arrivals, by Little's law: participants have no join time to average.
+ * The peak length of a site is the longest any of its Queues got.
+ * </p>
+ * <p>
+ * The Queues of a site or an organization are flushed by several members, which may all find the row of
+ * a new day missing and insert it. The inserts run behind a savepoint, so the members losing the race
+ * only roll back to it, and add to the row inserted by the winner instead.
+ * </p>
+ */
+@Service
+@Transactional
+public class QueueRollupService {
+
+    /**
+     * The longest report, in days.
+     */
+    public static final int MAX_DAYS = 366;
+
+    private static final int HOURS_PER_DAY = 24;
+
+    private static final int MAX_UPSERT_ATTEMPTS = 3;
+
+    private final Logger log = LoggerFactory.getLogger(QueueRollupService.class);
+
+    private final QueueRepository queueRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public QueueRollupService(QueueRepository queueRepository, JdbcTemplate jdbcTemplate) {
+        this.queueRepository = queueRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Add hours drained from the live queues to the daily rollups of their organizations and sites.
+     *
+     * @param hoursByDynamicQueue the hours of each dynamicQueue, as returned by
+     * {@link com.end.queues.service.engine.MinuteSeries#drainHours()}
+     */
+    public void add(Map<Long, long[][]> hoursByDynamicQueue) {
+        if (hoursByDynamicQueue.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<LocalDate, long[]>> byOrganization = new HashMap<>();
+        Map<String, Map<LocalDate, long[]>> bySite = new HashMap<>();
+        for (Queue queue : queueRepository.findByDynamicInfoIdIn(hoursByDynamicQueue.keySet())) {
+            long[][] hours = hoursByDynamicQueue.get(queue.getDynamicInfo().getId());
+            for (int i = 0; i < hours[0].length; i++) {
+                LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(hours[0][i], HOURS_PER_DAY));
+                if (queue.getOrganization() != null) {
+                    long[] row = byOrganization.computeIfAbsent(queue.getOrganization().getId(), id -> new HashMap<>())
+                        .computeIfAbsent(day, d -> new long[3]);
+                    row[0] += hours[1][i];
+                    row[1] += hours[2][i];
+                    row[2] += hours[4][i];
+                }
+                if (queue.getSite() != null) {
+                    long[] row = bySite.computeIfAbsent(queue.getSite(), site -> new HashMap<>())
+                        .computeIfAbsent(day, d -> new long[3]);
+                    row[0] += hours[1][i];
+                    row[1] += hours[2][i];
+                    row[2] = Math.max(row[2], hours[3][i]);
+                }
+            }
+        }
+
+        List<Object[]> organizationBatch = new ArrayList<>();
+        byOrganization.forEach((organizationId, days) -> days.forEach((day, row) ->
+            organizationBatch.add(new Object[] { row[0], row[1], row[2], organizationId, Date.valueOf(day) })));
+        upsert("update organization_daily_stats set arrivals = arrivals + ?, serves = serves + ?, wait_millis = wait_millis + ? " +
+            "where organization_id = ? and day_start = ?",
+            "insert into organization_daily_stats (arrivals, serves, wait_millis, organization_id, day_start) values (?, ?, ?, ?, ?)",
+            organizationBatch);
+
+        List<Object[]> siteBatch = new ArrayList<>();
+        bySite.forEach((site, days) -> days.forEach((day, row) ->
+            siteBatch.add(new Object[] { row[0], row[1], (int) row[2], site, Date.valueOf(day) })));
+        upsert("update site_daily_stats set arrivals = arrivals + ?, serves = serves + ?, peak_length = greatest(peak_length, ?) " +
+            "where site = ? and day_start = ?",
+            "insert into site_daily_stats (arrivals, serves, peak_length, site, day_start) values (?, ?, ?, ?, ?)",
+            siteBatch);
+        log.debug("Rolled up {} organization days and {} site days", organizationBatch.size(), siteBatch.size());
+    }
+
+    /**
+     * Get the daily activity of the Queues of an organization.
+     *
+     * @param organizationId the id of the organization
+     * @param from the first day, in UTC
+     * @param to the last day, in UTC
+     * @return the days with activity, oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<OrganizationDailyStatsDTO> getOrganizationDays(Long organizationId, LocalDate from, LocalDate to) {
+        log.debug("Request to get the days of organization {} from {} to {}", organizationId, from, to);
+        return jdbcTemplate.query("select day_start, arrivals, serves, wait_millis from organization_daily_stats " +
+            "where organization_id = ? and day_start between ? and ? order by day_start",
+            (rs, rowNum) -> {
+                long arrivals = rs.getLong("arrivals");
+                return new OrganizationDailyStatsDTO(organizationId, rs.getDate("day_start").toLocalDate(), arrivals,
+                    rs.getLong("serves"), arrivals == 0 ? null : rs.getLong("wait_millis") / arrivals / 1000);
+            },
+            organizationId, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Get the daily activity of the Queues of a site.
+     *
+     * @param site the site
+     * @param from the first day, in UTC
+     * @param to the last day, in UTC
+     * @return the days with activity, oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<SiteDailyStatsDTO> getSiteDays(String site, LocalDate from, LocalDate to) {
+        log.debug("Request to get the days of site {} from {} to {}", site, from, to);
+        return jdbcTemplate.query("select day_start, arrivals, serves, peak_length from site_daily_stats " +
+            "where site = ? and day_start between ? and ? order by day_start",
+            (rs, rowNum) -> new SiteDailyStatsDTO(site, rs.getDate("day_start").toLocalDate(), rs.getLong("arrivals"),
+                rs.getLong("serves"), rs.getInt("peak_length")),
+            site, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Add to the existing rows in one batch, then insert the missing ones in another. If another member
+     * inserted one of them meanwhile, the inserts are rolled back and added to the rows found.
+     */
+    private void upsert(String update, String insert, List<Object[]> batch) {
+        List<Object[]> pending = batch;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            int[] counts = jdbcTemplate.batchUpdate(update, pending);
+            List<Object[]> inserts = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    inserts.add(pending.get(i));
+                }
+            }
+            if (inserts.isEmpty() || insertAll(insert, inserts, attempt == MAX_UPSERT_ATTEMPTS)) {
+                return;
+            }
+            log.debug("Rollup rows inserted concurrently, adding to them");
+            pending = inserts;
+        }
+    }
+
+    /**
+     * Insert rows in one batch behind a savepoint of the current transaction.
+     *
+     * @return false if one of the rows already existed, after rolling back to the savepoint
+     */
+    private boolean insertAll(String insert, List<Object[]> inserts, boolean lastAttempt) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                jdbcTemplate.batchUpdate(insert, inserts);
+            } catch (DuplicateKeyException e) {
+                connection.rollback(savepoint);
+                if (lastAttempt) {
+                    throw e;
+                }
+                return false;
+            }
+            connection.releaseSavepoint(savepoint);
+            return true;
+        });
+    }
+}
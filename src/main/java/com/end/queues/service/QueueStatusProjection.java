@@ -0,0 +1,205 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.Admin;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Location;
+import com.end.queues.domain.Organization;
+import com.end.queues.domain.Queue;
+import com.end.queues.domain.QueueStatus;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+
+/**
+ * Service building the {@link QueueStatus} documents, which embed a Queue with its dynamicQueue, its
+ * locations, its manager and its organization so that one search renders whole queue cards.
+ *
+ * <p>
+ * The statuses are kept current by the {@link SearchIndexer}: once it has indexed a change of one of the
+ * embedded entities, it asks for the Queues embedding it and records a change of their status in the
+ * outbox, which is indexed on the next drain from the database as it is then. A Queue embeds its
+ * dynamicQueue, manager and organization through its own columns, so their Queues are found in the
+ * database. A location may have left its Queue, or been deleted, so its previous Queue is also found
+ * through the statuses already indexed.
+ * </p>
+ */
+@Service
+@Transactional(readOnly = true)
+public class QueueStatusProjection {
+
+    /**
+     * The type of the outbox changes of the statuses.
+     */
+    static final String TYPE = QueueStatus.class.getSimpleName();
+
+    /**
+     * For each entity embedded in the statuses, the query of the ids of the Queues embedding some of them.
+     */
+    private static final Map<String, String> QUEUES_EMBEDDING = new HashMap<>();
+
+    static {
+        QUEUES_EMBEDDING.put(Queue.class.getSimpleName(),
+            "select queue.id from Queue queue where queue.id in :ids");
+        QUEUES_EMBEDDING.put(DynamicQueue.class.getSimpleName(),
+            "select queue.id from Queue queue where queue.dynamicInfo.id in :ids");
+        QUEUES_EMBEDDING.put(Admin.class.getSimpleName(),
+            "select queue.id from Queue queue where queue.manager.id in :ids");
+        QUEUES_EMBEDDING.put(Organization.class.getSimpleName(),
+            "select queue.id from Queue queue where queue.organization.id in :ids");
+        QUEUES_EMBEDDING.put(Location.class.getSimpleName(),
+            "select location.queue.id from Location location where location.id in :ids and location.queue is not null");
+    }
+
+    private final Logger log = LoggerFactory.getLogger(QueueStatusProjection.class);
+
+    private final EntityManager entityManager;
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+
+    private final SearchOutbox searchOutbox;
+
+    public QueueStatusProjection(EntityManager entityManager, ElasticsearchTemplate elasticsearchTemplate, SearchOutbox searchOutbox) {
+        this.entityManager = entityManager;
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.searchOutbox = searchOutbox;
+    }
+
+    /**
+     * Whether the statuses embed the entities of a type.
+     *
+     * @param entityType the name of the entity
+     * @return true if a change of such an entity changes statuses
+     */
+    public boolean embeds(String entityType) {
+        return QUEUES_EMBEDDING.containsKey(entityType);
+    }
+
+    /**
+     * The Queues whose status embeds, or embedded, some entities.
+     *
+     * @param entityType the name of the entities, which the statuses embed
+     * @param ids the ids of the entities
+     * @return the ids of the Queues
+     */
+    public Set<Long> queuesEmbedding(String entityType, Collection<Long> ids) {
+        Set<Long> queueIds = new LinkedHashSet<>(entityManager.createQuery(QUEUES_EMBEDDING.get(entityType), Long.class)
+            .setParameter("ids", ids)
+            .getResultList());
+        if (entityType.equals(Queue.class.getSimpleName())) {
+            // A deleted Queue still has a status to delete
+            queueIds.addAll(ids);
+        } else if (entityType.equals(Location.class.getSimpleName())) {
+            queueIds.addAll(statusesEmbedding("locations.id", ids));
+        }
+        return queueIds;
+    }
+
+    /**
+     * The current statuses of some Queues.
+     *
+     * @param queueIds the ids of the Queues
+     * @return the statuses of the Queues still existing, by id
+     */
+    public Map<Long, QueueStatus> load(Collection<Long> queueIds) {
+        Map<Long, QueueStatus> statuses = new HashMap<>();
+        for (Queue queue : entityManager.createQuery("select queue from Queue queue left join fetch queue.dynamicInfo"
+                + " left join fetch queue.manager left join fetch queue.organization where queue.id in :ids", Queue.class)
+                .setParameter("ids", queueIds)
+                .getResultList()) {
+            statuses.put(queue.getId(), toStatus(queue));
+        }
+        for (Location location : entityManager.createQuery("select location from Location location"
+                + " where location.queue.id in :ids order by location.id", Location.class)
+                .setParameter("ids", queueIds)
+                .getResultList()) {
+            statuses.get(location.getQueue().getId()).getLocations().add(toAddress(location));
+        }
+        return statuses;
+    }
+
+    /**
+     * Record a change of the status of every Queue, so that all the statuses are rebuilt by the indexer.
+     *
+     * @return the number of statuses to rebuild
+     */
+    @Transactional
+    public int rebuild() {
+        List<Long> queueIds = entityManager.createQuery("select queue.id from Queue queue", Long.class).getResultList();
+        searchOutbox.index(QueueStatus.class, queueIds);
+        log.info("Rebuilding the status of {} Queues", queueIds.size());
+        return queueIds.size();
+    }
+
+    private Set<Long> statusesEmbedding(String field, Collection<Long> ids) {
+        ElasticsearchPersistentEntity<?> document = elasticsearchTemplate.getPersistentEntityFor(QueueStatus.class);
+        // An entity is embedded in one status, but for a status not rebuilt yet
+        SearchResponse response = elasticsearchTemplate.getClient().prepareSearch(document.getIndexName())
+            .setTypes(document.getIndexType())
+            .setQuery(termsQuery(field, ids))
+            .setSize(2 * ids.size())
+            .setFetchSource(false)
+            .get();
+        Set<Long> queueIds = new LinkedHashSet<>();
+        for (SearchHit hit : response.getHits()) {
+            queueIds.add(Long.valueOf(hit.getId()));
+        }
+        return queueIds;
+    }
+
+    private static QueueStatus toStatus(Queue queue) {
+        QueueStatus status = new QueueStatus();
+        status.setId(queue.getId());
+        status.setName(queue.getName());
+        status.setDesc(queue.getDesc());
+        status.setMaxCapacity(queue.getMaxCapacity());
+        status.setSite(queue.getSite());
+        if (queue.getDynamicInfo() != null) {
+            status.setDynamicQueueId(queue.getDynamicInfo().getId());
+            status.setNumParticipants(queue.getDynamicInfo().getNumParticipants());
+            status.setRate(queue.getDynamicInfo().getRate());
+            status.setServingPolicy(queue.getDynamicInfo().getServingPolicy());
+        }
+        if (queue.getManager() != null) {
+            status.setManagerId(queue.getManager().getId());
+            status.setManagerName(fullName(queue.getManager().getFirstName(), queue.getManager().getLastName()));
+        }
+        if (queue.getOrganization() != null) {
+            status.setOrganizationId(queue.getOrganization().getId());
+            status.setOrganizationName(queue.getOrganization().getName());
+        }
+        return status;
+    }
+
+    private static QueueStatus.Address toAddress(Location location) {
+        QueueStatus.Address address = new QueueStatus.Address();
+        address.setId(location.getId());
+        address.setStreetAddress(location.getStreetAddress());
+        address.setPostalCode(location.getPostalCode());
+        address.setCity(location.getCity());
+        address.setStateProvince(location.getStateProvince());
+        return address;
+    }
+
+    private static String fullName(String firstName, String lastName) {
+        if (firstName == null) {
+            return lastName;
+        }
+        return lastName == null ? firstName : firstName + " " + lastName;
+    }
+}
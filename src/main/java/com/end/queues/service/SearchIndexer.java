@@ -0,0 +1,324 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.QueueStatus;
+import com.end.queues.domain.SearchOutboxEntry;
+import com.end.queues.repository.SearchOutboxRepository;
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.EntityType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service draining the {@link SearchOutbox} into Elasticsearch, in bulk requests.
+ *
+ * <p>
+ * Every {@code application.search.indexer-delay-ms}, the oldest changes of the outbox, up to
+ * {@code indexer-batch-size}, are read in order. The last change of each entity wins: the entities still
+ * existing are read back from the database in one query per entity and indexed as they are now, the
+ * others are deleted from their index, all in a single bulk request. The changes applied are then
+ * removed from the outbox. A change rejected by Elasticsearch stays in the outbox and is tried again on
+ * the next drain, with the later changes of its entity, up to {@code indexer-max-attempts} times. While
+ * Elasticsearch is unavailable, the changes simply wait.
+ * </p>
+ * <p>
+ * Since documents are always built from the current state of their entity, a change indexed late or
+ * twice never leaves an older document behind. The drain holds a cluster-wide lock around its whole
+ * transaction, released only once the outbox deletes are committed, so a single member drains at a time
+ * and two drains never race on the same entity. While the index of an entity is rebuilt by the
+ * {@link SearchReindexer}, which holds the reindex lock of that entity, its changes are left in the outbox
+ * and the other entities keep being drained. The time the oldest change of the outbox has been
+ * waiting is exposed on every member as the {@code lag} gauge, in milliseconds.
+ * </p>
+ * <p>
+ * The {@link QueueStatus} documents are not entities: a change indexed for an entity they embed records
+ * a change of the statuses embedding it, see {@link QueueStatusProjection}, and those are built by the
+ * projection on the next drain.
+ * </p>
+ */
+@Service
+public class SearchIndexer {
+
+    static final String LOCK = "searchIndexer";
+
+    private static final long LOCK_WAIT_SECONDS = 5;
+
+    private static final long LAG_CACHE_SECONDS = 1;
+
+    private final Logger log = LoggerFactory.getLogger(SearchIndexer.class);
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final SearchOutboxRepository searchOutboxRepository;
+
+    private final SearchOutbox searchOutbox;
+
+    private final QueueStatusProjection queueStatusProjection;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+
+    private final EntityMapper entityMapper;
+
+    private final ILock lock;
+
+    private final Map<String, Class<?>> documentClasses = new HashMap<>();
+
+    private final Map<String, ILock> reindexLocks = new HashMap<>();
+
+    private final Meter indexed;
+
+    private final Meter failed;
+
+    public SearchIndexer(ApplicationProperties applicationProperties, SearchOutboxRepository searchOutboxRepository,
+            SearchOutbox searchOutbox, QueueStatusProjection queueStatusProjection, EntityManager entityManager,
+            PlatformTransactionManager transactionManager, ElasticsearchTemplate elasticsearchTemplate, EntityMapper entityMapper,
+            HazelcastInstance hazelcastInstance, MetricRegistry metricRegistry) {
+        this.batchSize = applicationProperties.getSearch().getIndexerBatchSize();
+        this.maxAttempts = applicationProperties.getSearch().getIndexerMaxAttempts();
+        this.searchOutboxRepository = searchOutboxRepository;
+        this.searchOutbox = searchOutbox;
+        this.queueStatusProjection = queueStatusProjection;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.entityMapper = entityMapper;
+        this.lock = hazelcastInstance.getLock(LOCK);
+        for (EntityType<?> entityType : entityManager.getMetamodel().getEntities()) {
+            if (entityType.getJavaType().isAnnotationPresent(Document.class)) {
+                documentClasses.put(entityType.getName(), entityType.getJavaType());
+                reindexLocks.put(entityType.getName(), hazelcastInstance.getLock(reindexLock(entityType.getName())));
+            }
+        }
+        documentClasses.put(QueueStatusProjection.TYPE, QueueStatus.class);
+        this.indexed = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "indexed"));
+        this.failed = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "failed"));
+        metricRegistry.register(MetricRegistry.name(SearchIndexer.class, "lag"), new CachedGauge<Long>(LAG_CACHE_SECONDS, TimeUnit.SECONDS) {
+            @Override
+            protected Long loadValue() {
+                return getLagMillis();
+            }
+        });
+    }
+
+    /**
+     * Index the oldest changes of the outbox.
+     *
+     * @return the number of entities indexed or deleted
+     */
+    @Scheduled(fixedDelayString = "${application.search.indexer-delay-ms}")
+    public int drain() {
+        try {
+            if (!lock.tryLock(LOCK_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        try {
+            List<String> reindexed = new ArrayList<>();
+            reindexLocks.forEach((entityType, reindexLock) -> {
+                if (reindexLock.isLocked()) {
+                    reindexed.add(entityType);
+                }
+            });
+            return transactionTemplate.execute(status -> {
+                List<SearchOutboxEntry> entries = reindexed.isEmpty()
+                    ? searchOutboxRepository.findOldest(new PageRequest(0, batchSize))
+                    : searchOutboxRepository.findOldestExcept(reindexed, new PageRequest(0, batchSize));
+                return entries.isEmpty() ? 0 : index(entries);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The name of the lock held while the index of an entity is rebuilt.
+     *
+     * @param entityType the name of the entity
+     * @return the name of the lock
+     */
+    static String reindexLock(String entityType) {
+        return LOCK + "." + entityType;
+    }
+
+    /**
+     * The time the oldest change of the outbox has been waiting, whichever member drains it.
+     *
+     * @return the lag, in milliseconds, or 0 if the outbox is empty
+     */
+    public long getLagMillis() {
+        Instant oldest = searchOutboxRepository.findOldestCreatedAt();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.toEpochMilli());
+    }
+
+    private int index(List<SearchOutboxEntry> entries) {
+        // The changes of each entity, in outbox order
+        Map<String, Map<Long, List<SearchOutboxEntry>>> changes = new LinkedHashMap<>();
+        for (SearchOutboxEntry entry : entries) {
+            changes.computeIfAbsent(entry.getEntityType(), entityType -> new LinkedHashMap<>())
+                .computeIfAbsent(entry.getEntityId(), entityId -> new ArrayList<>())
+                .add(entry);
+        }
+        Client client = elasticsearchTemplate.getClient();
+        BulkRequestBuilder bulk = client.prepareBulk();
+        List<List<SearchOutboxEntry>> items = new ArrayList<>();
+        List<SearchOutboxEntry> dropped = new ArrayList<>();
+        changes.forEach((entityType, byId) -> {
+            Class<?> documentClass = documentClasses.get(entityType);
+            if (documentClass == null) {
+                log.warn("Dropping the changes of {}, which is not indexed", entityType);
+                byId.values().forEach(dropped::addAll);
+                return;
+            }
+            ElasticsearchPersistentEntity<?> document = elasticsearchTemplate.getPersistentEntityFor(documentClass);
+            List<Long> updatedIds = new ArrayList<>();
+            byId.forEach((entityId, entityChanges) -> {
+                if (!entityChanges.get(entityChanges.size() - 1).isDeleted()) {
+                    updatedIds.add(entityId);
+                }
+            });
+            Map<Long, Object> entities = load(entityType, documentClass, updatedIds);
+            byId.forEach((entityId, entityChanges) -> {
+                Object entity = entities.get(entityId);
+                if (entity == null) {
+                    bulk.add(client.prepareDelete(document.getIndexName(), document.getIndexType(), entityId.toString()));
+                } else {
+                    bulk.add(client.prepareIndex(document.getIndexName(), document.getIndexType(), entityId.toString())
+                        .setSource(toJson(entity)));
+                }
+                items.add(entityChanges);
+            });
+        });
+
+        List<Long> done = new ArrayList<>();
+        List<SearchOutboxEntry> applied = new ArrayList<>();
+        List<SearchOutboxEntry> retried = new ArrayList<>();
+        if (bulk.numberOfActions() > 0) {
+            try {
+                BulkResponse response = bulk.get();
+                BulkItemResponse[] responses = response.getItems();
+                for (int i = 0; i < responses.length; i++) {
+                    if (responses[i].isFailed()) {
+                        retried.addAll(items.get(i));
+                    } else {
+                        applied.addAll(items.get(i));
+                    }
+                }
+                if (response.hasFailures()) {
+                    log.warn("Could not index some changes: {}", response.buildFailureMessage());
+                }
+            } catch (ElasticsearchException e) {
+                // Elasticsearch is unavailable: the changes wait for it without counting as attempts
+                log.warn("Could not index {} changes: {}", entries.size(), e.getMessage());
+                items.clear();
+            }
+        }
+        indexed.mark(items.size() - retried.size());
+        applied.forEach(entry -> done.add(entry.getId()));
+        updateQueueStatuses(applied);
+
+        List<Long> retriedIds = new ArrayList<>();
+        for (SearchOutboxEntry entry : retried) {
+            if (entry.getAttempts() + 1 >= maxAttempts) {
+                dropped.add(entry);
+            } else {
+                retriedIds.add(entry.getId());
+            }
+        }
+        if (!retriedIds.isEmpty()) {
+            failed.mark(retriedIds.size());
+            searchOutboxRepository.incrementAttempts(retriedIds);
+        }
+        if (!dropped.isEmpty()) {
+            log.error("Dropping {} changes that could not be indexed, the first one {}", dropped.size(), dropped.get(0));
+            dropped.forEach(entry -> done.add(entry.getId()));
+        }
+        if (!done.isEmpty()) {
+            searchOutboxRepository.deleteByIds(done);
+        }
+        log.debug("Indexed {} changes, {} to retry", done.size(), retriedIds.size());
+        return items.size() - retried.size();
+    }
+
+    /**
+     * Record a change of the statuses embedding the entities just indexed.
+     */
+    private void updateQueueStatuses(List<SearchOutboxEntry> applied) {
+        Map<String, Set<Long>> embedded = new HashMap<>();
+        for (SearchOutboxEntry entry : applied) {
+            if (queueStatusProjection.embeds(entry.getEntityType())) {
+                embedded.computeIfAbsent(entry.getEntityType(), entityType -> new LinkedHashSet<>()).add(entry.getEntityId());
+            }
+        }
+        Set<Long> queueIds = new LinkedHashSet<>();
+        embedded.forEach((entityType, ids) -> queueIds.addAll(queueStatusProjection.queuesEmbedding(entityType, ids)));
+        searchOutbox.index(QueueStatus.class, queueIds);
+    }
+
+    private Map<Long, Object> load(String entityType, Class<?> documentClass, List<Long> ids) {
+        Map<Long, Object> entities = new HashMap<>();
+        if (ids.isEmpty()) {
+            return entities;
+        }
+        if (entityType.equals(QueueStatusProjection.TYPE)) {
+            entities.putAll(queueStatusProjection.load(ids));
+            return entities;
+        }
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        for (Object entity : entityManager.createQuery("select entity from " + entityType + " entity where entity.id in :ids", documentClass)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            entities.put((Long) persistenceUnitUtil.getIdentifier(entity), entity);
+        }
+        return entities;
+    }
+
+    private String toJson(Object entity) {
+        try {
+            return entityMapper.mapToString(entity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
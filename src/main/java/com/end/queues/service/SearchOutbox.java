@@ -0,0 +1,86 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.SearchOutboxEntry;
+import com.end.queues.repository.SearchOutboxRepository;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Service recording the entity changes to apply to Elasticsearch, in the transaction of the change.
+ *
+ * <p>
+ * Writing an entity never calls Elasticsearch: the change is added to the search_outbox table instead,
+ * in the same transaction as the entity when there is one, and the {@link SearchIndexer} indexes it
+ * shortly after in a bulk request. Only the entity and its id are recorded, the document is built from
+ * the entity as it is when indexed.
+ * </p>
+ */
+@Service
+@Transactional
+public class SearchOutbox {
+
+    private final SearchOutboxRepository searchOutboxRepository;
+
+    public SearchOutbox(SearchOutboxRepository searchOutboxRepository) {
+        this.searchOutboxRepository = searchOutboxRepository;
+    }
+
+    /**
+     * Record that an entity was created or updated.
+     *
+     * @param entityClass the class of the entity
+     * @param id the id of the entity
+     */
+    public void index(Class<?> entityClass, Long id) {
+        record(entityClass, Collections.singleton(id), false);
+    }
+
+    /**
+     * Record that entities were created or updated.
+     *
+     * @param entityClass the class of the entities
+     * @param ids the ids of the entities
+     */
+    public void index(Class<?> entityClass, Collection<Long> ids) {
+        record(entityClass, ids, false);
+    }
+
+    /**
+     * Record that an entity was deleted.
+     *
+     * @param entityClass the class of the entity
+     * @param id the id of the entity
+     */
+    public void delete(Class<?> entityClass, Long id) {
+        record(entityClass, Collections.singleton(id), true);
+    }
+
+    /**
+     * Record that entities were deleted.
+     *
+     * @param entityClass the class of the entities
+     * @param ids the ids of the entities
+     */
+    public void delete(Class<?> entityClass, Collection<Long> ids) {
+        record(entityClass, ids, true);
+    }
+
+    private void record(Class<?> entityClass, Collection<Long> ids, boolean deleted) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<SearchOutboxEntry> entries = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            entries.add(new SearchOutboxEntry(entityClass.getSimpleName(), id, deleted, now));
+        }
+        searchOutboxRepository.save(entries);
+    }
+}
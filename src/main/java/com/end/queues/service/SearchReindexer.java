@@ -0,0 +1,305 @@
+package com.end.queues.service;
+
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.service.dto.ReindexDTO;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.EntityType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Service rebuilding the Elasticsearch index of an entity from the database.
+ *
+ * <p>
+ * The index named after the entity is served through an alias. A reindex builds a fresh index next to
+ * it, with the mapping of the current one, no replicas and refresh turned off, and fills it from the
+ * rows of the entity: the range of ids is split across a {@link ForkJoinPool}, each task streaming its
+ * part through a forward-only cursor with {@code application.search.reindex-fetch-size} and sending a
+ * bulk request every {@code reindex-bulk-size} documents. Once every row is indexed, the replicas and
+ * refresh interval of the entity are restored and the alias is moved to the new index in one atomic
+ * request, then the previous index is deleted. A failed reindex deletes its index and leaves the alias
+ * as it was.
+ * </p>
+ * <p>
+ * A reindex holds the reindex lock of its entity, so two reindexes of an entity never run at once. The
+ * {@link SearchIndexer} leaves the changes of an entity being reindexed in the {@link SearchOutbox}, so
+ * they are applied to the new index once the alias is moved, while the changes of the other entities keep
+ * being drained. A drain that started before the lock was taken is waited for before reading the rows.
+ * </p>
+ */
+@Service
+public class SearchReindexer {
+
+    private final Logger log = LoggerFactory.getLogger(SearchReindexer.class);
+
+    private final int fetchSize;
+
+    private final int bulkSize;
+
+    private final int parallelism;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+
+    private final EntityMapper entityMapper;
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final ILock indexerLock;
+
+    private final Map<String, EntityType<?>> entityTypes = new HashMap<>();
+
+    public SearchReindexer(ApplicationProperties applicationProperties, EntityManager entityManager,
+            PlatformTransactionManager transactionManager, ElasticsearchTemplate elasticsearchTemplate, EntityMapper entityMapper,
+            HazelcastInstance hazelcastInstance) {
+        this.fetchSize = applicationProperties.getSearch().getReindexFetchSize();
+        this.bulkSize = applicationProperties.getSearch().getReindexBulkSize();
+        this.parallelism = applicationProperties.getSearch().getReindexParallelism();
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.entityMapper = entityMapper;
+        this.hazelcastInstance = hazelcastInstance;
+        this.indexerLock = hazelcastInstance.getLock(SearchIndexer.LOCK);
+        for (EntityType<?> entityType : entityManager.getMetamodel().getEntities()) {
+            if (entityType.getJavaType().isAnnotationPresent(Document.class)) {
+                entityTypes.put(elasticsearchTemplate.getPersistentEntityFor(entityType.getJavaType()).getIndexName(), entityType);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index of an entity from all its rows, and move its alias to it.
+     *
+     * @param name the name of the index of the entity
+     * @return the outcome, or an empty Optional if no entity is indexed under that name
+     */
+    public Optional<ReindexDTO> reindex(String name) {
+        EntityType<?> entityType = entityTypes.get(name);
+        if (entityType == null) {
+            return Optional.empty();
+        }
+        ElasticsearchPersistentEntity<?> document = elasticsearchTemplate.getPersistentEntityFor(entityType.getJavaType());
+        String alias = document.getIndexName();
+        String index = alias + "_" + System.currentTimeMillis();
+        IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+        ILock lock = hazelcastInstance.getLock(SearchIndexer.reindexLock(entityType.getName()));
+        lock.lock();
+        try {
+            // The drains starting from now leave the changes of the entity in the outbox
+            indexerLock.lock();
+            indexerLock.unlock();
+            long start = System.currentTimeMillis();
+            log.info("Reindexing {} into {}", alias, index);
+            createIndex(index, document);
+            long documents;
+            try {
+                documents = load(entityType, document, index);
+                indices.prepareUpdateSettings(index).setSettings(Settings.settingsBuilder()
+                    .put("index.number_of_replicas", document.getReplicas())
+                    .put("index.refresh_interval", document.getRefreshInterval())).get();
+                indices.prepareRefresh(index).get();
+            } catch (RuntimeException e) {
+                log.error("Could not reindex {}, keeping the current index: {}", alias, e.getMessage());
+                indices.prepareDelete(index).get();
+                throw e;
+            }
+            moveAlias(alias, index);
+            long tookMillis = System.currentTimeMillis() - start;
+            log.info("Reindexed {} documents of {} in {} ms", documents, alias, tookMillis);
+            return Optional.of(new ReindexDTO(alias, index, documents, tookMillis));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void createIndex(String index, ElasticsearchPersistentEntity<?> document) {
+        String alias = document.getIndexName();
+        String type = document.getIndexType();
+        CreateIndexRequestBuilder request = elasticsearchTemplate.getClient().admin().indices().prepareCreate(index)
+            .setSettings(Settings.settingsBuilder()
+                .put("index.number_of_shards", document.getShards())
+                .put("index.number_of_replicas", 0)
+                .put("index.refresh_interval", "-1"));
+        // Keep the mapping of the current index, if any, which may have been changed by hand
+        if (elasticsearchTemplate.indexExists(alias)) {
+            ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = elasticsearchTemplate.getClient().admin()
+                .indices().prepareGetMappings(alias).setTypes(type).get().getMappings();
+            if (!mappings.isEmpty() && mappings.iterator().next().value.containsKey(type)) {
+                try {
+                    request.addMapping(type, mappings.iterator().next().value.get(type).sourceAsMap());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        request.get();
+    }
+
+    /**
+     * Index all the rows of an entity in parallel, by range of ids.
+     *
+     * @return the number of documents indexed
+     */
+    private long load(EntityType<?> entityType, ElasticsearchPersistentEntity<?> document, String index) {
+        Object[] range = transactionTemplate.execute(status -> entityManager
+            .createQuery("select min(entity.id), max(entity.id) from " + entityType.getName() + " entity", Object[].class)
+            .getSingleResult());
+        if (range[0] == null) {
+            return 0;
+        }
+        long minId = (Long) range[0];
+        long maxId = (Long) range[1];
+        // A few ranges per thread, so that threads finishing early take over from the others
+        long span = Math.max(fetchSize, (maxId - minId + 1) / (parallelism * 4L));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new RangeTask(entityType, document, index, minId, maxId + 1, span));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void moveAlias(String alias, String index) {
+        IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+        ImmutableOpenMap<String, List<AliasMetaData>> current = indices.prepareGetAliases(alias).get().getAliases();
+        List<String> previousIndices = new ArrayList<>();
+        current.keysIt().forEachRemaining(previousIndices::add);
+        if (previousIndices.isEmpty() && elasticsearchTemplate.indexExists(alias)) {
+            // The first reindex replaces the index created under the name of the alias, which cannot be
+            // done atomically: searches fail until the alias is added
+            log.warn("Replacing the index {} by an alias", alias);
+            indices.prepareDelete(alias).get();
+            indices.prepareAliases().addAlias(index, alias).get();
+            return;
+        }
+        IndicesAliasesRequestBuilder request = indices.prepareAliases();
+        previousIndices.forEach(previousIndex -> request.removeAlias(previousIndex, alias));
+        request.addAlias(index, alias).get();
+        if (!previousIndices.isEmpty()) {
+            indices.prepareDelete(previousIndices.toArray(new String[previousIndices.size()])).get();
+        }
+    }
+
+    /**
+     * The indexing of the rows of a range of ids, split in halves until it spans at most {@code span} ids.
+     */
+    private class RangeTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final EntityType<?> entityType;
+
+        private final ElasticsearchPersistentEntity<?> document;
+
+        private final String index;
+
+        private final long fromId;
+
+        private final long toId;
+
+        private final long span;
+
+        RangeTask(EntityType<?> entityType, ElasticsearchPersistentEntity<?> document, String index, long fromId, long toId, long span) {
+            this.entityType = entityType;
+            this.document = document;
+            this.index = index;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.span = span;
+        }
+
+        @Override
+        protected Long compute() {
+            if (toId - fromId > span) {
+                long middle = fromId + (toId - fromId) / 2;
+                RangeTask lower = new RangeTask(entityType, document, index, fromId, middle, span);
+                RangeTask upper = new RangeTask(entityType, document, index, middle, toId, span);
+                invokeAll(lower, upper);
+                return lower.join() + upper.join();
+            }
+            return transactionTemplate.execute(status -> stream());
+        }
+
+        private long stream() {
+            Client client = elasticsearchTemplate.getClient();
+            Session session = entityManager.unwrap(Session.class);
+            PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+            long count = 0;
+            BulkRequestBuilder bulk = client.prepareBulk();
+            try (ScrollableResults rows = session
+                    .createQuery("select entity from " + entityType.getName() + " entity where entity.id >= :fromId and entity.id < :toId")
+                    .setParameter("fromId", fromId)
+                    .setParameter("toId", toId)
+                    .setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .setCacheMode(CacheMode.IGNORE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (rows.next()) {
+                    Object entity = rows.get(0);
+                    bulk.add(client.prepareIndex(index, document.getIndexType(), persistenceUnitUtil.getIdentifier(entity).toString())
+                        .setSource(entityMapper.mapToString(entity)));
+                    count++;
+                    if (bulk.numberOfActions() >= bulkSize) {
+                        send(bulk);
+                        bulk = client.prepareBulk();
+                        // Only the rows of the current bulk are kept in the session
+                        session.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (bulk.numberOfActions() > 0) {
+                send(bulk);
+            }
+            return count;
+        }
+
+        private void send(BulkRequestBuilder bulk) {
+            BulkResponse response = bulk.get();
+            if (response.hasFailures()) {
+                throw new IllegalStateException("Could not index the rows of " + entityType.getName() + ": " + response.buildFailureMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.end.queues.service;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.BestQueueDTO;
+import com.end.queues.service.engine.BestQueueProcessor;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LoadProcessor;
+import com.end.queues.service.engine.SiteLoadProcessor;
+import com.end.queues.service.engine.SiteQueueProcessor;
+import com.end.queues.service.engine.SiteWaits;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ReplicatedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The index of the Queues of each site by expected wait, answering which Queue an arriving participant
+ * should join.
+ *
+ * <p>
+ * The {@link SiteWaits} of each site are held in the Hazelcast map {@link #SITE_WAITS}, keyed by site,
+ * and changed by entry processors on the partition owner of the site. Every change of a live queue sends
+ * its new number of participants and rate without waiting for the answer, so the index is kept up to date
+ * by the joins and serves themselves, and the best Queue is read in O(log n) without loading any entity.
+ * The site of each dynamicQueue is held in the replicated map {@link #QUEUE_SITES}, read locally on every
+ * member.
+ * </p>
+ * <p>
+ * A site is built from the database the first time it is asked for. Queues created, changed or deleted
+ * afterwards are applied to it by the {@link com.end.queues.web.rest.QueueResource}, and deleted
+ * dynamicQueues by the {@link LiveQueueService}.
+ * </p>
+ */
+@Service
+public class SiteWaitIndex {
+
+    public static final String SITE_WAITS = "siteWaits";
+
+    public static final String QUEUE_SITES = "queueSites";
+
+    /**
+     * The site of a dynamicQueue serving no Queue, or a Queue without a site.
+     */
+    private static final String NO_SITE = "";
+
+    private final Logger log = LoggerFactory.getLogger(SiteWaitIndex.class);
+
+    private final IMap<String, SiteWaits> siteWaits;
+
+    private final ReplicatedMap<Long, String> queueSites;
+
+    private final IMap<Long, LiveQueue> liveQueues;
+
+    private final QueueRepository queueRepository;
+
+    public SiteWaitIndex(HazelcastInstance hazelcastInstance, QueueRepository queueRepository) {
+        this.siteWaits = hazelcastInstance.getMap(SITE_WAITS);
+        this.queueSites = hazelcastInstance.getReplicatedMap(QUEUE_SITES);
+        this.liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        this.queueRepository = queueRepository;
+    }
+
+    /**
+     * Get the Queue of a site with the lowest expected wait among those with room left.
+     *
+     * @param site the site
+     * @return the Queue, or an empty Optional if no Queue of the site has a dynamicQueue with room left
+     */
+    public Optional<BestQueueDTO> getBestQueue(String site) {
+        BestQueueDTO best = (BestQueueDTO) siteWaits.executeOnKey(site, new BestQueueProcessor());
+        if (best == null && !siteWaits.containsKey(site)) {
+            build(site);
+            best = (BestQueueDTO) siteWaits.executeOnKey(site, new BestQueueProcessor());
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * Apply a created or changed Queue to the index of its site, and remove it from the index of the site
+     * it moved from.
+     *
+     * @param queue the saved Queue
+     * @param previousSite the site of the Queue before the change, or null
+     * @param previousDynamicQueueId the id of the dynamicQueue of the Queue before the change, or null
+     */
+    public void queueSaved(Queue queue, String previousSite, Long previousDynamicQueueId) {
+        Long dynamicQueueId = queue.getDynamicInfo() == null ? null : queue.getDynamicInfo().getId();
+        if (previousDynamicQueueId != null && !previousDynamicQueueId.equals(dynamicQueueId)) {
+            queueSites.remove(previousDynamicQueueId);
+        }
+        if (previousSite != null && !previousSite.equals(queue.getSite())) {
+            siteWaits.executeOnKey(previousSite, new SiteQueueProcessor(queue.getId(), LiveQueue.NONE, null, 0, null));
+        }
+        if (queue.getSite() == null) {
+            return;
+        }
+        if (dynamicQueueId == null) {
+            siteWaits.executeOnKey(queue.getSite(), new SiteQueueProcessor(queue.getId(), LiveQueue.NONE, null, 0, null));
+            return;
+        }
+        queueSites.put(dynamicQueueId, queue.getSite());
+        int[] load = (int[]) liveQueues.executeOnKey(dynamicQueueId, new LoadProcessor());
+        siteWaits.executeOnKey(queue.getSite(), load == null
+            ? new SiteQueueProcessor(queue.getId(), dynamicQueueId, queue.getMaxCapacity(), numParticipantsOf(queue.getDynamicInfo()),
+                queue.getDynamicInfo().getRate())
+            : new SiteQueueProcessor(queue.getId(), dynamicQueueId, queue.getMaxCapacity(), load[0], load[2] < 0 ? null : load[2]));
+    }
+
+    /**
+     * Remove a deleted Queue from the index of its site.
+     *
+     * @param queue the deleted Queue
+     */
+    public void queueDeleted(Queue queue) {
+        if (queue.getDynamicInfo() != null) {
+            queueSites.remove(queue.getDynamicInfo().getId());
+        }
+        if (queue.getSite() != null) {
+            siteWaits.executeOnKey(queue.getSite(), new SiteQueueProcessor(queue.getId(), LiveQueue.NONE, null, 0, null));
+        }
+    }
+
+    /**
+     * Forget the site of a deleted dynamicQueue, and remove its Queue from the index of the site.
+     *
+     * @param dynamicQueueId the id of the deleted dynamicQueue
+     */
+    public void dynamicQueueDeleted(Long dynamicQueueId) {
+        String site = queueSites.remove(dynamicQueueId);
+        if (site != null && !NO_SITE.equals(site)) {
+            siteWaits.executeOnKey(site, new SiteQueueProcessor(LiveQueue.NONE, dynamicQueueId, null, 0, null));
+        }
+    }
+
+    /**
+     * Send the load of a dynamicQueue to the index of its site, without waiting.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param rate its rate, or null if unknown
+     * @param timestamp the time the load was read from its live queue
+     */
+    public void loadChanged(Long dynamicQueueId, int numParticipants, Integer rate, long timestamp) {
+        String site = siteOf(dynamicQueueId);
+        if (!NO_SITE.equals(site)) {
+            siteWaits.submitToKey(site, new SiteLoadProcessor(dynamicQueueId, numParticipants, rate, timestamp));
+        }
+    }
+
+    private String siteOf(Long dynamicQueueId) {
+        String site = queueSites.get(dynamicQueueId);
+        if (site == null) {
+            Queue queue = queueRepository.findOneByDynamicInfoId(dynamicQueueId);
+            site = queue == null || queue.getSite() == null ? NO_SITE : queue.getSite();
+            queueSites.put(dynamicQueueId, site);
+        }
+        return site;
+    }
+
+    /**
+     * Build the index of a site from its Queues, with the loads of the live queues already loaded and the
+     * stored loads of the others. A site without Queues is indexed empty, so it is not read again.
+     */
+    private void build(String site) {
+        log.debug("Building the wait index of site {}", site);
+        List<Queue> queues = queueRepository.findBySite(site).stream()
+            .filter(queue -> queue.getDynamicInfo() != null)
+            .collect(Collectors.toList());
+        Set<Long> dynamicQueueIds = queues.stream().map(queue -> queue.getDynamicInfo().getId()).collect(Collectors.toSet());
+        long timestamp = System.currentTimeMillis();
+        Map<Long, Object> loads = dynamicQueueIds.isEmpty() ? Collections.emptyMap()
+            : liveQueues.executeOnKeys(dynamicQueueIds, new LoadProcessor());
+        SiteWaits built = new SiteWaits();
+        for (Queue queue : queues) {
+            DynamicQueue dynamicQueue = queue.getDynamicInfo();
+            int[] load = (int[]) loads.get(dynamicQueue.getId());
+            if (load == null) {
+                built.putQueue(queue.getId(), dynamicQueue.getId(), queue.getMaxCapacity(), numParticipantsOf(dynamicQueue),
+                    dynamicQueue.getRate(), timestamp);
+            } else {
+                built.putQueue(queue.getId(), dynamicQueue.getId(), queue.getMaxCapacity(), load[0], load[2] < 0 ? null : load[2],
+                    timestamp);
+            }
+            queueSites.put(dynamicQueue.getId(), site);
+        }
+        siteWaits.putIfAbsent(site, built);
+    }
+
+    private static int numParticipantsOf(DynamicQueue dynamicQueue) {
+        return dynamicQueue.getNumParticipants() == null ? 0 : dynamicQueue.getNumParticipants().intValue();
+    }
+}
@@ -0,0 +1,106 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the Queue of a site with the lowest expected wait.
+ */
+public class BestQueueDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String site;
+
+    private Long queueId;
+
+    private Long dynamicQueueId;
+
+    private int numParticipants;
+
+    private Integer rate;
+
+    private Long estimatedWaitSeconds;
+
+    public BestQueueDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public BestQueueDTO(String site, Long queueId, Long dynamicQueueId, int numParticipants, Integer rate, Long estimatedWaitSeconds) {
+        this.site = site;
+        this.queueId = queueId;
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipants = numParticipants;
+        this.rate = rate;
+        this.estimatedWaitSeconds = estimatedWaitSeconds;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    public Long getQueueId() {
+        return queueId;
+    }
+
+    public void setQueueId(Long queueId) {
+        this.queueId = queueId;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public int getNumParticipants() {
+        return numParticipants;
+    }
+
+    public void setNumParticipants(int numParticipants) {
+        this.numParticipants = numParticipants;
+    }
+
+    /**
+     * The rate of the DynamicQueue of the Queue.
+     *
+     * @return the number of participants served per hour, or null if unknown
+     */
+    public Integer getRate() {
+        return rate;
+    }
+
+    public void setRate(Integer rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * The expected wait of a participant joining the Queue now, rounded up to the second.
+     *
+     * @return the wait in seconds, or null if the rate is unknown
+     */
+    public Long getEstimatedWaitSeconds() {
+        return estimatedWaitSeconds;
+    }
+
+    public void setEstimatedWaitSeconds(Long estimatedWaitSeconds) {
+        this.estimatedWaitSeconds = estimatedWaitSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "BestQueueDTO{" +
+            "site='" + site + "'" +
+            ", queueId=" + queueId +
+            ", dynamicQueueId=" + dynamicQueueId +
+            ", numParticipants=" + numParticipants +
+            ", rate=" + rate +
+            ", estimatedWaitSeconds=" + estimatedWaitSeconds +
+            "}";
+    }
+}
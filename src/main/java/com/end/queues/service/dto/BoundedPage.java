@@ -0,0 +1,51 @@
+package com.end.queues.service.dto;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * A page of search results read under a time and document budget, which may be partial.
+ *
+ * <p>
+ * When the search timed out, stopped early or lost shards, the page only holds what was found in time,
+ * and its total is a lower bound of the number of documents matching.
+ * </p>
+ */
+public class BoundedPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean timedOut;
+
+    private final boolean terminatedEarly;
+
+    private final int failedShards;
+
+    public BoundedPage(List<T> content, Pageable pageable, long total, boolean timedOut, boolean terminatedEarly, int failedShards) {
+        super(content, pageable, total);
+        this.timedOut = timedOut;
+        this.terminatedEarly = terminatedEarly;
+        this.failedShards = failedShards;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isTerminatedEarly() {
+        return terminatedEarly;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    /**
+     * @return true if some matching documents may be missing from the results
+     */
+    public boolean isPartial() {
+        return timedOut || terminatedEarly || failedShards > 0;
+    }
+}
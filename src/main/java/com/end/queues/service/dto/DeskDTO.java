@@ -0,0 +1,104 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for a desk serving a Queue, with its throughput on this member.
+ */
+public class DeskDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long queueId;
+
+    private String name;
+
+    private boolean idle;
+
+    private long assignments;
+
+    private double meanRate;
+
+    private double oneMinuteRate;
+
+    public DeskDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public DeskDTO(Long queueId, String name, boolean idle, long assignments, double meanRate, double oneMinuteRate) {
+        this.queueId = queueId;
+        this.name = name;
+        this.idle = idle;
+        this.assignments = assignments;
+        this.meanRate = meanRate;
+        this.oneMinuteRate = oneMinuteRate;
+    }
+
+    public Long getQueueId() {
+        return queueId;
+    }
+
+    public void setQueueId(Long queueId) {
+        this.queueId = queueId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    public void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    public long getAssignments() {
+        return assignments;
+    }
+
+    public void setAssignments(long assignments) {
+        this.assignments = assignments;
+    }
+
+    /**
+     * The mean number of assignments per second since the desk registered.
+     *
+     * @return the rate
+     */
+    public double getMeanRate() {
+        return meanRate;
+    }
+
+    public void setMeanRate(double meanRate) {
+        this.meanRate = meanRate;
+    }
+
+    /**
+     * The number of assignments per second, averaged over the last minute.
+     *
+     * @return the rate
+     */
+    public double getOneMinuteRate() {
+        return oneMinuteRate;
+    }
+
+    public void setOneMinuteRate(double oneMinuteRate) {
+        this.oneMinuteRate = oneMinuteRate;
+    }
+
+    @Override
+    public String toString() {
+        return "DeskDTO{" +
+            "queueId=" + queueId +
+            ", name='" + name + "'" +
+            ", idle=" + idle +
+            ", assignments=" + assignments +
+            "}";
+    }
+}
@@ -0,0 +1,66 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A DTO for the expected arrivals and serves of one hour.
+ */
+public class HourlyForecastDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Instant hour;
+
+    private double arrivals;
+
+    private double serves;
+
+    public HourlyForecastDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public HourlyForecastDTO(Instant hour, double arrivals, double serves) {
+        this.hour = hour;
+        this.arrivals = arrivals;
+        this.serves = serves;
+    }
+
+    /**
+     * The start of the hour.
+     *
+     * @return the instant
+     */
+    public Instant getHour() {
+        return hour;
+    }
+
+    public void setHour(Instant hour) {
+        this.hour = hour;
+    }
+
+    public double getArrivals() {
+        return arrivals;
+    }
+
+    public void setArrivals(double arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    public double getServes() {
+        return serves;
+    }
+
+    public void setServes(double serves) {
+        this.serves = serves;
+    }
+
+    @Override
+    public String toString() {
+        return "HourlyForecastDTO{" +
+            "hour=" + hour +
+            ", arrivals=" + arrivals +
+            ", serves=" + serves +
+            "}";
+    }
+}
@@ -0,0 +1,95 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * A DTO for the activity of the Queues of an organization in one day.
+ */
+public class OrganizationDailyStatsDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long organizationId;
+
+    private LocalDate day;
+
+    private long arrivals;
+
+    private long serves;
+
+    private Long averageWaitSeconds;
+
+    public OrganizationDailyStatsDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public OrganizationDailyStatsDTO(Long organizationId, LocalDate day, long arrivals, long serves, Long averageWaitSeconds) {
+        this.organizationId = organizationId;
+        this.day = day;
+        this.arrivals = arrivals;
+        this.serves = serves;
+        this.averageWaitSeconds = averageWaitSeconds;
+    }
+
+    public Long getOrganizationId() {
+        return organizationId;
+    }
+
+    public void setOrganizationId(Long organizationId) {
+        this.organizationId = organizationId;
+    }
+
+    /**
+     * The day, in UTC.
+     *
+     * @return the day
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    public void setArrivals(long arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    public long getServes() {
+        return serves;
+    }
+
+    public void setServes(long serves) {
+        this.serves = serves;
+    }
+
+    /**
+     * The mean time a participant waited: the time waited by all participants over the arrivals.
+     *
+     * @return the wait, in seconds, or null if nobody joined
+     */
+    public Long getAverageWaitSeconds() {
+        return averageWaitSeconds;
+    }
+
+    public void setAverageWaitSeconds(Long averageWaitSeconds) {
+        this.averageWaitSeconds = averageWaitSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "OrganizationDailyStatsDTO{" +
+            "organizationId=" + organizationId +
+            ", day=" + day +
+            ", arrivals=" + arrivals +
+            ", serves=" + serves +
+            ", averageWaitSeconds=" + averageWaitSeconds +
+            "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the number of participants of a Queue before and after a rebalance of its site.
+ */
+public class QueueBalanceDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long queueId;
+
+    private Long dynamicQueueId;
+
+    private int numParticipantsBefore;
+
+    private int numParticipantsAfter;
+
+    public QueueBalanceDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public QueueBalanceDTO(Long queueId, Long dynamicQueueId, int numParticipantsBefore, int numParticipantsAfter) {
+        this.queueId = queueId;
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipantsBefore = numParticipantsBefore;
+        this.numParticipantsAfter = numParticipantsAfter;
+    }
+
+    public Long getQueueId() {
+        return queueId;
+    }
+
+    public void setQueueId(Long queueId) {
+        this.queueId = queueId;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public int getNumParticipantsBefore() {
+        return numParticipantsBefore;
+    }
+
+    public void setNumParticipantsBefore(int numParticipantsBefore) {
+        this.numParticipantsBefore = numParticipantsBefore;
+    }
+
+    public int getNumParticipantsAfter() {
+        return numParticipantsAfter;
+    }
+
+    public void setNumParticipantsAfter(int numParticipantsAfter) {
+        this.numParticipantsAfter = numParticipantsAfter;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueBalanceDTO{" +
+            "queueId=" + queueId +
+            ", dynamicQueueId=" + dynamicQueueId +
+            ", numParticipantsBefore=" + numParticipantsBefore +
+            ", numParticipantsAfter=" + numParticipantsAfter +
+            "}";
+    }
+}
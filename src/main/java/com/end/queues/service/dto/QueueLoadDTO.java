@@ -0,0 +1,72 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the number of participants waiting in a Queue.
+ */
+public class QueueLoadDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long queueId;
+
+    private String name;
+
+    private Long dynamicQueueId;
+
+    private int numParticipants;
+
+    public QueueLoadDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public QueueLoadDTO(Long queueId, String name, Long dynamicQueueId, int numParticipants) {
+        this.queueId = queueId;
+        this.name = name;
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipants = numParticipants;
+    }
+
+    public Long getQueueId() {
+        return queueId;
+    }
+
+    public void setQueueId(Long queueId) {
+        this.queueId = queueId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public int getNumParticipants() {
+        return numParticipants;
+    }
+
+    public void setNumParticipants(int numParticipants) {
+        this.numParticipants = numParticipants;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueLoadDTO{" +
+            "queueId=" + queueId +
+            ", name='" + name + "'" +
+            ", dynamicQueueId=" + dynamicQueueId +
+            ", numParticipants=" + numParticipants +
+            "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the live position of a participant in its DynamicQueue.
+ */
+public class QueuePositionDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long participantId;
+
+    private Long dynamicQueueId;
+
+    private int position;
+
+    private int numParticipants;
+
+    public QueuePositionDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public QueuePositionDTO(Long participantId, Long dynamicQueueId, int position, int numParticipants) {
+        this.participantId = participantId;
+        this.dynamicQueueId = dynamicQueueId;
+        this.position = position;
+        this.numParticipants = numParticipants;
+    }
+
+    public Long getParticipantId() {
+        return participantId;
+    }
+
+    public void setParticipantId(Long participantId) {
+        this.participantId = participantId;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    public int getNumParticipants() {
+        return numParticipants;
+    }
+
+    public void setNumParticipants(int numParticipants) {
+        this.numParticipants = numParticipants;
+    }
+
+    @Override
+    public String toString() {
+        return "QueuePositionDTO{" +
+            "participantId=" + participantId +
+            ", dynamicQueueId=" + dynamicQueueId +
+            ", position=" + position +
+            ", numParticipants=" + numParticipants +
+            "}";
+    }
+}
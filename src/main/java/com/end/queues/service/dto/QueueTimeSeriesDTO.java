@@ -0,0 +1,90 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A DTO for the arrivals and serves of a DynamicQueue per minute.
+ */
+public class QueueTimeSeriesDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long dynamicQueueId;
+
+    private Instant from;
+
+    private int[] arrivals;
+
+    private int[] serves;
+
+    public QueueTimeSeriesDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public QueueTimeSeriesDTO(Long dynamicQueueId, Instant from, int[] arrivals, int[] serves) {
+        this.dynamicQueueId = dynamicQueueId;
+        this.from = from;
+        this.arrivals = arrivals;
+        this.serves = serves;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    /**
+     * The start of the first minute.
+     *
+     * @return the instant
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    public void setFrom(Instant from) {
+        this.from = from;
+    }
+
+    /**
+     * The number of participants who joined in each minute, oldest first.
+     *
+     * @return the counts
+     */
+    public int[] getArrivals() {
+        return arrivals;
+    }
+
+    public void setArrivals(int[] arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    /**
+     * The number of participants served or called in each minute, oldest first.
+     *
+     * @return the counts
+     */
+    public int[] getServes() {
+        return serves;
+    }
+
+    public void setServes(int[] serves) {
+        this.serves = serves;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueTimeSeriesDTO{" +
+            "dynamicQueueId=" + dynamicQueueId +
+            ", from=" + from +
+            ", minutes=" + (arrivals == null ? 0 : arrivals.length) +
+            ", arrivals=" + (arrivals == null ? 0 : Arrays.stream(arrivals).sum()) +
+            ", serves=" + (serves == null ? 0 : Arrays.stream(serves).sum()) +
+            "}";
+    }
+}
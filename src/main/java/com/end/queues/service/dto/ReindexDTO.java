@@ -0,0 +1,82 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the outcome of a full reindex of an entity.
+ */
+public class ReindexDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String alias;
+
+    private String index;
+
+    private long documents;
+
+    private long tookMillis;
+
+    public ReindexDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public ReindexDTO(String alias, String index, long documents, long tookMillis) {
+        this.alias = alias;
+        this.index = index;
+        this.documents = documents;
+        this.tookMillis = tookMillis;
+    }
+
+    /**
+     * The alias searched and written, the name of the index of the entity.
+     *
+     * @return the alias
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * The index built, which the alias now points to.
+     *
+     * @return the name of the index
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(long documents) {
+        this.documents = documents;
+    }
+
+    public long getTookMillis() {
+        return tookMillis;
+    }
+
+    public void setTookMillis(long tookMillis) {
+        this.tookMillis = tookMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ReindexDTO{" +
+            "alias='" + alias + "'" +
+            ", index='" + index + "'" +
+            ", documents=" + documents +
+            ", tookMillis=" + tookMillis +
+            "}";
+    }
+}
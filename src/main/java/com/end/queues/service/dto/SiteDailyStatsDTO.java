@@ -0,0 +1,95 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * A DTO for the activity of the Queues of a site in one day.
+ */
+public class SiteDailyStatsDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String site;
+
+    private LocalDate day;
+
+    private long arrivals;
+
+    private long serves;
+
+    private int peakLength;
+
+    public SiteDailyStatsDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public SiteDailyStatsDTO(String site, LocalDate day, long arrivals, long serves, int peakLength) {
+        this.site = site;
+        this.day = day;
+        this.arrivals = arrivals;
+        this.serves = serves;
+        this.peakLength = peakLength;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    /**
+     * The day, in UTC.
+     *
+     * @return the day
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    public void setArrivals(long arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    public long getServes() {
+        return serves;
+    }
+
+    public void setServes(long serves) {
+        this.serves = serves;
+    }
+
+    /**
+     * The longest any Queue of the site got.
+     *
+     * @return the number of participants waiting
+     */
+    public int getPeakLength() {
+        return peakLength;
+    }
+
+    public void setPeakLength(int peakLength) {
+        this.peakLength = peakLength;
+    }
+
+    @Override
+    public String toString() {
+        return "SiteDailyStatsDTO{" +
+            "site='" + site + "'" +
+            ", day=" + day +
+            ", arrivals=" + arrivals +
+            ", serves=" + serves +
+            ", peakLength=" + peakLength +
+            "}";
+    }
+}
@@ -0,0 +1,78 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A DTO for the forecast load of the Queues of a site, hour by hour.
+ */
+public class SiteForecastDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String site;
+
+    private int queues;
+
+    private int modeledQueues;
+
+    private List<HourlyForecastDTO> hours;
+
+    public SiteForecastDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public SiteForecastDTO(String site, int queues, int modeledQueues, List<HourlyForecastDTO> hours) {
+        this.site = site;
+        this.queues = queues;
+        this.modeledQueues = modeledQueues;
+        this.hours = hours;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    public int getQueues() {
+        return queues;
+    }
+
+    public void setQueues(int queues) {
+        this.queues = queues;
+    }
+
+    /**
+     * The number of Queues of the site with observed events, the others add nothing to the forecast.
+     *
+     * @return the number of Queues
+     */
+    public int getModeledQueues() {
+        return modeledQueues;
+    }
+
+    public void setModeledQueues(int modeledQueues) {
+        this.modeledQueues = modeledQueues;
+    }
+
+    public List<HourlyForecastDTO> getHours() {
+        return hours;
+    }
+
+    public void setHours(List<HourlyForecastDTO> hours) {
+        this.hours = hours;
+    }
+
+    @Override
+    public String toString() {
+        return "SiteForecastDTO{" +
+            "site='" + site + "'" +
+            ", queues=" + queues +
+            ", modeledQueues=" + modeledQueues +
+            ", hours=" + hours +
+            "}";
+    }
+}
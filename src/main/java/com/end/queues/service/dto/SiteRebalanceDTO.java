@@ -0,0 +1,66 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A DTO for the outcome of a rebalance of the Queues of a site.
+ */
+public class SiteRebalanceDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String site;
+
+    private int moved;
+
+    private List<QueueBalanceDTO> queues;
+
+    public SiteRebalanceDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public SiteRebalanceDTO(String site, int moved, List<QueueBalanceDTO> queues) {
+        this.site = site;
+        this.moved = moved;
+        this.queues = queues;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public void setSite(String site) {
+        this.site = site;
+    }
+
+    /**
+     * The number of participants moved to another Queue.
+     *
+     * @return the number of participants
+     */
+    public int getMoved() {
+        return moved;
+    }
+
+    public void setMoved(int moved) {
+        this.moved = moved;
+    }
+
+    public List<QueueBalanceDTO> getQueues() {
+        return queues;
+    }
+
+    public void setQueues(List<QueueBalanceDTO> queues) {
+        this.queues = queues;
+    }
+
+    @Override
+    public String toString() {
+        return "SiteRebalanceDTO{" +
+            "site='" + site + "'" +
+            ", moved=" + moved +
+            ", queues=" + queues +
+            "}";
+    }
+}
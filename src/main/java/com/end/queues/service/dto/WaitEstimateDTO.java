@@ -0,0 +1,94 @@
+package com.end.queues.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the estimated wait at a position of a DynamicQueue.
+ */
+public class WaitEstimateDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long dynamicQueueId;
+
+    private int position;
+
+    private int numParticipants;
+
+    private Integer rate;
+
+    private Long estimatedWaitSeconds;
+
+    public WaitEstimateDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public WaitEstimateDTO(Long dynamicQueueId, int position, int numParticipants, Integer rate, Long estimatedWaitSeconds) {
+        this.dynamicQueueId = dynamicQueueId;
+        this.position = position;
+        this.numParticipants = numParticipants;
+        this.rate = rate;
+        this.estimatedWaitSeconds = estimatedWaitSeconds;
+    }
+
+    public Long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    public void setDynamicQueueId(Long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    public int getNumParticipants() {
+        return numParticipants;
+    }
+
+    public void setNumParticipants(int numParticipants) {
+        this.numParticipants = numParticipants;
+    }
+
+    /**
+     * The estimated rate of the DynamicQueue.
+     *
+     * @return the number of participants served per hour, or null if unknown
+     */
+    public Integer getRate() {
+        return rate;
+    }
+
+    public void setRate(Integer rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * The estimated wait at the position, rounded up to the second.
+     *
+     * @return the wait in seconds, or null if the rate is unknown
+     */
+    public Long getEstimatedWaitSeconds() {
+        return estimatedWaitSeconds;
+    }
+
+    public void setEstimatedWaitSeconds(Long estimatedWaitSeconds) {
+        this.estimatedWaitSeconds = estimatedWaitSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "WaitEstimateDTO{" +
+            "dynamicQueueId=" + dynamicQueueId +
+            ", position=" + position +
+            ", numParticipants=" + numParticipants +
+            ", rate=" + rate +
+            ", estimatedWaitSeconds=" + estimatedWaitSeconds +
+            "}";
+    }
+}
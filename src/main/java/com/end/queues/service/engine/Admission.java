@@ -0,0 +1,41 @@
+package com.end.queues.service.engine;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of an {@link AdmitProcessor}: a join admitted, or rejected with a hint of when to retry.
+ */
+public class Admission implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean admitted;
+
+    private final long retryAfterMillis;
+
+    public Admission(boolean admitted, long retryAfterMillis) {
+        this.admitted = admitted;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public boolean isAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * When a rejected join may retry: the estimated time until the next serve frees a place.
+     *
+     * @return the delay, in milliseconds, or -1 if the rate of the queue is unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Admission{" +
+            "admitted=" + admitted +
+            ", retryAfterMillis=" + retryAfterMillis +
+            "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Take a place in the queue for a join, or reject it if the queue is full, in a single step on the
+ * partition owner. A rejection changes nothing and costs no database access.
+ */
+public class AdmitProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        if (!liveQueue.admit()) {
+            return new Admission(false, liveQueue.estimatedWait(1, timestamp));
+        }
+        entry.setValue(liveQueue);
+        return new Admission(true, 0);
+    }
+}
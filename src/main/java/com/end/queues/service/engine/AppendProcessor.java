@@ -0,0 +1,47 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Place participants moved from other queues at the tail of their lanes, in order, or of the highest
+ * lane of this queue for those whose lane it does not have. The time of the move
+ * is taken when the processor is created, so the backup copy gets the same serve rate estimate.
+ */
+public class AppendProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] participantIds;
+
+    private final int[] lanes;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public AppendProcessor(long[] participantIds, int[] lanes) {
+        this.participantIds = participantIds;
+        this.lanes = lanes;
+    }
+
+    /**
+     * @return the positions of the participants
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long[] positions = new long[participantIds.length];
+        for (int i = 0; i < participantIds.length; i++) {
+            positions[i] = liveQueue.tailPosition(liveQueue.laneFor(lanes[i]));
+            liveQueue.insert(participantIds[i], positions[i]);
+        }
+        if (participantIds.length > 0) {
+            liveQueue.recordWaiting(timestamp);
+            entry.setValue(liveQueue);
+        }
+        return positions;
+    }
+}
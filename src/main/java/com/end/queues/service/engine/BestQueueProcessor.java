@@ -0,0 +1,38 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.service.dto.BestQueueDTO;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Find the Queue of a site with the lowest expected wait on the partition owner, without changing the
+ * {@link SiteWaits}.
+ */
+public class BestQueueProcessor implements EntryProcessor<String, SiteWaits> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return the best Queue, or null if no Queue of the site has room left or the site is not indexed
+     */
+    @Override
+    public Object process(Map.Entry<String, SiteWaits> entry) {
+        SiteWaits siteWaits = entry.getValue();
+        SiteWaits.QueueWait best = siteWaits == null ? null : siteWaits.best();
+        if (best == null) {
+            return null;
+        }
+        long expectedWait = best.getExpectedWaitMillis();
+        Long estimatedWaitSeconds = expectedWait == Long.MAX_VALUE ? null : (expectedWait + 999) / 1000;
+        return new BestQueueDTO(entry.getKey(), best.getQueueId(), best.getDynamicQueueId(), best.getNumParticipants(),
+            best.getRate(), estimatedWaitSeconds);
+    }
+
+    @Override
+    public EntryBackupProcessor<String, SiteWaits> getBackupProcessor() {
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package com.end.queues.service.engine;
+
+/**
+ * Change the maximum capacity of the queue.
+ */
+public class CapacityProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Integer maxCapacity;
+
+    public CapacityProcessor(Integer maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        liveQueue.setMaxCapacity(maxCapacity);
+        return LiveQueueUpdate.removed(liveQueue, LiveQueue.NONE);
+    }
+}
@@ -0,0 +1,42 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.service.dto.WaitEstimateDTO;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Estimate the wait at a rank of a queue on the partition owner, from its estimated rate, without
+ * changing the queue.
+ */
+public class EstimateProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int position;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public EstimateProcessor(int position) {
+        this.position = position;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long estimatedWait = liveQueue.estimatedWait(position, timestamp);
+        Long estimatedWaitSeconds = estimatedWait < 0 ? null : (estimatedWait + 999) / 1000;
+        return new WaitEstimateDTO(liveQueue.getDynamicQueueId(), position, liveQueue.size(), liveQueue.getRate(),
+            estimatedWaitSeconds);
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Remove several expired participants from anywhere in the queue, in a single step on the partition
+ * owner. The participants no longer waiting are skipped.
+ */
+public class ExpireProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] participantIds;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public ExpireProcessor(long[] participantIds) {
+        this.participantIds = participantIds;
+    }
+
+    /**
+     * @return the ids of the participants removed
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long[] removed = new long[participantIds.length];
+        int count = 0;
+        for (long participantId : participantIds) {
+            if (liveQueue.remove(participantId)) {
+                removed[count++] = participantId;
+            }
+        }
+        if (count > 0) {
+            liveQueue.recordLeave(timestamp);
+            entry.setValue(liveQueue);
+        }
+        return Arrays.copyOf(removed, count);
+    }
+}
@@ -0,0 +1,87 @@
+package com.end.queues.service.engine;
+
+/**
+ * A Fenwick (binary indexed) tree of int counters, with O(log n) point updates and prefix sums.
+ *
+ * <p>
+ * Indexes are 0-based for callers.
+ * </p>
+ */
+public class FenwickTree {
+
+    private final int[] tree;
+
+    public FenwickTree(int capacity) {
+        this.tree = new int[capacity + 1];
+    }
+
+    /**
+     * Build a tree over existing counters in O(n).
+     *
+     * @param counts the initial counters, at least {@code capacity} long
+     * @param capacity the capacity of the tree
+     * @return the new tree
+     */
+    public static FenwickTree of(int[] counts, int capacity) {
+        FenwickTree fenwickTree = new FenwickTree(capacity);
+        int[] tree = fenwickTree.tree;
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] += tree[i];
+            }
+        }
+        return fenwickTree;
+    }
+
+    public int capacity() {
+        return tree.length - 1;
+    }
+
+    /**
+     * Add a delta to the counter at an index.
+     *
+     * @param index the 0-based index
+     * @param delta the value to add
+     */
+    public void add(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Sum the counters from index 0 up to an index, inclusive.
+     *
+     * @param index the 0-based index
+     * @return the prefix sum
+     */
+    public int prefixSum(int index) {
+        int sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Find the smallest index whose prefix sum reaches a value, in O(log n).
+     * Counters must not be negative.
+     *
+     * @param sum the prefix sum to reach, at least 1
+     * @return the 0-based index, or {@link #capacity()} if the total is less than {@code sum}
+     */
+    public int lowerBound(int sum) {
+        int position = 0;
+        int remaining = sum;
+        for (int step = Integer.highestOneBit(capacity()); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+}
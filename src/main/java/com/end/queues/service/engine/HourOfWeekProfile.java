@@ -0,0 +1,166 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The arrivals and serves of a {@link LiveQueue} counted per hour of the week, to forecast its load.
+ *
+ * <p>
+ * Each event adds one to the bucket of its hour in a fixed-size array, so the profile is updated online
+ * in O(1) and never grows. Buckets are hours since the epoch modulo {@link #HOURS_PER_WEEK}, in UTC, so
+ * recording needs no time zone: a forecast asks for the hours it needs as instants. The average of a
+ * bucket divides its count by the number of times its hour occurred since the first event, computed in
+ * O(1), so an hour with no events still counts as observed.
+ * </p>
+ */
+public class HourOfWeekProfile implements DataSerializable {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private static final long NO_EVENT = -1L;
+
+    private int[] arrivals = new int[HOURS_PER_WEEK];
+
+    private int[] serves = new int[HOURS_PER_WEEK];
+
+    private long firstHour = NO_EVENT;
+
+    public HourOfWeekProfile() {
+        // Empty constructor needed for Hazelcast serialization.
+    }
+
+    /**
+     * The hour of an instant, counted from the epoch.
+     *
+     * @param timestamp the instant, in epoch milliseconds
+     * @return the hour
+     */
+    public static long hourOf(long timestamp) {
+        return Math.floorDiv(timestamp, MILLIS_PER_HOUR);
+    }
+
+    /**
+     * The bucket of an hour.
+     *
+     * @param hour the hour, counted from the epoch
+     * @return the bucket, from 0 to {@link #HOURS_PER_WEEK} excluded
+     */
+    public static int bucketOf(long hour) {
+        return (int) Math.floorMod(hour, (long) HOURS_PER_WEEK);
+    }
+
+    public void recordArrival(long timestamp) {
+        arrivals[bucket(timestamp)]++;
+    }
+
+    public void recordServe(long timestamp) {
+        serves[bucket(timestamp)]++;
+    }
+
+    /**
+     * The average number of arrivals in an hour, over the past occurrences of its hour of the week.
+     *
+     * @param hour the hour to forecast, counted from the epoch
+     * @param currentHour the current hour, counted from the epoch
+     * @return the average, or 0 if the hour of the week was never observed
+     */
+    public double averageArrivals(long hour, long currentHour) {
+        return average(arrivals, hour, currentHour);
+    }
+
+    /**
+     * The average number of serves in an hour, over the past occurrences of its hour of the week.
+     *
+     * @param hour the hour to forecast, counted from the epoch
+     * @param currentHour the current hour, counted from the epoch
+     * @return the average, or 0 if the hour of the week was never observed
+     */
+    public double averageServes(long hour, long currentHour) {
+        return average(serves, hour, currentHour);
+    }
+
+    public boolean isEmpty() {
+        return firstHour == NO_EVENT;
+    }
+
+    /**
+     * A copy of the profile, safe to read while the queue keeps changing.
+     *
+     * @return the copy
+     */
+    public HourOfWeekProfile copy() {
+        HourOfWeekProfile copy = new HourOfWeekProfile();
+        copy.arrivals = arrivals.clone();
+        copy.serves = serves.clone();
+        copy.firstHour = firstHour;
+        return copy;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        writeTo(out);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        readFrom(in);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(firstHour);
+        for (int bucket = 0; bucket < HOURS_PER_WEEK; bucket++) {
+            out.writeInt(arrivals[bucket]);
+            out.writeInt(serves[bucket]);
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        firstHour = in.readLong();
+        for (int bucket = 0; bucket < HOURS_PER_WEEK; bucket++) {
+            arrivals[bucket] = in.readInt();
+            serves[bucket] = in.readInt();
+        }
+    }
+
+    private int bucket(long timestamp) {
+        long hour = hourOf(timestamp);
+        if (firstHour == NO_EVENT || hour < firstHour) {
+            firstHour = hour;
+        }
+        return bucketOf(hour);
+    }
+
+    private double average(int[] counts, long hour, long currentHour) {
+        if (firstHour == NO_EVENT) {
+            return 0;
+        }
+        int bucket = bucketOf(hour);
+        long occurrences = occurrencesUpTo(bucket, currentHour) - occurrencesUpTo(bucket, firstHour - 1);
+        return occurrences <= 0 ? 0 : (double) counts[bucket] / occurrences;
+    }
+
+    /**
+     * The number of hours of a bucket from the epoch up to an hour included.
+     */
+    private static long occurrencesUpTo(int bucket, long hour) {
+        return hour < bucket ? 0 : (hour - bucket) / HOURS_PER_WEEK + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "HourOfWeekProfile{" +
+            "firstHour=" + firstHour +
+            ", arrivals=" + Arrays.stream(arrivals).sum() +
+            ", serves=" + Arrays.stream(serves).sum() +
+            "}";
+    }
+}
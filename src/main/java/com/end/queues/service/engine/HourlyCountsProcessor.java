@@ -0,0 +1,29 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Close the hours ended by now in a queue, and take the counts of the hours closed since the last time.
+ */
+public class HourlyCountsProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    /**
+     * @return the hourly counts, as returned by {@link LiveQueue#drainHourlyCounts(long)}
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long[][] hours = liveQueue.drainHourlyCounts(timestamp);
+        entry.setValue(liveQueue);
+        return hours;
+    }
+}
@@ -0,0 +1,27 @@
+package com.end.queues.service.engine;
+
+/**
+ * Put a participant back at a position it held, when a transfer out of the queue could not complete.
+ */
+public class InsertProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final long position;
+
+    public InsertProcessor(long participantId, long position) {
+        this.participantId = participantId;
+        this.position = position;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        if (liveQueue.contains(participantId)) {
+            return null;
+        }
+        liveQueue.insert(participantId, position);
+        return LiveQueueUpdate.placed(liveQueue, participantId);
+    }
+}
@@ -0,0 +1,51 @@
+package com.end.queues.service.engine;
+
+/**
+ * Place a new participant in front of another participant, in the lane of that participant, or at the
+ * tail of its lane. The time of the join is taken when the processor is created, so the backup copy
+ * gets the same serve rate estimate. A join admitted by an {@link AdmitProcessor} gives its place back,
+ * whether it is placed or not.
+ */
+public class JoinProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final Long beforeParticipantId;
+
+    private final int lane;
+
+    private final boolean admitted;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public JoinProcessor(long participantId, Long beforeParticipantId) {
+        this(participantId, beforeParticipantId, 0);
+    }
+
+    public JoinProcessor(long participantId, Long beforeParticipantId, int lane) {
+        this(participantId, beforeParticipantId, lane, false);
+    }
+
+    public JoinProcessor(long participantId, Long beforeParticipantId, int lane, boolean admitted) {
+        this.participantId = participantId;
+        this.beforeParticipantId = beforeParticipantId;
+        this.lane = lane;
+        this.admitted = admitted;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        if (admitted) {
+            liveQueue.release();
+        }
+        long position = beforeParticipantId == null ? liveQueue.tailPosition(lane) : liveQueue.positionBefore(beforeParticipantId);
+        if (position == LiveQueue.NONE) {
+            return null;
+        }
+        liveQueue.insert(participantId, position);
+        liveQueue.recordJoin(timestamp);
+        return LiveQueueUpdate.placed(liveQueue, participantId);
+    }
+}
@@ -0,0 +1,26 @@
+package com.end.queues.service.engine;
+
+/**
+ * Remove a participant from anywhere in the queue.
+ */
+public class LeaveProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public LeaveProcessor(long participantId) {
+        this.participantId = participantId;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        if (!liveQueue.remove(participantId)) {
+            return null;
+        }
+        liveQueue.recordLeave(timestamp);
+        return LiveQueueUpdate.removed(liveQueue, participantId);
+    }
+}
@@ -0,0 +1,700 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.domain.enumeration.ServingPolicy;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The live state of a single DynamicQueue: its participants in priority lanes, each in serving order.
+ *
+ * <p>
+ * Each lane is a {@link LiveQueueLane}, with sparse positions and O(log n) inserts and ranks. The lane of
+ * a participant is held in the high bits of its position, from {@link #LANE_SHIFT}, so positions of
+ * different lanes never collide and a position alone is enough to place a participant back in its lane.
+ * Lane 0 is the default lane, and higher lanes have a higher priority.
+ * </p>
+ * <p>
+ * Serving follows the {@link ServingPolicy} of the queue. With {@link ServingPolicy#STRICT_PRIORITY} the
+ * highest non-empty lane is always served first. With {@link ServingPolicy#WEIGHTED_ROUND_ROBIN} the
+ * lanes are visited from the highest down, cyclically, and each visit serves up to the weight of the
+ * lane. The live rank of a participant is computed from its rank in its lane and the size of the other
+ * lanes, in O(lanes + log n), never by walking the queue.
+ * </p>
+ * <p>
+ * The rate of the queue, in participants served per hour, is estimated from the timestamps of its
+ * serves by a {@link ServeRateEstimator}. The configured rate only seeds the estimate until a first serve
+ * is observed. Arrivals and serves are also counted per hour of the week in a {@link HourOfWeekProfile},
+ * to forecast the load of the queue, and per minute over the last 24 hours in a {@link MinuteSeries},
+ * rolled over into hourly counts along with the length of the queue through each hour.
+ * </p>
+ * <p>
+ * The maximum capacity of the Queue served by the DynamicQueue, if any, is enforced by admission: a
+ * join first takes one of the free places with {@link #admit()}, counting the joins admitted but not
+ * placed yet, and gives it back once placed or failed. The count of admitted joins is not serialized,
+ * so joins in flight when the queue moves to another member are forgotten rather than leaked.
+ * </p>
+ * <p>
+ * Instances are not thread-safe. They live in a Hazelcast map and are only changed by entry processors,
+ * which run one at a time on the partition owner. They are serialized with the participants of each lane
+ * in serving order, so a copy is rebuilt with appends only.
+ * </p>
+ */
+public class LiveQueue implements DataSerializable {
+
+    /**
+     * Returned when there is no such participant.
+     */
+    public static final long NONE = -1L;
+
+    /**
+     * The gap left between two participants joining the tail one after the other.
+     */
+    public static final long POSITION_GAP = 1L << 20;
+
+    /**
+     * The lane of a participant is its position shifted right by this many bits.
+     */
+    public static final int LANE_SHIFT = 56;
+
+    /**
+     * The maximum number of lanes of a queue.
+     */
+    public static final int MAX_LANES = 16;
+
+    private static final int[] SINGLE_LANE = { 1 };
+
+    private long dynamicQueueId;
+
+    private Integer rate;
+
+    private Integer maxCapacity;
+
+    private int admitted;
+
+    private ServingPolicy servingPolicy = ServingPolicy.STRICT_PRIORITY;
+
+    private int[] laneWeights = SINGLE_LANE;
+
+    private final ServeRateEstimator serveRate = new ServeRateEstimator();
+
+    private final HourOfWeekProfile profile = new HourOfWeekProfile();
+
+    private final MinuteSeries series = new MinuteSeries();
+
+    private final LongLongHashMap renumbered = new LongLongHashMap();
+
+    private LiveQueueLane[] lanes = new LiveQueueLane[0];
+
+    /**
+     * The lane visited by weighted round-robin serving, and how many participants it may still serve.
+     */
+    private int currentLane;
+
+    private int currentCredit;
+
+    public LiveQueue() {
+        // Empty constructor needed for Hazelcast serialization.
+    }
+
+    public LiveQueue(long dynamicQueueId) {
+        this.dynamicQueueId = dynamicQueueId;
+    }
+
+    public long getDynamicQueueId() {
+        return dynamicQueueId;
+    }
+
+    /**
+     * The rate of the queue: estimated from the serves observed, or configured until then.
+     *
+     * @return the number of participants served per hour, or null if unknown
+     */
+    public Integer getRate() {
+        return rate;
+    }
+
+    /**
+     * Configure the rate of the queue. It is ignored once serves were observed, as the estimate owns the
+     * rate from then on.
+     *
+     * @param rate the number of participants served per hour, may be null
+     */
+    public void setRate(Integer rate) {
+        if (serveRate.seed(rate)) {
+            this.rate = rate;
+        }
+    }
+
+    public Integer getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Change the capacity of the queue. Participants already waiting beyond a lower capacity stay.
+     *
+     * @param maxCapacity the maximum number of participants, or null for no limit
+     */
+    public void setMaxCapacity(Integer maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Whether the participants waiting and the places taken by admitted joins reach the maximum capacity.
+     *
+     * @return true if no participant may be added
+     */
+    public boolean isFull() {
+        return maxCapacity != null && size() + admitted >= maxCapacity;
+    }
+
+    /**
+     * Take a place for a join, if the queue is not full. The place is held until {@link #release()}.
+     *
+     * @return true if the join is admitted
+     */
+    public boolean admit() {
+        if (isFull()) {
+            return false;
+        }
+        admitted++;
+        return true;
+    }
+
+    /**
+     * Give back the place taken by an admitted join, placed or failed.
+     */
+    public void release() {
+        if (admitted > 0) {
+            admitted--;
+        }
+    }
+
+    /**
+     * Record that a participant joined, so the serve of the next one is timed from now if nobody was
+     * waiting.
+     *
+     * @param timestamp the time of the join, in epoch milliseconds
+     */
+    public void recordJoin(long timestamp) {
+        serveRate.waiting(timestamp);
+        profile.recordArrival(timestamp);
+        series.recordArrival(timestamp);
+        series.recordLength(timestamp, size());
+    }
+
+    /**
+     * Record that a participant moved in from another queue, so the serve of the next one is timed from
+     * now if nobody was waiting. It is not counted as an arrival.
+     *
+     * @param timestamp the time of the move, in epoch milliseconds
+     */
+    public void recordWaiting(long timestamp) {
+        serveRate.waiting(timestamp);
+        series.recordLength(timestamp, size());
+    }
+
+    /**
+     * The number of participants that may still be added before the queue is full.
+     *
+     * @return the room left, or {@link Integer#MAX_VALUE} if the queue has no maximum capacity
+     */
+    public int room() {
+        return maxCapacity == null ? Integer.MAX_VALUE : Math.max(0, maxCapacity - size() - admitted);
+    }
+
+    /**
+     * Record that the participant polled last was served, and update the estimated rate.
+     *
+     * @param timestamp the time of the serve, in epoch milliseconds
+     * @return true if the estimated rate changed
+     */
+    public boolean recordServe(long timestamp) {
+        serveRate.served(timestamp, !isEmpty());
+        profile.recordServe(timestamp);
+        series.recordServe(timestamp);
+        series.recordLength(timestamp, size());
+        Integer estimatedRate = serveRate.rate();
+        if (Objects.equals(rate, estimatedRate)) {
+            return false;
+        }
+        rate = estimatedRate;
+        return true;
+    }
+
+    /**
+     * Record that participants left without being served, so the time the queue then stands empty is not
+     * counted as service time.
+     *
+     * @param timestamp the time they left, in epoch milliseconds
+     */
+    public void recordLeave(long timestamp) {
+        if (isEmpty()) {
+            serveRate.idle();
+        }
+        series.recordLength(timestamp, size());
+    }
+
+    /**
+     * A copy of the arrivals and serves per hour of the week.
+     *
+     * @return the profile
+     */
+    public HourOfWeekProfile copyProfile() {
+        return profile.copy();
+    }
+
+    /**
+     * The arrivals and serves of the last minutes, without changing the queue.
+     *
+     * @param timestamp the current time, in epoch milliseconds
+     * @param minutes the number of minutes, at most {@link MinuteSeries#MINUTES}
+     * @return the arrivals, then the serves, each with one count per minute, oldest first
+     * @see MinuteSeries#window(long, int)
+     */
+    public int[][] minuteCounts(long timestamp, int minutes) {
+        return series.window(timestamp, minutes);
+    }
+
+    /**
+     * Close the hours ended by a time, and take the counts of the hours closed since the last drain.
+     *
+     * @param timestamp the current time, in epoch milliseconds
+     * @return the hours, arrivals, serves, longest lengths and times waited, as returned by
+     * {@link MinuteSeries#drainHours()}
+     */
+    public long[][] drainHourlyCounts(long timestamp) {
+        series.recordLength(timestamp, size());
+        return series.drainHours();
+    }
+
+    /**
+     * Put back hourly counts drained by {@link #drainHourlyCounts(long)} that could not be written.
+     *
+     * @param hours the hours, as returned by {@link #drainHourlyCounts(long)}
+     * @see MinuteSeries#restoreHours(long[][])
+     */
+    public void restoreHourlyCounts(long[][] hours) {
+        series.restoreHours(hours);
+    }
+
+    /**
+     * The estimated wait of the participant at a rank, from the estimated rate, in O(1).
+     *
+     * @param rank the rank, 1 being the next to be served
+     * @param timestamp the current time, in epoch milliseconds
+     * @return the estimated wait, in milliseconds, or -1 if the rate is unknown
+     */
+    public long estimatedWait(int rank, long timestamp) {
+        return serveRate.estimatedWait(rank, timestamp);
+    }
+
+    public ServingPolicy getServingPolicy() {
+        return servingPolicy;
+    }
+
+    /**
+     * Change how the lanes are served. Participants already waiting keep their lane; a lane beyond the
+     * given weights is weighted 1.
+     *
+     * @param servingPolicy the serving policy, or null for {@link ServingPolicy#STRICT_PRIORITY}
+     * @param laneWeights the weight of each lane, see {@link #parseLaneWeights(String)}
+     */
+    public void setServingPolicy(ServingPolicy servingPolicy, int[] laneWeights) {
+        this.servingPolicy = servingPolicy == null ? ServingPolicy.STRICT_PRIORITY : servingPolicy;
+        this.laneWeights = laneWeights;
+        this.currentCredit = 0;
+    }
+
+    /**
+     * Parse the lane weights of a dynamicQueue: comma-separated positive integers, one per lane, from
+     * lane 0. The number of weights is the number of lanes.
+     *
+     * @param laneWeights the lane weights, or null for a single lane
+     * @return the weight of each lane
+     * @throws IllegalArgumentException if the weights are not positive integers, or too many
+     */
+    public static int[] parseLaneWeights(String laneWeights) {
+        if (laneWeights == null || laneWeights.trim().isEmpty()) {
+            return SINGLE_LANE;
+        }
+        int[] weights = Arrays.stream(laneWeights.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        if (weights.length > MAX_LANES || Arrays.stream(weights).anyMatch(weight -> weight < 1)) {
+            throw new IllegalArgumentException("Invalid lane weights: " + laneWeights);
+        }
+        return weights;
+    }
+
+    /**
+     * The number of lanes participants may join.
+     *
+     * @return the number of lanes, at least 1
+     */
+    public int laneCount() {
+        return laneWeights.length;
+    }
+
+    /**
+     * The lane of this queue for a participant coming from another queue, which may have more lanes.
+     *
+     * @param lane the lane of the participant in its previous queue
+     * @return that lane, or the highest lane of this queue if it has fewer lanes
+     */
+    public int laneFor(int lane) {
+        return Math.max(0, Math.min(lane, laneCount() - 1));
+    }
+
+    /**
+     * The lane of a position.
+     *
+     * @param position the position
+     * @return the lane
+     */
+    public static int laneOf(long position) {
+        return (int) (position >>> LANE_SHIFT);
+    }
+
+    /**
+     * The position of a participant joining the tail of the default lane.
+     *
+     * @return the position
+     */
+    public long tailPosition() {
+        return tailPosition(0);
+    }
+
+    /**
+     * The position of a participant joining the tail of a lane.
+     *
+     * @param lane the lane, from 0 to {@link #MAX_LANES} excluded
+     * @return the position
+     */
+    public long tailPosition(int lane) {
+        return lane(lane).tailPosition();
+    }
+
+    /**
+     * The position of a participant inserted in front of another one, in the lane of that participant,
+     * renumbering the neighbours of that participant if the gap before it ran out.
+     *
+     * @param successorId the id of the participant to insert in front of
+     * @return the position, or {@link #NONE} if the successor is not waiting in this queue
+     */
+    public long positionBefore(long successorId) {
+        LiveQueueLane lane = laneOfParticipant(successorId);
+        return lane == null ? NONE : lane.positionBefore(successorId);
+    }
+
+    /**
+     * Insert a participant at its position, in the lane of the position, behind the participants with
+     * the same position.
+     *
+     * @param participantId the id of the participant
+     * @param position the position of the participant
+     */
+    public void insert(long participantId, long position) {
+        lane(laneOf(position)).insert(participantId, position);
+    }
+
+    /**
+     * Remove the next participant to serve, following the serving policy.
+     *
+     * @return the id of the removed participant, or {@link #NONE} if the queue is empty
+     */
+    public long poll() {
+        if (isEmpty()) {
+            return NONE;
+        }
+        if (servingPolicy == ServingPolicy.STRICT_PRIORITY || lanes.length == 1) {
+            for (int lane = lanes.length - 1; lane >= 0; lane--) {
+                if (!lanes[lane].isEmpty()) {
+                    return lanes[lane].poll();
+                }
+            }
+        }
+        // Some lane is not empty, so this ends within one cycle of visits
+        while (currentCredit == 0 || lanes[currentLane].isEmpty()) {
+            currentLane = nextLane(currentLane);
+            currentCredit = weight(currentLane);
+        }
+        currentCredit--;
+        return lanes[currentLane].poll();
+    }
+
+    /**
+     * Remove a participant from anywhere in the queue.
+     *
+     * @param participantId the id of the participant
+     * @return true if the participant was waiting in this queue
+     */
+    public boolean remove(long participantId) {
+        LiveQueueLane lane = laneOfParticipant(participantId);
+        return lane != null && lane.remove(participantId);
+    }
+
+    public boolean contains(long participantId) {
+        return laneOfParticipant(participantId) != null;
+    }
+
+    /**
+     * The live rank of a participant, 1 being the next to be served, following the serving policy and
+     * assuming nobody else joins.
+     *
+     * @param participantId the id of the participant
+     * @return the rank of the participant, or 0 if it is not waiting in this queue
+     */
+    public int rank(long participantId) {
+        int lane = laneIndexOfParticipant(participantId);
+        if (lane < 0) {
+            return 0;
+        }
+        int laneRank = lanes[lane].rank(participantId);
+        if (servingPolicy == ServingPolicy.STRICT_PRIORITY || lanes.length == 1) {
+            int rank = laneRank;
+            for (int higher = lane + 1; higher < lanes.length; higher++) {
+                rank += lanes[higher].size();
+            }
+            return rank;
+        }
+        return weightedRank(lane, laneRank);
+    }
+
+    /**
+     * The participant at a rank, counting the lanes from the highest. This is the serving order under
+     * {@link ServingPolicy#STRICT_PRIORITY}.
+     *
+     * @param rank the rank, from 1 to {@link #size()}
+     * @return the id of the participant
+     */
+    public long select(int rank) {
+        for (int lane = lanes.length - 1; lane >= 0; lane--) {
+            if (rank <= lanes[lane].size()) {
+                return lanes[lane].select(rank);
+            }
+            rank -= lanes[lane].size();
+        }
+        return NONE;
+    }
+
+    /**
+     * The ids of all the participants waiting, counting the lanes from the highest.
+     *
+     * @return the ids
+     */
+    public long[] participantIds() {
+        long[] participantIds = new long[size()];
+        for (int rank = 1; rank <= participantIds.length; rank++) {
+            participantIds[rank - 1] = select(rank);
+        }
+        return participantIds;
+    }
+
+    /**
+     * The stored position of a participant.
+     *
+     * @param participantId the id of the participant
+     * @return the position, or {@link #NONE} if the participant is not waiting in this queue
+     */
+    public long position(long participantId) {
+        LiveQueueLane lane = laneOfParticipant(participantId);
+        return lane == null ? NONE : lane.position(participantId);
+    }
+
+    public int size() {
+        int size = 0;
+        for (LiveQueueLane lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Return and forget the participants whose position was renumbered since the last call.
+     *
+     * @return the new positions, by participant id
+     */
+    public LongLongHashMap drainRenumbered() {
+        LongLongHashMap result = new LongLongHashMap(renumbered);
+        renumbered.clear();
+        return result;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        writeTo(out);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        readFrom(in);
+    }
+
+    /**
+     * Write the queue with the participants of each lane in serving order, so it is read back with
+     * appends only.
+     *
+     * @param out the output
+     * @throws IOException if the output fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(dynamicQueueId);
+        out.writeBoolean(rate != null);
+        out.writeInt(rate == null ? 0 : rate);
+        out.writeBoolean(maxCapacity != null);
+        out.writeInt(maxCapacity == null ? 0 : maxCapacity);
+        serveRate.writeTo(out);
+        profile.writeTo(out);
+        series.writeTo(out);
+        out.writeByte(servingPolicy.ordinal());
+        out.writeByte(laneWeights.length);
+        for (int weight : laneWeights) {
+            out.writeInt(weight);
+        }
+        out.writeByte(currentLane);
+        out.writeInt(currentCredit);
+        out.writeByte(lanes.length);
+        for (LiveQueueLane lane : lanes) {
+            lane.writeTo(out);
+        }
+    }
+
+    /**
+     * Read a queue written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input
+     * @return the queue
+     * @throws IOException if the input fails
+     */
+    public static LiveQueue read(DataInput in) throws IOException {
+        LiveQueue liveQueue = new LiveQueue();
+        liveQueue.readFrom(in);
+        return liveQueue;
+    }
+
+    private void readFrom(DataInput in) throws IOException {
+        dynamicQueueId = in.readLong();
+        boolean hasRate = in.readBoolean();
+        int writtenRate = in.readInt();
+        rate = hasRate ? writtenRate : null;
+        boolean hasMaxCapacity = in.readBoolean();
+        int writtenMaxCapacity = in.readInt();
+        maxCapacity = hasMaxCapacity ? writtenMaxCapacity : null;
+        serveRate.readFrom(in);
+        profile.readFrom(in);
+        series.readFrom(in);
+        servingPolicy = ServingPolicy.values()[in.readByte()];
+        laneWeights = new int[in.readByte()];
+        for (int i = 0; i < laneWeights.length; i++) {
+            laneWeights[i] = in.readInt();
+        }
+        currentLane = in.readByte();
+        currentCredit = in.readInt();
+        int laneCount = in.readByte();
+        for (int i = 0; i < laneCount; i++) {
+            lane(i).readFrom(in);
+        }
+    }
+
+    private LiveQueueLane lane(int lane) {
+        if (lane < 0 || lane >= MAX_LANES) {
+            throw new IllegalArgumentException("No such lane: " + lane);
+        }
+        if (lane >= lanes.length) {
+            int laneCount = lanes.length;
+            lanes = Arrays.copyOf(lanes, lane + 1);
+            for (int i = laneCount; i < lanes.length; i++) {
+                lanes[i] = new LiveQueueLane(i, renumbered);
+            }
+        }
+        return lanes[lane];
+    }
+
+    private int laneIndexOfParticipant(long participantId) {
+        for (int lane = lanes.length - 1; lane >= 0; lane--) {
+            if (lanes[lane].contains(participantId)) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+    private LiveQueueLane laneOfParticipant(long participantId) {
+        int lane = laneIndexOfParticipant(participantId);
+        return lane < 0 ? null : lanes[lane];
+    }
+
+    private int weight(int lane) {
+        return lane < laneWeights.length ? laneWeights[lane] : 1;
+    }
+
+    /**
+     * Lanes are visited from the highest down, then back to the highest.
+     */
+    private int nextLane(int lane) {
+        return lane == 0 ? lanes.length - 1 : lane - 1;
+    }
+
+    /**
+     * The number of visits from a lane to another, from 1 to the number of lanes.
+     */
+    private int distance(int fromLane, int toLane) {
+        int distance = Math.floorMod(fromLane - toLane, lanes.length);
+        return distance == 0 ? lanes.length : distance;
+    }
+
+    /**
+     * The rank under weighted round-robin. Visit 0 is the current lane with its remaining credit, then
+     * visit i is the lane i steps further with its full weight. The visit serving the participant follows
+     * from its rank in its lane, and every other lane serves up to its credit in the visits before, or
+     * all its participants if fewer.
+     */
+    private int weightedRank(int lane, int laneRank) {
+        int laneCount = lanes.length;
+        long servingVisit;
+        long remaining = laneRank;
+        if (lane == currentLane && laneRank <= currentCredit) {
+            servingVisit = 0;
+        } else {
+            if (lane == currentLane) {
+                remaining -= currentCredit;
+            }
+            long laneVisits = (remaining + weight(lane) - 1) / weight(lane);
+            servingVisit = distance(currentLane, lane) + (laneVisits - 1) * laneCount;
+        }
+        long rank = laneRank;
+        for (int other = 0; other < laneCount; other++) {
+            if (other == lane) {
+                continue;
+            }
+            int firstVisit = distance(currentLane, other);
+            long visits = servingVisit > firstVisit ? (servingVisit - firstVisit - 1) / laneCount + 1 : 0;
+            long credit = (other == currentLane ? currentCredit : 0) + visits * weight(other);
+            rank += Math.min(lanes[other].size(), credit);
+        }
+        return (int) rank;
+    }
+
+    @Override
+    public String toString() {
+        return "LiveQueue{" +
+            "dynamicQueueId=" + dynamicQueueId +
+            ", rate=" + rate +
+            ", maxCapacity=" + maxCapacity +
+            ", servingPolicy=" + servingPolicy +
+            ", laneWeights=" + Arrays.toString(laneWeights) +
+            ", size=" + size() +
+            "}";
+    }
+}
@@ -0,0 +1,350 @@
+package com.end.queues.service.engine;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.LongLongHashMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One priority lane of a {@link LiveQueue}: its participants in serving order.
+ *
+ * <p>
+ * Participants are ordered by a sparse position: joining the tail leaves a gap of
+ * {@link LiveQueue#POSITION_GAP} behind the last participant, and inserting in front of someone takes the
+ * middle of the gap before them. Only when a gap runs out are the positions of a small window of
+ * neighbours renumbered, and those are collected in the renumbered map of the queue. The visible rank is
+ * never stored. All the positions of a lane share the lane number in their high bits.
+ * </p>
+ * <p>
+ * Every participant has a slot of its own, in serving order. Joining the tail takes a new slot, and
+ * inserting in front of someone takes the free slot just before them. When there is none, the slots of
+ * a window around them are spread out evenly, the window doubling until it is at most half full, which
+ * leaves a free slot before each of its participants. A {@link FenwickTree} marks the occupied slots,
+ * so the rank of a participant is a prefix sum and the participant at a rank a search of the tree, both
+ * in O(log n) even after departures or inserts in the middle of the lane.
+ * </p>
+ */
+class LiveQueueLane {
+
+    /**
+     * Renumbering widens its window until the participants are at least this far apart.
+     */
+    private static final long MIN_RENUMBERED_GAP = LiveQueue.POSITION_GAP >> 8;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final long EMPTY_SLOT = 0L;
+
+    private final LongIntHashMap slotByParticipant = new LongIntHashMap();
+
+    private final LongLongHashMap positionByParticipant = new LongLongHashMap();
+
+    private final LongLongHashMap renumbered;
+
+    private final long firstPosition;
+
+    private long[] slots = new long[MIN_CAPACITY];
+
+    private FenwickTree occupied = new FenwickTree(MIN_CAPACITY);
+
+    private int head;
+
+    private int tail;
+
+    private long lastPosition;
+
+    LiveQueueLane(int lane, LongLongHashMap renumbered) {
+        this.firstPosition = (long) lane << LiveQueue.LANE_SHIFT;
+        this.lastPosition = firstPosition;
+        this.renumbered = renumbered;
+    }
+
+    long tailPosition() {
+        return lastPosition + LiveQueue.POSITION_GAP;
+    }
+
+    long positionBefore(long successorId) {
+        int rank = rank(successorId);
+        if (rank == 0) {
+            return LiveQueue.NONE;
+        }
+        long upper = positionByParticipant.get(successorId);
+        long lower = positionBefore(rank, upper);
+        if (upper - lower < 2) {
+            renumberAround(rank);
+            upper = positionByParticipant.get(successorId);
+            lower = positionBefore(rank, upper);
+        }
+        return lower + (upper - lower) / 2;
+    }
+
+    /**
+     * The position of the participant before a rank, or for the head the start of its gap, which never
+     * goes below the first position of the lane.
+     */
+    private long positionBefore(int rank, long upper) {
+        if (rank > 1) {
+            return positionByParticipant.get(select(rank - 1));
+        }
+        return Math.max(firstPosition, upper - LiveQueue.POSITION_GAP);
+    }
+
+    void insert(long participantId, long position) {
+        if (isEmpty() || position >= positionByParticipant.get(select(size()))) {
+            positionByParticipant.put(participantId, position);
+            lastPosition = Math.max(lastPosition, position);
+            appendSlot(participantId);
+            return;
+        }
+        // Binary search the first participant positioned after the new one
+        int low = 1;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positionByParticipant.get(select(middle)) > position) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        positionByParticipant.put(participantId, position);
+        linkBefore(participantId, select(low));
+    }
+
+    long poll() {
+        while (head < tail && slots[head] == EMPTY_SLOT) {
+            head++;
+        }
+        if (head == tail) {
+            return LiveQueue.NONE;
+        }
+        long participantId = slots[head];
+        remove(participantId);
+        return participantId;
+    }
+
+    boolean remove(long participantId) {
+        int index = slotByParticipant.indexOf(participantId);
+        if (!slotByParticipant.indexExists(index)) {
+            return false;
+        }
+        int slot = slotByParticipant.indexGet(index);
+        slots[slot] = EMPTY_SLOT;
+        slotByParticipant.remove(participantId);
+        positionByParticipant.remove(participantId);
+        renumbered.remove(participantId);
+        occupied.add(slot, -1);
+        return true;
+    }
+
+    boolean contains(long participantId) {
+        return slotByParticipant.containsKey(participantId);
+    }
+
+    int rank(long participantId) {
+        int index = slotByParticipant.indexOf(participantId);
+        if (!slotByParticipant.indexExists(index)) {
+            return 0;
+        }
+        return occupied.prefixSum(slotByParticipant.indexGet(index));
+    }
+
+    long select(int rank) {
+        return slots[occupied.lowerBound(rank)];
+    }
+
+    long position(long participantId) {
+        return positionByParticipant.getOrDefault(participantId, LiveQueue.NONE);
+    }
+
+    int size() {
+        return slotByParticipant.size();
+    }
+
+    boolean isEmpty() {
+        return slotByParticipant.isEmpty();
+    }
+
+    /**
+     * Write the lane with its participants in serving order, so it is read back with appends only.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(lastPosition);
+        out.writeInt(size());
+        if (isEmpty()) {
+            return;
+        }
+        long participantId = select(1);
+        while (participantId != LiveQueue.NONE) {
+            out.writeLong(participantId);
+            out.writeLong(positionByParticipant.get(participantId));
+            participantId = next(participantId);
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        long writtenLastPosition = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            insert(in.readLong(), in.readLong());
+        }
+        lastPosition = writtenLastPosition;
+    }
+
+    private void appendSlot(long participantId) {
+        if (tail == slots.length) {
+            resize();
+        }
+        slots[tail] = participantId;
+        occupied.add(tail, 1);
+        slotByParticipant.put(participantId, tail);
+        tail++;
+    }
+
+    private void linkBefore(long participantId, long successorId) {
+        int slot = slotByParticipant.get(successorId);
+        if (slot == 0 || slots[slot - 1] != EMPTY_SLOT) {
+            spreadAround(slot);
+            slot = slotByParticipant.get(successorId);
+        }
+        slots[slot - 1] = participantId;
+        occupied.add(slot - 1, 1);
+        slotByParticipant.put(participantId, slot - 1);
+        head = Math.min(head, slot - 1);
+    }
+
+    /**
+     * Spread out the participants of the window of slots around a slot, so that each of them has a free
+     * slot before it. The window doubles until it is at most half full, and when the whole lane is more
+     * than half full the tail moves further, growing the slot array if needed.
+     */
+    private void spreadAround(int slot) {
+        int width = 2;
+        while (true) {
+            int low = Math.max(0, slot - width / 2);
+            int high = Math.min(tail, low + width);
+            low = Math.max(0, high - width);
+            int count = occupied.prefixSum(high - 1) - occupied.prefixSum(low - 1);
+            if (2 * (count + 1) <= high - low) {
+                spread(low, high, count);
+                return;
+            }
+            if (low == 0 && high == tail) {
+                int newTail = 2 * (count + 1);
+                while (newTail > slots.length) {
+                    grow();
+                }
+                tail = newTail;
+                spread(0, tail, count);
+                return;
+            }
+            width *= 2;
+        }
+    }
+
+    private void spread(int low, int high, int count) {
+        long[] participantIds = new long[count];
+        int i = 0;
+        for (int slot = low; slot < high; slot++) {
+            if (slots[slot] != EMPTY_SLOT) {
+                participantIds[i++] = slots[slot];
+                slots[slot] = EMPTY_SLOT;
+                occupied.add(slot, -1);
+            }
+        }
+        // Consecutive participants end up at least two slots apart, the first one past the low end
+        for (i = 0; i < count; i++) {
+            int slot = low + (int) ((long) (i + 1) * (high - low) / (count + 1));
+            slots[slot] = participantIds[i];
+            occupied.add(slot, 1);
+            slotByParticipant.put(participantIds[i], slot);
+        }
+        head = Math.min(head, low);
+    }
+
+    private long next(long participantId) {
+        for (int slot = slotByParticipant.get(participantId) + 1; slot < tail; slot++) {
+            if (slots[slot] != EMPTY_SLOT) {
+                return slots[slot];
+            }
+        }
+        return LiveQueue.NONE;
+    }
+
+    /**
+     * Spread the positions of the participants around a rank evenly, leaving a free gap just before it.
+     * The window doubles until its participants are far enough apart, so the number of renumbered
+     * participants stays small. A window reaching the tail may extend past the last position. Around
+     * the head, the participants all move up, so the gap opens between the head and the first position
+     * of the lane.
+     */
+    private void renumberAround(int rank) {
+        int low;
+        int high;
+        long gap;
+        int width = 1;
+        while (true) {
+            low = Math.max(1, rank - width);
+            high = Math.min(size(), rank - 1 + width);
+            long first = positionByParticipant.get(select(low));
+            gap = (positionByParticipant.get(select(high)) - first) / (high - low + 1);
+            if (gap >= MIN_RENUMBERED_GAP) {
+                break;
+            }
+            if (high == size()) {
+                gap = LiveQueue.POSITION_GAP;
+                break;
+            }
+            width *= 2;
+        }
+        long participantId = select(low);
+        long first = positionByParticipant.get(participantId);
+        for (int i = low; i <= high; i++) {
+            long position = first + (i - low + (i >= rank ? 1 : 0)) * gap;
+            if (positionByParticipant.put(participantId, position) != position) {
+                renumbered.put(participantId, position);
+            }
+            lastPosition = Math.max(lastPosition, position);
+            participantId = next(participantId);
+        }
+    }
+
+    /**
+     * Drop the vacated slots before the head and grow the slot array if it is still more than half
+     * full, then rebuild the tree in O(n). Resizing only happens when the tail reaches the end of the
+     * array, so its cost is amortized over the appends.
+     */
+    private void resize() {
+        resize(slots.length);
+    }
+
+    private void grow() {
+        resize(2 * slots.length);
+    }
+
+    private void resize(int minCapacity) {
+        while (head < tail && slots[head] == EMPTY_SLOT) {
+            head++;
+        }
+        int span = tail - head;
+        int capacity = minCapacity;
+        while (span * 2 > capacity) {
+            capacity *= 2;
+        }
+        long[] newSlots = new long[capacity];
+        int[] counts = new int[capacity];
+        System.arraycopy(slots, head, newSlots, 0, span);
+        for (int slot = 0; slot < span; slot++) {
+            if (newSlots[slot] != EMPTY_SLOT) {
+                counts[slot] = 1;
+                slotByParticipant.put(newSlots[slot], slot);
+            }
+        }
+        slots = newSlots;
+        occupied = FenwickTree.of(counts, capacity);
+        head = 0;
+        tail = span;
+    }
+}
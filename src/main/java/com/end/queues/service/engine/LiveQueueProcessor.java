@@ -0,0 +1,38 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Base class of the entry processors changing a {@link LiveQueue}.
+ *
+ * <p>
+ * Hazelcast runs the processor on the partition owner of the queue, one at a time per partition, so a
+ * change is a single call from any member and the caller never takes a lock. The same processor is
+ * applied to the backup copy, so changes must only depend on the queue and the processor fields.
+ * </p>
+ */
+public abstract class LiveQueueProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        LiveQueueUpdate update = apply(liveQueue);
+        entry.setValue(liveQueue);
+        return update;
+    }
+
+    /**
+     * Change the queue.
+     *
+     * @param liveQueue the queue, changed in place
+     * @return the outcome of the change, or null if the change does not apply
+     */
+    protected abstract LiveQueueUpdate apply(LiveQueue liveQueue);
+}
@@ -0,0 +1,134 @@
+package com.end.queues.service.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A binary image of live queues on local disk, with the ticket of the last journal record it covers.
+ *
+ * <p>
+ * The file holds a header (magic number, format version, journal ticket, number of queues) followed by
+ * each queue as written by {@link LiveQueue#writeTo}. A snapshot is written to a temporary file, forced
+ * to disk and renamed, so a crash never leaves a partial snapshot behind, and the older snapshots are
+ * deleted once the new one is in place.
+ * </p>
+ */
+public class LiveQueueSnapshot {
+
+    private static final int MAGIC = 0x51315351;
+
+    private static final int VERSION = 7;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final String TEMPORARY_FILE = "snapshot.tmp";
+
+    private final long journalTicket;
+
+    private final List<LiveQueue> liveQueues;
+
+    public LiveQueueSnapshot(long journalTicket, List<LiveQueue> liveQueues) {
+        this.journalTicket = journalTicket;
+        this.liveQueues = liveQueues;
+    }
+
+    /**
+     * The ticket of the last journal record covered. Records with a greater ticket must be replayed on the
+     * queues of the snapshot.
+     *
+     * @return the ticket
+     */
+    public long getJournalTicket() {
+        return journalTicket;
+    }
+
+    public List<LiveQueue> getLiveQueues() {
+        return liveQueues;
+    }
+
+    /**
+     * Write a snapshot, and delete the older ones.
+     *
+     * @param directory the directory of the snapshot files, created if needed
+     * @param journalTicket the ticket of the last journal record covered
+     * @param serializedQueues the queues, each as written by {@link LiveQueue#writeTo}
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Path directory, long journalTicket, Collection<byte[]> serializedQueues) throws IOException {
+        Files.createDirectories(directory);
+        Path temporaryFile = directory.resolve(TEMPORARY_FILE);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalTicket);
+            out.writeInt(serializedQueues.size());
+            for (byte[] serializedQueue : serializedQueues) {
+                out.write(serializedQueue);
+            }
+            out.flush();
+            fileOutputStream.getChannel().force(true);
+        }
+        Path snapshotFile = directory.resolve(String.format("%s%019d%s", SNAPSHOT_PREFIX, journalTicket, SNAPSHOT_SUFFIX));
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (Path path : snapshots(directory)) {
+            if (!path.equals(snapshotFile)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Read the latest snapshot of a directory.
+     *
+     * @param directory the directory of the snapshot files
+     * @return the snapshot, or null if there is none
+     * @throws IOException if the snapshot cannot be read or is not a snapshot
+     */
+    public static LiveQueueSnapshot readLatest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        List<Path> snapshots = snapshots(directory);
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        Path latest = snapshots.get(snapshots.size() - 1);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(latest)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a live queue snapshot: " + latest);
+            }
+            long journalTicket = in.readLong();
+            int count = in.readInt();
+            List<LiveQueue> liveQueues = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                liveQueues.add(LiveQueue.read(in));
+            }
+            return new LiveQueueSnapshot(journalTicket, liveQueues);
+        }
+    }
+
+    private static List<Path> snapshots(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            stream.forEach(snapshots::add);
+        }
+        // Tickets are zero-padded, so the names sort in order
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+}
@@ -0,0 +1,137 @@
+package com.end.queues.service.engine;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.cursors.LongLongCursor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The outcome of an entry processor changing a {@link LiveQueue}, sent back to the caller.
+ */
+public class LiveQueueUpdate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long[] NO_PARTICIPANTS = new long[0];
+
+    private final long participantId;
+
+    private final long position;
+
+    private final int numParticipants;
+
+    private final long[] renumberedParticipantIds;
+
+    private final long[] renumberedPositions;
+
+    private final Integer rate;
+
+    private final boolean rateChanged;
+
+    public LiveQueueUpdate(long participantId, long position, int numParticipants, long[] renumberedParticipantIds,
+            long[] renumberedPositions, Integer rate, boolean rateChanged) {
+        this.participantId = participantId;
+        this.position = position;
+        this.numParticipants = numParticipants;
+        this.renumberedParticipantIds = renumberedParticipantIds;
+        this.renumberedPositions = renumberedPositions;
+        this.rate = rate;
+        this.rateChanged = rateChanged;
+    }
+
+    /**
+     * The outcome of a change that placed a participant, collecting the participants renumbered on the way.
+     *
+     * @param liveQueue the changed queue
+     * @param participantId the id of the participant placed
+     * @return the update
+     */
+    public static LiveQueueUpdate placed(LiveQueue liveQueue, long participantId) {
+        LongLongHashMap renumbered = liveQueue.drainRenumbered();
+        long[] renumberedParticipantIds = new long[renumbered.size()];
+        long[] renumberedPositions = new long[renumbered.size()];
+        int i = 0;
+        for (LongLongCursor cursor : renumbered) {
+            renumberedParticipantIds[i] = cursor.key;
+            renumberedPositions[i] = cursor.value;
+            i++;
+        }
+        return new LiveQueueUpdate(participantId, liveQueue.position(participantId), liveQueue.size(),
+            renumberedParticipantIds, renumberedPositions, liveQueue.getRate(), false);
+    }
+
+    /**
+     * The outcome of a change that did not place any participant.
+     *
+     * @param liveQueue the changed queue
+     * @param participantId the id of the participant removed, or {@link LiveQueue#NONE}
+     * @return the update
+     */
+    public static LiveQueueUpdate removed(LiveQueue liveQueue, long participantId) {
+        return new LiveQueueUpdate(participantId, LiveQueue.NONE, liveQueue.size(), NO_PARTICIPANTS, NO_PARTICIPANTS,
+            liveQueue.getRate(), false);
+    }
+
+    /**
+     * The outcome of a serve, which may have changed the estimated rate of the queue.
+     *
+     * @param liveQueue the changed queue
+     * @param participantId the id of the participant served
+     * @param rateChanged whether the serve changed the rate
+     * @return the update
+     */
+    public static LiveQueueUpdate served(LiveQueue liveQueue, long participantId, boolean rateChanged) {
+        return new LiveQueueUpdate(participantId, LiveQueue.NONE, liveQueue.size(), NO_PARTICIPANTS, NO_PARTICIPANTS,
+            liveQueue.getRate(), rateChanged);
+    }
+
+    public long getParticipantId() {
+        return participantId;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public int getNumParticipants() {
+        return numParticipants;
+    }
+
+    public long[] getRenumberedParticipantIds() {
+        return renumberedParticipantIds;
+    }
+
+    /**
+     * The new positions of the renumbered participants, in the order of {@link #getRenumberedParticipantIds()}.
+     *
+     * @return the positions
+     */
+    public long[] getRenumberedPositions() {
+        return renumberedPositions;
+    }
+
+    /**
+     * The rate of the queue after the change.
+     *
+     * @return the number of participants served per hour, or null if unknown
+     */
+    public Integer getRate() {
+        return rate;
+    }
+
+    public boolean isRateChanged() {
+        return rateChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "LiveQueueUpdate{" +
+            "participantId=" + participantId +
+            ", position=" + position +
+            ", numParticipants=" + numParticipants +
+            ", rate=" + rate +
+            ", renumberedParticipantIds=" + Arrays.toString(renumberedParticipantIds) +
+            "}";
+    }
+}
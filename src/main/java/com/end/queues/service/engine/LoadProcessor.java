@@ -0,0 +1,33 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Read the number of participants of a queue, the room left under its maximum capacity and its rate on
+ * the partition owner, without changing the queue.
+ */
+public class LoadProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return the number of participants, the room left and the rate or -1 if unknown, or null if the
+     * queue is not loaded
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        return new int[] { liveQueue.size(), liveQueue.room(), liveQueue.getRate() == null ? -1 : liveQueue.getRate() };
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
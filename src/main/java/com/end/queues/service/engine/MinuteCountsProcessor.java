@@ -0,0 +1,44 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.service.dto.QueueTimeSeriesDTO;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Copy the arrivals and serves of the last minutes of a queue on the partition owner, without changing
+ * the queue.
+ */
+public class MinuteCountsProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private final int minutes;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public MinuteCountsProcessor(int minutes) {
+        this.minutes = minutes;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        int[][] counts = liveQueue.minuteCounts(timestamp, minutes);
+        Instant from = Instant.ofEpochMilli((MinuteSeries.minuteOf(timestamp) - minutes + 1) * MILLIS_PER_MINUTE);
+        return new QueueTimeSeriesDTO(liveQueue.getDynamicQueueId(), from, counts[0], counts[1]);
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
@@ -0,0 +1,342 @@
+package com.end.queues.service.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The arrivals and serves of a {@link LiveQueue} counted per minute over the last 24 hours, rolled over
+ * into hourly counts, with the length of the queue through each hour.
+ *
+ * <p>
+ * The minutes are two preallocated rings of {@link #MINUTES} counters, indexed by minutes since the epoch
+ * modulo the ring size, so recording an event is O(1) and the series never grows. Moving to a later
+ * minute clears the slots skipped since the last one. An event older than the current minute, from a
+ * member whose clock is slightly behind, is counted in the current minute.
+ * </p>
+ * <p>
+ * The events of the current hour are also counted apart. When the series moves to a later hour, the
+ * counts of the hour closed are kept as pending, up to {@link #MAX_PENDING_HOURS}, until they are drained
+ * to be written to the database. Hours without events nor participants waiting are not kept.
+ * </p>
+ * <p>
+ * Each hour also holds the longest length of the queue and the time waited by all its participants, the
+ * length integrated over the hour, in participant-milliseconds. The queue reports its length with
+ * {@link #recordLength(long, int)} after every change, so the wait is exact to the millisecond; divided
+ * by the arrivals over a long enough period, it gives the mean wait by Little's law.
+ * </p>
+ */
+public class MinuteSeries {
+
+    /**
+     * The number of minutes held, 24 hours.
+     */
+    public static final int MINUTES = 24 * 60;
+
+    /**
+     * The largest number of closed hours kept until they are drained. Older ones are dropped.
+     */
+    public static final int MAX_PENDING_HOURS = 48;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private static final int MINUTES_PER_HOUR = 60;
+
+    private static final long NO_EVENT = -1L;
+
+    private final int[] arrivals = new int[MINUTES];
+
+    private final int[] serves = new int[MINUTES];
+
+    private long currentMinute = NO_EVENT;
+
+    private int hourArrivals;
+
+    private int hourServes;
+
+    private int hourPeak;
+
+    private long hourWaitMillis;
+
+    private int length;
+
+    private long lengthSince = NO_EVENT;
+
+    private final long[] pendingHours = new long[MAX_PENDING_HOURS];
+
+    private final int[] pendingArrivals = new int[MAX_PENDING_HOURS];
+
+    private final int[] pendingServes = new int[MAX_PENDING_HOURS];
+
+    private final int[] pendingPeaks = new int[MAX_PENDING_HOURS];
+
+    private final long[] pendingWaitMillis = new long[MAX_PENDING_HOURS];
+
+    private int pendingCount;
+
+    /**
+     * The minute of an instant, counted from the epoch.
+     *
+     * @param timestamp the instant, in epoch milliseconds
+     * @return the minute
+     */
+    public static long minuteOf(long timestamp) {
+        return Math.floorDiv(timestamp, MILLIS_PER_MINUTE);
+    }
+
+    public void recordArrival(long timestamp) {
+        arrivals[slot(timestamp)]++;
+        hourArrivals++;
+    }
+
+    public void recordServe(long timestamp) {
+        serves[slot(timestamp)]++;
+        hourServes++;
+    }
+
+    /**
+     * Record the length of the queue after a change, counting the time waited at the previous length.
+     *
+     * @param timestamp the time of the change, in epoch milliseconds
+     * @param length the number of participants now waiting
+     */
+    public void recordLength(long timestamp, int length) {
+        advance(timestamp);
+        accrueWait(timestamp);
+        this.length = length;
+        hourPeak = Math.max(hourPeak, length);
+    }
+
+    /**
+     * Move the series to the minute of an instant, clearing the minutes skipped and closing the hour if it
+     * changed.
+     *
+     * @param timestamp the instant, in epoch milliseconds
+     */
+    public void advance(long timestamp) {
+        long minute = minuteOf(timestamp);
+        if (currentMinute == NO_EVENT) {
+            currentMinute = minute;
+            return;
+        }
+        if (minute <= currentMinute) {
+            return;
+        }
+        long hour = Math.floorDiv(currentMinute, MINUTES_PER_HOUR);
+        long nextHour = Math.floorDiv(minute, MINUTES_PER_HOUR);
+        if (nextHour != hour) {
+            closeHour(hour);
+            // The hours without events in between still count the participants waiting through them
+            if (length > 0) {
+                long firstHour = Math.max(hour + 1, nextHour - MAX_PENDING_HOURS);
+                lengthSince = Math.max(lengthSince, firstHour * MILLIS_PER_HOUR);
+                for (long h = firstHour; h < nextHour; h++) {
+                    closeHour(h);
+                }
+            }
+        }
+        long skipped = Math.min(minute - currentMinute, MINUTES);
+        for (long i = 1; i <= skipped; i++) {
+            int slot = slotOf(currentMinute + i);
+            arrivals[slot] = 0;
+            serves[slot] = 0;
+        }
+        currentMinute = minute;
+    }
+
+    /**
+     * The counts of the last minutes up to the minute of an instant, oldest first, without changing the
+     * series.
+     *
+     * @param timestamp the instant, in epoch milliseconds
+     * @param minutes the number of minutes, at most {@link #MINUTES}
+     * @return the arrivals, then the serves, each with one count per minute
+     */
+    public int[][] window(long timestamp, int minutes) {
+        int[][] window = new int[2][minutes];
+        long lastMinute = minuteOf(timestamp);
+        for (int i = 0; i < minutes; i++) {
+            long minute = lastMinute - minutes + 1 + i;
+            // Minutes after the current one are empty, and so are those it overwrote
+            if (currentMinute != NO_EVENT && minute <= currentMinute && minute > currentMinute - MINUTES) {
+                window[0][i] = arrivals[slotOf(minute)];
+                window[1][i] = serves[slotOf(minute)];
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Take the counts of the hours closed since the last drain.
+     *
+     * @return the hours counted from the epoch, then the arrivals, the serves, the longest length and the
+     * time waited in participant-milliseconds of each hour, oldest first
+     */
+    public long[][] drainHours() {
+        long[][] hours = new long[5][pendingCount];
+        for (int i = 0; i < pendingCount; i++) {
+            hours[0][i] = pendingHours[i];
+            hours[1][i] = pendingArrivals[i];
+            hours[2][i] = pendingServes[i];
+            hours[3][i] = pendingPeaks[i];
+            hours[4][i] = pendingWaitMillis[i];
+        }
+        pendingCount = 0;
+        return hours;
+    }
+
+    /**
+     * Put back hours drained by {@link #drainHours()} that could not be written, before the hours closed
+     * since. An hour closed again meanwhile is added up, and the oldest hours beyond
+     * {@link #MAX_PENDING_HOURS} are dropped.
+     *
+     * @param hours the hours, as returned by {@link #drainHours()}
+     */
+    public void restoreHours(long[][] hours) {
+        long[][] pending = drainHours();
+        for (int i = 0; i < hours[0].length; i++) {
+            addPendingHour(hours[0][i], (int) hours[1][i], (int) hours[2][i], (int) hours[3][i], hours[4][i]);
+        }
+        for (int i = 0; i < pending[0].length; i++) {
+            addPendingHour(pending[0][i], (int) pending[1][i], (int) pending[2][i], (int) pending[3][i], pending[4][i]);
+        }
+    }
+
+    public int pendingHours() {
+        return pendingCount;
+    }
+
+    /**
+     * Keep the counts of a closed hour, after the hours already kept, adding them up if it is the last one.
+     */
+    private void addPendingHour(long hour, int hourArrivals, int hourServes, int hourPeak, long hourWaitMillis) {
+        int last = pendingCount - 1;
+        if (last >= 0 && pendingHours[last] == hour) {
+            pendingArrivals[last] += hourArrivals;
+            pendingServes[last] += hourServes;
+            pendingPeaks[last] = Math.max(pendingPeaks[last], hourPeak);
+            pendingWaitMillis[last] += hourWaitMillis;
+            return;
+        }
+        if (pendingCount == MAX_PENDING_HOURS) {
+            System.arraycopy(pendingHours, 1, pendingHours, 0, MAX_PENDING_HOURS - 1);
+            System.arraycopy(pendingArrivals, 1, pendingArrivals, 0, MAX_PENDING_HOURS - 1);
+            System.arraycopy(pendingServes, 1, pendingServes, 0, MAX_PENDING_HOURS - 1);
+            System.arraycopy(pendingPeaks, 1, pendingPeaks, 0, MAX_PENDING_HOURS - 1);
+            System.arraycopy(pendingWaitMillis, 1, pendingWaitMillis, 0, MAX_PENDING_HOURS - 1);
+            pendingCount--;
+        }
+        pendingHours[pendingCount] = hour;
+        pendingArrivals[pendingCount] = hourArrivals;
+        pendingServes[pendingCount] = hourServes;
+        pendingPeaks[pendingCount] = hourPeak;
+        pendingWaitMillis[pendingCount] = hourWaitMillis;
+        pendingCount++;
+    }
+
+    private int slot(long timestamp) {
+        advance(timestamp);
+        return slotOf(currentMinute);
+    }
+
+    private void closeHour(long hour) {
+        accrueWait((hour + 1) * MILLIS_PER_HOUR);
+        if (hourArrivals != 0 || hourServes != 0 || hourPeak != 0) {
+            addPendingHour(hour, hourArrivals, hourServes, hourPeak, hourWaitMillis);
+        }
+        hourArrivals = 0;
+        hourServes = 0;
+        // The participants still waiting carry over to the next hour
+        hourPeak = length;
+        hourWaitMillis = 0;
+    }
+
+    /**
+     * Count the time waited at the current length up to an instant of the current hour.
+     */
+    private void accrueWait(long timestamp) {
+        if (lengthSince != NO_EVENT && timestamp > lengthSince) {
+            hourWaitMillis += length * (timestamp - lengthSince);
+        }
+        lengthSince = Math.max(lengthSince, timestamp);
+    }
+
+    private static int slotOf(long minute) {
+        return (int) Math.floorMod(minute, (long) MINUTES);
+    }
+
+    /**
+     * Write the series with only its minutes with events.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(currentMinute);
+        out.writeInt(hourArrivals);
+        out.writeInt(hourServes);
+        out.writeInt(hourPeak);
+        out.writeLong(hourWaitMillis);
+        out.writeInt(length);
+        out.writeLong(lengthSince);
+        int used = 0;
+        for (int slot = 0; slot < MINUTES; slot++) {
+            if (arrivals[slot] != 0 || serves[slot] != 0) {
+                used++;
+            }
+        }
+        out.writeShort(used);
+        for (int slot = 0; slot < MINUTES; slot++) {
+            if (arrivals[slot] != 0 || serves[slot] != 0) {
+                out.writeShort(slot);
+                out.writeInt(arrivals[slot]);
+                out.writeInt(serves[slot]);
+            }
+        }
+        out.writeByte(pendingCount);
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeLong(pendingHours[i]);
+            out.writeInt(pendingArrivals[i]);
+            out.writeInt(pendingServes[i]);
+            out.writeInt(pendingPeaks[i]);
+            out.writeLong(pendingWaitMillis[i]);
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        currentMinute = in.readLong();
+        hourArrivals = in.readInt();
+        hourServes = in.readInt();
+        hourPeak = in.readInt();
+        hourWaitMillis = in.readLong();
+        length = in.readInt();
+        lengthSince = in.readLong();
+        Arrays.fill(arrivals, 0);
+        Arrays.fill(serves, 0);
+        int used = in.readShort();
+        for (int i = 0; i < used; i++) {
+            int slot = in.readShort();
+            arrivals[slot] = in.readInt();
+            serves[slot] = in.readInt();
+        }
+        pendingCount = in.readByte();
+        for (int i = 0; i < pendingCount; i++) {
+            pendingHours[i] = in.readLong();
+            pendingArrivals[i] = in.readInt();
+            pendingServes[i] = in.readInt();
+            pendingPeaks[i] = in.readInt();
+            pendingWaitMillis[i] = in.readLong();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MinuteSeries{" +
+            "currentMinute=" + currentMinute +
+            ", arrivals=" + Arrays.stream(arrivals).sum() +
+            ", serves=" + Arrays.stream(serves).sum() +
+            ", length=" + length +
+            ", pendingHours=" + pendingCount +
+            "}";
+    }
+}
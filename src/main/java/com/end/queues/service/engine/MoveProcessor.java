@@ -0,0 +1,34 @@
+package com.end.queues.service.engine;
+
+/**
+ * Move a waiting participant in front of another participant, into the lane of that participant, or to
+ * the tail of its own lane.
+ */
+public class MoveProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final Long beforeParticipantId;
+
+    public MoveProcessor(long participantId, Long beforeParticipantId) {
+        this.participantId = participantId;
+        this.beforeParticipantId = beforeParticipantId;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        if (!liveQueue.contains(participantId) || Long.valueOf(participantId).equals(beforeParticipantId)) {
+            return null;
+        }
+        long position = beforeParticipantId == null ? liveQueue.tailPosition(LiveQueue.laneOf(liveQueue.position(participantId)))
+            : liveQueue.positionBefore(beforeParticipantId);
+        if (position == LiveQueue.NONE) {
+            return null;
+        }
+        liveQueue.remove(participantId);
+        liveQueue.insert(participantId, position);
+        return LiveQueueUpdate.placed(liveQueue, participantId);
+    }
+}
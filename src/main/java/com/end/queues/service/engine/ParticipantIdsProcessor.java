@@ -0,0 +1,28 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Read the ids of the participants waiting in a queue on the partition owner, without changing the queue.
+ */
+public class ParticipantIdsProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        return liveQueue.participantIds();
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
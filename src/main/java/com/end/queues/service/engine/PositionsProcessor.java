@@ -0,0 +1,41 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Read the stored positions of several participants on the partition owner, without changing the queue.
+ * The position of a participant no longer waiting is {@link LiveQueue#NONE}.
+ */
+public class PositionsProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] participantIds;
+
+    public PositionsProcessor(long[] participantIds) {
+        this.participantIds = participantIds;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        long[] positions = new long[participantIds.length];
+        if (liveQueue == null) {
+            Arrays.fill(positions, LiveQueue.NONE);
+            return positions;
+        }
+        for (int i = 0; i < participantIds.length; i++) {
+            positions[i] = liveQueue.position(participantIds[i]);
+        }
+        return positions;
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
@@ -0,0 +1,266 @@
+package com.end.queues.service.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only journal of the outcomes of queue operations, in memory-mapped segment files.
+ *
+ * <p>
+ * Each record is length-prefixed: an int length, then the type, the dynamicQueue id, the participant id
+ * and the position. The length is written last, so a record is only visible once complete, and a zero
+ * length marks the end of a segment. Records hold outcomes rather than requests (a participant placed
+ * at a position, a participant removed), so replaying them needs no queue logic.
+ * </p>
+ * <p>
+ * {@link #append} returns a ticket, and {@link #sync(long)} returns once the record of that ticket is
+ * forced to disk. Callers syncing concurrently share one force: the first one forces everything
+ * appended so far, and the others find their record already durable. This is a group commit.
+ * </p>
+ * <p>
+ * A journal always starts a new segment when opened. Segments are only deleted on request, once their
+ * records are covered by a snapshot or replayed.
+ * </p>
+ */
+public class QueueJournal implements Closeable {
+
+    /**
+     * A participant placed at a position: joined, moved or renumbered.
+     */
+    public static final byte PLACED = 1;
+
+    /**
+     * A participant removed from its queue: served or left.
+     */
+    public static final byte REMOVED = 2;
+
+    /**
+     * A participant taken out of its queue to be placed in another one, with the position it held. Unless
+     * a later record places it, it is put back at that position.
+     */
+    public static final byte TRANSFERRED = 3;
+
+    private static final int PAYLOAD_SIZE = 1 + 8 + 8 + 8;
+
+    private static final int RECORD_SIZE = 4 + PAYLOAD_SIZE;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Receives the records of a journal, in the order they were appended, with their ticket.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        void record(long ticket, byte type, long dynamicQueueId, long participantId, long position);
+    }
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final Object appendLock = new Object();
+
+    private final Object syncLock = new Object();
+
+    private final AtomicLong synced = new AtomicLong();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer segment;
+
+    private long segmentNumber;
+
+    private int writeOffset;
+
+    /**
+     * Open a journal, starting a new segment after the existing ones.
+     *
+     * @param directory the directory of the segment files, created if needed
+     * @param segmentSize the size of a segment file, in bytes
+     * @throws IOException if the segment cannot be created
+     */
+    public QueueJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < RECORD_SIZE + 4) {
+            throw new IllegalArgumentException("A journal segment must hold at least one record");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Path> segments = segments(directory);
+        long lastSegmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+        openSegment(lastSegmentNumber + 1);
+    }
+
+    /**
+     * Append a record. It is not durable until {@link #sync(long)} returns.
+     *
+     * @param type {@link #PLACED}, {@link #REMOVED} or {@link #TRANSFERRED}
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param participantId the id of the participant
+     * @param position the new position of the participant, the position it held if transferred, or
+     * {@link LiveQueue#NONE}
+     * @return the ticket of the record
+     * @throws IOException if a new segment cannot be created
+     */
+    public long append(byte type, long dynamicQueueId, long participantId, long position) throws IOException {
+        synchronized (appendLock) {
+            if (writeOffset + RECORD_SIZE + 4 > segmentSize) {
+                rollSegment();
+            }
+            int offset = writeOffset;
+            segment.put(offset + 4, type);
+            segment.putLong(offset + 5, dynamicQueueId);
+            segment.putLong(offset + 13, participantId);
+            segment.putLong(offset + 21, position);
+            segment.putInt(offset, PAYLOAD_SIZE);
+            writeOffset += RECORD_SIZE;
+            return ticket(segmentNumber, writeOffset);
+        }
+    }
+
+    /**
+     * Wait until a record is forced to disk.
+     *
+     * @param ticket the ticket returned by {@link #append}
+     */
+    public void sync(long ticket) {
+        if (synced.get() >= ticket) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced.get() >= ticket) {
+                return;
+            }
+            MappedByteBuffer toForce;
+            long appended;
+            synchronized (appendLock) {
+                toForce = segment;
+                appended = ticket(segmentNumber, writeOffset);
+            }
+            toForce.force();
+            synced.accumulateAndGet(appended, Math::max);
+        }
+    }
+
+    /**
+     * The ticket of the last record appended. Every record appended later has a greater ticket.
+     *
+     * @return the ticket
+     */
+    public long currentTicket() {
+        synchronized (appendLock) {
+            return ticket(segmentNumber, writeOffset);
+        }
+    }
+
+    /**
+     * Delete the segments holding only records up to a ticket, once they are no longer needed.
+     *
+     * @param ticket the ticket of the last record no longer needed
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void deleteSegmentsBefore(long ticket) throws IOException {
+        long lastSegmentNumber = ticket >>> 32;
+        for (Path path : segments(directory)) {
+            if (segmentNumber(path) < lastSegmentNumber) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Delete all the segments before the current one.
+     *
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void deleteOldSegments() throws IOException {
+        deleteSegmentsBefore(currentTicket());
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            segment.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * Read all the records of the segments in a directory, oldest first.
+     *
+     * @param directory the directory of the segment files
+     * @param handler the handler of the records
+     * @return the number of records read
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path directory, RecordHandler handler) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long count = 0;
+        for (Path path : segments(directory)) {
+            long number = segmentNumber(path);
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                while (buffer.remaining() >= RECORD_SIZE && buffer.getInt(buffer.position()) == PAYLOAD_SIZE) {
+                    buffer.getInt();
+                    byte type = buffer.get();
+                    long dynamicQueueId = buffer.getLong();
+                    long participantId = buffer.getLong();
+                    long position = buffer.getLong();
+                    handler.record(ticket(number, buffer.position()), type, dynamicQueueId, participantId, position);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void rollSegment() throws IOException {
+        segment.force();
+        synced.accumulateAndGet(ticket(segmentNumber, writeOffset), Math::max);
+        channel.close();
+        openSegment(segmentNumber + 1);
+    }
+
+    private void openSegment(long number) throws IOException {
+        Path path = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segmentNumber = number;
+        writeOffset = 0;
+    }
+
+    private static long ticket(long segmentNumber, int offset) {
+        return segmentNumber << 32 | offset;
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        // Segment numbers are zero-padded, so the names sort in order
+        Collections.sort(segments);
+        return segments;
+    }
+}
@@ -0,0 +1,217 @@
+package com.end.queues.service.engine;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A set of Queues ranked by their number of participants, the busiest first.
+ *
+ * <p>
+ * Every Queue of the set is held, not only the top ones, so a busy Queue emptying is replaced by the next
+ * one without reading the database. The Queues are held in a tree: changing the load of a Queue is
+ * O(log n), and reading the k busiest Queues is O(k + log n) whatever the number of Queues.
+ * </p>
+ * <p>
+ * Like the {@link SiteWaits}, each load carries the time it was read from its live queue, and an older
+ * load never replaces a newer one.
+ * </p>
+ */
+public class QueueRanking implements DataSerializable {
+
+    private static final Comparator<RankedQueue> ORDER = Comparator
+        .comparingInt(RankedQueue::getNumParticipants).reversed()
+        .thenComparingLong(RankedQueue::getQueueId);
+
+    private final TreeSet<RankedQueue> ordered = new TreeSet<>(ORDER);
+
+    private final Map<Long, RankedQueue> byQueue = new HashMap<>();
+
+    private final LongObjectHashMap<RankedQueue> byDynamicQueue = new LongObjectHashMap<>();
+
+    /**
+     * Add a Queue, or change its name or its dynamicQueue. A Queue keeping its dynamicQueue keeps its
+     * load, otherwise it starts with the given one. A Queue that served the dynamicQueue before is
+     * removed, as a dynamicQueue serves a single Queue.
+     *
+     * @param queueId the id of the Queue
+     * @param name its name
+     * @param dynamicQueueId the id of its dynamicQueue
+     * @param numParticipants the number of participants of the dynamicQueue
+     * @param timestamp the time the load was read
+     */
+    public void putQueue(long queueId, String name, long dynamicQueueId, int numParticipants, long timestamp) {
+        RankedQueue other = byDynamicQueue.get(dynamicQueueId);
+        if (other != null && other.queueId != queueId) {
+            removeQueue(other.queueId);
+        }
+        RankedQueue previous = removeQueue(queueId);
+        add(previous != null && previous.dynamicQueueId == dynamicQueueId
+            ? new RankedQueue(queueId, name, dynamicQueueId, previous.numParticipants, previous.timestamp)
+            : new RankedQueue(queueId, name, dynamicQueueId, numParticipants, timestamp));
+    }
+
+    /**
+     * Remove a Queue.
+     *
+     * @param queueId the id of the Queue
+     * @return the removed Queue, or null if it was not held
+     */
+    public RankedQueue removeQueue(long queueId) {
+        RankedQueue rankedQueue = byQueue.remove(queueId);
+        if (rankedQueue != null) {
+            ordered.remove(rankedQueue);
+            if (byDynamicQueue.get(rankedQueue.dynamicQueueId) == rankedQueue) {
+                byDynamicQueue.remove(rankedQueue.dynamicQueueId);
+            }
+        }
+        return rankedQueue;
+    }
+
+    /**
+     * Remove the Queue of a dynamicQueue.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @return the removed Queue, or null if no Queue of the dynamicQueue was held
+     */
+    public RankedQueue removeDynamicQueue(long dynamicQueueId) {
+        RankedQueue rankedQueue = byDynamicQueue.get(dynamicQueueId);
+        return rankedQueue == null ? null : removeQueue(rankedQueue.queueId);
+    }
+
+    /**
+     * Change the load of the Queue of a dynamicQueue, unless a newer load was already applied.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param timestamp the time the load was read
+     * @return true if the load changed
+     */
+    public boolean updateLoad(long dynamicQueueId, int numParticipants, long timestamp) {
+        RankedQueue previous = byDynamicQueue.get(dynamicQueueId);
+        if (previous == null || previous.timestamp > timestamp) {
+            return false;
+        }
+        ordered.remove(previous);
+        add(new RankedQueue(previous.queueId, previous.name, dynamicQueueId, numParticipants, timestamp));
+        return true;
+    }
+
+    /**
+     * The busiest Queues, in O(k + log n).
+     *
+     * @param k the number of Queues
+     * @return at most k Queues, the busiest first
+     */
+    public List<RankedQueue> top(int k) {
+        List<RankedQueue> top = new ArrayList<>(Math.min(k, ordered.size()));
+        Iterator<RankedQueue> iterator = ordered.iterator();
+        while (top.size() < k && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    public int size() {
+        return byQueue.size();
+    }
+
+    private void add(RankedQueue rankedQueue) {
+        byQueue.put(rankedQueue.queueId, rankedQueue);
+        byDynamicQueue.put(rankedQueue.dynamicQueueId, rankedQueue);
+        ordered.add(rankedQueue);
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(ordered.size());
+        for (RankedQueue rankedQueue : ordered) {
+            out.writeLong(rankedQueue.queueId);
+            out.writeBoolean(rankedQueue.name != null);
+            if (rankedQueue.name != null) {
+                out.writeUTF(rankedQueue.name);
+            }
+            out.writeLong(rankedQueue.dynamicQueueId);
+            out.writeInt(rankedQueue.numParticipants);
+            out.writeLong(rankedQueue.timestamp);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long queueId = in.readLong();
+            String name = in.readBoolean() ? in.readUTF() : null;
+            add(new RankedQueue(queueId, name, in.readLong(), in.readInt(), in.readLong()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueueRanking{" +
+            "size=" + size() +
+            ", top=" + top(3) +
+            "}";
+    }
+
+    /**
+     * The load of a ranked Queue.
+     */
+    public static final class RankedQueue {
+
+        private final long queueId;
+
+        private final String name;
+
+        private final long dynamicQueueId;
+
+        private final int numParticipants;
+
+        private final long timestamp;
+
+        RankedQueue(long queueId, String name, long dynamicQueueId, int numParticipants, long timestamp) {
+            this.queueId = queueId;
+            this.name = name;
+            this.dynamicQueueId = dynamicQueueId;
+            this.numParticipants = numParticipants;
+            this.timestamp = timestamp;
+        }
+
+        public long getQueueId() {
+            return queueId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDynamicQueueId() {
+            return dynamicQueueId;
+        }
+
+        public int getNumParticipants() {
+            return numParticipants;
+        }
+
+        @Override
+        public String toString() {
+            return "RankedQueue{" +
+                "queueId=" + queueId +
+                ", name='" + name + "'" +
+                ", dynamicQueueId=" + dynamicQueueId +
+                ", numParticipants=" + numParticipants +
+                "}";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.service.dto.QueuePositionDTO;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Read the live rank of a participant on the partition owner, without changing the queue.
+ */
+public class RankProcessor implements EntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    public RankProcessor(long participantId) {
+        this.participantId = participantId;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        int rank = liveQueue.rank(participantId);
+        if (rank == 0) {
+            return null;
+        }
+        return new QueuePositionDTO(participantId, liveQueue.getDynamicQueueId(), rank, liveQueue.size());
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, LiveQueue> getBackupProcessor() {
+        return null;
+    }
+}
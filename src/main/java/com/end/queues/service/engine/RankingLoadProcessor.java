@@ -0,0 +1,40 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Change the load of the Queue of a dynamicQueue in a {@link QueueRanking}.
+ */
+public class RankingLoadProcessor extends AbstractEntryProcessor<Long, QueueRanking> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long dynamicQueueId;
+
+    private final int numParticipants;
+
+    private final long timestamp;
+
+    /**
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param timestamp the time the load was read from the live queue
+     */
+    public RankingLoadProcessor(long dynamicQueueId, int numParticipants, long timestamp) {
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipants = numParticipants;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, QueueRanking> entry) {
+        QueueRanking queueRanking = entry.getValue();
+        if (queueRanking == null || !queueRanking.updateLoad(dynamicQueueId, numParticipants, timestamp)) {
+            return null;
+        }
+        entry.setValue(queueRanking);
+        return null;
+    }
+}
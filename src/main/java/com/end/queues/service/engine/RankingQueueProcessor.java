@@ -0,0 +1,54 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Add, change or remove a Queue in a {@link QueueRanking}, or remove the Queue of a deleted dynamicQueue. A ranking not built yet is left alone, as it
+ * is built with all its Queues the first time it is asked for.
+ */
+public class RankingQueueProcessor extends AbstractEntryProcessor<Long, QueueRanking> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long queueId;
+
+    private final String name;
+
+    private final long dynamicQueueId;
+
+    private final int numParticipants;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    /**
+     * @param queueId the id of the Queue, or {@link LiveQueue#NONE} to remove the Queue of the dynamicQueue
+     * @param name its name
+     * @param dynamicQueueId the id of its dynamicQueue, or {@link LiveQueue#NONE} to remove the Queue
+     * @param numParticipants the number of participants of the dynamicQueue, if the Queue did not serve it before
+     */
+    public RankingQueueProcessor(long queueId, String name, long dynamicQueueId, int numParticipants) {
+        this.queueId = queueId;
+        this.name = name;
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipants = numParticipants;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, QueueRanking> entry) {
+        QueueRanking queueRanking = entry.getValue();
+        if (queueRanking == null) {
+            return null;
+        }
+        if (queueId == LiveQueue.NONE) {
+            queueRanking.removeDynamicQueue(dynamicQueueId);
+        } else if (dynamicQueueId == LiveQueue.NONE) {
+            queueRanking.removeQueue(queueId);
+        } else {
+            queueRanking.putQueue(queueId, name, dynamicQueueId, numParticipants, timestamp);
+        }
+        entry.setValue(queueRanking);
+        return null;
+    }
+}
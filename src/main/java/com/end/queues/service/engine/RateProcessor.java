@@ -0,0 +1,21 @@
+package com.end.queues.service.engine;
+
+/**
+ * Change the serving rate of the queue.
+ */
+public class RateProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Integer rate;
+
+    public RateProcessor(Integer rate) {
+        this.rate = rate;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        liveQueue.setRate(rate);
+        return LiveQueueUpdate.removed(liveQueue, LiveQueue.NONE);
+    }
+}
@@ -0,0 +1,16 @@
+package com.end.queues.service.engine;
+
+/**
+ * Give back the place taken by a join admitted by an {@link AdmitProcessor}, when the join failed before
+ * reaching the queue.
+ */
+public class ReleaseProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        liveQueue.release();
+        return LiveQueueUpdate.removed(liveQueue, LiveQueue.NONE);
+    }
+}
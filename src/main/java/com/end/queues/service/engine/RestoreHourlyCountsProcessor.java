@@ -0,0 +1,30 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Put back in a queue the hourly counts taken by a {@link HourlyCountsProcessor} that could not be written.
+ */
+public class RestoreHourlyCountsProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[][] hours;
+
+    public RestoreHourlyCountsProcessor(long[][] hours) {
+        this.hours = hours;
+    }
+
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        liveQueue.restoreHourlyCounts(hours);
+        entry.setValue(liveQueue);
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.end.queues.service.engine;
+
+/**
+ * Remove the participant at the head of the queue, and update the estimated rate of the queue.
+ * The time of the serve is taken when the processor is created, so the backup copy gets the same estimate.
+ */
+public class ServeProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        long participantId = liveQueue.poll();
+        if (participantId == LiveQueue.NONE) {
+            return null;
+        }
+        boolean rateChanged = liveQueue.recordServe(timestamp);
+        return LiveQueueUpdate.served(liveQueue, participantId, rateChanged);
+    }
+}
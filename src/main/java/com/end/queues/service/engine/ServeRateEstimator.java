@@ -0,0 +1,131 @@
+package com.end.queues.service.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A streaming estimate of how fast a {@link LiveQueue} is served, from the timestamps of its serves.
+ *
+ * <p>
+ * Each serve closes a service interval, and the mean interval is an exponentially weighted moving
+ * average of them, so the estimate follows a change of pace within a few serves and costs O(1) in time
+ * and space. An interval only runs while someone is waiting: it starts when a participant joins an
+ * empty queue or when a serve leaves participants behind, so the time a queue stands empty is never
+ * counted as service time.
+ * </p>
+ * <p>
+ * Until a first interval is observed, the estimate is seeded from the configured rate of the queue.
+ * Timestamps come from the processors, so the backup copy of a queue gets the same estimate.
+ * </p>
+ */
+class ServeRateEstimator {
+
+    /**
+     * The weight of the latest interval in the moving average.
+     */
+    static final double SMOOTHING = 0.2;
+
+    private static final double MILLIS_PER_HOUR = 3_600_000d;
+
+    private static final long IDLE = 0L;
+
+    /**
+     * The mean service interval, in milliseconds, or 0 if unknown.
+     */
+    private double meanInterval;
+
+    private long intervalStart = IDLE;
+
+    private boolean observed;
+
+    /**
+     * Seed the estimate from a configured rate, unless an interval was already observed.
+     *
+     * @param rate the number of participants served per hour, may be null
+     * @return true if the estimate was seeded
+     */
+    boolean seed(Integer rate) {
+        if (observed) {
+            return false;
+        }
+        meanInterval = rate == null || rate <= 0 ? 0 : MILLIS_PER_HOUR / rate;
+        return true;
+    }
+
+    /**
+     * Record that someone is waiting, starting an interval if none is running.
+     *
+     * @param timestamp the time, in epoch milliseconds
+     */
+    void waiting(long timestamp) {
+        if (intervalStart == IDLE) {
+            intervalStart = timestamp;
+        }
+    }
+
+    /**
+     * Record a serve, closing the running interval.
+     *
+     * @param timestamp the time of the serve, in epoch milliseconds
+     * @param stillWaiting whether participants are still waiting after the serve
+     */
+    void served(long timestamp, boolean stillWaiting) {
+        if (intervalStart != IDLE) {
+            // Serves within the same millisecond still count, so the mean never drops to unknown
+            double interval = Math.max(1, timestamp - intervalStart);
+            meanInterval = observed ? meanInterval + SMOOTHING * (interval - meanInterval) : interval;
+            observed = true;
+        }
+        intervalStart = stillWaiting ? timestamp : IDLE;
+    }
+
+    /**
+     * Record that nobody is waiting any more, without a serve.
+     */
+    void idle() {
+        intervalStart = IDLE;
+    }
+
+    /**
+     * The estimated rate.
+     *
+     * @return the number of participants served per hour, or null if unknown
+     */
+    Integer rate() {
+        if (meanInterval <= 0) {
+            return null;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(MILLIS_PER_HOUR / meanInterval));
+    }
+
+    /**
+     * The estimated wait of the participant at a rank: a full interval for each participant served before
+     * it, less the time already spent on the running interval, but never less than the intervals still
+     * to come after the running one.
+     *
+     * @param rank the rank, 1 being the next to be served
+     * @param timestamp the current time, in epoch milliseconds
+     * @return the estimated wait, in milliseconds, or -1 if unknown
+     */
+    long estimatedWait(int rank, long timestamp) {
+        if (meanInterval <= 0) {
+            return -1;
+        }
+        double elapsed = intervalStart == IDLE ? 0 : Math.max(0, timestamp - intervalStart);
+        double wait = Math.max((rank - 1) * meanInterval, rank * meanInterval - elapsed);
+        return Math.round(wait);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(meanInterval);
+        out.writeLong(intervalStart);
+        out.writeBoolean(observed);
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        meanInterval = in.readDouble();
+        intervalStart = in.readLong();
+        observed = in.readBoolean();
+    }
+}
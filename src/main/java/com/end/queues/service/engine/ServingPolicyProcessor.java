@@ -0,0 +1,26 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.domain.enumeration.ServingPolicy;
+
+/**
+ * Change how the lanes of the queue are served.
+ */
+public class ServingPolicyProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ServingPolicy servingPolicy;
+
+    private final int[] laneWeights;
+
+    public ServingPolicyProcessor(ServingPolicy servingPolicy, int[] laneWeights) {
+        this.servingPolicy = servingPolicy;
+        this.laneWeights = laneWeights;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        liveQueue.setServingPolicy(servingPolicy, laneWeights);
+        return LiveQueueUpdate.removed(liveQueue, LiveQueue.NONE);
+    }
+}
@@ -0,0 +1,44 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Change the load of the Queue of a dynamicQueue in the {@link SiteWaits} of its site.
+ */
+public class SiteLoadProcessor extends AbstractEntryProcessor<String, SiteWaits> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long dynamicQueueId;
+
+    private final int numParticipants;
+
+    private final Integer rate;
+
+    private final long timestamp;
+
+    /**
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param rate its rate, or null if unknown
+     * @param timestamp the time the load was read from the live queue
+     */
+    public SiteLoadProcessor(long dynamicQueueId, int numParticipants, Integer rate, long timestamp) {
+        this.dynamicQueueId = dynamicQueueId;
+        this.numParticipants = numParticipants;
+        this.rate = rate;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, SiteWaits> entry) {
+        SiteWaits siteWaits = entry.getValue();
+        if (siteWaits == null || !siteWaits.updateLoad(dynamicQueueId, numParticipants, rate, timestamp)) {
+            return null;
+        }
+        entry.setValue(siteWaits);
+        return null;
+    }
+}
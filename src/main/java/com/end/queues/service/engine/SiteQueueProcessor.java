@@ -0,0 +1,59 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Add, change or remove a Queue of a site in its {@link SiteWaits}, or remove the Queue of a deleted
+ * dynamicQueue. A site not indexed yet is left alone,
+ * as it is built with all its Queues the first time it is asked for.
+ */
+public class SiteQueueProcessor extends AbstractEntryProcessor<String, SiteWaits> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long queueId;
+
+    private final long dynamicQueueId;
+
+    private final Integer maxCapacity;
+
+    private final int numParticipants;
+
+    private final Integer rate;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    /**
+     * @param queueId the id of the Queue, or {@link LiveQueue#NONE} to remove the Queue of the dynamicQueue
+     * @param dynamicQueueId the id of its dynamicQueue, or {@link LiveQueue#NONE} to remove the Queue
+     * @param maxCapacity its maximum number of participants, or null for no limit
+     * @param numParticipants the number of participants of the dynamicQueue, if the Queue did not serve it before
+     * @param rate the rate of the dynamicQueue, if the Queue did not serve it before
+     */
+    public SiteQueueProcessor(long queueId, long dynamicQueueId, Integer maxCapacity, int numParticipants, Integer rate) {
+        this.queueId = queueId;
+        this.dynamicQueueId = dynamicQueueId;
+        this.maxCapacity = maxCapacity;
+        this.numParticipants = numParticipants;
+        this.rate = rate;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, SiteWaits> entry) {
+        SiteWaits siteWaits = entry.getValue();
+        if (siteWaits == null) {
+            return null;
+        }
+        if (queueId == LiveQueue.NONE) {
+            siteWaits.removeDynamicQueue(dynamicQueueId);
+        } else if (dynamicQueueId == LiveQueue.NONE) {
+            siteWaits.removeQueue(queueId);
+        } else {
+            siteWaits.putQueue(queueId, dynamicQueueId, maxCapacity, numParticipants, rate, timestamp);
+        }
+        entry.setValue(siteWaits);
+        return null;
+    }
+}
@@ -0,0 +1,244 @@
+package com.end.queues.service.engine;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The Queues of a site, ordered by the expected wait of a participant joining them now.
+ *
+ * <p>
+ * The expected wait of a Queue is its number of participants times the mean serve interval of its rate.
+ * A Queue whose rate is unknown comes after all the others, and a full Queue after every Queue with room
+ * left; ties go to the Queue with the fewest participants. The Queues are held in a tree, so changing the
+ * load of a Queue and finding the best Queue are O(log n).
+ * </p>
+ * <p>
+ * Each load carries the time it was read from its live queue, and an older load never replaces a newer
+ * one, so loads sent concurrently from several members settle on the latest.
+ * </p>
+ */
+public class SiteWaits implements DataSerializable {
+
+    private static final Comparator<QueueWait> ORDER = Comparator
+        .comparing(QueueWait::isFull)
+        .thenComparingLong(QueueWait::getExpectedWaitMillis)
+        .thenComparingInt(QueueWait::getNumParticipants)
+        .thenComparingLong(QueueWait::getQueueId);
+
+    private final TreeSet<QueueWait> ordered = new TreeSet<>(ORDER);
+
+    private final Map<Long, QueueWait> byQueue = new HashMap<>();
+
+    private final LongObjectHashMap<QueueWait> byDynamicQueue = new LongObjectHashMap<>();
+
+    /**
+     * Add a Queue, or change its dynamicQueue or its maximum capacity. A Queue keeping its dynamicQueue
+     * keeps its load, otherwise it starts with the given one. A Queue that served the dynamicQueue before
+     * is removed, as a dynamicQueue serves a single Queue.
+     *
+     * @param queueId the id of the Queue
+     * @param dynamicQueueId the id of its dynamicQueue
+     * @param maxCapacity its maximum number of participants, or null for no limit
+     * @param numParticipants the number of participants of the dynamicQueue
+     * @param rate the rate of the dynamicQueue, or null if unknown
+     * @param timestamp the time the load was read
+     */
+    public void putQueue(long queueId, long dynamicQueueId, Integer maxCapacity, int numParticipants, Integer rate, long timestamp) {
+        QueueWait other = byDynamicQueue.get(dynamicQueueId);
+        if (other != null && other.queueId != queueId) {
+            removeQueue(other.queueId);
+        }
+        QueueWait previous = removeQueue(queueId);
+        QueueWait queueWait = previous != null && previous.dynamicQueueId == dynamicQueueId
+            ? new QueueWait(queueId, dynamicQueueId, maxCapacity, previous.numParticipants, previous.rate, previous.timestamp)
+            : new QueueWait(queueId, dynamicQueueId, maxCapacity, numParticipants, rate, timestamp);
+        add(queueWait);
+    }
+
+    /**
+     * Remove a Queue.
+     *
+     * @param queueId the id of the Queue
+     * @return the removed Queue, or null if it was not held
+     */
+    public QueueWait removeQueue(long queueId) {
+        QueueWait queueWait = byQueue.remove(queueId);
+        if (queueWait != null) {
+            ordered.remove(queueWait);
+            if (byDynamicQueue.get(queueWait.dynamicQueueId) == queueWait) {
+                byDynamicQueue.remove(queueWait.dynamicQueueId);
+            }
+        }
+        return queueWait;
+    }
+
+    /**
+     * Remove the Queue of a dynamicQueue.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @return the removed Queue, or null if no Queue of the dynamicQueue was held
+     */
+    public QueueWait removeDynamicQueue(long dynamicQueueId) {
+        QueueWait queueWait = byDynamicQueue.get(dynamicQueueId);
+        return queueWait == null ? null : removeQueue(queueWait.queueId);
+    }
+
+    /**
+     * Change the load of the Queue of a dynamicQueue, unless a newer load was already applied.
+     *
+     * @param dynamicQueueId the id of the dynamicQueue
+     * @param numParticipants its number of participants
+     * @param rate its rate, or null if unknown
+     * @param timestamp the time the load was read
+     * @return true if the load changed
+     */
+    public boolean updateLoad(long dynamicQueueId, int numParticipants, Integer rate, long timestamp) {
+        QueueWait previous = byDynamicQueue.get(dynamicQueueId);
+        if (previous == null || previous.timestamp > timestamp) {
+            return false;
+        }
+        ordered.remove(previous);
+        add(new QueueWait(previous.queueId, dynamicQueueId, previous.maxCapacity, numParticipants, rate, timestamp));
+        return true;
+    }
+
+    /**
+     * The Queue with the lowest expected wait among those with room left, in O(log n).
+     *
+     * @return the Queue, or null if every Queue is full or there is none
+     */
+    public QueueWait best() {
+        if (ordered.isEmpty()) {
+            return null;
+        }
+        QueueWait first = ordered.first();
+        return first.isFull() ? null : first;
+    }
+
+    public int size() {
+        return byQueue.size();
+    }
+
+    private void add(QueueWait queueWait) {
+        byQueue.put(queueWait.queueId, queueWait);
+        byDynamicQueue.put(queueWait.dynamicQueueId, queueWait);
+        ordered.add(queueWait);
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(ordered.size());
+        for (QueueWait queueWait : ordered) {
+            out.writeLong(queueWait.queueId);
+            out.writeLong(queueWait.dynamicQueueId);
+            out.writeInt(queueWait.maxCapacity == null ? -1 : queueWait.maxCapacity);
+            out.writeInt(queueWait.numParticipants);
+            out.writeInt(queueWait.rate == null ? -1 : queueWait.rate);
+            out.writeLong(queueWait.timestamp);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long queueId = in.readLong();
+            long dynamicQueueId = in.readLong();
+            int maxCapacity = in.readInt();
+            int numParticipants = in.readInt();
+            int rate = in.readInt();
+            long timestamp = in.readLong();
+            add(new QueueWait(queueId, dynamicQueueId, maxCapacity < 0 ? null : maxCapacity, numParticipants,
+                rate < 0 ? null : rate, timestamp));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SiteWaits{" +
+            "queues=" + ordered +
+            "}";
+    }
+
+    /**
+     * The load of a Queue of the site.
+     */
+    public static final class QueueWait {
+
+        private static final long MILLIS_PER_HOUR = 3600_000L;
+
+        private final long queueId;
+
+        private final long dynamicQueueId;
+
+        private final Integer maxCapacity;
+
+        private final int numParticipants;
+
+        private final Integer rate;
+
+        private final long timestamp;
+
+        QueueWait(long queueId, long dynamicQueueId, Integer maxCapacity, int numParticipants, Integer rate, long timestamp) {
+            this.queueId = queueId;
+            this.dynamicQueueId = dynamicQueueId;
+            this.maxCapacity = maxCapacity;
+            this.numParticipants = numParticipants;
+            this.rate = rate;
+            this.timestamp = timestamp;
+        }
+
+        public long getQueueId() {
+            return queueId;
+        }
+
+        public long getDynamicQueueId() {
+            return dynamicQueueId;
+        }
+
+        public int getNumParticipants() {
+            return numParticipants;
+        }
+
+        /**
+         * @return the number of participants served per hour, or null if unknown
+         */
+        public Integer getRate() {
+            return rate;
+        }
+
+        public boolean isFull() {
+            return maxCapacity != null && numParticipants >= maxCapacity;
+        }
+
+        /**
+         * @return the expected wait of a participant joining now, in milliseconds, or Long.MAX_VALUE if the
+         * rate is unknown
+         */
+        public long getExpectedWaitMillis() {
+            if (rate == null || rate <= 0) {
+                return Long.MAX_VALUE;
+            }
+            return numParticipants * MILLIS_PER_HOUR / rate;
+        }
+
+        @Override
+        public String toString() {
+            return "QueueWait{" +
+                "queueId=" + queueId +
+                ", dynamicQueueId=" + dynamicQueueId +
+                ", maxCapacity=" + maxCapacity +
+                ", numParticipants=" + numParticipants +
+                ", rate=" + rate +
+                "}";
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Remove the participants at the tail of the queue, counting the lanes from the highest, to move them to
+ * another queue.
+ */
+public class TakeTailProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int count;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public TakeTailProcessor(int count) {
+        this.count = count;
+    }
+
+    /**
+     * @return the ids of the participants removed, from the last one, followed by their positions
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long[] participantIds = new long[Math.min(count, liveQueue.size())];
+        long[] positions = new long[participantIds.length];
+        for (int i = 0; i < participantIds.length; i++) {
+            participantIds[i] = liveQueue.select(liveQueue.size());
+            positions[i] = liveQueue.position(participantIds[i]);
+            liveQueue.remove(participantIds[i]);
+        }
+        if (participantIds.length > 0) {
+            liveQueue.recordLeave(timestamp);
+            entry.setValue(liveQueue);
+        }
+        return new long[][] { participantIds, positions };
+    }
+}
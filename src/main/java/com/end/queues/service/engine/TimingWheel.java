@@ -0,0 +1,216 @@
+package com.end.queues.service.engine;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel of deadlines, each keyed by a long id.
+ *
+ * <p>
+ * Time advances in ticks. Each level is a ring of {@link #SLOTS} slots, a slot of level k spanning
+ * {@code SLOTS^k} ticks, so three levels cover {@code SLOTS^3} ticks with {@code 3 * SLOTS} slots. A
+ * deadline goes to the lowest level whose ring reaches it, in the slot of its tick at that level. When
+ * the lower levels wrap, the next slot of the level above is cascaded: its deadlines move down to the
+ * slot of their own tick. Each slot is a doubly linked list, and deadlines are indexed by id, so
+ * scheduling and cancelling are O(1), and each tick costs O(1) plus the deadlines it expires or
+ * cascades. A deadline further than the highest ring waits in its last slot and is placed again when
+ * that slot cascades.
+ * </p>
+ * <p>
+ * The wheel is not thread-safe.
+ * </p>
+ *
+ * @param <T> the type of the values expired with their deadline
+ */
+public class TimingWheel<T> {
+
+    /**
+     * The number of slots of each level.
+     */
+    public static final int SLOTS = 256;
+
+    private static final int SLOT_BITS = 8;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final long tickMillis;
+
+    private final Node<T>[][] slots;
+
+    private final LongObjectHashMap<Node<T>> nodes = new LongObjectHashMap<>();
+
+    private long currentTick;
+
+    /**
+     * Create an empty wheel.
+     *
+     * @param tickMillis the length of a tick, in milliseconds
+     * @param levels the number of levels, from 1 to 7
+     * @param startMillis the current time, in epoch milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int levels, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick must be positive: " + tickMillis);
+        }
+        if (levels < 1 || levels * SLOT_BITS >= Long.SIZE - 1) {
+            throw new IllegalArgumentException("The number of levels must be between 1 and 7: " + levels);
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new Node[levels][SLOTS];
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedule the deadline of an id, replacing its previous deadline if any. A deadline already past
+     * expires on the next tick.
+     *
+     * @param id the id
+     * @param deadlineMillis the deadline, in epoch milliseconds
+     * @param value the value returned when the deadline expires
+     */
+    public void schedule(long id, long deadlineMillis, T value) {
+        cancel(id);
+        // Round up, so a deadline never expires early
+        long tick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        Node<T> node = new Node<>(id, tick, value);
+        nodes.put(id, node);
+        place(node);
+    }
+
+    /**
+     * Cancel the deadline of an id.
+     *
+     * @param id the id
+     * @return the value of the cancelled deadline, or null if the id had none
+     */
+    public T cancel(long id) {
+        Node<T> node = nodes.remove(id);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+    public boolean contains(long id) {
+        return nodes.containsKey(id);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Advance the wheel up to a time, and return the values whose deadline passed.
+     *
+     * @param nowMillis the current time, in epoch milliseconds
+     * @return the expired values, in the order of their deadlines
+     */
+    public List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = 1; level < slots.length && wrapped(level); level++) {
+                cascade(level, slotOf(currentTick, level));
+            }
+            int slot = slotOf(currentTick, 0);
+            Node<T> node = slots[0][slot];
+            slots[0][slot] = null;
+            while (node != null) {
+                Node<T> next = node.next;
+                nodes.remove(node.id);
+                node.prev = null;
+                node.next = null;
+                expired.add(node.value);
+                node = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Whether the levels below a level wrapped on the current tick.
+     */
+    private boolean wrapped(int level) {
+        return (currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0;
+    }
+
+    private void cascade(int level, int slot) {
+        Node<T> node = slots[level][slot];
+        slots[level][slot] = null;
+        while (node != null) {
+            Node<T> next = node.next;
+            node.prev = null;
+            node.next = null;
+            place(node);
+            node = next;
+        }
+    }
+
+    private void place(Node<T> node) {
+        long delay = node.tick - currentTick;
+        int top = slots.length - 1;
+        int level = 0;
+        while (level < top && delay >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+        int slot;
+        if (delay >= 1L << ((top + 1) * SLOT_BITS)) {
+            // Beyond the highest ring: wait in the slot cascaded last
+            slot = (slotOf(currentTick, top) + SLOT_MASK) & SLOT_MASK;
+        } else {
+            slot = slotOf(node.tick, level);
+        }
+        node.level = level;
+        node.slot = slot;
+        node.next = slots[level][slot];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        slots[level][slot] = node;
+    }
+
+    private void unlink(Node<T> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+    }
+
+    private static final class Node<T> {
+
+        private final long id;
+
+        private final long tick;
+
+        private final T value;
+
+        private int level;
+
+        private int slot;
+
+        private Node<T> prev;
+
+        private Node<T> next;
+
+        private Node(long id, long tick, T value) {
+            this.id = id;
+            this.tick = tick;
+            this.value = value;
+        }
+    }
+}
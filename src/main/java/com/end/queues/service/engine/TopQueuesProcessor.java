@@ -0,0 +1,45 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.service.dto.QueueLoadDTO;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Read the busiest Queues of a {@link QueueRanking} on the partition owner, without changing it.
+ */
+public class TopQueuesProcessor implements EntryProcessor<Long, QueueRanking> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int k;
+
+    public TopQueuesProcessor(int k) {
+        this.k = k;
+    }
+
+    /**
+     * @return at most k Queues, the busiest first, or null if the ranking is not built
+     */
+    @Override
+    public Object process(Map.Entry<Long, QueueRanking> entry) {
+        QueueRanking queueRanking = entry.getValue();
+        if (queueRanking == null) {
+            return null;
+        }
+        ArrayList<QueueLoadDTO> top = new ArrayList<>(k);
+        for (QueueRanking.RankedQueue rankedQueue : queueRanking.top(k)) {
+            top.add(new QueueLoadDTO(rankedQueue.getQueueId(), rankedQueue.getName(), rankedQueue.getDynamicQueueId(),
+                rankedQueue.getNumParticipants()));
+        }
+        return top;
+    }
+
+    @Override
+    public EntryBackupProcessor<Long, QueueRanking> getBackupProcessor() {
+        return null;
+    }
+}
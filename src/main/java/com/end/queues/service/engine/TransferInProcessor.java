@@ -0,0 +1,45 @@
+package com.end.queues.service.engine;
+
+/**
+ * Place a participant transferred from another queue, in front of the participant at a rank, or at the
+ * tail of its lane so it keeps its priority, as far as this queue has lanes. It counts as waiting, not
+ * as a new arrival. A transfer is rejected if the queue is full. The time of
+ * the transfer is taken when the processor is created, so the backup copy gets the same serve rate
+ * estimate.
+ */
+public class TransferInProcessor extends LiveQueueProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final int lane;
+
+    private final Integer rank;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    /**
+     * @param participantId the id of the participant
+     * @param lane the lane of the participant, used if no rank is given or the rank is past the tail
+     * @param rank the rank to place the participant at, counting the lanes from the highest, or null
+     */
+    public TransferInProcessor(long participantId, int lane, Integer rank) {
+        this.participantId = participantId;
+        this.lane = lane;
+        this.rank = rank;
+    }
+
+    @Override
+    protected LiveQueueUpdate apply(LiveQueue liveQueue) {
+        if (liveQueue.isFull()) {
+            return null;
+        }
+        long successorId = rank == null || rank > liveQueue.size() ? LiveQueue.NONE : liveQueue.select(rank);
+        long position = successorId == LiveQueue.NONE ? liveQueue.tailPosition(liveQueue.laneFor(lane))
+            : liveQueue.positionBefore(successorId);
+        liveQueue.insert(participantId, position);
+        liveQueue.recordWaiting(timestamp);
+        return LiveQueueUpdate.placed(liveQueue, participantId);
+    }
+}
@@ -0,0 +1,41 @@
+package com.end.queues.service.engine;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Remove a participant transferred to another queue, returning the position it held so the transfer can
+ * put it back if the other queue does not take it.
+ */
+public class TransferOutProcessor extends AbstractEntryProcessor<Long, LiveQueue> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long participantId;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public TransferOutProcessor(long participantId) {
+        this.participantId = participantId;
+    }
+
+    /**
+     * @return the position the participant held, or null if it is not waiting in the queue
+     */
+    @Override
+    public Object process(Map.Entry<Long, LiveQueue> entry) {
+        LiveQueue liveQueue = entry.getValue();
+        if (liveQueue == null) {
+            return null;
+        }
+        long position = liveQueue.position(participantId);
+        if (position == LiveQueue.NONE) {
+            return null;
+        }
+        liveQueue.remove(participantId);
+        liveQueue.recordLeave(timestamp);
+        entry.setValue(liveQueue);
+        return position;
+    }
+}
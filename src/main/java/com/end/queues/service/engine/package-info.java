@@ -0,0 +1,4 @@
+/**
+ * In-memory queue engine data structures.
+ */
+package com.end.queues.service.engine;
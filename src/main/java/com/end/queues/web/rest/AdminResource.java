@@ -5,11 +5,19 @@ import com.end.queues.domain.Admin;
 
 import com.end.queues.repository.AdminRepository;
 import com.end.queues.repository.search.AdminSearchRepository;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
@@ -17,10 +25,6 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Admin.
@@ -37,9 +41,12 @@ public class AdminResource {
 
     private final AdminSearchRepository adminSearchRepository;
 
-    public AdminResource(AdminRepository adminRepository, AdminSearchRepository adminSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    public AdminResource(AdminRepository adminRepository, AdminSearchRepository adminSearchRepository, SearchOutbox searchOutbox) {
         this.adminRepository = adminRepository;
         this.adminSearchRepository = adminSearchRepository;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -51,13 +58,14 @@ public class AdminResource {
      */
     @PostMapping("/admins")
     @Timed
+    @Transactional
     public ResponseEntity<Admin> createAdmin(@RequestBody Admin admin) throws URISyntaxException {
         log.debug("REST request to save Admin : {}", admin);
         if (admin.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new admin cannot already have an ID")).body(null);
         }
         Admin result = adminRepository.save(admin);
-        adminSearchRepository.save(result);
+        searchOutbox.index(Admin.class, result.getId());
         return ResponseEntity.created(new URI("/api/admins/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -74,13 +82,14 @@ public class AdminResource {
      */
     @PutMapping("/admins")
     @Timed
+    @Transactional
     public ResponseEntity<Admin> updateAdmin(@RequestBody Admin admin) throws URISyntaxException {
         log.debug("REST request to update Admin : {}", admin);
         if (admin.getId() == null) {
             return createAdmin(admin);
         }
         Admin result = adminRepository.save(admin);
-        adminSearchRepository.save(result);
+        searchOutbox.index(Admin.class, result.getId());
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, admin.getId().toString()))
             .body(result);
@@ -121,27 +130,41 @@ public class AdminResource {
      */
     @DeleteMapping("/admins/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteAdmin(@PathVariable Long id) {
         log.debug("REST request to delete Admin : {}", id);
         adminRepository.delete(id);
-        adminSearchRepository.delete(id);
+        searchOutbox.delete(Admin.class, id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/admins?query=:query : search for the admin corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the admin search 
-     * @return the result of the search
+     * @param query the query of the admin search
+     * @param after the id of the last admin of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of admins in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/admins")
     @Timed
-    public List<Admin> searchAdmins(@RequestParam String query) {
-        log.debug("REST request to search Admins for query {}", query);
-        return StreamSupport
-            .stream(adminSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Admin>> searchAdmins(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of Admins for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Admin> page = adminSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/admins")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/admins");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
@@ -0,0 +1,84 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.service.QueueDispatcher;
+import com.end.queues.service.dto.DeskDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * REST controller for the desks serving a Queue.
+ */
+@RestController
+@RequestMapping("/api")
+public class DeskResource {
+
+    private final Logger log = LoggerFactory.getLogger(DeskResource.class);
+
+    private final QueueDispatcher queueDispatcher;
+
+    private final long deskTimeoutMs;
+
+    public DeskResource(QueueDispatcher queueDispatcher, ApplicationProperties applicationProperties) {
+        this.queueDispatcher = queueDispatcher;
+        this.deskTimeoutMs = applicationProperties.getQueueEngine().getDeskTimeoutMs();
+    }
+
+    /**
+     * GET  /queues/:id/desks/:desk/assignments : Connect the "desk" desk to the "id" queue, and stream its
+     * assignments as "assignment" server-sent events holding the participant to serve.
+     *
+     * @param id the id of the queue served by the desk
+     * @param desk the name of the desk
+     * @return the ResponseEntity with status 200 (OK) and the event stream,
+     * or with status 404 (Not Found) if the queue does not exist or has no dynamicQueue
+     */
+    @GetMapping(path = "/queues/{id}/desks/{desk}/assignments", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Timed
+    public ResponseEntity<SseEmitter> streamAssignments(@PathVariable Long id, @PathVariable String desk) {
+        log.debug("REST request to connect desk {} to Queue : {}", desk, id);
+        SseEmitter emitter = new SseEmitter(deskTimeoutMs);
+        if (!queueDispatcher.connect(id, desk, emitter)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * POST  /queues/:id/desks/:desk/ready : Tell the dispatcher the "desk" desk of the "id" queue is done
+     * with its assignment, and ready for the next one.
+     *
+     * @param id the id of the queue served by the desk
+     * @param desk the name of the desk
+     * @return the ResponseEntity with status 202 (Accepted)
+     */
+    @PostMapping("/queues/{id}/desks/{desk}/ready")
+    @Timed
+    public ResponseEntity<Void> deskReady(@PathVariable Long id, @PathVariable String desk) {
+        log.debug("REST request for work from desk {} of Queue : {}", desk, id);
+        queueDispatcher.ready(id, desk);
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * GET  /queues/:id/desks : get the desks of the "id" queue connected to this instance, with their
+     * throughput.
+     *
+     * @param id the id of the queue
+     * @return the ResponseEntity with status 200 (OK) and the list of desks in body
+     */
+    @GetMapping("/queues/{id}/desks")
+    @Timed
+    public List<DeskDTO> getDesks(@PathVariable Long id) {
+        log.debug("REST request to get the desks of Queue : {}", id);
+        return queueDispatcher.getDesks(id);
+    }
+}
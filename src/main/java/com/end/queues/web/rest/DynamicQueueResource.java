@@ -3,24 +3,37 @@ package com.end.queues.web.rest;
 import com.codahale.metrics.annotation.Timed;
 import com.end.queues.domain.DynamicQueue;
 
+import com.end.queues.domain.Participant;
 import com.end.queues.repository.DynamicQueueRepository;
 import com.end.queues.repository.search.DynamicQueueSearchRepository;
+import com.end.queues.service.LiveQueueRouter;
+import com.end.queues.service.QueueFullException;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.service.dto.QueueTimeSeriesDTO;
+import com.end.queues.service.dto.WaitEstimateDTO;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.MinuteSeries;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
+
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing DynamicQueue.
@@ -32,14 +45,23 @@ public class DynamicQueueResource {
     private final Logger log = LoggerFactory.getLogger(DynamicQueueResource.class);
 
     private static final String ENTITY_NAME = "dynamicQueue";
+
+    private static final String PARTICIPANT_ENTITY_NAME = "participant";
         
     private final DynamicQueueRepository dynamicQueueRepository;
 
     private final DynamicQueueSearchRepository dynamicQueueSearchRepository;
 
-    public DynamicQueueResource(DynamicQueueRepository dynamicQueueRepository, DynamicQueueSearchRepository dynamicQueueSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    private final LiveQueueRouter liveQueueRouter;
+
+    public DynamicQueueResource(DynamicQueueRepository dynamicQueueRepository, DynamicQueueSearchRepository dynamicQueueSearchRepository,
+            LiveQueueRouter liveQueueRouter, SearchOutbox searchOutbox) {
         this.dynamicQueueRepository = dynamicQueueRepository;
         this.dynamicQueueSearchRepository = dynamicQueueSearchRepository;
+        this.liveQueueRouter = liveQueueRouter;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -51,13 +73,14 @@ public class DynamicQueueResource {
      */
     @PostMapping("/dynamic-queues")
     @Timed
-    public ResponseEntity<DynamicQueue> createDynamicQueue(@RequestBody DynamicQueue dynamicQueue) throws URISyntaxException {
+    @Transactional
+    public ResponseEntity<DynamicQueue> createDynamicQueue(@Valid @RequestBody DynamicQueue dynamicQueue) throws URISyntaxException {
         log.debug("REST request to save DynamicQueue : {}", dynamicQueue);
         if (dynamicQueue.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new dynamicQueue cannot already have an ID")).body(null);
         }
         DynamicQueue result = dynamicQueueRepository.save(dynamicQueue);
-        dynamicQueueSearchRepository.save(result);
+        searchOutbox.index(DynamicQueue.class, result.getId());
         return ResponseEntity.created(new URI("/api/dynamic-queues/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -65,25 +88,29 @@ public class DynamicQueueResource {
 
     /**
      * PUT  /dynamic-queues : Updates an existing dynamicQueue.
+     * The number of participants is maintained by the queue engine, the value sent is ignored.
      *
      * @param dynamicQueue the dynamicQueue to update
      * @return the ResponseEntity with status 200 (OK) and with body the updated dynamicQueue,
      * or with status 400 (Bad Request) if the dynamicQueue is not valid,
-     * or with status 500 (Internal Server Error) if the dynamicQueue couldnt be updated
+     * or with status 404 (Not Found) if the dynamicQueue does not exist
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PutMapping("/dynamic-queues")
     @Timed
-    public ResponseEntity<DynamicQueue> updateDynamicQueue(@RequestBody DynamicQueue dynamicQueue) throws URISyntaxException {
+    @Transactional
+    public ResponseEntity<DynamicQueue> updateDynamicQueue(@Valid @RequestBody DynamicQueue dynamicQueue) throws URISyntaxException {
         log.debug("REST request to update DynamicQueue : {}", dynamicQueue);
         if (dynamicQueue.getId() == null) {
             return createDynamicQueue(dynamicQueue);
         }
-        DynamicQueue result = dynamicQueueRepository.save(dynamicQueue);
-        dynamicQueueSearchRepository.save(result);
+        Optional<DynamicQueue> result = liveQueueRouter.update(dynamicQueue);
+        if (!result.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, dynamicQueue.getId().toString()))
-            .body(result);
+            .body(result.get());
     }
 
     /**
@@ -123,25 +150,173 @@ public class DynamicQueueResource {
     @Timed
     public ResponseEntity<Void> deleteDynamicQueue(@PathVariable Long id) {
         log.debug("REST request to delete DynamicQueue : {}", id);
-        dynamicQueueRepository.delete(id);
-        dynamicQueueSearchRepository.delete(id);
+        liveQueueRouter.delete(id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
+    /**
+     * POST  /dynamic-queues/:id/join?before=:before : Add a new participant to the "id" dynamicQueue,
+     * in front of the "before" participant if given, or to the tail of the lane of its priority.
+     *
+     * @param id the id of the dynamicQueue to join
+     * @param before the id of the participant to insert in front of, optional
+     * @param participant the participant to create
+     * @return the ResponseEntity with status 201 (Created) and with body the new participant,
+     * or with status 400 (Bad Request) if the participant has already an ID, its priority is not a lane of the dynamicQueue
+     * or the "before" participant is not waiting in the dynamicQueue,
+     * or with status 404 (Not Found) if the dynamicQueue does not exist,
+     * or with status 409 (Conflict) and a Retry-After header if its queue is at its maximum capacity
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @PostMapping("/dynamic-queues/{id}/join")
+    @Timed
+    public ResponseEntity<Participant> joinDynamicQueue(@PathVariable Long id, @RequestParam(required = false) Long before,
+            @Valid @RequestBody Participant participant) throws URISyntaxException {
+        log.debug("REST request to join DynamicQueue {} before {} : {}", id, before, participant);
+        if (participant.getId() != null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(PARTICIPANT_ENTITY_NAME, "idexists", "A new participant cannot already have an ID")).body(null);
+        }
+        DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(id);
+        if (dynamicQueue == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (participant.getPriority() != null && participant.getPriority() >= LiveQueue.parseLaneWeights(dynamicQueue.getLaneWeights()).length) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(PARTICIPANT_ENTITY_NAME, "nosuchlane", "The priority is not a lane of this dynamicQueue")).body(null);
+        }
+        Optional<Participant> joined;
+        try {
+            joined = liveQueueRouter.join(dynamicQueue, participant, before);
+        } catch (QueueFullException e) {
+            HttpHeaders headers = HeaderUtil.createFailureAlert(PARTICIPANT_ENTITY_NAME, "queuefull", "The queue is full");
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            return ResponseEntity.status(HttpStatus.CONFLICT).headers(headers).body(null);
+        }
+        if (!joined.isPresent()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(PARTICIPANT_ENTITY_NAME, "notwaiting", "The participant to insert in front of is not waiting in this dynamicQueue")).body(null);
+        }
+        Participant result = joined.get();
+        return ResponseEntity.created(new URI("/api/participants/" + result.getId()))
+            .headers(HeaderUtil.createEntityCreationAlert(PARTICIPANT_ENTITY_NAME, result.getId().toString()))
+            .body(result);
+    }
+
+    /**
+     * POST  /dynamic-queues/:id/serve-next : Serve the participant at the head of the "id" dynamicQueue.
+     *
+     * @param id the id of the dynamicQueue to serve
+     * @return the ResponseEntity with status 200 (OK) and with body the served participant,
+     * or with status 204 (No Content) if nobody is waiting,
+     * or with status 404 (Not Found) if the dynamicQueue does not exist
+     */
+    @PostMapping("/dynamic-queues/{id}/serve-next")
+    @Timed
+    public ResponseEntity<Participant> serveNextParticipant(@PathVariable Long id) {
+        log.debug("REST request to serve the next participant of DynamicQueue : {}", id);
+        DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(id);
+        if (dynamicQueue == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return liveQueueRouter.serveNext(dynamicQueue)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.noContent().build());
+    }
+
+    /**
+     * POST  /dynamic-queues/:id/call : Call the participant at the head of the "id" dynamicQueue to a desk.
+     * The participant is kept until it checks in, or until its grace period expires.
+     *
+     * @param id the id of the dynamicQueue to serve
+     * @return the ResponseEntity with status 200 (OK) and with body the called participant,
+     * or with status 204 (No Content) if nobody is waiting,
+     * or with status 404 (Not Found) if the dynamicQueue does not exist
+     */
+    @PostMapping("/dynamic-queues/{id}/call")
+    @Timed
+    public ResponseEntity<Participant> callParticipant(@PathVariable Long id) {
+        log.debug("REST request to call the next participant of DynamicQueue : {}", id);
+        DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(id);
+        if (dynamicQueue == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return liveQueueRouter.call(dynamicQueue)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.noContent().build());
+    }
+
+    /**
+     * GET  /dynamic-queues/:id/estimate?position=:position : get the estimated wait at a position of the
+     * "id" dynamicQueue, from the rate estimated by the queue engine.
+     *
+     * @param id the id of the dynamicQueue
+     * @param position the position, 1 being the next to be served
+     * @return the ResponseEntity with status 200 (OK) and with body the estimate,
+     * or with status 400 (Bad Request) if the position is not positive,
+     * or with status 404 (Not Found) if the dynamicQueue does not exist
+     */
+    @GetMapping("/dynamic-queues/{id}/estimate")
+    @Timed
+    public ResponseEntity<WaitEstimateDTO> getWaitEstimate(@PathVariable Long id, @RequestParam int position) {
+        log.debug("REST request to estimate the wait at position {} of DynamicQueue : {}", position, id);
+        if (position < 1) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidposition", "The position must be positive")).body(null);
+        }
+        if (!dynamicQueueRepository.exists(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseUtil.wrapOrNotFound(liveQueueRouter.getEstimate(id, position));
+    }
+
+    /**
+     * GET  /dynamic-queues/:id/timeseries?minutes=:minutes : get the arrivals and serves per minute of the
+     * "id" dynamicQueue over the last minutes, from the queue engine.
+     *
+     * @param id the id of the dynamicQueue
+     * @param minutes the number of minutes up to now, at most a day
+     * @return the ResponseEntity with status 200 (OK) and with body the counts,
+     * or with status 400 (Bad Request) if the number of minutes is out of range,
+     * or with status 404 (Not Found) if the dynamicQueue does not exist
+     */
+    @GetMapping("/dynamic-queues/{id}/timeseries")
+    @Timed
+    public ResponseEntity<QueueTimeSeriesDTO> getTimeSeries(@PathVariable Long id,
+            @RequestParam(defaultValue = "" + MinuteSeries.MINUTES) int minutes) {
+        log.debug("REST request to get the last {} minutes of DynamicQueue : {}", minutes, id);
+        if (minutes < 1 || minutes > MinuteSeries.MINUTES) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidminutes", "The number of minutes must be between 1 and 1440")).body(null);
+        }
+        if (!dynamicQueueRepository.exists(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseUtil.wrapOrNotFound(liveQueueRouter.getTimeSeries(id, minutes));
+    }
+
     /**
      * SEARCH  /_search/dynamic-queues?query=:query : search for the dynamicQueue corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the dynamicQueue search 
-     * @return the result of the search
+     * @param query the query of the dynamicQueue search
+     * @param after the id of the last dynamicQueue of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of dynamicQueues in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/dynamic-queues")
     @Timed
-    public List<DynamicQueue> searchDynamicQueues(@RequestParam String query) {
-        log.debug("REST request to search DynamicQueues for query {}", query);
-        return StreamSupport
-            .stream(dynamicQueueSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<DynamicQueue>> searchDynamicQueues(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of DynamicQueues for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<DynamicQueue> page = dynamicQueueSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/dynamic-queues")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/dynamic-queues");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
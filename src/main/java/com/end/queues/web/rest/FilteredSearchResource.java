@@ -0,0 +1,126 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Person;
+import com.end.queues.domain.Queue;
+import com.end.queues.service.FilteredSearchService;
+import com.end.queues.service.dto.BoundedPage;
+import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST controller for searching Queues, Participants and People by typed filters.
+ *
+ * <p>
+ * Each search runs under a time and document budget, see {@link FilteredSearchService}. A partial page
+ * carries the X-Search-Partial header, and its X-Total-Count is a lower bound.
+ * </p>
+ */
+@RestController
+@RequestMapping("/api")
+public class FilteredSearchResource {
+
+    private final Logger log = LoggerFactory.getLogger(FilteredSearchResource.class);
+
+    private static final String ENTITY_NAME = "search";
+
+    private final FilteredSearchService filteredSearchService;
+
+    public FilteredSearchResource(FilteredSearchService filteredSearchService) {
+        this.filteredSearchService = filteredSearchService;
+    }
+
+    /**
+     * GET  /_filter/queues : search the queues matching all the filters given.
+     *
+     * @param site the site of the queues, optional
+     * @param organization the id of their organization, optional
+     * @param city the city of one of their locations, optional
+     * @param name a prefix of their name, optional
+     * @param text free text to match, without wildcards, optional
+     * @param pageable the pagination information, sorted by id only
+     * @return the ResponseEntity with status 200 (OK) and the list of queues in body,
+     * or with status 400 (Bad Request) if the page is too deep
+     */
+    @GetMapping("/_filter/queues")
+    @Timed
+    public ResponseEntity<List<Queue>> filterQueues(@RequestParam(required = false) String site,
+            @RequestParam(required = false) Long organization, @RequestParam(required = false) String city,
+            @RequestParam(required = false) String name, @RequestParam(required = false) String text, Pageable pageable) {
+        log.debug("REST request to filter Queues of site {}, organization {}, city {}, name {}, text {}", site, organization, city, name, text);
+        if (SearchUtil.isTooDeep(pageable)) {
+            return tooDeep();
+        }
+        BoundedPage<Queue> page = filteredSearchService.searchQueues(site, organization, city, name, text, pageable);
+        HttpHeaders headers = PaginationUtil.generateBoundedSearchPaginationHttpHeaders(page, SearchUtil.filterUrl("/api/_filter/queues",
+            "site", site, "organization", organization, "city", city, "name", name, "text", text));
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /_filter/participants : search the participants matching all the filters given.
+     *
+     * @param dynamicQueue the id of their dynamicQueue, optional
+     * @param priority their priority, optional
+     * @param called true for the participants called, false for those waiting, optional
+     * @param name a prefix of the first or last name of their person, optional
+     * @param pageable the pagination information, sorted by id only
+     * @return the ResponseEntity with status 200 (OK) and the list of participants in body,
+     * or with status 400 (Bad Request) if the page is too deep
+     */
+    @GetMapping("/_filter/participants")
+    @Timed
+    public ResponseEntity<List<Participant>> filterParticipants(@RequestParam(required = false) Long dynamicQueue,
+            @RequestParam(required = false) Integer priority, @RequestParam(required = false) Boolean called,
+            @RequestParam(required = false) String name, Pageable pageable) {
+        log.debug("REST request to filter Participants of DynamicQueue {}, priority {}, called {}, name {}", dynamicQueue, priority, called, name);
+        if (SearchUtil.isTooDeep(pageable)) {
+            return tooDeep();
+        }
+        BoundedPage<Participant> page = filteredSearchService.searchParticipants(dynamicQueue, priority, called, name, pageable);
+        HttpHeaders headers = PaginationUtil.generateBoundedSearchPaginationHttpHeaders(page, SearchUtil.filterUrl("/api/_filter/participants",
+            "dynamicQueue", dynamicQueue, "priority", priority, "called", called, "name", name));
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /_filter/people : search the people matching all the filters given.
+     *
+     * @param name a prefix of their first or last name, optional
+     * @param email their email, optional
+     * @param text free text to match, without wildcards, optional
+     * @param pageable the pagination information, sorted by id only
+     * @return the ResponseEntity with status 200 (OK) and the list of people in body,
+     * or with status 400 (Bad Request) if the page is too deep
+     */
+    @GetMapping("/_filter/people")
+    @Timed
+    public ResponseEntity<List<Person>> filterPeople(@RequestParam(required = false) String name,
+            @RequestParam(required = false) String email, @RequestParam(required = false) String text, Pageable pageable) {
+        log.debug("REST request to filter People with name {}, email {}, text {}", name, email, text);
+        if (SearchUtil.isTooDeep(pageable)) {
+            return tooDeep();
+        }
+        BoundedPage<Person> page = filteredSearchService.searchPeople(name, email, text, pageable);
+        HttpHeaders headers = PaginationUtil.generateBoundedSearchPaginationHttpHeaders(page, SearchUtil.filterUrl("/api/_filter/people",
+            "name", name, "email", email, "text", text));
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    private <T> ResponseEntity<List<T>> tooDeep() {
+        return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage",
+            "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use narrower filters")).body(null);
+    }
+}
@@ -0,0 +1,59 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.service.QueueForecastService;
+import com.end.queues.service.dto.SiteForecastDTO;
+import com.end.queues.web.rest.util.HeaderUtil;
+
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+
+/**
+ * REST controller for the load forecasts of the Queues of a site.
+ */
+@RestController
+@RequestMapping("/api")
+public class ForecastResource {
+
+    private final Logger log = LoggerFactory.getLogger(ForecastResource.class);
+
+    private static final String ENTITY_NAME = "forecast";
+
+    private final QueueForecastService queueForecastService;
+
+    public ForecastResource(QueueForecastService queueForecastService) {
+        this.queueForecastService = queueForecastService;
+    }
+
+    /**
+     * GET  /forecast?site=:site&from=:from&hours=:hours : get the expected arrivals and serves of the
+     * queues of the "site" site, hour by hour, from their past arrivals and serves in the same hours of
+     * the week.
+     *
+     * @param site the site
+     * @param from an instant of the first hour to forecast, in ISO format, now if not given
+     * @param hours the number of hours to forecast, 24 if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the forecast,
+     * or with status 400 (Bad Request) if the number of hours is not between 1 and 168,
+     * or with status 404 (Not Found) if no queue is on the site
+     */
+    @GetMapping("/forecast")
+    @Timed
+    public ResponseEntity<SiteForecastDTO> getSiteForecast(@RequestParam String site,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+            @RequestParam(defaultValue = "24") int hours) {
+        log.debug("REST request to forecast {} hours of site {} from {}", hours, site, from);
+        if (hours < 1 || hours > QueueForecastService.MAX_HOURS) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidhours", "The number of hours must be between 1 and " + QueueForecastService.MAX_HOURS)).body(null);
+        }
+        Instant start = from == null ? Instant.now() : from.toInstant();
+        return ResponseUtil.wrapOrNotFound(queueForecastService.forecastSite(site, start, hours));
+    }
+}
@@ -0,0 +1,51 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.service.QueueLeaderboard;
+import com.end.queues.service.dto.QueueLoadDTO;
+import com.end.queues.web.rest.util.HeaderUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST controller for the busiest Queues.
+ */
+@RestController
+@RequestMapping("/api")
+public class LeaderboardResource {
+
+    private final Logger log = LoggerFactory.getLogger(LeaderboardResource.class);
+
+    private static final String ENTITY_NAME = "leaderboard";
+
+    private final QueueLeaderboard queueLeaderboard;
+
+    public LeaderboardResource(QueueLeaderboard queueLeaderboard) {
+        this.queueLeaderboard = queueLeaderboard;
+    }
+
+    /**
+     * GET  /leaderboard?organizationId=:organizationId&size=:size : get the queues with the most
+     * participants waiting, of an organization or of all organizations.
+     *
+     * @param organizationId the id of the organization, all organizations if not given
+     * @param size the number of queues, 20 if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the queues, the busiest first,
+     * or with status 400 (Bad Request) if the size is not between 1 and 100
+     */
+    @GetMapping("/leaderboard")
+    @Timed
+    public ResponseEntity<List<QueueLoadDTO>> getBusiestQueues(@RequestParam(required = false) Long organizationId,
+            @RequestParam(defaultValue = "20") int size) {
+        log.debug("REST request to get the {} busiest Queues of organization {}", size, organizationId);
+        if (size < 1 || size > QueueLeaderboard.MAX_SIZE) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidsize", "The size must be between 1 and " + QueueLeaderboard.MAX_SIZE)).body(null);
+        }
+        return ResponseEntity.ok(queueLeaderboard.getBusiestQueues(organizationId, size));
+    }
+}
@@ -5,11 +5,19 @@ import com.end.queues.domain.Location;
 
 import com.end.queues.repository.LocationRepository;
 import com.end.queues.repository.search.LocationSearchRepository;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
@@ -17,10 +25,6 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Location.
@@ -37,9 +41,12 @@ public class LocationResource {
 
     private final LocationSearchRepository locationSearchRepository;
 
-    public LocationResource(LocationRepository locationRepository, LocationSearchRepository locationSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    public LocationResource(LocationRepository locationRepository, LocationSearchRepository locationSearchRepository, SearchOutbox searchOutbox) {
         this.locationRepository = locationRepository;
         this.locationSearchRepository = locationSearchRepository;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -51,13 +58,14 @@ public class LocationResource {
      */
     @PostMapping("/locations")
     @Timed
+    @Transactional
     public ResponseEntity<Location> createLocation(@RequestBody Location location) throws URISyntaxException {
         log.debug("REST request to save Location : {}", location);
         if (location.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new location cannot already have an ID")).body(null);
         }
         Location result = locationRepository.save(location);
-        locationSearchRepository.save(result);
+        searchOutbox.index(Location.class, result.getId());
         return ResponseEntity.created(new URI("/api/locations/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -74,13 +82,14 @@ public class LocationResource {
      */
     @PutMapping("/locations")
     @Timed
+    @Transactional
     public ResponseEntity<Location> updateLocation(@RequestBody Location location) throws URISyntaxException {
         log.debug("REST request to update Location : {}", location);
         if (location.getId() == null) {
             return createLocation(location);
         }
         Location result = locationRepository.save(location);
-        locationSearchRepository.save(result);
+        searchOutbox.index(Location.class, result.getId());
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, location.getId().toString()))
             .body(result);
@@ -121,27 +130,41 @@ public class LocationResource {
      */
     @DeleteMapping("/locations/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteLocation(@PathVariable Long id) {
         log.debug("REST request to delete Location : {}", id);
         locationRepository.delete(id);
-        locationSearchRepository.delete(id);
+        searchOutbox.delete(Location.class, id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/locations?query=:query : search for the location corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the location search 
-     * @return the result of the search
+     * @param query the query of the location search
+     * @param after the id of the last location of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of locations in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/locations")
     @Timed
-    public List<Location> searchLocations(@RequestParam String query) {
-        log.debug("REST request to search Locations for query {}", query);
-        return StreamSupport
-            .stream(locationSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Location>> searchLocations(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of Locations for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Location> page = locationSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/locations")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/locations");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
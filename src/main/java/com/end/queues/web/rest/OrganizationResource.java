@@ -5,11 +5,19 @@ import com.end.queues.domain.Organization;
 
 import com.end.queues.repository.OrganizationRepository;
 import com.end.queues.repository.search.OrganizationSearchRepository;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
@@ -18,10 +26,6 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Organization.
@@ -38,9 +42,12 @@ public class OrganizationResource {
 
     private final OrganizationSearchRepository organizationSearchRepository;
 
-    public OrganizationResource(OrganizationRepository organizationRepository, OrganizationSearchRepository organizationSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    public OrganizationResource(OrganizationRepository organizationRepository, OrganizationSearchRepository organizationSearchRepository, SearchOutbox searchOutbox) {
         this.organizationRepository = organizationRepository;
         this.organizationSearchRepository = organizationSearchRepository;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -52,13 +59,14 @@ public class OrganizationResource {
      */
     @PostMapping("/organizations")
     @Timed
+    @Transactional
     public ResponseEntity<Organization> createOrganization(@Valid @RequestBody Organization organization) throws URISyntaxException {
         log.debug("REST request to save Organization : {}", organization);
         if (organization.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new organization cannot already have an ID")).body(null);
         }
         Organization result = organizationRepository.save(organization);
-        organizationSearchRepository.save(result);
+        searchOutbox.index(Organization.class, result.getId());
         return ResponseEntity.created(new URI("/api/organizations/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -75,13 +83,14 @@ public class OrganizationResource {
      */
     @PutMapping("/organizations")
     @Timed
+    @Transactional
     public ResponseEntity<Organization> updateOrganization(@Valid @RequestBody Organization organization) throws URISyntaxException {
         log.debug("REST request to update Organization : {}", organization);
         if (organization.getId() == null) {
             return createOrganization(organization);
         }
         Organization result = organizationRepository.save(organization);
-        organizationSearchRepository.save(result);
+        searchOutbox.index(Organization.class, result.getId());
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, organization.getId().toString()))
             .body(result);
@@ -122,27 +131,41 @@ public class OrganizationResource {
      */
     @DeleteMapping("/organizations/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteOrganization(@PathVariable Long id) {
         log.debug("REST request to delete Organization : {}", id);
         organizationRepository.delete(id);
-        organizationSearchRepository.delete(id);
+        searchOutbox.delete(Organization.class, id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/organizations?query=:query : search for the organization corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the organization search 
-     * @return the result of the search
+     * @param query the query of the organization search
+     * @param after the id of the last organization of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of organizations in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/organizations")
     @Timed
-    public List<Organization> searchOrganizations(@RequestParam String query) {
-        log.debug("REST request to search Organizations for query {}", query);
-        return StreamSupport
-            .stream(organizationSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Organization>> searchOrganizations(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of Organizations for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Organization> page = organizationSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/organizations")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/organizations");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
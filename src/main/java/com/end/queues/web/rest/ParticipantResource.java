@@ -1,26 +1,38 @@
 package com.end.queues.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import com.end.queues.domain.DynamicQueue;
 import com.end.queues.domain.Participant;
 
+import com.end.queues.repository.DynamicQueueRepository;
 import com.end.queues.repository.ParticipantRepository;
 import com.end.queues.repository.search.ParticipantSearchRepository;
+import com.end.queues.service.LiveQueueRouter;
+import com.end.queues.service.QueueFullException;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.service.dto.QueuePositionDTO;
+import com.end.queues.service.engine.LiveQueue;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
+
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Participant.
@@ -37,27 +49,62 @@ public class ParticipantResource {
 
     private final ParticipantSearchRepository participantSearchRepository;
 
-    public ParticipantResource(ParticipantRepository participantRepository, ParticipantSearchRepository participantSearchRepository) {
+    private final DynamicQueueRepository dynamicQueueRepository;
+
+    private final SearchOutbox searchOutbox;
+
+    private final LiveQueueRouter liveQueueRouter;
+
+    public ParticipantResource(ParticipantRepository participantRepository, ParticipantSearchRepository participantSearchRepository,
+            DynamicQueueRepository dynamicQueueRepository, LiveQueueRouter liveQueueRouter, SearchOutbox searchOutbox) {
         this.participantRepository = participantRepository;
         this.participantSearchRepository = participantSearchRepository;
+        this.dynamicQueueRepository = dynamicQueueRepository;
+        this.liveQueueRouter = liveQueueRouter;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
-     * POST  /participants : Create a new participant.
+     * POST  /participants : Create a new participant. A participant given a dynamicQueue joins it at the
+     * tail of the lane of its priority, like POST /dynamic-queues/:id/join. Its position and call time
+     * are set by the queue engine, the values sent are ignored.
      *
      * @param participant the participant to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new participant, or with status 400 (Bad Request) if the participant has already an ID
+     * @return the ResponseEntity with status 201 (Created) and with body the new participant,
+     * or with status 400 (Bad Request) if the participant has already an ID, its dynamicQueue does not exist
+     * or its priority is not a lane of its dynamicQueue,
+     * or with status 409 (Conflict) and a Retry-After header if its queue is at its maximum capacity
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PostMapping("/participants")
     @Timed
-    public ResponseEntity<Participant> createParticipant(@RequestBody Participant participant) throws URISyntaxException {
+    public ResponseEntity<Participant> createParticipant(@Valid @RequestBody Participant participant) throws URISyntaxException {
         log.debug("REST request to save Participant : {}", participant);
         if (participant.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new participant cannot already have an ID")).body(null);
         }
-        Participant result = participantRepository.save(participant);
-        participantSearchRepository.save(result);
+        participant.setPosition(null);
+        participant.setCalledAt(null);
+        Participant result;
+        if (participant.getDynamicQueue() == null) {
+            result = participantRepository.save(participant);
+            searchOutbox.index(Participant.class, result.getId());
+        } else {
+            DynamicQueue dynamicQueue = dynamicQueueRepository.findOne(participant.getDynamicQueue().getId());
+            if (dynamicQueue == null) {
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "nosuchqueue", "The dynamicQueue does not exist")).body(null);
+            }
+            if (participant.getPriority() != null && participant.getPriority() >= LiveQueue.parseLaneWeights(dynamicQueue.getLaneWeights()).length) {
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "nosuchlane", "The priority is not a lane of this dynamicQueue")).body(null);
+            }
+            try {
+                result = liveQueueRouter.join(dynamicQueue, participant, null).get();
+            } catch (QueueFullException e) {
+                HttpHeaders headers = HeaderUtil.createFailureAlert(ENTITY_NAME, "queuefull", "The queue is full");
+                headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+                return ResponseEntity.status(HttpStatus.CONFLICT).headers(headers).body(null);
+            }
+        }
         return ResponseEntity.created(new URI("/api/participants/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -65,22 +112,28 @@ public class ParticipantResource {
 
     /**
      * PUT  /participants : Updates an existing participant.
+     * Its dynamicQueue, position, priority and call time are maintained by the queue engine, the values
+     * sent are ignored: use the join, move, transfer and serve operations to change them.
      *
      * @param participant the participant to update
      * @return the ResponseEntity with status 200 (OK) and with body the updated participant,
      * or with status 400 (Bad Request) if the participant is not valid,
-     * or with status 500 (Internal Server Error) if the participant couldnt be updated
+     * or with status 404 (Not Found) if the participant does not exist
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PutMapping("/participants")
     @Timed
-    public ResponseEntity<Participant> updateParticipant(@RequestBody Participant participant) throws URISyntaxException {
+    @Transactional
+    public ResponseEntity<Participant> updateParticipant(@Valid @RequestBody Participant participant) throws URISyntaxException {
         log.debug("REST request to update Participant : {}", participant);
         if (participant.getId() == null) {
             return createParticipant(participant);
         }
-        Participant result = participantRepository.save(participant);
-        participantSearchRepository.save(result);
+        if (participantRepository.updatePerson(participant.getId(), participant.getPerson()) == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        Participant result = participantRepository.findOne(participant.getId());
+        searchOutbox.index(Participant.class, result.getId());
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, participant.getId().toString()))
             .body(result);
@@ -114,34 +167,132 @@ public class ParticipantResource {
     }
 
     /**
-     * DELETE  /participants/:id : delete the "id" participant.
+     * GET  /participants/:id/position : get the live position of the "id" participant in its dynamicQueue.
+     *
+     * @param id the id of the participant
+     * @return the ResponseEntity with status 200 (OK) and with body the position, or with status 404 (Not Found)
+     */
+    @GetMapping("/participants/{id}/position")
+    @Timed
+    public ResponseEntity<QueuePositionDTO> getParticipantPosition(@PathVariable Long id) {
+        log.debug("REST request to get the position of Participant : {}", id);
+        return ResponseUtil.wrapOrNotFound(liveQueueRouter.getPosition(id));
+    }
+
+    /**
+     * POST  /participants/:id/move?before=:before : move the "id" participant in front of the "before"
+     * participant of the same dynamicQueue, or to its tail.
+     *
+     * @param id the id of the participant to move
+     * @param before the id of the participant to move in front of, optional
+     * @return the ResponseEntity with status 200 (OK) and with body the moved participant,
+     * or with status 400 (Bad Request) if either participant is not waiting in the same dynamicQueue
+     */
+    @PostMapping("/participants/{id}/move")
+    @Timed
+    public ResponseEntity<Participant> moveParticipant(@PathVariable Long id, @RequestParam(required = false) Long before) {
+        log.debug("REST request to move Participant {} before {}", id, before);
+        Optional<Participant> result = liveQueueRouter.move(id, before);
+        if (!result.isPresent()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "notwaiting", "Both participants must be waiting in the same dynamicQueue")).body(null);
+        }
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, id.toString()))
+            .body(result.get());
+    }
+
+    /**
+     * POST  /participants/:id/transfer?to=:to&rank=:rank : transfer the waiting "id" participant to the
+     * "to" dynamicQueue, at the tail of its priority lane or in front of the participant at a rank.
+     *
+     * @param id the id of the participant to transfer
+     * @param to the id of the dynamicQueue to transfer it to
+     * @param rank the rank to place it at, 1 being the next to be served, optional
+     * @return the ResponseEntity with status 200 (OK) and with body the transferred participant,
+     * or with status 400 (Bad Request) if the rank is not positive, if the participant is not waiting in
+     * another dynamicQueue or if the "to" dynamicQueue does not exist,
+     * or with status 409 (Conflict) and a Retry-After header if the "to" dynamicQueue is full
+     */
+    @PostMapping("/participants/{id}/transfer")
+    @Timed
+    public ResponseEntity<Participant> transferParticipant(@PathVariable Long id, @RequestParam Long to,
+            @RequestParam(required = false) Integer rank) {
+        log.debug("REST request to transfer Participant {} to DynamicQueue {} at rank {}", id, to, rank);
+        if (rank != null && rank < 1) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidrank", "The rank must be positive")).body(null);
+        }
+        Optional<Participant> result;
+        try {
+            result = liveQueueRouter.transfer(id, to, rank);
+        } catch (QueueFullException e) {
+            HttpHeaders headers = HeaderUtil.createFailureAlert(ENTITY_NAME, "queuefull", "The queue is full");
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            return ResponseEntity.status(HttpStatus.CONFLICT).headers(headers).body(null);
+        }
+        if (!result.isPresent()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "nottransferable", "The participant must be waiting in another existing dynamicQueue")).body(null);
+        }
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, id.toString()))
+            .body(result.get());
+    }
+
+    /**
+     * POST  /participants/:id/check-in : check in the called "id" participant at its desk, and delete it.
+     *
+     * @param id the id of the participant
+     * @return the ResponseEntity with status 200 (OK) and with body the participant,
+     * or with status 404 (Not Found) if the participant is not called
+     */
+    @PostMapping("/participants/{id}/check-in")
+    @Timed
+    public ResponseEntity<Participant> checkInParticipant(@PathVariable Long id) {
+        log.debug("REST request to check in Participant : {}", id);
+        return ResponseUtil.wrapOrNotFound(liveQueueRouter.checkIn(id));
+    }
+
+    /**
+     * DELETE  /participants/:id : delete the "id" participant, removing it from its dynamicQueue.
      *
      * @param id the id of the participant to delete
      * @return the ResponseEntity with status 200 (OK)
      */
     @DeleteMapping("/participants/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteParticipant(@PathVariable Long id) {
         log.debug("REST request to delete Participant : {}", id);
-        participantRepository.delete(id);
-        participantSearchRepository.delete(id);
+        liveQueueRouter.leave(id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/participants?query=:query : search for the participant corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the participant search 
-     * @return the result of the search
+     * @param query the query of the participant search
+     * @param after the id of the last participant of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of participants in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/participants")
     @Timed
-    public List<Participant> searchParticipants(@RequestParam String query) {
-        log.debug("REST request to search Participants for query {}", query);
-        return StreamSupport
-            .stream(participantSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Participant>> searchParticipants(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of Participants for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Participant> page = participantSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/participants")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/participants");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
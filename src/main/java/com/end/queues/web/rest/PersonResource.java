@@ -5,11 +5,19 @@ import com.end.queues.domain.Person;
 
 import com.end.queues.repository.PersonRepository;
 import com.end.queues.repository.search.PersonSearchRepository;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
@@ -17,10 +25,6 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Person.
@@ -37,9 +41,12 @@ public class PersonResource {
 
     private final PersonSearchRepository personSearchRepository;
 
-    public PersonResource(PersonRepository personRepository, PersonSearchRepository personSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    public PersonResource(PersonRepository personRepository, PersonSearchRepository personSearchRepository, SearchOutbox searchOutbox) {
         this.personRepository = personRepository;
         this.personSearchRepository = personSearchRepository;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -51,13 +58,14 @@ public class PersonResource {
      */
     @PostMapping("/people")
     @Timed
+    @Transactional
     public ResponseEntity<Person> createPerson(@RequestBody Person person) throws URISyntaxException {
         log.debug("REST request to save Person : {}", person);
         if (person.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new person cannot already have an ID")).body(null);
         }
         Person result = personRepository.save(person);
-        personSearchRepository.save(result);
+        searchOutbox.index(Person.class, result.getId());
         return ResponseEntity.created(new URI("/api/people/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -74,13 +82,14 @@ public class PersonResource {
      */
     @PutMapping("/people")
     @Timed
+    @Transactional
     public ResponseEntity<Person> updatePerson(@RequestBody Person person) throws URISyntaxException {
         log.debug("REST request to update Person : {}", person);
         if (person.getId() == null) {
             return createPerson(person);
         }
         Person result = personRepository.save(person);
-        personSearchRepository.save(result);
+        searchOutbox.index(Person.class, result.getId());
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, person.getId().toString()))
             .body(result);
@@ -121,27 +130,41 @@ public class PersonResource {
      */
     @DeleteMapping("/people/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deletePerson(@PathVariable Long id) {
         log.debug("REST request to delete Person : {}", id);
         personRepository.delete(id);
-        personSearchRepository.delete(id);
+        searchOutbox.delete(Person.class, id);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/people?query=:query : search for the person corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the person search 
-     * @return the result of the search
+     * @param query the query of the person search
+     * @param after the id of the last person of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of people in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/people")
     @Timed
-    public List<Person> searchPeople(@RequestParam String query) {
-        log.debug("REST request to search People for query {}", query);
-        return StreamSupport
-            .stream(personSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Person>> searchPeople(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of People for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Person> page = personSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/people")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/people");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 
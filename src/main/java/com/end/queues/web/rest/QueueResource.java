@@ -5,11 +5,22 @@ import com.end.queues.domain.Queue;
 
 import com.end.queues.repository.QueueRepository;
 import com.end.queues.repository.search.QueueSearchRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueLeaderboard;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.service.SiteWaitIndex;
 import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
@@ -17,10 +28,6 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Queue.
@@ -37,9 +44,22 @@ public class QueueResource {
 
     private final QueueSearchRepository queueSearchRepository;
 
-    public QueueResource(QueueRepository queueRepository, QueueSearchRepository queueSearchRepository) {
+    private final SearchOutbox searchOutbox;
+
+    private final LiveQueueService liveQueueService;
+
+    private final SiteWaitIndex siteWaitIndex;
+
+    private final QueueLeaderboard queueLeaderboard;
+
+    public QueueResource(QueueRepository queueRepository, QueueSearchRepository queueSearchRepository,
+            LiveQueueService liveQueueService, SiteWaitIndex siteWaitIndex, QueueLeaderboard queueLeaderboard, SearchOutbox searchOutbox) {
         this.queueRepository = queueRepository;
         this.queueSearchRepository = queueSearchRepository;
+        this.liveQueueService = liveQueueService;
+        this.siteWaitIndex = siteWaitIndex;
+        this.queueLeaderboard = queueLeaderboard;
+        this.searchOutbox = searchOutbox;
     }
 
     /**
@@ -51,13 +71,17 @@ public class QueueResource {
      */
     @PostMapping("/queues")
     @Timed
+    @Transactional
     public ResponseEntity<Queue> createQueue(@RequestBody Queue queue) throws URISyntaxException {
         log.debug("REST request to save Queue : {}", queue);
         if (queue.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "idexists", "A new queue cannot already have an ID")).body(null);
         }
         Queue result = queueRepository.save(queue);
-        queueSearchRepository.save(result);
+        searchOutbox.index(Queue.class, result.getId());
+        updateCapacity(null, result);
+        siteWaitIndex.queueSaved(result, null, null);
+        queueLeaderboard.queueSaved(result, null, null);
         return ResponseEntity.created(new URI("/api/queues/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
             .body(result);
@@ -65,6 +89,8 @@ public class QueueResource {
 
     /**
      * PUT  /queues : Updates an existing queue.
+     * The maximum capacity is enforced on the joins of its dynamicQueue from then on, and the queue is
+     * recommended to the arrivals of its site and ranked with its organization from then on.
      *
      * @param queue the queue to update
      * @return the ResponseEntity with status 200 (OK) and with body the updated queue,
@@ -74,13 +100,21 @@ public class QueueResource {
      */
     @PutMapping("/queues")
     @Timed
+    @Transactional
     public ResponseEntity<Queue> updateQueue(@RequestBody Queue queue) throws URISyntaxException {
         log.debug("REST request to update Queue : {}", queue);
         if (queue.getId() == null) {
             return createQueue(queue);
         }
+        Queue previous = queueRepository.findOne(queue.getId());
+        Long previousDynamicQueueId = dynamicQueueIdOf(previous);
+        String previousSite = previous == null ? null : previous.getSite();
+        Long previousOrganizationId = previous == null || previous.getOrganization() == null ? null : previous.getOrganization().getId();
         Queue result = queueRepository.save(queue);
-        queueSearchRepository.save(result);
+        searchOutbox.index(Queue.class, result.getId());
+        updateCapacity(previousDynamicQueueId, result);
+        siteWaitIndex.queueSaved(result, previousSite, previousDynamicQueueId);
+        queueLeaderboard.queueSaved(result, previousOrganizationId, previousDynamicQueueId);
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, queue.getId().toString()))
             .body(result);
@@ -121,28 +155,66 @@ public class QueueResource {
      */
     @DeleteMapping("/queues/{id}")
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteQueue(@PathVariable Long id) {
         log.debug("REST request to delete Queue : {}", id);
+        Queue queue = queueRepository.findOne(id);
+        Long dynamicQueueId = dynamicQueueIdOf(queue);
         queueRepository.delete(id);
-        queueSearchRepository.delete(id);
+        searchOutbox.delete(Queue.class, id);
+        if (dynamicQueueId != null) {
+            liveQueueService.updateCapacity(dynamicQueueId, null);
+        }
+        if (queue != null) {
+            siteWaitIndex.queueDeleted(queue);
+            queueLeaderboard.queueDeleted(queue);
+        }
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/queues?query=:query : search for the queue corresponding
-     * to the query.
+     * to the query, one page at a time.
      *
-     * @param query the query of the queue search 
-     * @return the result of the search
+     * @param query the query of the queue search
+     * @param after the id of the last queue of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of queues in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
      */
     @GetMapping("/_search/queues")
     @Timed
-    public List<Queue> searchQueues(@RequestParam String query) {
-        log.debug("REST request to search Queues for query {}", query);
-        return StreamSupport
-            .stream(queueSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Queue>> searchQueues(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of Queues for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<Queue> page = queueSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/queues")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/queues");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    /**
+     * Apply the capacity of a queue to its dynamicQueue, and lift it from the dynamicQueue it no longer uses.
+     */
+    private void updateCapacity(Long previousDynamicQueueId, Queue queue) {
+        Long dynamicQueueId = dynamicQueueIdOf(queue);
+        if (previousDynamicQueueId != null && !previousDynamicQueueId.equals(dynamicQueueId)) {
+            liveQueueService.updateCapacity(previousDynamicQueueId, null);
+        }
+        if (dynamicQueueId != null) {
+            liveQueueService.updateCapacity(dynamicQueueId, queue.getMaxCapacity());
+        }
+    }
 
+    private static Long dynamicQueueIdOf(Queue queue) {
+        return queue == null || queue.getDynamicInfo() == null ? null : queue.getDynamicInfo().getId();
+    }
 }
@@ -0,0 +1,87 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.domain.QueueStatus;
+
+import com.end.queues.repository.search.QueueStatusSearchRepository;
+import com.end.queues.web.rest.util.HeaderUtil;
+import com.end.queues.web.rest.util.PaginationUtil;
+import com.end.queues.web.rest.util.SearchUtil;
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * REST controller for reading QueueStatus, the cards of the Queues.
+ *
+ * <p>
+ * A status holds all a card shows, so a single search renders a page of cards. Statuses are read only,
+ * and follow their entities within a couple of indexer drains.
+ * </p>
+ */
+@RestController
+@RequestMapping("/api")
+public class QueueStatusResource {
+
+    private final Logger log = LoggerFactory.getLogger(QueueStatusResource.class);
+
+    private static final String ENTITY_NAME = "queueStatus";
+
+    private final QueueStatusSearchRepository queueStatusSearchRepository;
+
+    public QueueStatusResource(QueueStatusSearchRepository queueStatusSearchRepository) {
+        this.queueStatusSearchRepository = queueStatusSearchRepository;
+    }
+
+    /**
+     * GET  /queue-statuses/:id : get the status of the "id" queue.
+     *
+     * @param id the id of the queue
+     * @return the ResponseEntity with status 200 (OK) and with body the queueStatus, or with status 404 (Not Found)
+     */
+    @GetMapping("/queue-statuses/{id}")
+    @Timed
+    public ResponseEntity<QueueStatus> getQueueStatus(@PathVariable Long id) {
+        log.debug("REST request to get QueueStatus : {}", id);
+        QueueStatus queueStatus = queueStatusSearchRepository.findOne(id);
+        return ResponseUtil.wrapOrNotFound(Optional.ofNullable(queueStatus));
+    }
+
+    /**
+     * SEARCH  /_search/queue-statuses?query=:query : search for the queue statuses corresponding
+     * to the query, one page at a time.
+     *
+     * @param query the query of the queueStatus search
+     * @param after the id of the last queue of the previous page, to read the page after it in id order
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of queueStatuses in body
+     * or with status 400 (Bad Request) if the query holds a leading wildcard or a regular expression,
+     * or if the page goes past the first 10000 results without a cursor
+     */
+    @GetMapping("/_search/queue-statuses")
+    @Timed
+    public ResponseEntity<List<QueueStatus>> searchQueueStatuses(@RequestParam String query, @RequestParam(required = false) Long after, Pageable pageable) {
+        log.debug("REST request to search for a page of QueueStatuses for query {} after {}", query, after);
+        if (SearchUtil.isExpensive(query)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "expensivequery", "Leading wildcards and regular expressions are not allowed")).body(null);
+        }
+        if (after == null && SearchUtil.isTooDeep(pageable)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidpage", "Pages end at result " + SearchUtil.MAX_RESULT_WINDOW + ", use the after cursor to read further")).body(null);
+        }
+        Page<QueueStatus> page = queueStatusSearchRepository.search(SearchUtil.searchQuery(query, pageable, after));
+        HttpHeaders headers = after == null
+            ? PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/queue-statuses")
+            : PaginationUtil.generateSearchAfterPaginationHttpHeaders(query, page,
+                page.hasContent() ? page.getContent().get(page.getNumberOfElements() - 1).getId() : null, "/api/_search/queue-statuses");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,59 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.QueueRebalanceService;
+import com.end.queues.service.dto.SiteRebalanceDTO;
+import com.end.queues.web.rest.util.HeaderUtil;
+
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for rebalancing the Queues of a site.
+ */
+@RestController
+@RequestMapping("/api")
+public class RebalanceResource {
+
+    private final Logger log = LoggerFactory.getLogger(RebalanceResource.class);
+
+    private static final String ENTITY_NAME = "rebalance";
+
+    private final QueueRebalanceService queueRebalanceService;
+
+    private final QueueRepository queueRepository;
+
+    public RebalanceResource(QueueRebalanceService queueRebalanceService, QueueRepository queueRepository) {
+        this.queueRebalanceService = queueRebalanceService;
+        this.queueRepository = queueRepository;
+    }
+
+    /**
+     * POST  /rebalance?site=:site&target=:target : move participants between the queues of the "site"
+     * site, so that they hold about as many participants each, or only into the "target" queue, from the
+     * tails of the others.
+     *
+     * @param site the site
+     * @param target the id of the queue to move participants to, optional
+     * @return the ResponseEntity with status 200 (OK) and with body the outcome,
+     * or with status 400 (Bad Request) if the target queue is not a queue of the site with a dynamicQueue,
+     * or with status 404 (Not Found) if no queue of the site has a dynamicQueue
+     */
+    @PostMapping("/rebalance")
+    @Timed
+    public ResponseEntity<SiteRebalanceDTO> rebalanceSite(@RequestParam String site, @RequestParam(required = false) Long target) {
+        log.debug("REST request to rebalance site {} into Queue {}", site, target);
+        if (target != null) {
+            Queue queue = queueRepository.findOne(target);
+            if (queue == null || !site.equals(queue.getSite()) || queue.getDynamicInfo() == null) {
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidtarget", "The target must be a queue of the site with a dynamicQueue")).body(null);
+            }
+        }
+        return ResponseUtil.wrapOrNotFound(queueRebalanceService.rebalance(site, target));
+    }
+}
@@ -0,0 +1,58 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.service.QueueStatusProjection;
+import com.end.queues.service.SearchReindexer;
+import com.end.queues.service.dto.ReindexDTO;
+
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for rebuilding the Elasticsearch indices from the database.
+ */
+@RestController
+@RequestMapping("/management")
+public class ReindexResource {
+
+    private final Logger log = LoggerFactory.getLogger(ReindexResource.class);
+
+    private final SearchReindexer searchReindexer;
+
+    private final QueueStatusProjection queueStatusProjection;
+
+    public ReindexResource(SearchReindexer searchReindexer, QueueStatusProjection queueStatusProjection) {
+        this.searchReindexer = searchReindexer;
+        this.queueStatusProjection = queueStatusProjection;
+    }
+
+    /**
+     * POST  /reindex/queuestatus : rebuild the status of every queue, through the search indexer.
+     *
+     * @return the ResponseEntity with status 202 (Accepted) and with body the number of statuses to rebuild
+     */
+    @PostMapping("/reindex/queuestatus")
+    @Timed
+    public ResponseEntity<Integer> reindexQueueStatuses() {
+        log.debug("REST request to rebuild the queue statuses");
+        return ResponseEntity.accepted().body(queueStatusProjection.rebuild());
+    }
+
+    /**
+     * POST  /reindex/:entity : rebuild the index of the "entity" entity from all its rows, and switch
+     * searches to it once complete.
+     *
+     * @param entity the name of the index of the entity, such as participant or dynamicqueue
+     * @return the ResponseEntity with status 200 (OK) and with body the outcome,
+     * or with status 404 (Not Found) if no entity is indexed under that name
+     */
+    @PostMapping("/reindex/{entity}")
+    @Timed
+    public ResponseEntity<ReindexDTO> reindex(@PathVariable String entity) {
+        log.debug("REST request to reindex {}", entity);
+        return ResponseUtil.wrapOrNotFound(searchReindexer.reindex(entity));
+    }
+}
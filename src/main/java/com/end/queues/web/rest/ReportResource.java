@@ -0,0 +1,94 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.service.QueueRollupService;
+import com.end.queues.service.dto.OrganizationDailyStatsDTO;
+import com.end.queues.service.dto.SiteDailyStatsDTO;
+import com.end.queues.web.rest.util.HeaderUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * REST controller for the reports of the queue activity, read from the daily rollups only.
+ */
+@RestController
+@RequestMapping("/api")
+public class ReportResource {
+
+    private final Logger log = LoggerFactory.getLogger(ReportResource.class);
+
+    private static final String ENTITY_NAME = "report";
+
+    private static final int DEFAULT_DAYS = 30;
+
+    private final QueueRollupService queueRollupService;
+
+    public ReportResource(QueueRollupService queueRollupService) {
+        this.queueRollupService = queueRollupService;
+    }
+
+    /**
+     * GET  /reports/organizations/:id/days?from=:from&to=:to : get the arrivals, serves and mean wait of
+     * the queues of the "id" organization, day by day.
+     *
+     * @param id the id of the organization
+     * @param from the first day, in ISO format, 30 days before the last one if not given
+     * @param to the last day, in ISO format, today if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the days with activity,
+     * or with status 400 (Bad Request) if the days are not in order or span more than 366 days
+     */
+    @GetMapping("/reports/organizations/{id}/days")
+    @Timed
+    public ResponseEntity<List<OrganizationDailyStatsDTO>> getOrganizationDays(@PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        log.debug("REST request to get the days of Organization {} from {} to {}", id, from, to);
+        LocalDate last = to == null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate first = from == null ? last.minusDays(DEFAULT_DAYS - 1) : from;
+        if (!isValidRange(first, last)) {
+            return invalidRange();
+        }
+        return ResponseEntity.ok(queueRollupService.getOrganizationDays(id, first, last));
+    }
+
+    /**
+     * GET  /reports/sites/:site/days?from=:from&to=:to : get the arrivals, serves and peak length of the
+     * queues of the "site" site, day by day.
+     *
+     * @param site the site
+     * @param from the first day, in ISO format, 30 days before the last one if not given
+     * @param to the last day, in ISO format, today if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the days with activity,
+     * or with status 400 (Bad Request) if the days are not in order or span more than 366 days
+     */
+    @GetMapping("/reports/sites/{site}/days")
+    @Timed
+    public ResponseEntity<List<SiteDailyStatsDTO>> getSiteDays(@PathVariable String site,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        log.debug("REST request to get the days of site {} from {} to {}", site, from, to);
+        LocalDate last = to == null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate first = from == null ? last.minusDays(DEFAULT_DAYS - 1) : from;
+        if (!isValidRange(first, last)) {
+            return invalidRange();
+        }
+        return ResponseEntity.ok(queueRollupService.getSiteDays(site, first, last));
+    }
+
+    private static boolean isValidRange(LocalDate first, LocalDate last) {
+        return !first.isAfter(last) && ChronoUnit.DAYS.between(first, last) < QueueRollupService.MAX_DAYS;
+    }
+
+    private static <T> ResponseEntity<T> invalidRange() {
+        return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidrange", "The days must be in order and span at most " + QueueRollupService.MAX_DAYS + " days")).body(null);
+    }
+}
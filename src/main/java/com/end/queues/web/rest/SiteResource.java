@@ -0,0 +1,42 @@
+package com.end.queues.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.end.queues.service.SiteWaitIndex;
+import com.end.queues.service.dto.BestQueueDTO;
+
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for the recommendations of the Queues of a site.
+ */
+@RestController
+@RequestMapping("/api")
+public class SiteResource {
+
+    private final Logger log = LoggerFactory.getLogger(SiteResource.class);
+
+    private final SiteWaitIndex siteWaitIndex;
+
+    public SiteResource(SiteWaitIndex siteWaitIndex) {
+        this.siteWaitIndex = siteWaitIndex;
+    }
+
+    /**
+     * GET  /sites/:site/best-queue : get the queue of the "site" site with the lowest expected wait for a
+     * participant joining now, among the queues with room left.
+     *
+     * @param site the site
+     * @return the ResponseEntity with status 200 (OK) and with body the queue,
+     * or with status 404 (Not Found) if no queue of the site has a dynamicQueue with room left
+     */
+    @GetMapping("/sites/{site}/best-queue")
+    @Timed
+    public ResponseEntity<BestQueueDTO> getBestQueue(@PathVariable String site) {
+        log.debug("REST request to get the best Queue of site {}", site);
+        return ResponseUtil.wrapOrNotFound(siteWaitIndex.getBestQueue(site));
+    }
+}
@@ -1,5 +1,7 @@
 package com.end.queues.web.rest.util;
 
+import com.end.queues.service.dto.BoundedPage;
+
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -65,4 +67,47 @@ public final class PaginationUtil {
         headers.add(HttpHeaders.LINK, link);
         return headers;
     }
+
+    /**
+     * The headers of a page of search results read after a cursor, linking to the first page and, unless
+     * the results are exhausted, to the page after the last document of this one.
+     *
+     * @param query the query string
+     * @param page the page, whose total counts the documents after the cursor
+     * @param lastId the id of the last document of the page, or null if it is empty
+     * @param baseUrl the URL of the search
+     * @return the headers
+     */
+    public static HttpHeaders generateSearchAfterPaginationHttpHeaders(String query, Page page, Long lastId, String baseUrl) {
+        String escapedQuery = query.replace(",", "%2C");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Total-Count", Long.toString(page.getTotalElements()));
+        String link = "";
+        if (lastId != null && page.getTotalElements() > page.getNumberOfElements()) {
+            link = "<" + UriComponentsBuilder.fromUriString(baseUrl).queryParam("size", page.getSize()).queryParam("after", lastId).toUriString() +
+                "&query=" + escapedQuery + ">; rel=\"next\",";
+        }
+        link += "<" + generateUri(baseUrl, 0, page.getSize()) + "&query=" + escapedQuery + ">; rel=\"first\"";
+        headers.add(HttpHeaders.LINK, link);
+        return headers;
+    }
+
+    /**
+     * The headers of a page of a bounded search, which also tell when the page is partial: its total is
+     * then a lower bound.
+     *
+     * @param page the page
+     * @param baseUrl the URL of the search, with its filters
+     * @return the headers
+     */
+    public static HttpHeaders generateBoundedSearchPaginationHttpHeaders(BoundedPage page, String baseUrl) {
+        HttpHeaders headers = generatePaginationHttpHeaders(page, baseUrl);
+        if (page.isPartial()) {
+            headers.add("X-Search-Partial", "true");
+            headers.add("X-Search-Timed-Out", Boolean.toString(page.isTimedOut()));
+            headers.add("X-Search-Terminated-Early", Boolean.toString(page.isTerminatedEarly()));
+            headers.add("X-Search-Failed-Shards", Integer.toString(page.getFailedShards()));
+        }
+        return headers;
+    }
 }
@@ -0,0 +1,112 @@
+package com.end.queues.web.rest.util;
+
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.regex.Pattern;
+
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Utility class for building the queries of the search endpoints.
+ *
+ * <p>
+ * A search returns one page of documents at a time, so the memory of a request is bounded by the page
+ * size whatever the number of documents matching. Pages far from the first are costly to Elasticsearch,
+ * which has to rank all the documents before them, so deep pagination uses a cursor instead: the id of
+ * the last document of the previous page. The documents are then sorted by id, and the next page is
+ * the first one of the documents after it.
+ * </p>
+ * <p>
+ * Query strings with a leading wildcard or a regular expression make Elasticsearch scan every term of
+ * the index, so they are rejected, but for a lone {@code *} which is read as matching everything.
+ * </p>
+ */
+public final class SearchUtil {
+
+    /**
+     * The deepest document a page may reach, the default max_result_window of Elasticsearch.
+     */
+    public static final int MAX_RESULT_WINDOW = 10000;
+
+    private static final String ID = "id";
+
+    private static final Pattern EXPENSIVE_TERM = Pattern.compile("(^|[\\s(:+\\-!])[*?/]");
+
+    private SearchUtil() {
+    }
+
+    /**
+     * The query for a page of the documents matching a query string.
+     *
+     * @param query the query string
+     * @param pageable the page, ignored but for its size when a cursor is given
+     * @param after the id of the last document of the previous page, or null to use the page number
+     * @return the query
+     */
+    public static SearchQuery searchQuery(String query, Pageable pageable, Long after) {
+        if (after == null) {
+            return new NativeSearchQueryBuilder()
+                .withQuery(toQuery(query))
+                .withPageable(pageable)
+                .build();
+        }
+        return new NativeSearchQueryBuilder()
+            .withQuery(boolQuery().must(toQuery(query)).filter(rangeQuery(ID).gt(after)))
+            .withSort(SortBuilders.fieldSort(ID).order(SortOrder.ASC))
+            .withPageable(new PageRequest(0, pageable.getPageSize()))
+            .build();
+    }
+
+    /**
+     * Whether a query string holds a term starting with a wildcard, or a regular expression.
+     *
+     * @param query the query string
+     * @return true if the query must be rejected
+     */
+    public static boolean isExpensive(String query) {
+        return !isMatchAll(query) && EXPENSIVE_TERM.matcher(query).find();
+    }
+
+    /**
+     * Whether a page goes deeper than Elasticsearch allows.
+     *
+     * @param pageable the page
+     * @return true if the page must be rejected
+     */
+    public static boolean isTooDeep(Pageable pageable) {
+        return (long) pageable.getOffset() + pageable.getPageSize() > MAX_RESULT_WINDOW;
+    }
+
+    /**
+     * The URL of a filtered search, with the filters given.
+     *
+     * @param path the path of the search
+     * @param filters the name then the value of each filter, whose null values are left out
+     * @return the URL
+     */
+    public static String filterUrl(String path, Object... filters) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromPath(path);
+        for (int i = 0; i + 1 < filters.length; i += 2) {
+            if (filters[i + 1] != null) {
+                builder.queryParam((String) filters[i], filters[i + 1]);
+            }
+        }
+        return builder.toUriString();
+    }
+
+    private static boolean isMatchAll(String query) {
+        String trimmed = query.trim();
+        return trimmed.equals("*") || trimmed.equals("*:*");
+    }
+
+    private static QueryBuilder toQuery(String query) {
+        return isMatchAll(query) ? matchAllQuery() : queryStringQuery(query).allowLeadingWildcard(false);
+    }
+}
@@ -0,0 +1,165 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.search.DynamicQueueSearchRepository;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationEvent.MigrationStatus;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the DynamicQueueCounters write-behind.
+ *
+ * @see DynamicQueueCounters
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class DynamicQueueCountersIntTest {
+
+    @Autowired
+    private DynamicQueueCounters dynamicQueueCounters;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private DynamicQueueSearchRepository dynamicQueueSearchRepository;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    private boolean rateWritesFail;
+
+    @Test
+    @Transactional
+    public void flushWritesPendingChanges() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(1L).rate(1));
+
+        dynamicQueueCounters.addParticipants(dynamicQueue.getId(), 1);
+        dynamicQueueCounters.addParticipants(dynamicQueue.getId(), 1);
+        dynamicQueueCounters.addParticipants(dynamicQueue.getId(), -1);
+        dynamicQueueCounters.setRate(dynamicQueue.getId(), 5);
+
+        // Nothing is written before the flush
+        assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(1L);
+
+        dynamicQueueCounters.flush();
+
+        Map<String, Object> row = selectDynamicQueue(dynamicQueue.getId());
+        assertThat(row.get("num_participants")).isEqualTo(2L);
+        assertThat(row.get("rate")).isEqualTo(5);
+        searchIndexer.drain();
+        assertThat(dynamicQueueSearchRepository.findOne(dynamicQueue.getId())).isNotNull();
+
+        // A flush without pending changes writes nothing
+        jdbcTemplate.update("update dynamic_queue set num_participants = 0 where id = ?", dynamicQueue.getId());
+        dynamicQueueCounters.flush();
+        assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(0L);
+    }
+
+    @Test
+    @Transactional
+    public void promotedLiveQueuesAreRecounted() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(5L));
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.join(dynamicQueue, new Participant());
+        int partitionId = hazelcastInstance.getPartitionService().getPartition(dynamicQueue.getId()).getPartitionId();
+        Member localMember = hazelcastInstance.getCluster().getLocalMember();
+
+        // A partition migrated from a live member keeps the deltas pending
+        dynamicQueueCounters.migrationCompleted(new MigrationEvent(partitionId, localMember, localMember, MigrationStatus.COMPLETED));
+        jdbcTemplate.update("update dynamic_queue set num_participants = 5 where id = ?", dynamicQueue.getId());
+        dynamicQueueCounters.flush();
+        assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(7L);
+
+        // A promoted backup replaces the count lost with its owner by the size of the live queue
+        dynamicQueueCounters.migrationCompleted(new MigrationEvent(partitionId, null, localMember, MigrationStatus.COMPLETED));
+        dynamicQueueCounters.flush();
+        assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(2L);
+    }
+
+    /**
+     * Not transactional, as the flush commits its own transaction.
+     */
+    @Test
+    public void failedFlushWritesNothingAndIsRetriedOnce() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.save(new DynamicQueue().numParticipants(1L).rate(1));
+        JdbcTemplate failingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = super.batchUpdate(sql, batchArgs);
+                if (rateWritesFail && sql.contains("set rate")) {
+                    throw new DataAccessResourceFailureException("Rate writes are failing");
+                }
+                return counts;
+            }
+        };
+        DynamicQueueCounters counters = new DynamicQueueCounters(new ApplicationProperties(), hazelcastInstance, searchOutbox, failingJdbcTemplate,
+            entityManagerFactory, transactionManager, Runnable::run);
+        try {
+            counters.addParticipants(dynamicQueue.getId(), 2);
+            counters.setRate(dynamicQueue.getId(), 5);
+
+            // The rate batch fails after the counts batch, and both roll back
+            rateWritesFail = true;
+            assertThatThrownBy(counters::flush).isInstanceOf(DataAccessResourceFailureException.class);
+            assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(1L);
+
+            // The retry writes the counts once, with the changes made since
+            rateWritesFail = false;
+            counters.addParticipants(dynamicQueue.getId(), 1);
+            counters.flush();
+            Map<String, Object> row = selectDynamicQueue(dynamicQueue.getId());
+            assertThat(row.get("num_participants")).isEqualTo(4L);
+            assertThat(row.get("rate")).isEqualTo(5);
+
+            counters.flush();
+            assertThat(selectDynamicQueue(dynamicQueue.getId()).get("num_participants")).isEqualTo(4L);
+        } finally {
+            dynamicQueueRepository.delete(dynamicQueue.getId());
+        }
+    }
+
+    private Map<String, Object> selectDynamicQueue(Long id) {
+        return jdbcTemplate.queryForMap("select num_participants, rate from dynamic_queue where id = ?", id);
+    }
+}
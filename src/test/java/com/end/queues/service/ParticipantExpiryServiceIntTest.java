@@ -0,0 +1,136 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.ParticipantRepository;
+
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the expiry of participants.
+ * <p>
+ * The deadlines are held by a wheel of their own, with no time to live and no grace period, so the
+ * participants armed in it expire on the next tick. Not transactional: the participants are deleted
+ * with JDBC, so the rows must be committed.
+ *
+ * @see ParticipantExpiryService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class ParticipantExpiryServiceIntTest {
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private LiveQueueRouter liveQueueRouter;
+
+    @Autowired
+    private QueueJournalService queueJournalService;
+
+    @Autowired
+    private DynamicQueueCounters dynamicQueueCounters;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private ParticipantRepository participantRepository;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    private ParticipantDeadlines participantDeadlines;
+
+    private ParticipantExpiryService participantExpiryService;
+
+    private DynamicQueue dynamicQueue;
+
+    @Before
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getQueueEngine().setParticipantTtlMs(0);
+        applicationProperties.getQueueEngine().setCallGraceMs(0);
+        applicationProperties.getQueueEngine().setExpiryTickMs(1);
+        participantDeadlines = new ParticipantDeadlines(applicationProperties, hazelcastInstance, participantRepository);
+        participantExpiryService = new ParticipantExpiryService(participantDeadlines, liveQueueRouter, hazelcastInstance,
+            queueJournalService, dynamicQueueCounters, liveQueueService, jdbcTemplate, entityManagerFactory, searchOutbox);
+        dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+    }
+
+    @After
+    public void cleanUp() {
+        participantRepository.delete(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId()));
+        dynamicQueueRepository.delete(dynamicQueue.getId());
+    }
+
+    @Test
+    public void expiredParticipantsLeaveTheirQueue() throws Exception {
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+        Participant third = liveQueueService.join(dynamicQueue, new Participant());
+
+        participantDeadlines.waiting(first.getId(), dynamicQueue.getId());
+        participantDeadlines.waiting(third.getId(), dynamicQueue.getId());
+        Thread.sleep(5);
+
+        assertThat(participantExpiryService.expire()).isEqualTo(2);
+        assertThat(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId()))
+            .extracting(Participant::getId).containsExactly(second.getId());
+        assertThat(liveQueueService.getPosition(second.getId()).get().getPosition()).isEqualTo(1);
+        assertThat(participantDeadlines.size()).isEqualTo(0);
+
+        // A participant expired twice is only deleted once
+        participantDeadlines.waiting(first.getId(), dynamicQueue.getId());
+        Thread.sleep(5);
+        assertThat(participantExpiryService.expire()).isEqualTo(0);
+    }
+
+    @Test
+    public void calledParticipantsExpireUnlessTheyCheckIn() throws Exception {
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+
+        // A called participant is out of the queue, but kept until it checks in
+        Participant called = liveQueueService.call(dynamicQueue).get();
+        assertThat(called.getId()).isEqualTo(first.getId());
+        assertThat(called.getCalledAt()).isNotNull();
+        assertThat(liveQueueService.getPosition(first.getId())).isEmpty();
+        assertThat(liveQueueService.getPosition(second.getId()).get().getPosition()).isEqualTo(1);
+        assertThat(liveQueueService.checkIn(second.getId())).isEmpty();
+        assertThat(liveQueueService.checkIn(first.getId())).isPresent();
+        assertThat(participantRepository.findOne(first.getId())).isNull();
+
+        // A called participant who does not check in expires
+        called = liveQueueService.call(dynamicQueue).get();
+        participantDeadlines.called(called.getId(), dynamicQueue.getId());
+        Thread.sleep(5);
+        assertThat(participantExpiryService.expire()).isEqualTo(1);
+        assertThat(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId())).isEmpty();
+        assertThat(liveQueueService.checkIn(called.getId())).isEmpty();
+    }
+}
@@ -0,0 +1,197 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.ParticipantRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.dto.DeskDTO;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the QueueDispatcher.
+ * <p>
+ * Not transactional: the dispatcher serves on its own threads, so the rows must be committed.
+ *
+ * @see QueueDispatcher
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueDispatcherIntTest {
+
+    @Autowired
+    private QueueDispatcher queueDispatcher;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private ParticipantRepository participantRepository;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private DynamicQueue dynamicQueue;
+
+    private Queue queue;
+
+    @Before
+    public void initTest() {
+        dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        queue = queueRepository.saveAndFlush(new Queue().name("desks").dynamicInfo(dynamicQueue));
+    }
+
+    @After
+    public void cleanUp() {
+        participantRepository.delete(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId()));
+        queueRepository.delete(queue.getId());
+        dynamicQueueRepository.delete(dynamicQueue.getId());
+    }
+
+    @Test
+    public void assignEachParticipantToOneDesk() throws Exception {
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        assertThat(queueDispatcher.connect(queue.getId(), "first", first)).isTrue();
+        assertThat(queueDispatcher.connect(queue.getId(), "second", second)).isTrue();
+
+        Participant one = liveQueueService.join(dynamicQueue, new Participant());
+        Participant two = liveQueueService.join(dynamicQueue, new Participant());
+        Participant three = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Both desks get one of the first two participants, the third one waits
+        Set<Long> assigned = new HashSet<>();
+        assigned.add(first.nextAssignment().getId());
+        assigned.add(second.nextAssignment().getId());
+        assertThat(assigned).containsOnly(one.getId(), two.getId());
+        assertThat(first.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(participantRepository.findOne(three.getId())).isNotNull();
+
+        // The first desk to ask for more work gets it
+        queueDispatcher.ready(queue.getId(), "second");
+        assertThat(second.nextAssignment().getId()).isEqualTo(three.getId());
+
+        List<DeskDTO> desks = queueDispatcher.getDesks(queue.getId());
+        assertThat(desks).extracting(DeskDTO::getName).containsOnly("first", "second");
+        assertThat(desks).extracting(DeskDTO::getAssignments).containsOnly(1L, 2L);
+    }
+
+    @Test
+    public void idleDeskGetsTheNextJoin() throws Exception {
+        RecordingEmitter desk = new RecordingEmitter();
+        queueDispatcher.connect(queue.getId(), "idle", desk);
+        assertThat(desk.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+
+        Participant participant = liveQueueService.join(dynamicQueue, new Participant());
+
+        assertThat(desk.nextAssignment().getId()).isEqualTo(participant.getId());
+        assertThat(queueDispatcher.getDesks(queue.getId())).extracting(DeskDTO::isIdle).containsOnly(false);
+    }
+
+    @Test
+    public void failedSendIsResentOnReconnect() throws Exception {
+        FailingEmitter failing = new FailingEmitter();
+        queueDispatcher.connect(queue.getId(), "flaky", failing);
+
+        Participant participant = liveQueueService.join(dynamicQueue, new Participant());
+
+        // The send fails, which completes the connection and drops the desk and its meter
+        assertThat(failing.completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queueDispatcher.getDesks(queue.getId())).isEmpty();
+        assertThat(metricRegistry.getMeters()).doesNotContainKey(MetricRegistry.name(QueueDispatcher.class, "queue",
+            queue.getId().toString(), "desk", "flaky"));
+
+        RecordingEmitter reconnected = new RecordingEmitter();
+        queueDispatcher.connect(queue.getId(), "flaky", reconnected);
+        assertThat(reconnected.nextAssignment().getId()).isEqualTo(participant.getId());
+    }
+
+    @Test
+    public void connectToQueueWithoutDynamicQueue() {
+        Queue staticQueue = queueRepository.saveAndFlush(new Queue().name("static"));
+        try {
+            assertThat(queueDispatcher.connect(staticQueue.getId(), "desk", new RecordingEmitter())).isFalse();
+            assertThat(queueDispatcher.connect(Long.MAX_VALUE, "desk", new RecordingEmitter())).isFalse();
+        } finally {
+            queueRepository.delete(staticQueue.getId());
+        }
+    }
+
+    /**
+     * Fails every send, and completes like a connection closed by the client.
+     */
+    private static class FailingEmitter extends SseEmitter {
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private Runnable completionCallback;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            throw new IOException("Broken pipe");
+        }
+
+        @Override
+        public synchronized void onCompletion(Runnable callback) {
+            this.completionCallback = callback;
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            completionCallback.run();
+            completed.countDown();
+        }
+    }
+
+    /**
+     * Keeps the participants sent, instead of writing them to a response.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<Participant> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof Participant) {
+                    events.add((Participant) data.getData());
+                }
+            }
+        }
+
+        Participant nextAssignment() throws InterruptedException {
+            Participant participant = events.poll(5, TimeUnit.SECONDS);
+            assertThat(participant).isNotNull();
+            return participant;
+        }
+    }
+}
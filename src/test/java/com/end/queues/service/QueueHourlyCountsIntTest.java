@@ -0,0 +1,139 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.service.engine.LiveQueue;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the QueueHourlyCounts write-behind.
+ *
+ * @see QueueHourlyCounts
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueHourlyCountsIntTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Autowired
+    private QueueHourlyCounts queueHourlyCounts;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private QueueRollupService queueRollupService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @Transactional
+    public void flushAddsClosedHours() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L).rate(1));
+        IMap<Long, LiveQueue> liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        long hour = System.currentTimeMillis() / HOUR - 3;
+        try {
+            LiveQueue liveQueue = new LiveQueue(dynamicQueue.getId());
+            liveQueue.recordJoin(hour * HOUR);
+            liveQueue.recordJoin(hour * HOUR + 1);
+            liveQueue.recordServe(hour * HOUR + 2);
+            liveQueue.recordJoin((hour + 1) * HOUR);
+            liveQueues.set(dynamicQueue.getId(), liveQueue);
+
+            assertThat(queueHourlyCounts.flush()).isGreaterThanOrEqualTo(2);
+            List<Map<String, Object>> rows = selectHours(dynamicQueue.getId());
+            assertThat(rows).hasSize(2);
+            assertThat(rows.get(0).get("hour_start")).isEqualTo(new Timestamp(hour * HOUR));
+            assertThat(rows.get(0).get("arrivals")).isEqualTo(2);
+            assertThat(rows.get(0).get("serves")).isEqualTo(1);
+            assertThat(rows.get(1).get("arrivals")).isEqualTo(1);
+            assertThat(rows.get(1).get("serves")).isEqualTo(0);
+
+            // The hours drained are not written twice, and a later part of an hour is added to its row
+            queueHourlyCounts.flush();
+            assertThat(selectHours(dynamicQueue.getId()).get(0).get("arrivals")).isEqualTo(2);
+            liveQueue = new LiveQueue(dynamicQueue.getId());
+            liveQueue.recordJoin(hour * HOUR + 5);
+            liveQueues.set(dynamicQueue.getId(), liveQueue);
+            queueHourlyCounts.flush();
+            assertThat(selectHours(dynamicQueue.getId()).get(0).get("arrivals")).isEqualTo(3);
+        } finally {
+            liveQueues.delete(dynamicQueue.getId());
+        }
+    }
+
+    /**
+     * Not transactional, as the flush commits its own transaction.
+     */
+    @Test
+    public void failedFlushPutsTheHoursBack() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.save(new DynamicQueue().numParticipants(0L).rate(1));
+        IMap<Long, LiveQueue> liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        JdbcTemplate failingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = super.batchUpdate(sql, batchArgs);
+                if (sql.startsWith("insert")) {
+                    throw new DataAccessResourceFailureException("Inserts are failing");
+                }
+                return counts;
+            }
+        };
+        QueueHourlyCounts failingCounts = new QueueHourlyCounts(hazelcastInstance, failingJdbcTemplate, queueRollupService,
+            transactionManager);
+        long hour = System.currentTimeMillis() / HOUR - 3;
+        try {
+            LiveQueue liveQueue = new LiveQueue(dynamicQueue.getId());
+            liveQueue.recordJoin(hour * HOUR);
+            liveQueue.recordJoin(hour * HOUR + 1);
+            liveQueues.set(dynamicQueue.getId(), liveQueue);
+
+            // The insert fails after the update, and nothing is written
+            assertThatThrownBy(failingCounts::flush).isInstanceOf(DataAccessResourceFailureException.class);
+            assertThat(selectHours(dynamicQueue.getId())).isEmpty();
+
+            // The next flush writes the hours put back, once
+            queueHourlyCounts.flush();
+            List<Map<String, Object>> rows = selectHours(dynamicQueue.getId());
+            assertThat(rows).isNotEmpty();
+            assertThat(rows.get(0).get("hour_start")).isEqualTo(new Timestamp(hour * HOUR));
+            assertThat(rows.get(0).get("arrivals")).isEqualTo(2);
+        } finally {
+            liveQueues.delete(dynamicQueue.getId());
+            jdbcTemplate.update("delete from queue_hourly_count where dynamic_queue_id = ?", dynamicQueue.getId());
+            dynamicQueueRepository.delete(dynamicQueue.getId());
+        }
+    }
+
+    private List<Map<String, Object>> selectHours(Long dynamicQueueId) {
+        return jdbcTemplate.queryForList("select hour_start, arrivals, serves from queue_hourly_count " +
+            "where dynamic_queue_id = ? order by hour_start", dynamicQueueId);
+    }
+}
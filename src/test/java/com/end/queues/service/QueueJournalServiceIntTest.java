@@ -0,0 +1,211 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.ParticipantRepository;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.service.engine.LiveQueueSnapshot;
+import com.end.queues.service.engine.QueueJournal;
+import com.end.queues.service.engine.SnapshotProcessor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the replay of the queue journal and the restore of the live queue snapshots.
+ *
+ * @see QueueJournalService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueJournalServiceIntTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Autowired
+    private QueueJournalService queueJournalService;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private ParticipantRepository participantRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Test
+    @Transactional
+    public void replayLastOutcomes() throws Exception {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        Participant served = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue).position(1L));
+        Participant moved = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue).position(2L));
+        Participant joined = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue));
+
+        // The database missed everything the journal recorded after the rows were written
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            journal.append(QueueJournal.PLACED, dynamicQueue.getId(), joined.getId(), 3000L);
+            journal.append(QueueJournal.PLACED, dynamicQueue.getId(), moved.getId(), 1000L);
+            journal.append(QueueJournal.PLACED, dynamicQueue.getId(), moved.getId(), 4000L);
+            journal.append(QueueJournal.REMOVED, dynamicQueue.getId(), served.getId(), LiveQueue.NONE);
+        }
+
+        assertThat(queueJournalService.replay(directory)).isEqualTo(4);
+
+        assertThat(positionOf(joined)).isEqualTo(3000L);
+        assertThat(positionOf(moved)).isEqualTo(4000L);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from participant where id = ?", Long.class, served.getId())).isEqualTo(0L);
+        assertThat(jdbcTemplate.queryForObject("select num_participants from dynamic_queue where id = ?", Long.class, dynamicQueue.getId()))
+            .isEqualTo(2L);
+    }
+
+    @Test
+    @Transactional
+    public void replayTransfers() throws Exception {
+        DynamicQueue from = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        DynamicQueue to = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        Participant interrupted = participantRepository.saveAndFlush(new Participant().dynamicQueue(from).position(1000L));
+        Participant transferred = participantRepository.saveAndFlush(new Participant().dynamicQueue(from).position(2000L));
+
+        // The run stopped after the first participant was taken out, before the other queue placed it
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            journal.append(QueueJournal.TRANSFERRED, from.getId(), interrupted.getId(), 1000L);
+            journal.append(QueueJournal.TRANSFERRED, from.getId(), transferred.getId(), 2000L);
+            journal.append(QueueJournal.PLACED, to.getId(), transferred.getId(), 3000L);
+        }
+
+        assertThat(queueJournalService.replay(directory)).isEqualTo(3);
+
+        // The interrupted transfer is put back rather than deleted
+        assertThat(positionOf(interrupted)).isEqualTo(1000L);
+        assertThat(jdbcTemplate.queryForObject("select dynamic_queue_id from participant where id = ?", Long.class,
+            interrupted.getId())).isEqualTo(from.getId());
+        assertThat(positionOf(transferred)).isEqualTo(3000L);
+        assertThat(jdbcTemplate.queryForObject("select dynamic_queue_id from participant where id = ?", Long.class,
+            transferred.getId())).isEqualTo(to.getId());
+        assertThat(jdbcTemplate.queryForObject("select num_participants from dynamic_queue where id = ?", Long.class, from.getId()))
+            .isEqualTo(1L);
+    }
+
+    @Test
+    @Transactional
+    public void restoreTransfers() throws Exception {
+        DynamicQueue from = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        DynamicQueue to = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L));
+        Participant interrupted = participantRepository.saveAndFlush(new Participant().dynamicQueue(from));
+        Participant transferred = participantRepository.saveAndFlush(new Participant().dynamicQueue(from));
+        LiveQueue fromQueue = new LiveQueue(from.getId());
+        fromQueue.insert(interrupted.getId(), LiveQueue.POSITION_GAP);
+        fromQueue.insert(transferred.getId(), 2 * LiveQueue.POSITION_GAP);
+        LiveQueue toQueue = new LiveQueue(to.getId());
+
+        Path snapshotDirectory = temporaryFolder.newFolder("snapshot").toPath();
+        Path journalDirectory = temporaryFolder.newFolder("journal").toPath();
+        try (QueueJournal journal = new QueueJournal(journalDirectory, 4096)) {
+            LiveQueueSnapshot.write(snapshotDirectory, journal.currentTicket(), Arrays.asList(serialize(fromQueue), serialize(toQueue)));
+            journal.append(QueueJournal.TRANSFERRED, from.getId(), interrupted.getId(), LiveQueue.POSITION_GAP);
+            journal.append(QueueJournal.TRANSFERRED, from.getId(), transferred.getId(), 2 * LiveQueue.POSITION_GAP);
+            journal.append(QueueJournal.PLACED, to.getId(), transferred.getId(), LiveQueue.POSITION_GAP);
+        }
+
+        IMap<Long, LiveQueue> liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        try {
+            assertThat(queueJournalService.restore(snapshotDirectory, journalDirectory)).isEqualTo(2);
+
+            // Each participant is in exactly one queue
+            assertThat(liveQueues.get(from.getId()).size()).isEqualTo(1);
+            assertThat(liveQueues.get(from.getId()).position(interrupted.getId())).isEqualTo(LiveQueue.POSITION_GAP);
+            assertThat(liveQueues.get(to.getId()).size()).isEqualTo(1);
+            assertThat(liveQueues.get(to.getId()).select(1)).isEqualTo(transferred.getId());
+        } finally {
+            liveQueues.delete(from.getId());
+            liveQueues.delete(to.getId());
+        }
+    }
+
+    @Test
+    @Transactional
+    public void restoreSnapshotAndJournalTail() throws Exception {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(0L).rate(5));
+        Participant served = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue));
+        Participant waiting = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue));
+        Participant joined = participantRepository.saveAndFlush(new Participant().dynamicQueue(dynamicQueue));
+        LiveQueue liveQueue = new LiveQueue(dynamicQueue.getId());
+        liveQueue.insert(served.getId(), LiveQueue.POSITION_GAP);
+        liveQueue.insert(waiting.getId(), 2 * LiveQueue.POSITION_GAP);
+
+        // The snapshot includes the first record, not the ones appended after it
+        Path snapshotDirectory = temporaryFolder.newFolder("snapshot").toPath();
+        Path journalDirectory = temporaryFolder.newFolder("journal").toPath();
+        try (QueueJournal journal = new QueueJournal(journalDirectory, 4096)) {
+            journal.append(QueueJournal.PLACED, dynamicQueue.getId(), waiting.getId(), 2 * LiveQueue.POSITION_GAP);
+            LiveQueueSnapshot.write(snapshotDirectory, journal.currentTicket(),
+                Collections.singletonList(serialize(liveQueue)));
+            journal.append(QueueJournal.PLACED, dynamicQueue.getId(), joined.getId(), 3 * LiveQueue.POSITION_GAP);
+            journal.append(QueueJournal.REMOVED, dynamicQueue.getId(), served.getId(), LiveQueue.NONE);
+        }
+
+        IMap<Long, LiveQueue> liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+        try {
+            assertThat(queueJournalService.restore(snapshotDirectory, journalDirectory)).isEqualTo(1);
+
+            LiveQueue restored = liveQueues.get(dynamicQueue.getId());
+            assertThat(restored.getRate()).isEqualTo(5);
+            assertThat(restored.size()).isEqualTo(2);
+            assertThat(restored.select(1)).isEqualTo(waiting.getId());
+            assertThat(restored.select(2)).isEqualTo(joined.getId());
+            assertThat(restored.position(joined.getId())).isEqualTo(3 * LiveQueue.POSITION_GAP);
+            assertThat(positionOf(joined)).isEqualTo(3 * LiveQueue.POSITION_GAP);
+        } finally {
+            liveQueues.delete(dynamicQueue.getId());
+        }
+    }
+
+    @Test
+    @Transactional
+    public void restoreSkipsDeletedDynamicQueues() throws Exception {
+        Path snapshotDirectory = temporaryFolder.newFolder("snapshot").toPath();
+        Path journalDirectory = temporaryFolder.newFolder("journal").toPath();
+        LiveQueue liveQueue = new LiveQueue(Long.MAX_VALUE);
+        liveQueue.insert(1L, LiveQueue.POSITION_GAP);
+        LiveQueueSnapshot.write(snapshotDirectory, 0L, Collections.singletonList(serialize(liveQueue)));
+
+        assertThat(queueJournalService.restore(snapshotDirectory, journalDirectory)).isEqualTo(0);
+        assertThat(hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES).containsKey(Long.MAX_VALUE)).isFalse();
+    }
+
+    private static byte[] serialize(LiveQueue liveQueue) {
+        Map.Entry<Long, LiveQueue> entry = Collections.singletonMap(liveQueue.getDynamicQueueId(), liveQueue)
+            .entrySet().iterator().next();
+        return (byte[]) new SnapshotProcessor().process(entry);
+    }
+
+    private Long positionOf(Participant participant) {
+        return jdbcTemplate.queryForObject("select position from participant where id = ?", Long.class, participant.getId());
+    }
+}
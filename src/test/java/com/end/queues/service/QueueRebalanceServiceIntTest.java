@@ -0,0 +1,96 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the rebalances of the QueueRebalanceService.
+ *
+ * @see QueueRebalanceService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueRebalanceServiceIntTest {
+
+    private static final String SITE = "failed-rebalance-site";
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private LiveQueueRouter liveQueueRouter;
+
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager em;
+
+    @Test
+    @Transactional
+    public void failedRebalancePutsTheParticipantsBack() {
+        DynamicQueue busy = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        DynamicQueue opened = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("busy").site(SITE).dynamicInfo(busy));
+        Queue openedQueue = queueRepository.saveAndFlush(new Queue().name("opened").site(SITE).dynamicInfo(opened));
+        List<Participant> participants = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            participants.add(liveQueueService.join(busy, new Participant()));
+        }
+        em.flush();
+        JdbcTemplate failingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                throw new DataAccessResourceFailureException("Participant writes are failing");
+            }
+        };
+        QueueRebalanceService queueRebalanceService = new QueueRebalanceService(queueRepository, searchOutbox,
+            liveQueueService, liveQueueRouter, failingJdbcTemplate, entityManagerFactory);
+
+        assertThatThrownBy(() -> queueRebalanceService.rebalance(SITE, openedQueue.getId()))
+            .isInstanceOf(DataAccessResourceFailureException.class);
+        em.clear();
+
+        // The tail is back in the busy queue, in the same order, and the opened queue is empty again
+        for (int i = 0; i < participants.size(); i++) {
+            assertThat(liveQueueService.getPosition(participants.get(i).getId()).get().getDynamicQueueId()).isEqualTo(busy.getId());
+            assertThat(liveQueueService.getPosition(participants.get(i).getId()).get().getPosition()).isEqualTo(i + 1);
+        }
+        assertThat(liveQueueService.getLoads(Arrays.asList(busy.getId(), opened.getId())).get(busy.getId())[0]).isEqualTo(6);
+        assertThat(liveQueueService.getLoads(Arrays.asList(busy.getId(), opened.getId())).get(opened.getId())[0]).isZero();
+    }
+}
@@ -0,0 +1,55 @@
+package com.end.queues.service;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the rebalance plans of the QueueRebalanceService.
+ *
+ * @see QueueRebalanceService#plan(int[], int[], int)
+ */
+public class QueueRebalanceServiceUnitTest {
+
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    @Test
+    public void evenOutAllQueues() {
+        int[][] moves = QueueRebalanceService.plan(new int[] { 9000, 3000, 0 }, new int[] { NO_LIMIT, NO_LIMIT, NO_LIMIT }, -1);
+
+        assertThat(sizesAfter(new int[] { 9000, 3000, 0 }, moves)).containsExactly(4000, 4000, 4000);
+    }
+
+    @Test
+    public void fillOnlyTheTarget() {
+        int[] sizes = { 10, 6, 0 };
+        int[][] moves = QueueRebalanceService.plan(sizes, new int[] { NO_LIMIT, NO_LIMIT, NO_LIMIT }, 2);
+
+        // The target gives nothing, and the others give nothing to each other
+        assertThat(moves[2]).containsOnly(0);
+        assertThat(moves[0][1]).isZero();
+        assertThat(moves[1][0]).isZero();
+        int[] after = sizesAfter(sizes, moves);
+        assertThat(after[2]).isBetween(4, 6);
+        assertThat(after[0] + after[1] + after[2]).isEqualTo(16);
+    }
+
+    @Test
+    public void respectTheRoomLeft() {
+        int[] sizes = { 100, 0, 0 };
+        int[][] moves = QueueRebalanceService.plan(sizes, new int[] { NO_LIMIT, 10, 0 }, -1);
+
+        assertThat(sizesAfter(sizes, moves)).containsExactly(90, 10, 0);
+    }
+
+    private static int[] sizesAfter(int[] sizes, int[][] moves) {
+        int[] after = sizes.clone();
+        for (int donor = 0; donor < moves.length; donor++) {
+            for (int receiver = 0; receiver < moves.length; receiver++) {
+                after[donor] -= moves[donor][receiver];
+                after[receiver] += moves[donor][receiver];
+            }
+        }
+        return after;
+    }
+}
@@ -0,0 +1,77 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the daily rollups of the QueueRollupService.
+ *
+ * @see QueueRollupService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueRollupServiceIntTest {
+
+    private static final String SITE = "rollup-race";
+
+    private static final long HOURS_PER_DAY = 24;
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private boolean inserted;
+
+    @Test
+    @Transactional
+    public void addToTheDayInsertedByAnotherMember() {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("rollup").site(SITE).dynamicInfo(dynamicQueue));
+        LocalDate day = LocalDate.of(2017, 6, 1);
+        // Another member inserts the row of the day right after this one found it missing
+        JdbcTemplate racingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = super.batchUpdate(sql, batchArgs);
+                if (!inserted && sql.startsWith("update site_daily_stats")) {
+                    inserted = true;
+                    super.update("insert into site_daily_stats (arrivals, serves, peak_length, site, day_start) values (5, 4, 3, ?, ?)",
+                        SITE, Date.valueOf(day));
+                }
+                return counts;
+            }
+        };
+        QueueRollupService queueRollupService = new QueueRollupService(queueRepository, racingJdbcTemplate);
+        long hour = day.toEpochDay() * HOURS_PER_DAY + 10;
+
+        queueRollupService.add(Collections.singletonMap(dynamicQueue.getId(), new long[][] { { hour }, { 2 }, { 1 }, { 6 }, { 0 } }));
+
+        assertThat(queueRollupService.getSiteDays(SITE, day, day)).hasSize(1);
+        assertThat(queueRollupService.getSiteDays(SITE, day, day).get(0).getArrivals()).isEqualTo(7);
+        assertThat(queueRollupService.getSiteDays(SITE, day, day).get(0).getServes()).isEqualTo(5);
+        assertThat(queueRollupService.getSiteDays(SITE, day, day).get(0).getPeakLength()).isEqualTo(6);
+    }
+}
@@ -0,0 +1,123 @@
+package com.end.queues.service;
+
+import com.end.queues.Q1App;
+import com.end.queues.domain.Location;
+import com.end.queues.domain.Organization;
+import com.end.queues.repository.LocationRepository;
+import com.end.queues.repository.OrganizationRepository;
+import com.end.queues.repository.SearchOutboxRepository;
+import com.end.queues.repository.search.LocationSearchRepository;
+import com.end.queues.repository.search.OrganizationSearchRepository;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SearchIndexer draining the SearchOutbox.
+ *
+ * @see SearchIndexer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class SearchIndexerIntTest {
+
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private SearchOutboxRepository searchOutboxRepository;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Autowired
+    private OrganizationSearchRepository organizationSearchRepository;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private LocationSearchRepository locationSearchRepository;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Before
+    public void initTest() {
+        organizationSearchRepository.deleteAll();
+    }
+
+    @Test
+    @Transactional
+    public void drainIndexesTheCurrentStateOfTheEntities() {
+        Organization organization = organizationRepository.saveAndFlush(new Organization().name("AAAAAAAAAA"));
+        searchOutbox.index(Organization.class, organization.getId());
+        organization.setName("BBBBBBBBBB");
+        organizationRepository.saveAndFlush(organization);
+        searchOutbox.index(Organization.class, organization.getId());
+
+        // Nothing is indexed before the drain
+        assertThat(organizationSearchRepository.exists(organization.getId())).isFalse();
+
+        assertThat(searchIndexer.drain()).isGreaterThanOrEqualTo(1);
+
+        assertThat(organizationSearchRepository.findOne(organization.getId()).getName()).isEqualTo("BBBBBBBBBB");
+        assertThat(searchOutboxRepository.findAll()).extracting("entityId").doesNotContain(organization.getId());
+        assertThat(searchIndexer.getLagMillis()).isEqualTo(0);
+    }
+
+    @Test
+    @Transactional
+    public void lastChangeOfAnEntityWins() {
+        Organization organization = organizationRepository.saveAndFlush(new Organization().name("AAAAAAAAAA"));
+        searchOutbox.index(Organization.class, organization.getId());
+        searchIndexer.drain();
+        assertThat(organizationSearchRepository.exists(organization.getId())).isTrue();
+
+        // Indexed, then deleted before the next drain
+        searchOutbox.index(Organization.class, organization.getId());
+        organizationRepository.delete(organization.getId());
+        organizationRepository.flush();
+        searchOutbox.delete(Organization.class, organization.getId());
+        searchIndexer.drain();
+
+        assertThat(organizationSearchRepository.exists(organization.getId())).isFalse();
+    }
+
+    @Test
+    @Transactional
+    public void changesOfAnEntityBeingReindexedWait() {
+        Organization organization = organizationRepository.saveAndFlush(new Organization().name("AAAAAAAAAA"));
+        searchOutbox.index(Organization.class, organization.getId());
+        Location location = locationRepository.saveAndFlush(new Location().city("AAAAAAAAAA"));
+        searchOutbox.index(Location.class, location.getId());
+
+        ILock reindexLock = hazelcastInstance.getLock(SearchIndexer.reindexLock("Organization"));
+        reindexLock.lock();
+        try {
+            searchIndexer.drain();
+
+            // The Organization waits for its reindex, the Location is indexed
+            assertThat(organizationSearchRepository.exists(organization.getId())).isFalse();
+            assertThat(searchOutboxRepository.findAll()).extracting("entityId").contains(organization.getId());
+            assertThat(locationSearchRepository.exists(location.getId())).isTrue();
+        } finally {
+            reindexLock.unlock();
+        }
+
+        searchIndexer.drain();
+        assertThat(organizationSearchRepository.exists(organization.getId())).isTrue();
+    }
+}
@@ -0,0 +1,82 @@
+package com.end.queues.service.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the HourOfWeekProfile.
+ *
+ * @see HourOfWeekProfile
+ */
+public class HourOfWeekProfileUnitTest {
+
+    /**
+     * A Monday, 8:00 UTC.
+     */
+    private static final long MONDAY_MORNING = Instant.parse("2017-06-19T08:00:00Z").toEpochMilli();
+
+    private static final long HOUR = 3_600_000L;
+
+    private static final long WEEK = HourOfWeekProfile.HOURS_PER_WEEK * HOUR;
+
+    @Test
+    public void averageOverTheWeeksObserved() {
+        HourOfWeekProfile profile = new HourOfWeekProfile();
+        // Three Monday mornings: 6 arrivals, none, then 3 arrivals with 2 serves
+        for (int i = 0; i < 6; i++) {
+            profile.recordArrival(MONDAY_MORNING + i * 60_000L);
+        }
+        for (int i = 0; i < 3; i++) {
+            profile.recordArrival(MONDAY_MORNING + 2 * WEEK + i * 60_000L);
+        }
+        profile.recordServe(MONDAY_MORNING + 2 * WEEK + 30 * 60_000L);
+        profile.recordServe(MONDAY_MORNING + 2 * WEEK + 40 * 60_000L);
+
+        long currentHour = HourOfWeekProfile.hourOf(MONDAY_MORNING + 2 * WEEK + 5 * HOUR);
+        long nextMondayMorning = HourOfWeekProfile.hourOf(MONDAY_MORNING + 3 * WEEK);
+
+        assertThat(profile.averageArrivals(nextMondayMorning, currentHour)).isEqualTo(3.0);
+        assertThat(profile.averageServes(nextMondayMorning, currentHour)).isEqualTo(2.0 / 3);
+        // Monday 9:00 was observed three times, without any event
+        assertThat(profile.averageArrivals(nextMondayMorning + 1, currentHour)).isEqualTo(0.0);
+        // Monday 7:00 came before the first event, so was never observed
+        assertThat(profile.averageArrivals(nextMondayMorning - 1, currentHour)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void emptyProfile() {
+        HourOfWeekProfile profile = new HourOfWeekProfile();
+
+        assertThat(profile.isEmpty()).isTrue();
+        assertThat(profile.averageArrivals(0, 1000)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void serializeAndCopy() throws IOException {
+        HourOfWeekProfile profile = new HourOfWeekProfile();
+        profile.recordArrival(MONDAY_MORNING);
+        profile.recordArrival(MONDAY_MORNING + HOUR);
+        profile.recordServe(MONDAY_MORNING + HOUR);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        profile.writeTo(new DataOutputStream(bytes));
+
+        HourOfWeekProfile read = new HourOfWeekProfile();
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        HourOfWeekProfile copy = profile.copy();
+        profile.recordArrival(MONDAY_MORNING);
+
+        long hour = HourOfWeekProfile.hourOf(MONDAY_MORNING);
+        assertThat(read.averageArrivals(hour, hour + 1)).isEqualTo(1.0);
+        assertThat(read.averageServes(hour + 1, hour + 1)).isEqualTo(1.0);
+        assertThat(copy.averageArrivals(hour, hour + 1)).isEqualTo(1.0);
+        assertThat(profile.averageArrivals(hour, hour + 1)).isEqualTo(2.0);
+    }
+}
@@ -0,0 +1,179 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.domain.enumeration.ServingPolicy;
+import com.end.queues.service.dto.QueuePositionDTO;
+
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the entry processors changing a LiveQueue.
+ *
+ * @see LiveQueueProcessor
+ */
+public class LiveQueueProcessorUnitTest {
+
+    private Map.Entry<Long, LiveQueue> entry;
+
+    @Before
+    public void setup() {
+        entry = new AbstractMap.SimpleEntry<>(1L, new LiveQueue(1L));
+    }
+
+    @Test
+    public void joinAndServe() {
+        LiveQueueUpdate update = (LiveQueueUpdate) new JoinProcessor(10L, null).process(entry);
+        assertThat(update.getPosition()).isEqualTo(LiveQueue.POSITION_GAP);
+        assertThat(update.getNumParticipants()).isEqualTo(1);
+
+        update = (LiveQueueUpdate) new JoinProcessor(11L, 10L).process(entry);
+        assertThat(update.getPosition()).isEqualTo(LiveQueue.POSITION_GAP / 2);
+        assertThat(update.getNumParticipants()).isEqualTo(2);
+
+        assertThat(new JoinProcessor(12L, 99L).process(entry)).isNull();
+
+        update = (LiveQueueUpdate) new ServeProcessor().process(entry);
+        assertThat(update.getParticipantId()).isEqualTo(11L);
+        assertThat(update.getNumParticipants()).isEqualTo(1);
+    }
+
+    @Test
+    public void moveLeaveAndRank() {
+        new JoinProcessor(10L, null).process(entry);
+        new JoinProcessor(11L, null).process(entry);
+        new JoinProcessor(12L, null).process(entry);
+
+        assertThat(new MoveProcessor(12L, 12L).process(entry)).isNull();
+        assertThat(new MoveProcessor(12L, 10L).process(entry)).isNotNull();
+        assertThat(((QueuePositionDTO) new RankProcessor(12L).process(entry)).getPosition()).isEqualTo(1);
+
+        LiveQueueUpdate update = (LiveQueueUpdate) new LeaveProcessor(10L).process(entry);
+        assertThat(update.getNumParticipants()).isEqualTo(2);
+        assertThat(new LeaveProcessor(10L).process(entry)).isNull();
+        assertThat(new RankProcessor(10L).process(entry)).isNull();
+
+        long[] positions = (long[]) new PositionsProcessor(new long[] { 11L, 10L }).process(entry);
+        assertThat(positions).containsExactly(2 * LiveQueue.POSITION_GAP, LiveQueue.NONE);
+    }
+
+    @Test
+    public void transferOutAndIn() {
+        Map.Entry<Long, LiveQueue> target = new AbstractMap.SimpleEntry<>(2L, new LiveQueue(2L));
+        new JoinProcessor(10L, null).process(entry);
+        new JoinProcessor(11L, null).process(entry);
+        new JoinProcessor(20L, null).process(target);
+        new JoinProcessor(21L, null, 1).process(target);
+
+        long position = (Long) new TransferOutProcessor(10L).process(entry);
+        assertThat(new TransferOutProcessor(10L).process(entry)).isNull();
+        assertThat(entry.getValue().size()).isEqualTo(1);
+
+        // Without a rank the participant keeps its lane, with a rank it goes in front of that rank
+        LiveQueueUpdate update = (LiveQueueUpdate) new TransferInProcessor(10L, 0, null).process(target);
+        assertThat(update.getNumParticipants()).isEqualTo(3);
+        assertThat(target.getValue().rank(10L)).isEqualTo(3);
+        new TransferOutProcessor(10L).process(target);
+        new TransferInProcessor(10L, 0, 2).process(target);
+        assertThat(target.getValue().rank(10L)).isEqualTo(2);
+
+        // A full queue rejects a transfer, and the participant goes back where it was
+        target.getValue().setMaxCapacity(3);
+        assertThat(new TransferInProcessor(11L, 0, null).process(target)).isNull();
+        new TransferOutProcessor(10L).process(target);
+        update = (LiveQueueUpdate) new InsertProcessor(10L, position).process(entry);
+        assertThat(update.getPosition()).isEqualTo(position);
+        assertThat(entry.getValue().rank(10L)).isEqualTo(1);
+        assertThat(new InsertProcessor(10L, position).process(entry)).isNull();
+    }
+
+    @Test
+    public void transferAndAppendKeepToTheLanesOfTheTarget() {
+        Map.Entry<Long, LiveQueue> target = new AbstractMap.SimpleEntry<>(2L, new LiveQueue(2L));
+        new JoinProcessor(20L, null).process(target);
+        new JoinProcessor(21L, null).process(target);
+
+        // The target has a single lane, so a priority participant waits behind the others
+        LiveQueueUpdate update = (LiveQueueUpdate) new TransferInProcessor(10L, 3, null).process(target);
+        assertThat(LiveQueue.laneOf(update.getPosition())).isEqualTo(0);
+        assertThat(target.getValue().rank(10L)).isEqualTo(3);
+        long[] positions = (long[]) new AppendProcessor(new long[] { 11L }, new int[] { 2 }).process(target);
+        assertThat(LiveQueue.laneOf(positions[0])).isEqualTo(0);
+        assertThat(target.getValue().rank(11L)).isEqualTo(4);
+
+        // Neither counts as an arrival
+        int[] arrivals = target.getValue().minuteCounts(System.currentTimeMillis(), 2)[0];
+        assertThat(arrivals[0] + arrivals[1]).isEqualTo(2);
+    }
+
+    @Test
+    public void changeRate() {
+        new JoinProcessor(10L, null).process(entry);
+
+        LiveQueueUpdate update = (LiveQueueUpdate) new RateProcessor(42).process(entry);
+
+        assertThat(update.getNumParticipants()).isEqualTo(1);
+        assertThat(entry.getValue().getRate()).isEqualTo(42);
+    }
+
+    @Test
+    public void missingQueue() {
+        entry.setValue(null);
+
+        assertThat(new JoinProcessor(10L, null).process(entry)).isNull();
+        assertThat(new RankProcessor(10L).process(entry)).isNull();
+    }
+
+    @Test
+    public void serializeInServingOrder() {
+        for (long participantId = 1; participantId <= 40; participantId++) {
+            new JoinProcessor(participantId, participantId % 2 == 0 ? 1L : null).process(entry);
+        }
+        new LeaveProcessor(3L).process(entry);
+        new RateProcessor(5).process(entry);
+        LiveQueue liveQueue = entry.getValue();
+
+        InternalSerializationService serializationService = new DefaultSerializationServiceBuilder().build();
+        LiveQueue copy = serializationService.toObject(serializationService.toData(liveQueue));
+
+        assertThat(copy.getDynamicQueueId()).isEqualTo(1L);
+        assertThat(copy.getRate()).isEqualTo(5);
+        assertThat(copy.size()).isEqualTo(liveQueue.size());
+        assertThat(copy.tailPosition()).isEqualTo(liveQueue.tailPosition());
+        for (int rank = 1; rank <= liveQueue.size(); rank++) {
+            long participantId = liveQueue.select(rank);
+            assertThat(copy.select(rank)).isEqualTo(participantId);
+            assertThat(copy.position(participantId)).isEqualTo(liveQueue.position(participantId));
+        }
+    }
+
+    @Test
+    public void serializeLanesAndServingState() {
+        new ServingPolicyProcessor(ServingPolicy.WEIGHTED_ROUND_ROBIN, new int[] { 1, 2 }).process(entry);
+        for (long participantId = 1; participantId <= 20; participantId++) {
+            new JoinProcessor(participantId, null, (int) participantId % 2).process(entry);
+        }
+        new ServeProcessor().process(entry);
+        LiveQueue liveQueue = entry.getValue();
+
+        InternalSerializationService serializationService = new DefaultSerializationServiceBuilder().build();
+        LiveQueue copy = serializationService.toObject(serializationService.toData(liveQueue));
+
+        assertThat(copy.getServingPolicy()).isEqualTo(ServingPolicy.WEIGHTED_ROUND_ROBIN);
+        assertThat(copy.laneCount()).isEqualTo(2);
+        assertThat(copy.tailPosition(1)).isEqualTo(liveQueue.tailPosition(1));
+        for (long participantId = 2; participantId <= 20; participantId++) {
+            assertThat(copy.rank(participantId)).isEqualTo(liveQueue.rank(participantId));
+        }
+        assertThat(copy.poll()).isEqualTo(liveQueue.poll());
+        assertThat(copy.getRate()).isEqualTo(liveQueue.getRate());
+        long now = System.currentTimeMillis();
+        assertThat(copy.estimatedWait(5, now)).isEqualTo(liveQueue.estimatedWait(5, now));
+    }
+}
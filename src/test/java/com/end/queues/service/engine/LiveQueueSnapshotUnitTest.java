@@ -0,0 +1,71 @@
+package com.end.queues.service.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the LiveQueueSnapshot.
+ *
+ * @see LiveQueueSnapshot
+ */
+public class LiveQueueSnapshotUnitTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readLatestWithoutSnapshot() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        assertThat(LiveQueueSnapshot.readLatest(directory)).isNull();
+        assertThat(LiveQueueSnapshot.readLatest(directory.resolve("missing"))).isNull();
+    }
+
+    @Test
+    public void writeAndReadLatest() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        LiveQueue first = new LiveQueue(1L);
+        first.setRate(3);
+        first.insert(10L, LiveQueue.POSITION_GAP);
+        first.insert(11L, 2 * LiveQueue.POSITION_GAP);
+        first.insert(12L, LiveQueue.POSITION_GAP + 1);
+        LiveQueue second = new LiveQueue(2L);
+
+        LiveQueueSnapshot.write(directory, 100L, Arrays.asList(serialize(new LiveQueue(1L))));
+        LiveQueueSnapshot.write(directory, 200L, Arrays.asList(serialize(first), serialize(second)));
+
+        LiveQueueSnapshot snapshot = LiveQueueSnapshot.readLatest(directory);
+        assertThat(snapshot.getJournalTicket()).isEqualTo(200L);
+        assertThat(snapshot.getLiveQueues()).hasSize(2);
+        LiveQueue restored = snapshot.getLiveQueues().get(0);
+        assertThat(restored.getDynamicQueueId()).isEqualTo(1L);
+        assertThat(restored.getRate()).isEqualTo(3);
+        assertThat(restored.size()).isEqualTo(3);
+        assertThat(restored.select(1)).isEqualTo(10L);
+        assertThat(restored.select(2)).isEqualTo(12L);
+        assertThat(restored.select(3)).isEqualTo(11L);
+        assertThat(restored.position(12L)).isEqualTo(LiveQueue.POSITION_GAP + 1);
+        assertThat(restored.tailPosition()).isEqualTo(3 * LiveQueue.POSITION_GAP);
+        assertThat(snapshot.getLiveQueues().get(1).isEmpty()).isTrue();
+        // The older snapshot is replaced
+        assertThat(Files.list(directory).count()).isEqualTo(1);
+    }
+
+    private static byte[] serialize(LiveQueue liveQueue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            liveQueue.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
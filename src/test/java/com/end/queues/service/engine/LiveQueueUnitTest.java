@@ -0,0 +1,334 @@
+package com.end.queues.service.engine;
+
+import com.end.queues.domain.enumeration.ServingPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the LiveQueue engine.
+ *
+ * @see LiveQueue
+ */
+public class LiveQueueUnitTest {
+
+    private static final long T = 1_500_000_000_000L;
+
+    private LiveQueue liveQueue;
+
+    @Before
+    public void setup() {
+        liveQueue = new LiveQueue(1L);
+    }
+
+    @Test
+    public void pollInJoinOrder() {
+        join(10L);
+        join(11L);
+        join(12L);
+
+        assertThat(liveQueue.poll()).isEqualTo(10L);
+        assertThat(liveQueue.poll()).isEqualTo(11L);
+        assertThat(liveQueue.poll()).isEqualTo(12L);
+        assertThat(liveQueue.poll()).isEqualTo(LiveQueue.NONE);
+    }
+
+    @Test
+    public void rankAfterDepartureFromTheMiddle() {
+        join(10L);
+        join(11L);
+        join(12L);
+        join(13L);
+
+        assertThat(liveQueue.remove(11L)).isTrue();
+        assertThat(liveQueue.remove(11L)).isFalse();
+
+        assertThat(liveQueue.rank(10L)).isEqualTo(1);
+        assertThat(liveQueue.rank(11L)).isEqualTo(0);
+        assertThat(liveQueue.rank(12L)).isEqualTo(2);
+        assertThat(liveQueue.rank(13L)).isEqualTo(3);
+        assertThat(liveQueue.size()).isEqualTo(3);
+
+        assertThat(liveQueue.poll()).isEqualTo(10L);
+        assertThat(liveQueue.rank(13L)).isEqualTo(2);
+    }
+
+    @Test
+    public void insertBeforeTakesTheMiddleOfTheGap() {
+        join(10L);
+        join(11L);
+
+        long position = liveQueue.positionBefore(11L);
+        liveQueue.insert(12L, position);
+
+        assertThat(position).isEqualTo(LiveQueue.POSITION_GAP + LiveQueue.POSITION_GAP / 2);
+        assertThat(liveQueue.rank(12L)).isEqualTo(2);
+        assertThat(liveQueue.rank(11L)).isEqualTo(3);
+        assertThat(liveQueue.drainRenumbered().isEmpty()).isTrue();
+        assertThat(liveQueue.positionBefore(99L)).isEqualTo(LiveQueue.NONE);
+    }
+
+    @Test
+    public void repeatedInsertsBeforeTheSameParticipantRenumberNeighbours() {
+        for (long participantId = 1; participantId <= 5; participantId++) {
+            join(participantId);
+        }
+
+        // Halving the same gap again and again exhausts it after about 20 inserts
+        for (long participantId = 100; participantId < 130; participantId++) {
+            liveQueue.insert(participantId, liveQueue.positionBefore(3L));
+        }
+
+        assertThat(liveQueue.size()).isEqualTo(35);
+        assertThat(liveQueue.rank(1L)).isEqualTo(1);
+        assertThat(liveQueue.rank(100L)).isEqualTo(3);
+        assertThat(liveQueue.rank(129L)).isEqualTo(32);
+        assertThat(liveQueue.rank(3L)).isEqualTo(33);
+        assertThat(liveQueue.rank(5L)).isEqualTo(35);
+        for (int rank = 2; rank <= liveQueue.size(); rank++) {
+            assertThat(liveQueue.position(liveQueue.select(rank)))
+                .isGreaterThan(liveQueue.position(liveQueue.select(rank - 1)));
+        }
+        assertThat(liveQueue.drainRenumbered().isEmpty()).isFalse();
+        assertThat(liveQueue.drainRenumbered().isEmpty()).isTrue();
+
+        // The order survives serving the participants in front
+        assertThat(liveQueue.poll()).isEqualTo(1L);
+        assertThat(liveQueue.poll()).isEqualTo(2L);
+        assertThat(liveQueue.poll()).isEqualTo(100L);
+        assertThat(liveQueue.rank(3L)).isEqualTo(30);
+    }
+
+    @Test
+    public void rankAndSelectAfterManyInsertsBeforeTheSameParticipant() {
+        for (long participantId = 1; participantId <= 5; participantId++) {
+            join(participantId);
+        }
+
+        // Each insert lands right in front of participant 3, behind the previous inserts
+        for (long participantId = 100; participantId < 600; participantId++) {
+            liveQueue.insert(participantId, liveQueue.positionBefore(3L));
+        }
+
+        assertThat(liveQueue.size()).isEqualTo(505);
+        assertThat(liveQueue.rank(2L)).isEqualTo(2);
+        for (long participantId = 100; participantId < 600; participantId++) {
+            int rank = (int) (participantId - 100) + 3;
+            assertThat(liveQueue.rank(participantId)).isEqualTo(rank);
+            assertThat(liveQueue.select(rank)).isEqualTo(participantId);
+        }
+        assertThat(liveQueue.rank(3L)).isEqualTo(503);
+        assertThat(liveQueue.select(505)).isEqualTo(5L);
+
+        // Departures from the middle keep the ranks exact
+        liveQueue.remove(300L);
+        assertThat(liveQueue.rank(301L)).isEqualTo(203);
+        assertThat(liveQueue.select(203)).isEqualTo(301L);
+        assertThat(liveQueue.poll()).isEqualTo(1L);
+        assertThat(liveQueue.poll()).isEqualTo(2L);
+        assertThat(liveQueue.poll()).isEqualTo(100L);
+        assertThat(liveQueue.rank(3L)).isEqualTo(499);
+    }
+
+    @Test
+    public void moveToTheTail() {
+        join(10L);
+        join(11L);
+        join(12L);
+
+        liveQueue.remove(10L);
+        liveQueue.insert(10L, liveQueue.tailPosition());
+
+        assertThat(liveQueue.rank(11L)).isEqualTo(1);
+        assertThat(liveQueue.rank(10L)).isEqualTo(3);
+        assertThat(liveQueue.position(10L)).isEqualTo(4 * LiveQueue.POSITION_GAP);
+    }
+
+    @Test
+    public void rankSurvivesResize() {
+        for (long participantId = 1; participantId <= 1000; participantId++) {
+            join(participantId);
+            if (participantId % 3 == 0) {
+                liveQueue.poll();
+            }
+        }
+
+        // Every third append served the head, so the first 333 participants are gone
+        assertThat(liveQueue.size()).isEqualTo(667);
+        assertThat(liveQueue.rank(334L)).isEqualTo(1);
+        assertThat(liveQueue.rank(1000L)).isEqualTo(667);
+        assertThat(liveQueue.poll()).isEqualTo(334L);
+    }
+
+    @Test
+    public void strictPriorityServesHigherLanesFirst() {
+        liveQueue.setServingPolicy(ServingPolicy.STRICT_PRIORITY, new int[] { 1, 1, 1 });
+        join(10L);
+        join(11L, 2);
+        join(12L, 1);
+        join(13L, 2);
+
+        assertThat(LiveQueue.laneOf(liveQueue.position(11L))).isEqualTo(2);
+        assertThat(liveQueue.rank(11L)).isEqualTo(1);
+        assertThat(liveQueue.rank(13L)).isEqualTo(2);
+        assertThat(liveQueue.rank(12L)).isEqualTo(3);
+        assertThat(liveQueue.rank(10L)).isEqualTo(4);
+        assertThat(liveQueue.poll()).isEqualTo(11L);
+        assertThat(liveQueue.poll()).isEqualTo(13L);
+        assertThat(liveQueue.poll()).isEqualTo(12L);
+        assertThat(liveQueue.poll()).isEqualTo(10L);
+    }
+
+    @Test
+    public void insertBeforeTakesTheLaneOfTheSuccessor() {
+        join(10L, 1);
+        join(11L);
+
+        liveQueue.insert(12L, liveQueue.positionBefore(10L));
+
+        assertThat(LiveQueue.laneOf(liveQueue.position(12L))).isEqualTo(1);
+        assertThat(liveQueue.rank(12L)).isEqualTo(1);
+        assertThat(liveQueue.rank(11L)).isEqualTo(3);
+    }
+
+    @Test
+    public void repeatedInsertsBeforeTheHeadStayInTheLane() {
+        liveQueue.setServingPolicy(ServingPolicy.STRICT_PRIORITY, new int[] { 1, 1 });
+        join(10L);
+        join(20L, 1);
+
+        // Each insert goes in front of the previous one, well past the first gap of each lane
+        long headOfLane0 = 10L;
+        long headOfLane1 = 20L;
+        for (int i = 1; i <= 40; i++) {
+            liveQueue.insert(10L + 1000 * i, liveQueue.positionBefore(headOfLane0));
+            headOfLane0 = 10L + 1000 * i;
+            liveQueue.insert(20L + 1000 * i, liveQueue.positionBefore(headOfLane1));
+            headOfLane1 = 20L + 1000 * i;
+        }
+
+        assertThat(LiveQueue.laneOf(liveQueue.position(headOfLane0))).isEqualTo(0);
+        assertThat(LiveQueue.laneOf(liveQueue.position(headOfLane1))).isEqualTo(1);
+        assertThat(liveQueue.drainRenumbered().isEmpty()).isFalse();
+        for (int i = 40; i >= 0; i--) {
+            assertThat(liveQueue.poll()).isEqualTo(20L + 1000 * i);
+        }
+        for (int i = 40; i >= 0; i--) {
+            assertThat(liveQueue.poll()).isEqualTo(10L + 1000 * i);
+        }
+    }
+
+    @Test
+    public void weightedRoundRobinServesByWeight() {
+        liveQueue.setServingPolicy(ServingPolicy.WEIGHTED_ROUND_ROBIN, new int[] { 1, 2 });
+        for (long participantId = 10; participantId < 14; participantId++) {
+            join(participantId);
+            join(participantId + 10, 1);
+        }
+
+        // Two from the priority lane, then one from the default lane
+        assertThat(liveQueue.poll()).isEqualTo(20L);
+        assertThat(liveQueue.poll()).isEqualTo(21L);
+        assertThat(liveQueue.poll()).isEqualTo(10L);
+        assertThat(liveQueue.poll()).isEqualTo(22L);
+        assertThat(liveQueue.poll()).isEqualTo(23L);
+        // The priority lane is empty, the default lane goes on alone
+        assertThat(liveQueue.poll()).isEqualTo(11L);
+        assertThat(liveQueue.poll()).isEqualTo(12L);
+    }
+
+    @Test
+    public void weightedRoundRobinRanksFollowServingOrder() {
+        liveQueue.setServingPolicy(ServingPolicy.WEIGHTED_ROUND_ROBIN, new int[] { 1, 3, 2 });
+        Random random = new Random(42);
+        for (long participantId = 1; participantId <= 300; participantId++) {
+            join(participantId, random.nextInt(3));
+            // Serve now and then, so the round-robin state is in the middle of a visit
+            if (participantId % 7 == 0) {
+                liveQueue.poll();
+            }
+        }
+
+        int size = liveQueue.size();
+        int[] ranks = new int[301];
+        for (long participantId = 1; participantId <= 300; participantId++) {
+            ranks[(int) participantId] = liveQueue.rank(participantId);
+        }
+        for (int rank = 1; rank <= size; rank++) {
+            assertThat(ranks[(int) liveQueue.poll()]).isEqualTo(rank);
+        }
+    }
+
+    @Test
+    public void configuredRateSeedsTheEstimateUntilTheFirstServe() {
+        liveQueue.setRate(60);
+        join(10L, T);
+        join(11L, T);
+
+        assertThat(liveQueue.getRate()).isEqualTo(60);
+        assertThat(liveQueue.estimatedWait(2, T)).isEqualTo(120_000L);
+
+        serve(T + 30_000L);
+        liveQueue.setRate(5);
+
+        assertThat(liveQueue.getRate()).isEqualTo(120);
+        assertThat(liveQueue.estimatedWait(1, T + 30_000L)).isEqualTo(30_000L);
+        assertThat(liveQueue.estimatedWait(1, T + 50_000L)).isEqualTo(10_000L);
+        // The running interval is overdue, the estimate never drops below the intervals still to come
+        assertThat(liveQueue.estimatedWait(2, T + 80_000L)).isEqualTo(30_000L);
+    }
+
+    @Test
+    public void serveRateFollowsTheServeIntervals() {
+        assertThat(liveQueue.getRate()).isNull();
+        assertThat(liveQueue.estimatedWait(1, T)).isEqualTo(-1L);
+        for (long participantId = 1; participantId <= 20; participantId++) {
+            join(participantId, T);
+        }
+
+        for (long timestamp = T + 60_000L; timestamp <= T + 600_000L; timestamp += 60_000L) {
+            serve(timestamp);
+        }
+        assertThat(liveQueue.getRate()).isEqualTo(60);
+
+        // Serving every 10 seconds, the estimate moves towards 360 per hour
+        for (long timestamp = T + 610_000L; timestamp <= T + 700_000L; timestamp += 10_000L) {
+            serve(timestamp);
+        }
+        assertThat(liveQueue.getRate()).isBetween(200, 360);
+    }
+
+    @Test
+    public void timeStandingEmptyIsNotServiceTime() {
+        join(10L, T);
+        serve(T + 60_000L);
+        assertThat(liveQueue.getRate()).isEqualTo(60);
+
+        join(11L, T + 3_600_000L);
+        serve(T + 3_660_000L);
+
+        assertThat(liveQueue.getRate()).isEqualTo(60);
+    }
+
+    private void serve(long timestamp) {
+        assertThat(liveQueue.poll()).isNotEqualTo(LiveQueue.NONE);
+        liveQueue.recordServe(timestamp);
+    }
+
+    private void join(long participantId, long timestamp) {
+        join(participantId);
+        liveQueue.recordJoin(timestamp);
+    }
+
+    private void join(long participantId, int lane) {
+        liveQueue.insert(participantId, liveQueue.tailPosition(lane));
+    }
+
+    private void join(long participantId) {
+        liveQueue.insert(participantId, liveQueue.tailPosition());
+    }
+}
@@ -0,0 +1,139 @@
+package com.end.queues.service.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the MinuteSeries.
+ *
+ * @see MinuteSeries
+ */
+public class MinuteSeriesUnitTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    /**
+     * The start of an hour.
+     */
+    private static final long T = 1_500_001_200_000L;
+
+    @Test
+    public void eventsAreCountedInTheirMinute() {
+        MinuteSeries series = new MinuteSeries();
+        series.recordArrival(T);
+        series.recordArrival(T + 10);
+        series.recordArrival(T + MINUTE);
+        series.recordServe(T + 2 * MINUTE + 59_999);
+        // Late by a few milliseconds, counted in the current minute
+        series.recordServe(T + MINUTE);
+
+        int[][] window = series.window(T + 3 * MINUTE, 4);
+        assertThat(window[0]).containsExactly(2, 1, 0, 0);
+        assertThat(window[1]).containsExactly(0, 0, 2, 0);
+    }
+
+    @Test
+    public void minutesOlderThanADayAreCleared() {
+        MinuteSeries series = new MinuteSeries();
+        series.recordArrival(T);
+        series.recordArrival(T + 5 * MINUTE);
+
+        series.recordArrival(T + MinuteSeries.MINUTES * MINUTE);
+        int[][] window = series.window(T + MinuteSeries.MINUTES * MINUTE, MinuteSeries.MINUTES);
+        assertThat(window[0][0]).isEqualTo(0);
+        assertThat(window[0][4]).isEqualTo(1);
+        assertThat(window[0][MinuteSeries.MINUTES - 1]).isEqualTo(1);
+
+        // Two days later nothing is left
+        series.advance(T + 3 * MinuteSeries.MINUTES * MINUTE);
+        assertThat(series.window(T + 3 * MinuteSeries.MINUTES * MINUTE, MinuteSeries.MINUTES)[0]).containsOnly(0);
+    }
+
+    @Test
+    public void closedHoursAreDrainedOnce() {
+        MinuteSeries series = new MinuteSeries();
+        series.recordArrival(T);
+        series.recordArrival(T + 59 * MINUTE);
+        series.recordServe(T + 30 * MINUTE);
+        series.recordServe(T + 3 * HOUR);
+        assertThat(series.pendingHours()).isEqualTo(1);
+
+        series.advance(T + 4 * HOUR);
+        long[][] hours = series.drainHours();
+        // The empty hours in between are not kept
+        assertThat(hours[0]).containsExactly(T / HOUR, T / HOUR + 3);
+        assertThat(hours[1]).containsExactly(2, 0);
+        assertThat(hours[2]).containsExactly(1, 1);
+        assertThat(series.drainHours()[0]).isEmpty();
+    }
+
+    @Test
+    public void lengthGivesThePeakAndTheWaitOfEachHour() {
+        MinuteSeries series = new MinuteSeries();
+        series.recordLength(T, 2);
+        series.recordLength(T + 30 * MINUTE, 5);
+        series.recordLength(T + HOUR + 15 * MINUTE, 1);
+        // Nobody joins nor leaves for more than an hour
+        series.recordLength(T + 3 * HOUR, 1);
+
+        long[][] hours = series.drainHours();
+        assertThat(hours[0]).containsExactly(T / HOUR, T / HOUR + 1, T / HOUR + 2);
+        assertThat(hours[3]).containsExactly(5, 5, 1);
+        assertThat(hours[4]).containsExactly(2 * 30 * MINUTE + 5 * 30 * MINUTE, 5 * 15 * MINUTE + 45 * MINUTE, HOUR);
+    }
+
+    @Test
+    public void pendingHoursAreBounded() {
+        MinuteSeries series = new MinuteSeries();
+        for (int hour = 0; hour <= MinuteSeries.MAX_PENDING_HOURS + 10; hour++) {
+            series.recordArrival(T + hour * HOUR);
+        }
+        long[][] hours = series.drainHours();
+        assertThat(hours[0]).hasSize(MinuteSeries.MAX_PENDING_HOURS);
+        assertThat(hours[0][0]).isEqualTo(T / HOUR + 10);
+    }
+
+    @Test
+    public void restoredHoursComeBeforeTheHoursClosedSince() {
+        MinuteSeries series = new MinuteSeries();
+        series.recordArrival(T);
+        series.recordArrival(T + HOUR);
+        long[][] failed = series.drainHours();
+        series.recordArrival(T + 2 * HOUR);
+
+        series.restoreHours(failed);
+
+        long[][] hours = series.drainHours();
+        assertThat(hours[0]).containsExactly(T / HOUR, T / HOUR + 1);
+        assertThat(hours[1]).containsExactly(1, 1);
+        assertThat(series.drainHours()[0]).isEmpty();
+    }
+
+    @Test
+    public void serializedSeriesKeepsItsCounts() throws Exception {
+        MinuteSeries series = new MinuteSeries();
+        series.recordArrival(T);
+        series.recordServe(T + MINUTE);
+        series.recordArrival(T + HOUR);
+        series.recordLength(T + HOUR, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        series.writeTo(new DataOutputStream(bytes));
+        MinuteSeries copy = new MinuteSeries();
+        copy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(copy.window(T + HOUR, 61)).isEqualTo(series.window(T + HOUR, 61));
+        assertThat(copy.drainHours()).isEqualTo(series.drainHours());
+        copy.advance(T + 2 * HOUR);
+        series.advance(T + 2 * HOUR);
+        assertThat(copy.drainHours()).isEqualTo(series.drainHours());
+    }
+}
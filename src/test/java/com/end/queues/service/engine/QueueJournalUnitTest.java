@@ -0,0 +1,111 @@
+package com.end.queues.service.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the QueueJournal.
+ *
+ * @see QueueJournal
+ */
+public class QueueJournalUnitTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replayInAppendOrder() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            journal.append(QueueJournal.PLACED, 1L, 10L, 100L);
+            journal.append(QueueJournal.PLACED, 1L, 11L, 200L);
+            long ticket = journal.append(QueueJournal.REMOVED, 1L, 10L, LiveQueue.NONE);
+            journal.sync(ticket);
+        }
+
+        List<String> records = replay(directory);
+
+        assertThat(records).containsExactly("1:1:10:100", "1:1:11:200", "2:1:10:-1");
+    }
+
+    @Test
+    public void reopenStartsANewSegment() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            journal.append(QueueJournal.PLACED, 1L, 10L, 100L);
+        }
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            journal.append(QueueJournal.PLACED, 1L, 11L, 200L);
+            assertThat(replay(directory)).containsExactly("1:1:10:100", "1:1:11:200");
+
+            journal.deleteOldSegments();
+            assertThat(replay(directory)).containsExactly("1:1:11:200");
+        }
+    }
+
+    @Test
+    public void rollFullSegments() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        // Room for three records per segment
+        try (QueueJournal journal = new QueueJournal(directory, 3 * 29 + 4)) {
+            long previousTicket = 0;
+            long seventhTicket = 0;
+            for (long participantId = 1; participantId <= 10; participantId++) {
+                long ticket = journal.append(QueueJournal.PLACED, 1L, participantId, participantId * 100);
+                assertThat(ticket).isGreaterThan(previousTicket);
+                previousTicket = ticket;
+                if (participantId == 7) {
+                    seventhTicket = ticket;
+                }
+            }
+            journal.sync(previousTicket);
+            assertThat(journal.currentTicket()).isEqualTo(previousTicket);
+            assertThat(Files.list(directory).count()).isEqualTo(4);
+
+            // The segment of the seventh record is kept, the older ones are deleted
+            journal.deleteSegmentsBefore(seventhTicket);
+        }
+
+        assertThat(Files.list(directory).count()).isEqualTo(2);
+        assertThat(replay(directory)).containsExactly("1:1:7:700", "1:1:8:800", "1:1:9:900", "1:1:10:1000");
+    }
+
+    @Test
+    public void replayWithTickets() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        long firstTicket;
+        long secondTicket;
+        try (QueueJournal journal = new QueueJournal(directory, 4096)) {
+            firstTicket = journal.append(QueueJournal.PLACED, 1L, 10L, 100L);
+            secondTicket = journal.append(QueueJournal.PLACED, 1L, 11L, 200L);
+        }
+
+        List<Long> tickets = new ArrayList<>();
+        QueueJournal.replay(directory, (ticket, type, dynamicQueueId, participantId, position) -> tickets.add(ticket));
+
+        assertThat(tickets).containsExactly(firstTicket, secondTicket);
+    }
+
+    @Test
+    public void replayMissingDirectory() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("missing");
+
+        assertThat(replay(directory)).isEmpty();
+    }
+
+    private List<String> replay(Path directory) throws IOException {
+        List<String> records = new ArrayList<>();
+        QueueJournal.replay(directory, (ticket, type, dynamicQueueId, participantId, position) ->
+            records.add(type + ":" + dynamicQueueId + ":" + participantId + ":" + position));
+        return records;
+    }
+}
@@ -0,0 +1,57 @@
+package com.end.queues.service.engine;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the QueueRanking.
+ *
+ * @see QueueRanking
+ */
+public class QueueRankingUnitTest {
+
+    private static final long T = 1_500_000_000_000L;
+
+    @Test
+    public void topQueuesAreTheBusiest() {
+        QueueRanking queueRanking = new QueueRanking();
+        for (long queueId = 1; queueId <= 50; queueId++) {
+            queueRanking.putQueue(queueId, "queue " + queueId, 100 + queueId, (int) queueId, T);
+        }
+
+        assertThat(queueRanking.top(3)).extracting(QueueRanking.RankedQueue::getQueueId).containsExactly(50L, 49L, 48L);
+
+        // An emptied queue is replaced by the next one, a growing one moves up
+        assertThat(queueRanking.updateLoad(150, 0, T + 1)).isTrue();
+        assertThat(queueRanking.updateLoad(101, 49, T + 1)).isTrue();
+        assertThat(queueRanking.top(3)).extracting(QueueRanking.RankedQueue::getQueueId).containsExactly(1L, 49L, 48L);
+        assertThat(queueRanking.top(100)).hasSize(50);
+    }
+
+    @Test
+    public void olderLoadsAreIgnored() {
+        QueueRanking queueRanking = new QueueRanking();
+        queueRanking.putQueue(1, "first", 11, 0, T);
+
+        assertThat(queueRanking.updateLoad(11, 5, T + 10)).isTrue();
+        assertThat(queueRanking.updateLoad(11, 4, T + 5)).isFalse();
+        assertThat(queueRanking.top(1).get(0).getNumParticipants()).isEqualTo(5);
+    }
+
+    @Test
+    public void removedQueuesLeaveTheRanking() {
+        QueueRanking queueRanking = new QueueRanking();
+        queueRanking.putQueue(1, "first", 11, 3, T);
+        queueRanking.putQueue(2, "second", 12, 2, T);
+
+        assertThat(queueRanking.removeQueue(1).getName()).isEqualTo("first");
+        assertThat(queueRanking.updateLoad(11, 9, T + 1)).isFalse();
+        assertThat(queueRanking.top(2)).extracting(QueueRanking.RankedQueue::getQueueId).containsExactly(2L);
+
+        // Renamed, the queue keeps its load
+        queueRanking.putQueue(2, "renamed", 12, 0, T + 2);
+        assertThat(queueRanking.top(1).get(0).getName()).isEqualTo("renamed");
+        assertThat(queueRanking.top(1).get(0).getNumParticipants()).isEqualTo(2);
+    }
+}
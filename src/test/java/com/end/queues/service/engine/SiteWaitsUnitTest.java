@@ -0,0 +1,85 @@
+package com.end.queues.service.engine;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SiteWaits.
+ *
+ * @see SiteWaits
+ */
+public class SiteWaitsUnitTest {
+
+    private static final long T = 1_500_000_000_000L;
+
+    @Test
+    public void bestQueueHasTheLowestExpectedWait() {
+        SiteWaits siteWaits = new SiteWaits();
+        // 3 participants at 60 an hour wait 3 minutes, 1 at 10 an hour waits 6 minutes
+        siteWaits.putQueue(1, 11, null, 3, 60, T);
+        siteWaits.putQueue(2, 12, null, 1, 10, T);
+        siteWaits.putQueue(3, 13, null, 0, null, T);
+
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(1);
+        assertThat(siteWaits.best().getExpectedWaitMillis()).isEqualTo(180_000);
+
+        assertThat(siteWaits.updateLoad(11, 7, 60, T + 1)).isTrue();
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(2);
+
+        // A queue whose rate is unknown comes last, even if empty
+        assertThat(siteWaits.updateLoad(12, 100, 10, T + 1)).isTrue();
+        assertThat(siteWaits.updateLoad(11, 100, 60, T + 2)).isTrue();
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(1);
+        siteWaits.removeQueue(1);
+        siteWaits.removeDynamicQueue(12);
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(3);
+        assertThat(siteWaits.removeDynamicQueue(12)).isNull();
+    }
+
+    @Test
+    public void fullQueuesAreNeverBest() {
+        SiteWaits siteWaits = new SiteWaits();
+        siteWaits.putQueue(1, 11, 2, 1, 60, T);
+        siteWaits.putQueue(2, 12, null, 10, 60, T);
+
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(1);
+        siteWaits.updateLoad(11, 2, 60, T + 1);
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(2);
+        siteWaits.putQueue(2, 12, 10, 0, null, T + 2);
+        assertThat(siteWaits.best()).isNull();
+    }
+
+    @Test
+    public void olderLoadsAreIgnored() {
+        SiteWaits siteWaits = new SiteWaits();
+        siteWaits.putQueue(1, 11, null, 0, 60, T);
+
+        assertThat(siteWaits.updateLoad(11, 5, 60, T + 10)).isTrue();
+        assertThat(siteWaits.updateLoad(11, 4, 60, T + 5)).isFalse();
+        assertThat(siteWaits.updateLoad(99, 4, 60, T + 20)).isFalse();
+        assertThat(siteWaits.best().getNumParticipants()).isEqualTo(5);
+    }
+
+    @Test
+    public void queueKeepsItsLoadUnlessItsDynamicQueueChanges() {
+        SiteWaits siteWaits = new SiteWaits();
+        siteWaits.putQueue(1, 11, null, 5, 60, T);
+
+        // A new capacity keeps the load
+        siteWaits.putQueue(1, 11, 20, 0, null, T + 1);
+        assertThat(siteWaits.best().getNumParticipants()).isEqualTo(5);
+
+        // Another dynamicQueue comes with its own load
+        siteWaits.putQueue(1, 12, 20, 2, 30, T + 2);
+        assertThat(siteWaits.best().getDynamicQueueId()).isEqualTo(12);
+        assertThat(siteWaits.best().getNumParticipants()).isEqualTo(2);
+        assertThat(siteWaits.updateLoad(11, 1, 60, T + 3)).isFalse();
+
+        // A dynamicQueue given to another Queue leaves the previous one
+        siteWaits.putQueue(2, 12, null, 0, null, T + 3);
+        assertThat(siteWaits.size()).isEqualTo(1);
+        assertThat(siteWaits.best().getQueueId()).isEqualTo(2);
+        assertThat(siteWaits.best().getNumParticipants()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,64 @@
+package com.end.queues.service.engine;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the TimingWheel.
+ *
+ * @see TimingWheel
+ */
+public class TimingWheelUnitTest {
+
+    private static final long TICK = 1000;
+
+    private static final long T = 1_500_000_000_000L;
+
+    @Test
+    public void deadlinesExpireOnTheirTickInOrder() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, T);
+        wheel.schedule(1, T + 3 * TICK, "third");
+        wheel.schedule(2, T + TICK, "first");
+        wheel.schedule(3, T + 2 * TICK - 1, "second");
+
+        assertThat(wheel.advance(T + TICK - 1)).isEmpty();
+        assertThat(wheel.advance(T + 5 * TICK)).containsExactly("first", "second", "third");
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelledAndRescheduledDeadlines() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 3, T);
+        wheel.schedule(1, T + TICK, "cancelled");
+        wheel.schedule(2, T + TICK, "kept");
+        wheel.schedule(3, T + TICK, "rescheduled");
+
+        assertThat(wheel.cancel(1)).isEqualTo("cancelled");
+        assertThat(wheel.cancel(1)).isNull();
+        wheel.schedule(3, T + 10 * TICK, "later");
+        assertThat(wheel.contains(3)).isTrue();
+
+        assertThat(wheel.advance(T + TICK)).containsExactly("kept");
+        assertThat(wheel.advance(T + 9 * TICK)).isEmpty();
+        assertThat(wheel.advance(T + 10 * TICK)).containsExactly("later");
+    }
+
+    @Test
+    public void farDeadlinesCascadeToTheirTick() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 2, 0);
+        long[] deadlines = { 255, 256, 257, 300, 65535, 65536, 70000, 200000 };
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline, deadline);
+        }
+        // A past deadline expires on the next tick
+        wheel.schedule(0, -5, 1L);
+
+        for (long now = 1; now <= 200000; now++) {
+            for (long expired : wheel.advance(now)) {
+                assertThat(expired).isEqualTo(now);
+            }
+        }
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+}
@@ -5,6 +5,8 @@ import com.end.queues.Q1App;
 import com.end.queues.domain.Admin;
 import com.end.queues.repository.AdminRepository;
 import com.end.queues.repository.search.AdminSearchRepository;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -56,6 +58,12 @@ public class AdminResourceIntTest {
     @Autowired
     private AdminSearchRepository adminSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -75,7 +83,7 @@ public class AdminResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        AdminResource adminResource = new AdminResource(adminRepository, adminSearchRepository);
+        AdminResource adminResource = new AdminResource(adminRepository, adminSearchRepository, searchOutbox);
         this.restAdminMockMvc = MockMvcBuilders.standaloneSetup(adminResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -123,6 +131,8 @@ public class AdminResourceIntTest {
         assertThat(testAdmin.getEmail()).isEqualTo(DEFAULT_EMAIL);
         assertThat(testAdmin.getPhoneNumber()).isEqualTo(DEFAULT_PHONE_NUMBER);
 
+        searchIndexer.drain();
+
         // Validate the Admin in Elasticsearch
         Admin adminEs = adminSearchRepository.findOne(testAdmin.getId());
         assertThat(adminEs).isEqualToComparingFieldByField(testAdmin);
@@ -219,6 +229,8 @@ public class AdminResourceIntTest {
         assertThat(testAdmin.getEmail()).isEqualTo(UPDATED_EMAIL);
         assertThat(testAdmin.getPhoneNumber()).isEqualTo(UPDATED_PHONE_NUMBER);
 
+        searchIndexer.drain();
+
         // Validate the Admin in Elasticsearch
         Admin adminEs = adminSearchRepository.findOne(testAdmin.getId());
         assertThat(adminEs).isEqualToComparingFieldByField(testAdmin);
@@ -255,6 +267,8 @@ public class AdminResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean adminExistsInEs = adminSearchRepository.exists(admin.getId());
         assertThat(adminExistsInEs).isFalse();
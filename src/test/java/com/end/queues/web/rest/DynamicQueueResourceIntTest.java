@@ -3,10 +3,24 @@ package com.end.queues.web.rest;
 import com.end.queues.Q1App;
 
 import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.domain.enumeration.ServingPolicy;
 import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.ParticipantRepository;
+import com.end.queues.repository.QueueRepository;
 import com.end.queues.repository.search.DynamicQueueSearchRepository;
+import com.end.queues.service.DynamicQueueCounters;
+import com.end.queues.service.LiveQueueRouter;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.service.SiteWaitIndex;
+import com.end.queues.service.dto.QueueTimeSeriesDTO;
+import com.end.queues.service.engine.LiveQueue;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
+import com.hazelcast.core.HazelcastInstance;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,7 +39,12 @@ import javax.persistence.EntityManager;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -44,12 +63,45 @@ public class DynamicQueueResourceIntTest {
     private static final Integer DEFAULT_RATE = 1;
     private static final Integer UPDATED_RATE = 2;
 
+    private static final ServingPolicy DEFAULT_SERVING_POLICY = ServingPolicy.STRICT_PRIORITY;
+    private static final ServingPolicy UPDATED_SERVING_POLICY = ServingPolicy.WEIGHTED_ROUND_ROBIN;
+
+    private static final String DEFAULT_LANE_WEIGHTS = "1,2";
+    private static final String UPDATED_LANE_WEIGHTS = "3,1";
+
     @Autowired
     private DynamicQueueRepository dynamicQueueRepository;
 
     @Autowired
     private DynamicQueueSearchRepository dynamicQueueSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private ParticipantRepository participantRepository;
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private LiveQueueRouter liveQueueRouter;
+
+    @Autowired
+    private DynamicQueueCounters dynamicQueueCounters;
+
+    @Autowired
+    private SiteWaitIndex siteWaitIndex;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -69,7 +121,7 @@ public class DynamicQueueResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        DynamicQueueResource dynamicQueueResource = new DynamicQueueResource(dynamicQueueRepository, dynamicQueueSearchRepository);
+        DynamicQueueResource dynamicQueueResource = new DynamicQueueResource(dynamicQueueRepository, dynamicQueueSearchRepository, liveQueueRouter, searchOutbox);
         this.restDynamicQueueMockMvc = MockMvcBuilders.standaloneSetup(dynamicQueueResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -85,7 +137,9 @@ public class DynamicQueueResourceIntTest {
     public static DynamicQueue createEntity(EntityManager em) {
         DynamicQueue dynamicQueue = new DynamicQueue()
             .numParticipants(DEFAULT_NUM_PARTICIPANTS)
-            .rate(DEFAULT_RATE);
+            .rate(DEFAULT_RATE)
+            .servingPolicy(DEFAULT_SERVING_POLICY)
+            .laneWeights(DEFAULT_LANE_WEIGHTS);
         return dynamicQueue;
     }
 
@@ -112,6 +166,10 @@ public class DynamicQueueResourceIntTest {
         DynamicQueue testDynamicQueue = dynamicQueueList.get(dynamicQueueList.size() - 1);
         assertThat(testDynamicQueue.getNumParticipants()).isEqualTo(DEFAULT_NUM_PARTICIPANTS);
         assertThat(testDynamicQueue.getRate()).isEqualTo(DEFAULT_RATE);
+        assertThat(testDynamicQueue.getServingPolicy()).isEqualTo(DEFAULT_SERVING_POLICY);
+        assertThat(testDynamicQueue.getLaneWeights()).isEqualTo(DEFAULT_LANE_WEIGHTS);
+
+        searchIndexer.drain();
 
         // Validate the DynamicQueue in Elasticsearch
         DynamicQueue dynamicQueueEs = dynamicQueueSearchRepository.findOne(testDynamicQueue.getId());
@@ -149,7 +207,9 @@ public class DynamicQueueResourceIntTest {
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(dynamicQueue.getId().intValue())))
             .andExpect(jsonPath("$.[*].numParticipants").value(hasItem(DEFAULT_NUM_PARTICIPANTS.intValue())))
-            .andExpect(jsonPath("$.[*].rate").value(hasItem(DEFAULT_RATE)));
+            .andExpect(jsonPath("$.[*].rate").value(hasItem(DEFAULT_RATE)))
+            .andExpect(jsonPath("$.[*].servingPolicy").value(hasItem(DEFAULT_SERVING_POLICY.toString())))
+            .andExpect(jsonPath("$.[*].laneWeights").value(hasItem(DEFAULT_LANE_WEIGHTS)));
     }
 
     @Test
@@ -164,7 +224,9 @@ public class DynamicQueueResourceIntTest {
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.id").value(dynamicQueue.getId().intValue()))
             .andExpect(jsonPath("$.numParticipants").value(DEFAULT_NUM_PARTICIPANTS.intValue()))
-            .andExpect(jsonPath("$.rate").value(DEFAULT_RATE));
+            .andExpect(jsonPath("$.rate").value(DEFAULT_RATE))
+            .andExpect(jsonPath("$.servingPolicy").value(DEFAULT_SERVING_POLICY.toString()))
+            .andExpect(jsonPath("$.laneWeights").value(DEFAULT_LANE_WEIGHTS));
     }
 
     @Test
@@ -187,25 +249,50 @@ public class DynamicQueueResourceIntTest {
         DynamicQueue updatedDynamicQueue = dynamicQueueRepository.findOne(dynamicQueue.getId());
         updatedDynamicQueue
             .numParticipants(UPDATED_NUM_PARTICIPANTS)
-            .rate(UPDATED_RATE);
+            .rate(UPDATED_RATE)
+            .servingPolicy(UPDATED_SERVING_POLICY)
+            .laneWeights(UPDATED_LANE_WEIGHTS);
 
         restDynamicQueueMockMvc.perform(put("/api/dynamic-queues")
             .contentType(TestUtil.APPLICATION_JSON_UTF8)
             .content(TestUtil.convertObjectToJsonBytes(updatedDynamicQueue)))
-            .andExpect(status().isOk());
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.numParticipants").value(0))
+            .andExpect(jsonPath("$.rate").value(UPDATED_RATE))
+            .andExpect(jsonPath("$.servingPolicy").value(UPDATED_SERVING_POLICY.toString()))
+            .andExpect(jsonPath("$.laneWeights").value(UPDATED_LANE_WEIGHTS));
 
         // Validate the DynamicQueue in the database
         List<DynamicQueue> dynamicQueueList = dynamicQueueRepository.findAll();
         assertThat(dynamicQueueList).hasSize(databaseSizeBeforeUpdate);
         DynamicQueue testDynamicQueue = dynamicQueueList.get(dynamicQueueList.size() - 1);
-        assertThat(testDynamicQueue.getNumParticipants()).isEqualTo(UPDATED_NUM_PARTICIPANTS);
         assertThat(testDynamicQueue.getRate()).isEqualTo(UPDATED_RATE);
+        assertThat(testDynamicQueue.getServingPolicy()).isEqualTo(UPDATED_SERVING_POLICY);
+        assertThat(testDynamicQueue.getLaneWeights()).isEqualTo(UPDATED_LANE_WEIGHTS);
 
-        // Validate the DynamicQueue in Elasticsearch
+        // Validate the DynamicQueue in Elasticsearch, once the counters are written behind
+        dynamicQueueCounters.flush();
+        searchIndexer.drain();
         DynamicQueue dynamicQueueEs = dynamicQueueSearchRepository.findOne(testDynamicQueue.getId());
         assertThat(dynamicQueueEs).isEqualToComparingFieldByField(testDynamicQueue);
     }
 
+    @Test
+    @Transactional
+    public void checkLaneWeightsIsValid() throws Exception {
+        int databaseSizeBeforeTest = dynamicQueueRepository.findAll().size();
+        // set the field to an invalid value
+        dynamicQueue.setLaneWeights("0,2");
+
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(dynamicQueue)))
+            .andExpect(status().isBadRequest());
+
+        List<DynamicQueue> dynamicQueueList = dynamicQueueRepository.findAll();
+        assertThat(dynamicQueueList).hasSize(databaseSizeBeforeTest);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingDynamicQueue() throws Exception {
@@ -224,6 +311,20 @@ public class DynamicQueueResourceIntTest {
         assertThat(dynamicQueueList).hasSize(databaseSizeBeforeUpdate + 1);
     }
 
+    @Test
+    @Transactional
+    public void updateUnknownDynamicQueue() throws Exception {
+        dynamicQueue.setId(Long.MAX_VALUE);
+
+        restDynamicQueueMockMvc.perform(put("/api/dynamic-queues")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(dynamicQueue)))
+            .andExpect(status().isNotFound());
+
+        // No live queue is loaded for it
+        assertThat(hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES).containsKey(Long.MAX_VALUE)).isFalse();
+    }
+
     @Test
     @Transactional
     public void deleteDynamicQueue() throws Exception {
@@ -237,6 +338,8 @@ public class DynamicQueueResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean dynamicQueueExistsInEs = dynamicQueueSearchRepository.exists(dynamicQueue.getId());
         assertThat(dynamicQueueExistsInEs).isFalse();
@@ -246,6 +349,276 @@ public class DynamicQueueResourceIntTest {
         assertThat(dynamicQueueList).hasSize(databaseSizeBeforeDelete - 1);
     }
 
+    @Test
+    @Transactional
+    public void deleteLoadedDynamicQueue() throws Exception {
+        // Initialize the database, with a live queue and a site index holding the dynamicQueue
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        Queue queue = queueRepository.saveAndFlush(new Queue().name("deleted").site("deleted-queue-site").dynamicInfo(dynamicQueue));
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.serveNext(dynamicQueue);
+        assertThat(siteWaitIndex.getBestQueue("deleted-queue-site")).isPresent();
+        queueRepository.saveAndFlush(queue.dynamicInfo(null));
+
+        restDynamicQueueMockMvc.perform(delete("/api/dynamic-queues/{id}", dynamicQueue.getId())
+            .accept(TestUtil.APPLICATION_JSON_UTF8))
+            .andExpect(status().isOk());
+
+        // The live queue is dropped, and the dynamicQueue is gone from the site index
+        assertThat(hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES).containsKey(dynamicQueue.getId())).isFalse();
+        assertThat(hazelcastInstance.getReplicatedMap(SiteWaitIndex.QUEUE_SITES).containsKey(dynamicQueue.getId())).isFalse();
+        assertThat(siteWaitIndex.getBestQueue("deleted-queue-site")).isEmpty();
+    }
+
+    @Test
+    @Transactional
+    public void joinDynamicQueue() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        int participantsSizeBeforeJoin = participantRepository.findAll().size();
+
+        // Join the dynamicQueue twice
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.position").value((int) LiveQueue.POSITION_GAP));
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.position").value((int) (2 * LiveQueue.POSITION_GAP)));
+
+        // Validate the participants and the counter in the database
+        assertThat(participantRepository.findAll()).hasSize(participantsSizeBeforeJoin + 2);
+        assertThat(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId())).hasSize(2);
+        assertThat(dynamicQueueRepository.findOne(dynamicQueue.getId()).getNumParticipants()).isEqualTo(2L);
+    }
+
+    @Test
+    @Transactional
+    public void joinDynamicQueueBeforeParticipant() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Join in front of the second participant
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .param("before", second.getId().toString())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.position").value((int) (first.getPosition() + second.getPosition()) / 2));
+
+        // The participants already waiting keep their stored position
+        assertThat(participantRepository.findOne(first.getId()).getPosition()).isEqualTo(LiveQueue.POSITION_GAP);
+        assertThat(participantRepository.findOne(second.getId()).getPosition()).isEqualTo(2 * LiveQueue.POSITION_GAP);
+        assertThat(liveQueueService.getPosition(second.getId()).get().getPosition()).isEqualTo(3);
+        assertThat(dynamicQueueRepository.findOne(dynamicQueue.getId()).getNumParticipants()).isEqualTo(3L);
+    }
+
+    @Test
+    @Transactional
+    public void joinDynamicQueueBeforeUnknownParticipant() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        int participantsSizeBeforeJoin = participantRepository.findAll().size();
+
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .param("before", String.valueOf(Long.MAX_VALUE))
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isBadRequest());
+
+        assertThat(participantRepository.findAll()).hasSize(participantsSizeBeforeJoin);
+    }
+
+    @Test
+    @Transactional
+    public void joinDynamicQueueWithPriority() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        Participant walkIn = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Join the priority lane, behind nobody
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant().priority(1))))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.priority").value(1))
+            .andExpect(jsonPath("$.position").value((1L << LiveQueue.LANE_SHIFT) + LiveQueue.POSITION_GAP));
+
+        // The participant already waiting in the default lane is served second
+        assertThat(liveQueueService.getPosition(walkIn.getId()).get().getPosition()).isEqualTo(2);
+        assertThat(participantRepository.findOne(walkIn.getId()).getPriority()).isEqualTo(0);
+    }
+
+    @Test
+    @Transactional
+    public void joinDynamicQueueWithUnknownPriority() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        int participantsSizeBeforeJoin = participantRepository.findAll().size();
+
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant().priority(2))))
+            .andExpect(status().isBadRequest());
+
+        assertThat(participantRepository.findAll()).hasSize(participantsSizeBeforeJoin);
+    }
+
+    @Test
+    @Transactional
+    public void joinFullDynamicQueue() throws Exception {
+        // Initialize the database with a queue of capacity one, already taken
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        queueRepository.saveAndFlush(new Queue().maxCapacity(1).dynamicInfo(dynamicQueue));
+        liveQueueService.join(dynamicQueue, new Participant());
+        int participantsSizeBeforeJoin = participantRepository.findAll().size();
+
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isConflict())
+            .andExpect(header().string("Retry-After", "3600"));
+
+        // Nothing was written for the rejected join, and the place frees once someone is served
+        assertThat(participantRepository.findAll()).hasSize(participantsSizeBeforeJoin);
+        liveQueueService.serveNext(dynamicQueue);
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", dynamicQueue.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isCreated());
+    }
+
+    @Test
+    @Transactional
+    public void joinNonExistingDynamicQueue() throws Exception {
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/join", Long.MAX_VALUE)
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new Participant())))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void serveNextParticipant() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Serve the dynamicQueue until it is empty
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/serve-next", dynamicQueue.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(first.getId().intValue()));
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/serve-next", dynamicQueue.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(second.getId().intValue()));
+        restDynamicQueueMockMvc.perform(post("/api/dynamic-queues/{id}/serve-next", dynamicQueue.getId()))
+            .andExpect(status().isNoContent());
+
+        // Validate the served participants are gone from the database
+        assertThat(participantRepository.findByDynamicQueueIdOrderByPositionAsc(dynamicQueue.getId())).isEmpty();
+        assertThat(dynamicQueueRepository.findOne(dynamicQueue.getId()).getNumParticipants()).isEqualTo(0L);
+    }
+
+    @Test
+    @Transactional
+    public void getWaitEstimate() throws Exception {
+        // Initialize the database, the rate seeds the estimate until a serve is observed
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.join(dynamicQueue, new Participant());
+
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/estimate", dynamicQueue.getId())
+            .param("position", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.dynamicQueueId").value(dynamicQueue.getId().intValue()))
+            .andExpect(jsonPath("$.position").value(2))
+            .andExpect(jsonPath("$.numParticipants").value(2))
+            .andExpect(jsonPath("$.rate").value(DEFAULT_RATE))
+            .andExpect(jsonPath("$.estimatedWaitSeconds").value(both(greaterThan(3600)).and(lessThanOrEqualTo(7200))));
+
+        // Once a serve is observed, the rate is estimated from it
+        liveQueueService.serveNext(dynamicQueue);
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/estimate", dynamicQueue.getId())
+            .param("position", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.numParticipants").value(1))
+            .andExpect(jsonPath("$.rate").value(greaterThan(DEFAULT_RATE)));
+    }
+
+    @Test
+    @Transactional
+    public void getWaitEstimateAtInvalidPosition() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/estimate", dynamicQueue.getId())
+            .param("position", "0"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getWaitEstimateOfNonExistingDynamicQueue() throws Exception {
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/estimate", Long.MAX_VALUE)
+            .param("position", "1"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getTimeSeries() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.serveNext(dynamicQueue);
+
+        // The events are in the last minute, or the one before when it just turned
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/timeseries", dynamicQueue.getId())
+            .param("minutes", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.dynamicQueueId").value(dynamicQueue.getId().intValue()))
+            .andExpect(jsonPath("$.from").isNotEmpty())
+            .andExpect(jsonPath("$.arrivals", hasSize(2)))
+            .andExpect(jsonPath("$.serves", hasSize(2)));
+
+        QueueTimeSeriesDTO timeSeries = liveQueueService.getTimeSeries(dynamicQueue.getId(), 2).get();
+        assertThat(timeSeries.getArrivals()[0] + timeSeries.getArrivals()[1]).isEqualTo(2);
+        assertThat(timeSeries.getServes()[0] + timeSeries.getServes()[1]).isEqualTo(1);
+
+        // A day by default
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/timeseries", dynamicQueue.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.arrivals", hasSize(1440)));
+    }
+
+    @Test
+    @Transactional
+    public void getTimeSeriesWithInvalidMinutes() throws Exception {
+        // Initialize the database
+        dynamicQueueRepository.saveAndFlush(dynamicQueue);
+
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/timeseries", dynamicQueue.getId())
+            .param("minutes", "0"))
+            .andExpect(status().isBadRequest());
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/timeseries", dynamicQueue.getId())
+            .param("minutes", "1441"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getTimeSeriesOfNonExistingDynamicQueue() throws Exception {
+        restDynamicQueueMockMvc.perform(get("/api/dynamic-queues/{id}/timeseries", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void searchDynamicQueue() throws Exception {
@@ -259,7 +632,22 @@ public class DynamicQueueResourceIntTest {
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(dynamicQueue.getId().intValue())))
             .andExpect(jsonPath("$.[*].numParticipants").value(hasItem(DEFAULT_NUM_PARTICIPANTS.intValue())))
-            .andExpect(jsonPath("$.[*].rate").value(hasItem(DEFAULT_RATE)));
+            .andExpect(jsonPath("$.[*].rate").value(hasItem(DEFAULT_RATE)))
+            .andExpect(jsonPath("$.[*].servingPolicy").value(hasItem(DEFAULT_SERVING_POLICY.toString())))
+            .andExpect(jsonPath("$.[*].laneWeights").value(hasItem(DEFAULT_LANE_WEIGHTS)));
+    }
+
+    @Test
+    @Transactional
+    public void searchDynamicQueuesPastTheResultWindow() throws Exception {
+        // Offset pages end at the 10000th result, the cursor reads further
+        restDynamicQueueMockMvc.perform(get("/api/_search/dynamic-queues?query=*&page=500&size=20"))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().string("X-q1App-error", containsString("after")));
+        restDynamicQueueMockMvc.perform(get("/api/_search/dynamic-queues?query=*&page=499&size=20"))
+            .andExpect(status().isOk());
+        restDynamicQueueMockMvc.perform(get("/api/_search/dynamic-queues?query=*&page=500&size=20&after=1"))
+            .andExpect(status().isOk());
     }
 
     @Test
@@ -0,0 +1,147 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.Person;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.search.PersonSearchRepository;
+import com.end.queues.repository.search.QueueSearchRepository;
+import com.end.queues.service.FilteredSearchService;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the FilteredSearchResource REST controller.
+ *
+ * @see FilteredSearchResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class FilteredSearchResourceIntTest {
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private QueueSearchRepository queueSearchRepository;
+
+    @Autowired
+    private PersonSearchRepository personSearchRepository;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private EntityMapper entityMapper;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private PageableHandlerMethodArgumentResolver pageableArgumentResolver;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restFilteredSearchMockMvc;
+
+    @Before
+    public void setup() {
+        this.restFilteredSearchMockMvc = mockMvc(applicationProperties);
+        queueSearchRepository.deleteAll();
+        personSearchRepository.deleteAll();
+    }
+
+    private MockMvc mockMvc(ApplicationProperties applicationProperties) {
+        FilteredSearchService filteredSearchService = new FilteredSearchService(applicationProperties, elasticsearchTemplate, entityMapper);
+        FilteredSearchResource filteredSearchResource = new FilteredSearchResource(filteredSearchService);
+        return MockMvcBuilders.standaloneSetup(filteredSearchResource)
+            .setCustomArgumentResolvers(pageableArgumentResolver)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    private Queue queue(long id, String name, String site) {
+        Queue queue = new Queue().name(name).site(site);
+        queue.setId(id);
+        return queueSearchRepository.save(queue);
+    }
+
+    private Person person(long id, String firstName, String lastName) {
+        Person person = new Person().firstName(firstName).lastName(lastName).email(firstName + "@localhost");
+        person.setId(id);
+        return personSearchRepository.save(person);
+    }
+
+    @Test
+    public void filterQueuesBySiteAndNamePrefix() throws Exception {
+        queue(1L, "radiology east", "north");
+        queue(2L, "radiology west", "south");
+        queue(3L, "pharmacy", "north");
+
+        restFilteredSearchMockMvc.perform(get("/api/_filter/queues?site=north&name=radio&sort=id"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(header().doesNotExist("X-Search-Partial"))
+            .andExpect(jsonPath("$.[*].id").value(containsInAnyOrder(1)));
+    }
+
+    @Test
+    public void filterPeopleByNamePrefix() throws Exception {
+        person(1L, "Johanna", "Smith");
+        person(2L, "Ann", "Johnson");
+        person(3L, "Peter", "Brown");
+
+        restFilteredSearchMockMvc.perform(get("/api/_filter/people?name=joh&sort=id"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(containsInAnyOrder(1, 2)));
+    }
+
+    @Test
+    public void filterPeopleTextIsLiteral() throws Exception {
+        person(1L, "Johanna", "Smith");
+
+        // The wildcard is not expanded, so it matches no term
+        restFilteredSearchMockMvc.perform(get("/api/_filter/people?text=*ohanna"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    public void filterQueuesTerminatedEarly() throws Exception {
+        ApplicationProperties bounded = new ApplicationProperties();
+        bounded.getSearch().setTerminateAfter(1);
+        // More queues than shards, so that at least one shard holds two
+        for (long id = 1; id <= 12; id++) {
+            queue(id, "queue " + id, "north");
+        }
+
+        mockMvc(bounded).perform(get("/api/_filter/queues?site=north"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Search-Partial", "true"))
+            .andExpect(header().string("X-Search-Terminated-Early", "true"));
+    }
+
+    @Test
+    public void filterQueuesTooDeep() throws Exception {
+        restFilteredSearchMockMvc.perform(get("/api/_filter/queues?page=500&size=20"))
+            .andExpect(status().isBadRequest());
+    }
+}
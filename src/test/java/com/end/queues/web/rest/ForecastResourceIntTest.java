@@ -0,0 +1,103 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueForecastService;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the ForecastResource REST controller.
+ *
+ * @see ForecastResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class ForecastResourceIntTest {
+
+    private static final String SITE = "forecast-site";
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private QueueForecastService queueForecastService;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restForecastMockMvc;
+
+    @Before
+    public void setup() {
+        ForecastResource forecastResource = new ForecastResource(queueForecastService);
+        this.restForecastMockMvc = MockMvcBuilders.standaloneSetup(forecastResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void forecastSite() throws Exception {
+        // Initialize the database: two queues on the site, one of them used this hour
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("used").site(SITE).dynamicInfo(dynamicQueue));
+        queueRepository.saveAndFlush(new Queue().name("unused").site(SITE));
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.join(dynamicQueue, new Participant());
+        liveQueueService.serveNext(dynamicQueue);
+
+        restForecastMockMvc.perform(get("/api/forecast").param("site", SITE).param("hours", "3"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.site").value(SITE))
+            .andExpect(jsonPath("$.queues").value(2))
+            .andExpect(jsonPath("$.modeledQueues").value(1))
+            .andExpect(jsonPath("$.hours.length()").value(3))
+            .andExpect(jsonPath("$.hours[0].arrivals").value(2.0))
+            .andExpect(jsonPath("$.hours[0].serves").value(1.0))
+            // The next hours of the week were never observed
+            .andExpect(jsonPath("$.hours[1].arrivals").value(0.0));
+    }
+
+    @Test
+    @Transactional
+    public void forecastUnknownSite() throws Exception {
+        restForecastMockMvc.perform(get("/api/forecast").param("site", "no-such-site"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void forecastTooManyHours() throws Exception {
+        restForecastMockMvc.perform(get("/api/forecast").param("site", SITE).param("hours", "169"))
+            .andExpect(status().isBadRequest());
+    }
+}
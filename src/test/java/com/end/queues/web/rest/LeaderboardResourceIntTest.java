@@ -0,0 +1,141 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Organization;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.OrganizationRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueLeaderboard;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the LeaderboardResource REST controller.
+ *
+ * @see LeaderboardResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class LeaderboardResourceIntTest {
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private QueueLeaderboard queueLeaderboard;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restLeaderboardMockMvc;
+
+    @Before
+    public void setup() {
+        LeaderboardResource leaderboardResource = new LeaderboardResource(queueLeaderboard);
+        this.restLeaderboardMockMvc = MockMvcBuilders.standaloneSetup(leaderboardResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void getBusiestQueuesOfOrganization() throws Exception {
+        Organization organization = organizationRepository.saveAndFlush(new Organization().name("leaderboard"));
+        DynamicQueue first = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        DynamicQueue second = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        Queue firstQueue = queueRepository.saveAndFlush(new Queue().name("first").organization(organization).dynamicInfo(first));
+        Queue secondQueue = queueRepository.saveAndFlush(new Queue().name("second").organization(organization).dynamicInfo(second));
+        for (int i = 0; i < 3; i++) {
+            liveQueueService.join(first, new Participant());
+        }
+        liveQueueService.join(second, new Participant());
+
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("organizationId", organization.getId().toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].queueId").value(firstQueue.getId().intValue()))
+            .andExpect(jsonPath("$[0].name").value("first"))
+            .andExpect(jsonPath("$[0].numParticipants").value(3))
+            .andExpect(jsonPath("$[1].queueId").value(secondQueue.getId().intValue()));
+
+        // The ranking follows the joins and serves
+        for (int i = 0; i < 3; i++) {
+            liveQueueService.join(second, new Participant());
+        }
+        liveQueueService.serveNext(first);
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("organizationId", organization.getId().toString()).param("size", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].queueId").value(secondQueue.getId().intValue()))
+            .andExpect(jsonPath("$[0].numParticipants").value(4));
+    }
+
+    @Test
+    @Transactional
+    public void getBusiestQueuesOfAllOrganizations() throws Exception {
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("size", "5"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").isArray());
+
+        // Queues ranked in different global shards are merged
+        DynamicQueue first = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        DynamicQueue second = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        Queue firstQueue = queueRepository.saveAndFlush(new Queue().name("first").dynamicInfo(first));
+        Queue secondQueue = queueRepository.saveAndFlush(new Queue().name("second").dynamicInfo(second));
+        queueLeaderboard.queueSaved(firstQueue, null, null);
+        queueLeaderboard.queueSaved(secondQueue, null, null);
+        for (int i = 0; i < 12; i++) {
+            liveQueueService.join(second, new Participant());
+        }
+        for (int i = 0; i < 11; i++) {
+            liveQueueService.join(first, new Participant());
+        }
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].queueId").value(secondQueue.getId().intValue()))
+            .andExpect(jsonPath("$[0].numParticipants").value(12))
+            .andExpect(jsonPath("$[1].queueId").value(firstQueue.getId().intValue()))
+            .andExpect(jsonPath("$[1].numParticipants").value(11));
+    }
+
+    @Test
+    @Transactional
+    public void getBusiestQueuesWithInvalidSize() throws Exception {
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("size", "0"))
+            .andExpect(status().isBadRequest());
+        restLeaderboardMockMvc.perform(get("/api/leaderboard").param("size", "101"))
+            .andExpect(status().isBadRequest());
+    }
+}
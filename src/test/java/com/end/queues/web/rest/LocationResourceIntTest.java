@@ -5,6 +5,8 @@ import com.end.queues.Q1App;
 import com.end.queues.domain.Location;
 import com.end.queues.repository.LocationRepository;
 import com.end.queues.repository.search.LocationSearchRepository;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -56,6 +58,12 @@ public class LocationResourceIntTest {
     @Autowired
     private LocationSearchRepository locationSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -75,7 +83,7 @@ public class LocationResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        LocationResource locationResource = new LocationResource(locationRepository, locationSearchRepository);
+        LocationResource locationResource = new LocationResource(locationRepository, locationSearchRepository, searchOutbox);
         this.restLocationMockMvc = MockMvcBuilders.standaloneSetup(locationResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -123,6 +131,8 @@ public class LocationResourceIntTest {
         assertThat(testLocation.getCity()).isEqualTo(DEFAULT_CITY);
         assertThat(testLocation.getStateProvince()).isEqualTo(DEFAULT_STATE_PROVINCE);
 
+        searchIndexer.drain();
+
         // Validate the Location in Elasticsearch
         Location locationEs = locationSearchRepository.findOne(testLocation.getId());
         assertThat(locationEs).isEqualToComparingFieldByField(testLocation);
@@ -219,6 +229,8 @@ public class LocationResourceIntTest {
         assertThat(testLocation.getCity()).isEqualTo(UPDATED_CITY);
         assertThat(testLocation.getStateProvince()).isEqualTo(UPDATED_STATE_PROVINCE);
 
+        searchIndexer.drain();
+
         // Validate the Location in Elasticsearch
         Location locationEs = locationSearchRepository.findOne(testLocation.getId());
         assertThat(locationEs).isEqualToComparingFieldByField(testLocation);
@@ -255,6 +267,8 @@ public class LocationResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean locationExistsInEs = locationSearchRepository.exists(location.getId());
         assertThat(locationExistsInEs).isFalse();
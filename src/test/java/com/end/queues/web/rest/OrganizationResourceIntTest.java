@@ -5,6 +5,8 @@ import com.end.queues.Q1App;
 import com.end.queues.domain.Organization;
 import com.end.queues.repository.OrganizationRepository;
 import com.end.queues.repository.search.OrganizationSearchRepository;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -14,6 +16,7 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -22,10 +25,11 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -47,6 +51,12 @@ public class OrganizationResourceIntTest {
     @Autowired
     private OrganizationSearchRepository organizationSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -66,7 +76,7 @@ public class OrganizationResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        OrganizationResource organizationResource = new OrganizationResource(organizationRepository, organizationSearchRepository);
+        OrganizationResource organizationResource = new OrganizationResource(organizationRepository, organizationSearchRepository, searchOutbox);
         this.restOrganizationMockMvc = MockMvcBuilders.standaloneSetup(organizationResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -108,6 +118,8 @@ public class OrganizationResourceIntTest {
         Organization testOrganization = organizationList.get(organizationList.size() - 1);
         assertThat(testOrganization.getName()).isEqualTo(DEFAULT_NAME);
 
+        searchIndexer.drain();
+
         // Validate the Organization in Elasticsearch
         Organization organizationEs = organizationSearchRepository.findOne(testOrganization.getId());
         assertThat(organizationEs).isEqualToComparingFieldByField(testOrganization);
@@ -210,6 +222,8 @@ public class OrganizationResourceIntTest {
         Organization testOrganization = organizationList.get(organizationList.size() - 1);
         assertThat(testOrganization.getName()).isEqualTo(UPDATED_NAME);
 
+        searchIndexer.drain();
+
         // Validate the Organization in Elasticsearch
         Organization organizationEs = organizationSearchRepository.findOne(testOrganization.getId());
         assertThat(organizationEs).isEqualToComparingFieldByField(testOrganization);
@@ -246,6 +260,8 @@ public class OrganizationResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean organizationExistsInEs = organizationSearchRepository.exists(organization.getId());
         assertThat(organizationExistsInEs).isFalse();
@@ -270,6 +286,63 @@ public class OrganizationResourceIntTest {
             .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME.toString())));
     }
 
+    @Test
+    @Transactional
+    public void searchOrganizationsByPage() throws Exception {
+        // Initialize the database
+        for (int i = 0; i < 3; i++) {
+            Organization paged = organizationRepository.saveAndFlush(new Organization().name("paged"));
+            organizationSearchRepository.save(paged);
+        }
+
+        // Search the second page of one organization
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=name:paged&page=1&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").value(hasSize(1)))
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("page=2&size=1&query=name:paged>; rel=\"next\"")))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("page=0&size=1&query=name:paged>; rel=\"prev\"")));
+    }
+
+    @Test
+    @Transactional
+    public void searchOrganizationsAfterCursor() throws Exception {
+        // Initialize the database
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Organization paged = organizationRepository.saveAndFlush(new Organization().name("paged"));
+            organizationSearchRepository.save(paged);
+            ids.add(paged.getId());
+        }
+
+        // The page after the first organization holds the second one, and links to the page after it
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=name:paged&size=1&after=" + ids.get(0)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(ids.get(1).intValue())))
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("size=1&after=" + ids.get(1) + "&query=name:paged>; rel=\"next\"")));
+
+        // The page after the last organization is empty, with no next page
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=name:paged&size=1&after=" + ids.get(2)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").value(hasSize(0)))
+            .andExpect(header().string(HttpHeaders.LINK, not(containsString("rel=\"next\""))));
+    }
+
+    @Test
+    @Transactional
+    public void searchOrganizationsWithExpensiveQuery() throws Exception {
+        // A leading wildcard or a regular expression would scan every term of the index
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=name:*aged"))
+            .andExpect(status().isBadRequest());
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=name:/pa.*/"))
+            .andExpect(status().isBadRequest());
+
+        // A lone wildcard still matches everything
+        restOrganizationMockMvc.perform(get("/api/_search/organizations?query=*"))
+            .andExpect(status().isOk());
+    }
+
     @Test
     @Transactional
     public void equalsVerifier() throws Exception {
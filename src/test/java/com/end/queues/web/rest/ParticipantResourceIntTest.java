@@ -2,11 +2,19 @@ package com.end.queues.web.rest;
 
 import com.end.queues.Q1App;
 
+import com.end.queues.domain.DynamicQueue;
 import com.end.queues.domain.Participant;
+import com.end.queues.repository.DynamicQueueRepository;
 import com.end.queues.repository.ParticipantRepository;
 import com.end.queues.repository.search.ParticipantSearchRepository;
+import com.end.queues.service.LiveQueueRouter;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,12 +49,30 @@ public class ParticipantResourceIntTest {
     private static final Long DEFAULT_POSITION = 1L;
     private static final Long UPDATED_POSITION = 2L;
 
+    private static final Integer DEFAULT_PRIORITY = 0;
+    private static final Integer UPDATED_PRIORITY = 1;
+
     @Autowired
     private ParticipantRepository participantRepository;
 
     @Autowired
     private ParticipantSearchRepository participantSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private LiveQueueRouter liveQueueRouter;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -56,6 +82,9 @@ public class ParticipantResourceIntTest {
     @Autowired
     private ExceptionTranslator exceptionTranslator;
 
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
     @Autowired
     private EntityManager em;
 
@@ -66,7 +95,8 @@ public class ParticipantResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        ParticipantResource participantResource = new ParticipantResource(participantRepository, participantSearchRepository);
+        ParticipantResource participantResource = new ParticipantResource(participantRepository, participantSearchRepository,
+            dynamicQueueRepository, liveQueueRouter, searchOutbox);
         this.restParticipantMockMvc = MockMvcBuilders.standaloneSetup(participantResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -81,7 +111,8 @@ public class ParticipantResourceIntTest {
      */
     public static Participant createEntity(EntityManager em) {
         Participant participant = new Participant()
-            .position(DEFAULT_POSITION);
+            .position(DEFAULT_POSITION)
+            .priority(DEFAULT_PRIORITY);
         return participant;
     }
 
@@ -106,13 +137,53 @@ public class ParticipantResourceIntTest {
         List<Participant> participantList = participantRepository.findAll();
         assertThat(participantList).hasSize(databaseSizeBeforeCreate + 1);
         Participant testParticipant = participantList.get(participantList.size() - 1);
-        assertThat(testParticipant.getPosition()).isEqualTo(DEFAULT_POSITION);
+        assertThat(testParticipant.getPosition()).isNull();
+        assertThat(testParticipant.getPriority()).isEqualTo(DEFAULT_PRIORITY);
+
+        searchIndexer.drain();
 
         // Validate the Participant in Elasticsearch
         Participant participantEs = participantSearchRepository.findOne(testParticipant.getId());
         assertThat(participantEs).isEqualToComparingFieldByField(testParticipant);
     }
 
+    @Test
+    @Transactional
+    public void createParticipantInDynamicQueue() throws Exception {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant waiting = liveQueueService.join(dynamicQueue, new Participant());
+        participant.dynamicQueue(dynamicQueue);
+
+        // The participant joins the live queue behind the one already waiting
+        String location = restParticipantMockMvc.perform(post("/api/participants")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(participant)))
+            .andExpect(status().isCreated())
+            .andReturn().getResponse().getHeader("Location");
+        Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", id))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.dynamicQueueId").value(dynamicQueue.getId().intValue()))
+            .andExpect(jsonPath("$.position").value(2));
+        assertThat(liveQueueService.getPosition(waiting.getId()).get().getPosition()).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    public void createParticipantInNonExistingDynamicQueue() throws Exception {
+        int databaseSizeBeforeCreate = participantRepository.findAll().size();
+        participant.dynamicQueue(new DynamicQueue());
+        participant.getDynamicQueue().setId(Long.MAX_VALUE);
+
+        restParticipantMockMvc.perform(post("/api/participants")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(participant)))
+            .andExpect(status().isBadRequest());
+
+        assertThat(participantRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+    }
+
     @Test
     @Transactional
     public void createParticipantWithExistingId() throws Exception {
@@ -143,7 +214,8 @@ public class ParticipantResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(participant.getId().intValue())))
-            .andExpect(jsonPath("$.[*].position").value(hasItem(DEFAULT_POSITION.intValue())));
+            .andExpect(jsonPath("$.[*].position").value(hasItem(DEFAULT_POSITION.intValue())))
+            .andExpect(jsonPath("$.[*].priority").value(hasItem(DEFAULT_PRIORITY)));
     }
 
     @Test
@@ -157,7 +229,8 @@ public class ParticipantResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.id").value(participant.getId().intValue()))
-            .andExpect(jsonPath("$.position").value(DEFAULT_POSITION.intValue()));
+            .andExpect(jsonPath("$.position").value(DEFAULT_POSITION.intValue()))
+            .andExpect(jsonPath("$.priority").value(DEFAULT_PRIORITY));
     }
 
     @Test
@@ -178,8 +251,11 @@ public class ParticipantResourceIntTest {
 
         // Update the participant
         Participant updatedParticipant = participantRepository.findOne(participant.getId());
+        // Disconnect from session so that the updates on updatedParticipant are not directly saved in db
+        em.detach(updatedParticipant);
         updatedParticipant
-            .position(UPDATED_POSITION);
+            .position(UPDATED_POSITION)
+            .priority(UPDATED_PRIORITY);
 
         restParticipantMockMvc.perform(put("/api/participants")
             .contentType(TestUtil.APPLICATION_JSON_UTF8)
@@ -190,7 +266,11 @@ public class ParticipantResourceIntTest {
         List<Participant> participantList = participantRepository.findAll();
         assertThat(participantList).hasSize(databaseSizeBeforeUpdate);
         Participant testParticipant = participantList.get(participantList.size() - 1);
-        assertThat(testParticipant.getPosition()).isEqualTo(UPDATED_POSITION);
+        // The position and priority belong to the queue engine, and are left as they were
+        assertThat(testParticipant.getPosition()).isEqualTo(DEFAULT_POSITION);
+        assertThat(testParticipant.getPriority()).isEqualTo(DEFAULT_PRIORITY);
+
+        searchIndexer.drain();
 
         // Validate the Participant in Elasticsearch
         Participant participantEs = participantSearchRepository.findOne(testParticipant.getId());
@@ -215,6 +295,17 @@ public class ParticipantResourceIntTest {
         assertThat(participantList).hasSize(databaseSizeBeforeUpdate + 1);
     }
 
+    @Test
+    @Transactional
+    public void updateUnknownParticipant() throws Exception {
+        participant.setId(Long.MAX_VALUE);
+
+        restParticipantMockMvc.perform(put("/api/participants")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(participant)))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void deleteParticipant() throws Exception {
@@ -228,6 +319,8 @@ public class ParticipantResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean participantExistsInEs = participantSearchRepository.exists(participant.getId());
         assertThat(participantExistsInEs).isFalse();
@@ -237,6 +330,169 @@ public class ParticipantResourceIntTest {
         assertThat(participantList).hasSize(databaseSizeBeforeDelete - 1);
     }
 
+    @Test
+    @Transactional
+    public void getParticipantPosition() throws Exception {
+        // Initialize the database
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+        Participant third = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Get the position of the last participant
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", third.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+            .andExpect(jsonPath("$.participantId").value(third.getId().intValue()))
+            .andExpect(jsonPath("$.dynamicQueueId").value(dynamicQueue.getId().intValue()))
+            .andExpect(jsonPath("$.position").value(3))
+            .andExpect(jsonPath("$.numParticipants").value(3));
+
+        // A departure from the middle of the queue moves it up
+        restParticipantMockMvc.perform(delete("/api/participants/{id}", second.getId())
+            .accept(TestUtil.APPLICATION_JSON_UTF8))
+            .andExpect(status().isOk());
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", third.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.position").value(2))
+            .andExpect(jsonPath("$.numParticipants").value(2));
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", first.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.position").value(1));
+    }
+
+    @Test
+    @Transactional
+    public void getParticipantPositionWithoutItsRow() throws Exception {
+        // Initialize the database
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+        IMap<Long, Long> participantQueues = hazelcastInstance.getMap(LiveQueueService.PARTICIPANT_QUEUES);
+        assertThat(participantQueues.get(second.getId())).isEqualTo(dynamicQueue.getId());
+
+        // The queue of the participant is read from the map, not from its row
+        em.createNativeQuery("update participant set dynamic_queue_id = null where id = " + second.getId()).executeUpdate();
+        em.getEntityManagerFactory().getCache().evict(Participant.class, second.getId());
+        em.clear();
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", second.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.dynamicQueueId").value(dynamicQueue.getId().intValue()))
+            .andExpect(jsonPath("$.position").value(2));
+
+        // A participant served is not mapped any more, and one not mapped is looked up in the database
+        liveQueueService.serveNext(dynamicQueue);
+        assertThat(participantQueues.containsKey(first.getId())).isFalse();
+        participantQueues.delete(second.getId());
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", second.getId()))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void moveParticipant() throws Exception {
+        // Initialize the database
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant first = liveQueueService.join(dynamicQueue, new Participant());
+        Participant second = liveQueueService.join(dynamicQueue, new Participant());
+        Participant third = liveQueueService.join(dynamicQueue, new Participant());
+
+        // Move the last participant in front of the first one
+        restParticipantMockMvc.perform(post("/api/participants/{id}/move", third.getId())
+            .param("before", first.getId().toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(third.getId().intValue()));
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", third.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.position").value(1));
+
+        // Move the first participant to the tail
+        restParticipantMockMvc.perform(post("/api/participants/{id}/move", first.getId()))
+            .andExpect(status().isOk());
+        assertThat(liveQueueService.getPosition(second.getId()).get().getPosition()).isEqualTo(2);
+        assertThat(liveQueueService.getPosition(first.getId()).get().getPosition()).isEqualTo(3);
+
+        // Only the moved participants were written
+        assertThat(participantRepository.findOne(second.getId()).getPosition()).isEqualTo(second.getPosition());
+        assertThat(participantRepository.findOne(third.getId()).getPosition()).isLessThan(first.getPosition());
+    }
+
+    @Test
+    @Transactional
+    public void moveParticipantBeforeItself() throws Exception {
+        // Initialize the database
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant participant = liveQueueService.join(dynamicQueue, new Participant());
+
+        restParticipantMockMvc.perform(post("/api/participants/{id}/move", participant.getId())
+            .param("before", participant.getId().toString()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void transferParticipant() throws Exception {
+        // Initialize the database
+        DynamicQueue from = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        DynamicQueue to = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant first = liveQueueService.join(from, new Participant());
+        Participant second = liveQueueService.join(from, new Participant());
+        Participant waiting = liveQueueService.join(to, new Participant());
+
+        // Transfer the second participant to the head of the other queue
+        restParticipantMockMvc.perform(post("/api/participants/{id}/transfer", second.getId())
+            .param("to", to.getId().toString())
+            .param("rank", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(second.getId().intValue()))
+            .andExpect(jsonPath("$.dynamicQueue.id").value(to.getId().intValue()));
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", second.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.dynamicQueueId").value(to.getId().intValue()))
+            .andExpect(jsonPath("$.position").value(1))
+            .andExpect(jsonPath("$.numParticipants").value(2));
+        assertThat(liveQueueService.getPosition(waiting.getId()).get().getPosition()).isEqualTo(2);
+        assertThat(liveQueueService.getPosition(first.getId()).get().getNumParticipants()).isEqualTo(1);
+
+        // A full queue rejects the transfer, and the participant stays where it was
+        liveQueueService.updateCapacity(to.getId(), 2);
+        restParticipantMockMvc.perform(post("/api/participants/{id}/transfer", first.getId())
+            .param("to", to.getId().toString()))
+            .andExpect(status().isConflict())
+            .andExpect(header().string("Retry-After", "60"));
+        assertThat(liveQueueService.getPosition(first.getId()).get().getDynamicQueueId()).isEqualTo(from.getId());
+        assertThat(liveQueueService.getPosition(first.getId()).get().getPosition()).isEqualTo(1);
+        assertThat(liveQueueService.getPosition(waiting.getId()).get().getNumParticipants()).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional
+    public void transferParticipantToItsOwnQueue() throws Exception {
+        // Initialize the database
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(DynamicQueueResourceIntTest.createEntity(em));
+        Participant participant = liveQueueService.join(dynamicQueue, new Participant());
+
+        restParticipantMockMvc.perform(post("/api/participants/{id}/transfer", participant.getId())
+            .param("to", dynamicQueue.getId().toString()))
+            .andExpect(status().isBadRequest());
+        restParticipantMockMvc.perform(post("/api/participants/{id}/transfer", participant.getId())
+            .param("to", dynamicQueue.getId().toString())
+            .param("rank", "0"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getNonExistingParticipantPosition() throws Exception {
+        // A participant outside of any dynamicQueue has no position
+        participantRepository.saveAndFlush(participant);
+
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", participant.getId()))
+            .andExpect(status().isNotFound());
+        restParticipantMockMvc.perform(get("/api/participants/{id}/position", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void searchParticipant() throws Exception {
@@ -249,7 +505,8 @@ public class ParticipantResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(participant.getId().intValue())))
-            .andExpect(jsonPath("$.[*].position").value(hasItem(DEFAULT_POSITION.intValue())));
+            .andExpect(jsonPath("$.[*].position").value(hasItem(DEFAULT_POSITION.intValue())))
+            .andExpect(jsonPath("$.[*].priority").value(hasItem(DEFAULT_PRIORITY)));
     }
 
     @Test
@@ -5,6 +5,8 @@ import com.end.queues.Q1App;
 import com.end.queues.domain.Person;
 import com.end.queues.repository.PersonRepository;
 import com.end.queues.repository.search.PersonSearchRepository;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -56,6 +58,12 @@ public class PersonResourceIntTest {
     @Autowired
     private PersonSearchRepository personSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -75,7 +83,7 @@ public class PersonResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        PersonResource personResource = new PersonResource(personRepository, personSearchRepository);
+        PersonResource personResource = new PersonResource(personRepository, personSearchRepository, searchOutbox);
         this.restPersonMockMvc = MockMvcBuilders.standaloneSetup(personResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -123,6 +131,8 @@ public class PersonResourceIntTest {
         assertThat(testPerson.getEmail()).isEqualTo(DEFAULT_EMAIL);
         assertThat(testPerson.getPhoneNumber()).isEqualTo(DEFAULT_PHONE_NUMBER);
 
+        searchIndexer.drain();
+
         // Validate the Person in Elasticsearch
         Person personEs = personSearchRepository.findOne(testPerson.getId());
         assertThat(personEs).isEqualToComparingFieldByField(testPerson);
@@ -219,6 +229,8 @@ public class PersonResourceIntTest {
         assertThat(testPerson.getEmail()).isEqualTo(UPDATED_EMAIL);
         assertThat(testPerson.getPhoneNumber()).isEqualTo(UPDATED_PHONE_NUMBER);
 
+        searchIndexer.drain();
+
         // Validate the Person in Elasticsearch
         Person personEs = personSearchRepository.findOne(testPerson.getId());
         assertThat(personEs).isEqualToComparingFieldByField(testPerson);
@@ -255,6 +267,8 @@ public class PersonResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean personExistsInEs = personSearchRepository.exists(person.getId());
         assertThat(personExistsInEs).isFalse();
@@ -2,9 +2,18 @@ package com.end.queues.web.rest;
 
 import com.end.queues.Q1App;
 
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
 import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
 import com.end.queues.repository.QueueRepository;
 import com.end.queues.repository.search.QueueSearchRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueFullException;
+import com.end.queues.service.QueueLeaderboard;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.service.SiteWaitIndex;
 import com.end.queues.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -25,6 +34,7 @@ import javax.persistence.EntityManager;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -56,6 +66,24 @@ public class QueueResourceIntTest {
     @Autowired
     private QueueSearchRepository queueSearchRepository;
 
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private SiteWaitIndex siteWaitIndex;
+
+    @Autowired
+    private QueueLeaderboard queueLeaderboard;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -75,7 +103,7 @@ public class QueueResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        QueueResource queueResource = new QueueResource(queueRepository, queueSearchRepository);
+        QueueResource queueResource = new QueueResource(queueRepository, queueSearchRepository, liveQueueService, siteWaitIndex, queueLeaderboard, searchOutbox);
         this.restQueueMockMvc = MockMvcBuilders.standaloneSetup(queueResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -123,6 +151,8 @@ public class QueueResourceIntTest {
         assertThat(testQueue.getMaxCapacity()).isEqualTo(DEFAULT_MAX_CAPACITY);
         assertThat(testQueue.getSite()).isEqualTo(DEFAULT_SITE);
 
+        searchIndexer.drain();
+
         // Validate the Queue in Elasticsearch
         Queue queueEs = queueSearchRepository.findOne(testQueue.getId());
         assertThat(queueEs).isEqualToComparingFieldByField(testQueue);
@@ -219,11 +249,32 @@ public class QueueResourceIntTest {
         assertThat(testQueue.getMaxCapacity()).isEqualTo(UPDATED_MAX_CAPACITY);
         assertThat(testQueue.getSite()).isEqualTo(UPDATED_SITE);
 
+        searchIndexer.drain();
+
         // Validate the Queue in Elasticsearch
         Queue queueEs = queueSearchRepository.findOne(testQueue.getId());
         assertThat(queueEs).isEqualToComparingFieldByField(testQueue);
     }
 
+    @Test
+    @Transactional
+    public void updateQueueCapacityAppliesToJoins() throws Exception {
+        // Initialize the database with a queue open to two participants, one of them waiting
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(queue.maxCapacity(2).dynamicInfo(dynamicQueue));
+        liveQueueService.join(dynamicQueue, new Participant());
+
+        // Lower the capacity to one
+        Queue updatedQueue = queueRepository.findOne(queue.getId());
+        restQueueMockMvc.perform(put("/api/queues")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(updatedQueue.maxCapacity(1))))
+            .andExpect(status().isOk());
+
+        assertThatThrownBy(() -> liveQueueService.join(dynamicQueue, new Participant()))
+            .isInstanceOf(QueueFullException.class);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingQueue() throws Exception {
@@ -255,6 +306,8 @@ public class QueueResourceIntTest {
             .accept(TestUtil.APPLICATION_JSON_UTF8))
             .andExpect(status().isOk());
 
+        searchIndexer.drain();
+
         // Validate Elasticsearch is empty
         boolean queueExistsInEs = queueSearchRepository.exists(queue.getId());
         assertThat(queueExistsInEs).isFalse();
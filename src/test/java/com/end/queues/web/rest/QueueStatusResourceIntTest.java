@@ -0,0 +1,180 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.Admin;
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Location;
+import com.end.queues.domain.Organization;
+import com.end.queues.domain.Queue;
+import com.end.queues.domain.QueueStatus;
+import com.end.queues.repository.AdminRepository;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.LocationRepository;
+import com.end.queues.repository.OrganizationRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.repository.search.QueueStatusSearchRepository;
+import com.end.queues.service.SearchIndexer;
+import com.end.queues.service.SearchOutbox;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the QueueStatusResource REST controller, and the statuses built by the SearchIndexer.
+ *
+ * @see QueueStatusResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class QueueStatusResourceIntTest {
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Autowired
+    private AdminRepository adminRepository;
+
+    @Autowired
+    private QueueStatusSearchRepository queueStatusSearchRepository;
+
+    @Autowired
+    private SearchOutbox searchOutbox;
+
+    @Autowired
+    private SearchIndexer searchIndexer;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private PageableHandlerMethodArgumentResolver pageableArgumentResolver;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restQueueStatusMockMvc;
+
+    private Organization organization;
+
+    private Queue queue;
+
+    private Location location;
+
+    @Before
+    public void setup() {
+        QueueStatusResource queueStatusResource = new QueueStatusResource(queueStatusSearchRepository);
+        this.restQueueStatusMockMvc = MockMvcBuilders.standaloneSetup(queueStatusResource)
+            .setCustomArgumentResolvers(pageableArgumentResolver)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Before
+    public void initTest() {
+        queueStatusSearchRepository.deleteAll();
+        organization = organizationRepository.saveAndFlush(new Organization().name("Acme"));
+        Admin manager = adminRepository.saveAndFlush(new Admin().firstName("Ada").lastName("Lovelace"));
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue().numParticipants(3L).rate(12));
+        queue = queueRepository.saveAndFlush(new Queue().name("radiology").site("north")
+            .dynamicInfo(dynamicQueue).manager(manager).organization(organization));
+        location = locationRepository.saveAndFlush(new Location().city("Haifa").queue(queue));
+    }
+
+    /**
+     * Index the changes of the outbox, then the statuses they change.
+     */
+    private void drain() {
+        searchIndexer.drain();
+        elasticsearchTemplate.refresh(QueueStatus.class);
+        searchIndexer.drain();
+        elasticsearchTemplate.refresh(QueueStatus.class);
+    }
+
+    @Test
+    @Transactional
+    public void searchRendersWholeCards() throws Exception {
+        searchOutbox.index(Queue.class, queue.getId());
+        drain();
+
+        restQueueStatusMockMvc.perform(get("/api/_search/queue-statuses?query=organizationName:Acme"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$.[0].id").value(queue.getId().intValue()))
+            .andExpect(jsonPath("$.[0].name").value("radiology"))
+            .andExpect(jsonPath("$.[0].numParticipants").value(3))
+            .andExpect(jsonPath("$.[0].rate").value(12))
+            .andExpect(jsonPath("$.[0].managerName").value("Ada Lovelace"))
+            .andExpect(jsonPath("$.[0].organizationName").value("Acme"))
+            .andExpect(jsonPath("$.[0].locations.[0].city").value("Haifa"));
+    }
+
+    @Test
+    @Transactional
+    public void statusFollowsTheEntitiesItEmbeds() throws Exception {
+        searchOutbox.index(Queue.class, queue.getId());
+        drain();
+
+        // Renaming the organization changes the status of its queues
+        organizationRepository.saveAndFlush(organization.name("Acme Health"));
+        searchOutbox.index(Organization.class, organization.getId());
+        drain();
+        restQueueStatusMockMvc.perform(get("/api/queue-statuses/{id}", queue.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.organizationName").value("Acme Health"));
+
+        // Moving the location changes the status of both queues
+        Queue other = queueRepository.saveAndFlush(new Queue().name("pharmacy").site("north"));
+        locationRepository.saveAndFlush(location.queue(other));
+        searchOutbox.index(Location.class, location.getId());
+        drain();
+        restQueueStatusMockMvc.perform(get("/api/queue-statuses/{id}", queue.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.locations", hasSize(0)));
+        restQueueStatusMockMvc.perform(get("/api/queue-statuses/{id}", other.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.locations.[0].city").value("Haifa"));
+
+        // Deleting the queue deletes its status
+        queueRepository.delete(queue);
+        queueRepository.flush();
+        searchOutbox.delete(Queue.class, queue.getId());
+        drain();
+        restQueueStatusMockMvc.perform(get("/api/queue-statuses/{id}", queue.getId()))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void searchQueueStatusesWithExpensiveQuery() throws Exception {
+        restQueueStatusMockMvc.perform(get("/api/_search/queue-statuses?query=name:*ology"))
+            .andExpect(status().isBadRequest());
+    }
+}
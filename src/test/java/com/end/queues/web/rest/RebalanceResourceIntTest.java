@@ -0,0 +1,122 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueRebalanceService;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the RebalanceResource REST controller.
+ *
+ * @see RebalanceResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class RebalanceResourceIntTest {
+
+    private static final String SITE = "rebalance-site";
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private QueueRebalanceService queueRebalanceService;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restRebalanceMockMvc;
+
+    @Before
+    public void setup() {
+        RebalanceResource rebalanceResource = new RebalanceResource(queueRebalanceService, queueRepository);
+        this.restRebalanceMockMvc = MockMvcBuilders.standaloneSetup(rebalanceResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void rebalanceIntoNewQueue() throws Exception {
+        // Initialize the database: a long queue, and a new one opening on the same site
+        DynamicQueue busy = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        DynamicQueue opened = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("busy").site(SITE).dynamicInfo(busy));
+        Queue openedQueue = queueRepository.saveAndFlush(new Queue().name("opened").site(SITE).dynamicInfo(opened));
+        List<Participant> participants = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            participants.add(liveQueueService.join(busy, new Participant()));
+        }
+        em.flush();
+
+        restRebalanceMockMvc.perform(post("/api/rebalance").param("site", SITE).param("target", openedQueue.getId().toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.site").value(SITE))
+            .andExpect(jsonPath("$.moved").value(3))
+            .andExpect(jsonPath("$.queues[0].numParticipantsBefore").value(6))
+            .andExpect(jsonPath("$.queues[0].numParticipantsAfter").value(3))
+            .andExpect(jsonPath("$.queues[1].numParticipantsAfter").value(3));
+        em.clear();
+
+        // The head stays, the tail moved to the new queue in the same order
+        assertThat(liveQueueService.getPosition(participants.get(0).getId()).get().getPosition()).isEqualTo(1);
+        assertThat(liveQueueService.getPosition(participants.get(3).getId()).get().getDynamicQueueId()).isEqualTo(opened.getId());
+        assertThat(liveQueueService.getPosition(participants.get(3).getId()).get().getPosition()).isEqualTo(1);
+        assertThat(liveQueueService.getPosition(participants.get(5).getId()).get().getPosition()).isEqualTo(3);
+    }
+
+    @Test
+    @Transactional
+    public void rebalanceIntoQueueOfAnotherSite() throws Exception {
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("here").site(SITE).dynamicInfo(dynamicQueue));
+        Queue elsewhere = queueRepository.saveAndFlush(new Queue().name("elsewhere").site("another-site"));
+
+        restRebalanceMockMvc.perform(post("/api/rebalance").param("site", SITE).param("target", elsewhere.getId().toString()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void rebalanceUnknownSite() throws Exception {
+        restRebalanceMockMvc.perform(post("/api/rebalance").param("site", "unknown-site"))
+            .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,139 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+import com.end.queues.config.ApplicationProperties;
+import com.end.queues.domain.Organization;
+import com.end.queues.repository.OrganizationRepository;
+import com.end.queues.repository.search.OrganizationSearchRepository;
+import com.end.queues.service.QueueStatusProjection;
+import com.end.queues.service.SearchReindexer;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the ReindexResource REST controller.
+ *
+ * <p>
+ * The reindex reads committed rows from its own threads, so this test is not transactional.
+ * </p>
+ *
+ * @see ReindexResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class ReindexResourceIntTest {
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Autowired
+    private OrganizationSearchRepository organizationSearchRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private EntityMapper entityMapper;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private QueueStatusProjection queueStatusProjection;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restReindexMockMvc;
+
+    private final List<Organization> organizations = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        // Small bulks over several threads, so that the rows are split across ranges
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearch().setReindexFetchSize(2);
+        applicationProperties.getSearch().setReindexBulkSize(2);
+        applicationProperties.getSearch().setReindexParallelism(2);
+        SearchReindexer searchReindexer = new SearchReindexer(applicationProperties, em, transactionManager,
+            elasticsearchTemplate, entityMapper, hazelcastInstance);
+        ReindexResource reindexResource = new ReindexResource(searchReindexer, queueStatusProjection);
+        this.restReindexMockMvc = MockMvcBuilders.standaloneSetup(reindexResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+        for (int i = 0; i < 5; i++) {
+            organizations.add(organizationRepository.save(new Organization().name("reindexed-" + i)));
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        organizationRepository.delete(organizations);
+    }
+
+    @Test
+    public void reindexSwapsTheAlias() throws Exception {
+        // Not indexed by the writes
+        organizationSearchRepository.deleteAll();
+
+        restReindexMockMvc.perform(post("/management/reindex/{entity}", "organization"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.alias").value("organization"))
+            .andExpect(jsonPath("$.index").value(startsWith("organization_")));
+        assertThat(elasticsearchTemplate.queryForAlias(firstIndexOf("organization"))).hasSize(1);
+        for (Organization organization : organizations) {
+            assertThat(organizationSearchRepository.findOne(organization.getId()).getName()).isEqualTo(organization.getName());
+        }
+
+        // Reindexing again moves the alias to a new index and deletes the previous one
+        String previousIndex = firstIndexOf("organization");
+        restReindexMockMvc.perform(post("/management/reindex/{entity}", "organization"))
+            .andExpect(status().isOk());
+        assertThat(firstIndexOf("organization")).isNotEqualTo(previousIndex);
+        assertThat(elasticsearchTemplate.indexExists(previousIndex)).isFalse();
+        assertThat(organizationSearchRepository.findOne(organizations.get(0).getId())).isNotNull();
+    }
+
+    @Test
+    public void reindexUnknownEntity() throws Exception {
+        restReindexMockMvc.perform(post("/management/reindex/{entity}", "unknown"))
+            .andExpect(status().isNotFound());
+    }
+
+    private String firstIndexOf(String alias) {
+        return elasticsearchTemplate.getClient().admin().indices().prepareGetAliases(alias).get()
+            .getAliases().keysIt().next();
+    }
+}
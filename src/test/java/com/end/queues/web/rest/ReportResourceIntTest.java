@@ -0,0 +1,147 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Organization;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.OrganizationRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.QueueHourlyCounts;
+import com.end.queues.service.QueueRollupService;
+import com.end.queues.service.engine.LiveQueue;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the ReportResource REST controller.
+ *
+ * @see ReportResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class ReportResourceIntTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final String SITE = "reports";
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private QueueHourlyCounts queueHourlyCounts;
+
+    @Autowired
+    private QueueRollupService queueRollupService;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restReportMockMvc;
+
+    @Before
+    public void setup() {
+        ReportResource reportResource = new ReportResource(queueRollupService);
+        this.restReportMockMvc = MockMvcBuilders.standaloneSetup(reportResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void getDaysRolledUpFromTheLiveQueues() throws Exception {
+        Organization organization = organizationRepository.saveAndFlush(new Organization().name("reports"));
+        DynamicQueue dynamicQueue = dynamicQueueRepository.saveAndFlush(new DynamicQueue());
+        queueRepository.saveAndFlush(new Queue().name("reports").site(SITE).organization(organization).dynamicInfo(dynamicQueue));
+        IMap<Long, LiveQueue> liveQueues = hazelcastInstance.getMap(LiveQueueService.LIVE_QUEUES);
+
+        // Two participants joined two hours ago and were served, after 80 minutes waited in all
+        long start = (System.currentTimeMillis() / HOUR - 2) * HOUR;
+        LiveQueue liveQueue = new LiveQueue(dynamicQueue.getId());
+        liveQueue.insert(1L, LiveQueue.POSITION_GAP);
+        liveQueue.recordJoin(start);
+        liveQueue.insert(2L, 2 * LiveQueue.POSITION_GAP);
+        liveQueue.recordJoin(start + 10 * MINUTE);
+        liveQueue.poll();
+        liveQueue.recordServe(start + 40 * MINUTE);
+        liveQueue.poll();
+        liveQueue.recordServe(start + 50 * MINUTE);
+        liveQueues.set(dynamicQueue.getId(), liveQueue);
+        try {
+            queueHourlyCounts.flush();
+        } finally {
+            liveQueues.delete(dynamicQueue.getId());
+        }
+
+        LocalDate day = LocalDate.ofEpochDay(start / HOUR / 24);
+        restReportMockMvc.perform(get("/api/reports/organizations/{id}/days", organization.getId())
+            .param("from", day.minusDays(1).toString())
+            .param("to", day.toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$.[0].day").value(day.toString()))
+            .andExpect(jsonPath("$.[0].arrivals").value(2))
+            .andExpect(jsonPath("$.[0].serves").value(2))
+            .andExpect(jsonPath("$.[0].averageWaitSeconds").value(40 * 60));
+        restReportMockMvc.perform(get("/api/reports/sites/{site}/days", SITE)
+            .param("from", day.toString())
+            .param("to", day.toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$.[0].arrivals").value(2))
+            .andExpect(jsonPath("$.[0].peakLength").value(2));
+
+        // Nothing before that day
+        restReportMockMvc.perform(get("/api/reports/sites/{site}/days", SITE)
+            .param("to", day.minusDays(1).toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    public void getDaysOfInvalidRange() throws Exception {
+        restReportMockMvc.perform(get("/api/reports/sites/{site}/days", SITE)
+            .param("from", "2017-06-02")
+            .param("to", "2017-06-01"))
+            .andExpect(status().isBadRequest());
+        restReportMockMvc.perform(get("/api/reports/organizations/{id}/days", 1L)
+            .param("from", "2016-01-01")
+            .param("to", "2017-06-01"))
+            .andExpect(status().isBadRequest());
+    }
+}
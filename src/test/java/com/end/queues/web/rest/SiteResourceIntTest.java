@@ -0,0 +1,111 @@
+package com.end.queues.web.rest;
+
+import com.end.queues.Q1App;
+
+import com.end.queues.domain.DynamicQueue;
+import com.end.queues.domain.Participant;
+import com.end.queues.domain.Queue;
+import com.end.queues.repository.DynamicQueueRepository;
+import com.end.queues.repository.QueueRepository;
+import com.end.queues.service.LiveQueueService;
+import com.end.queues.service.SiteWaitIndex;
+import com.end.queues.web.rest.errors.ExceptionTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the SiteResource REST controller.
+ *
+ * @see SiteResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Q1App.class)
+public class SiteResourceIntTest {
+
+    @Autowired
+    private QueueRepository queueRepository;
+
+    @Autowired
+    private DynamicQueueRepository dynamicQueueRepository;
+
+    @Autowired
+    private LiveQueueService liveQueueService;
+
+    @Autowired
+    private SiteWaitIndex siteWaitIndex;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restSiteMockMvc;
+
+    @Before
+    public void setup() {
+        SiteResource siteResource = new SiteResource(siteWaitIndex);
+        this.restSiteMockMvc = MockMvcBuilders.standaloneSetup(siteResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void getBestQueue() throws Exception {
+        String site = "best-queue-site";
+        DynamicQueue fast = dynamicQueueRepository.saveAndFlush(new DynamicQueue().rate(60));
+        DynamicQueue slow = dynamicQueueRepository.saveAndFlush(new DynamicQueue().rate(10));
+        Queue fastQueue = queueRepository.saveAndFlush(new Queue().name("fast").site(site).dynamicInfo(fast));
+        Queue slowQueue = queueRepository.saveAndFlush(new Queue().name("slow").site(site).dynamicInfo(slow));
+        for (int i = 0; i < 3; i++) {
+            liveQueueService.join(fast, new Participant());
+        }
+        liveQueueService.join(slow, new Participant());
+
+        // 3 minutes in the fast queue, 6 minutes in the slow one
+        restSiteMockMvc.perform(get("/api/sites/{site}/best-queue", site))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.site").value(site))
+            .andExpect(jsonPath("$.queueId").value(fastQueue.getId().intValue()))
+            .andExpect(jsonPath("$.numParticipants").value(3))
+            .andExpect(jsonPath("$.estimatedWaitSeconds").value(180));
+
+        // The index follows the joins
+        for (int i = 0; i < 4; i++) {
+            liveQueueService.join(fast, new Participant());
+        }
+        restSiteMockMvc.perform(get("/api/sites/{site}/best-queue", site))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.queueId").value(slowQueue.getId().intValue()))
+            .andExpect(jsonPath("$.estimatedWaitSeconds").value(360));
+
+        // And the serves
+        for (int i = 0; i < 2; i++) {
+            liveQueueService.serveNext(fast);
+        }
+        restSiteMockMvc.perform(get("/api/sites/{site}/best-queue", site))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.queueId").value(fastQueue.getId().intValue()))
+            .andExpect(jsonPath("$.numParticipants").value(5));
+    }
+
+    @Test
+    @Transactional
+    public void getBestQueueOfUnknownSite() throws Exception {
+        restSiteMockMvc.perform(get("/api/sites/{site}/best-queue", "unknown-site"))
+            .andExpect(status().isNotFound());
+    }
+}